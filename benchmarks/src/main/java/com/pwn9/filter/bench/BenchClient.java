@@ -0,0 +1,69 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.bench;
+
+import com.pwn9.filter.engine.FilterService;
+import com.pwn9.filter.engine.api.FilterClient;
+import com.pwn9.filter.engine.rules.chain.RuleChain;
+
+/**
+ * A FilterClient that just holds a RuleChain.
+ */
+public class BenchClient implements FilterClient {
+
+    private final String name;
+    private final FilterService filterService;
+    private final RuleChain ruleChain;
+
+    public BenchClient(String name, FilterService filterService, RuleChain ruleChain) {
+        this.name = name;
+        this.filterService = filterService;
+        this.ruleChain = ruleChain;
+    }
+
+    @Override
+    public String getShortName() {
+        return name;
+    }
+
+    @Override
+    public FilterService getFilterService() {
+        return filterService;
+    }
+
+    @Override
+    public RuleChain getRuleChain() {
+        return ruleChain;
+    }
+
+    @Override
+    public boolean isActive() {
+        return true;
+    }
+
+    @Override
+    public void activate() {
+    }
+
+    @Override
+    public void shutdown() {
+    }
+}
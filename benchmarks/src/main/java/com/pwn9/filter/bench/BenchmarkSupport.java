@@ -0,0 +1,142 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.bench;
+
+import com.pwn9.filter.engine.FilterService;
+import com.pwn9.filter.engine.rules.action.minecraft.MinecraftAction;
+import com.pwn9.filter.engine.rules.action.targeted.TargetedAction;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Helpers to set up a FilterService and test data for the benchmarks.
+ */
+public final class BenchmarkSupport {
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Create a FilterService with all of the Minecraft actions available,
+     * using a temporary directory for its rules and text files.
+     *
+     * @return a new FilterService
+     * @throws IOException if the temporary directory can't be created
+     */
+    public static FilterService newFilterService() throws IOException {
+        Logger logger = Logger.getLogger("com.pwn9.filter.bench");
+        logger.setLevel(Level.WARNING);
+        FilterService filterService = new FilterService(logger);
+        filterService.getActionFactory().addActionTokens(MinecraftAction.class);
+        filterService.getActionFactory().addActionTokens(TargetedAction.class);
+        File dir = Files.createTempDirectory("pwnfilter-bench").toFile();
+        dir.deleteOnExit();
+        filterService.getConfig().setRulesDir(dir);
+        filterService.getConfig().setTextDir(dir);
+        return filterService;
+    }
+
+    /**
+     * Copy one of the rule files shipped in the PwnFilter jar into the rules
+     * directory, optionally adding some statements to the top of it.
+     *
+     * @param filterService FilterService whose rules directory to use
+     * @param name          Name of the rule file (eg: chat.txt)
+     * @param header        Lines to add before the shipped rules, or null
+     * @return The copied file
+     * @throws IOException if the resource can't be read or written
+     */
+    public static File copyRules(FilterService filterService, String name, String header) throws IOException {
+        File target = new File(filterService.getConfig().getRulesDir(), name);
+        try (InputStream in = resource("/" + name);
+             OutputStream out = new FileOutputStream(target)) {
+            if (header != null) {
+                out.write((header + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            byte[] buffer = new byte[4096];
+            int len;
+            while ((len = in.read(buffer)) > 0) {
+                out.write(buffer, 0, len);
+            }
+        }
+        target.deleteOnExit();
+        return target;
+    }
+
+    /**
+     * Load a corpus of messages, one per line.  Blank lines and lines
+     * starting with # are skipped.
+     *
+     * @param name Name of the corpus, under /corpus/ in the benchmark jar
+     * @return The messages
+     * @throws IOException if the corpus can't be read
+     */
+    public static String[] loadCorpus(String name) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(resource("/corpus/" + name), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                lines.add(line);
+            }
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    /**
+     * Messages built to make a backtracking regex engine work hard on the
+     * shipped rules.
+     *
+     * @return The messages
+     */
+    public static String[] hostileMessages() {
+        StringBuilder repeated = new StringBuilder();
+        StringBuilder server = new StringBuilder();
+        for (int i = 0; i < 250; i++) {
+            repeated.append("ng");
+            server.append("i hate ");
+        }
+        return new String[]{
+                repeated.toString(),
+                server.toString() + "this servr",
+                "fa" + repeated.toString().replace('n', 'g')
+        };
+    }
+
+    private static InputStream resource(String name) throws IOException {
+        InputStream in = BenchmarkSupport.class.getResourceAsStream(name);
+        if (in == null) throw new IOException("Resource not found: " + name);
+        return in;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.bench;
+
+import com.pwn9.filter.engine.FilterService;
+import com.pwn9.filter.engine.api.FilterContext;
+import com.pwn9.filter.engine.api.MessageAuthor;
+import com.pwn9.filter.engine.rules.chain.RuleChain;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RuleChain.execute() on the shipped chat.txt and command.txt rules.
+ * <p>
+ * The corpus for each rule file is split into "clean" messages, which match
+ * no rules, and "matching" messages, which match at least one.
+ * "adversarial" messages are built to make the regexes work hard.  Each
+ * operation filters every message in the set once.
+ * <p>
+ * The chain, FilterService and client are shared by all threads, so the
+ * multi-threaded runs show up any contention on them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChainBenchmark {
+
+    @Param({"chat.txt", "command.txt"})
+    public String rules;
+
+    @Param({"clean", "matching", "adversarial"})
+    public String messages;
+
+    private FilterService filterService;
+    private RuleChain chain;
+    private BenchClient client;
+    private MessageAuthor author;
+    private String[] corpus;
+
+    @Setup
+    public void setup() throws Exception {
+        filterService = BenchmarkSupport.newFilterService();
+        chain = filterService.parseRules(BenchmarkSupport.copyRules(filterService, rules, null));
+        client = new BenchClient(rules.equals("command.txt") ? "COMMAND" : "CHAT", filterService, chain);
+        author = new BenchAuthor();
+
+        if (messages.equals("adversarial")) {
+            String[] hostile = BenchmarkSupport.hostileMessages();
+            if (rules.equals("command.txt")) {
+                for (int i = 0; i < hostile.length; i++) hostile[i] = "/msg Steve " + hostile[i];
+            }
+            corpus = hostile;
+            return;
+        }
+
+        boolean wantMatching = messages.equals("matching");
+        List<String> selected = new ArrayList<>();
+        for (String message : BenchmarkSupport.loadCorpus(rules)) {
+            FilterContext context = new FilterContext(message, author, client);
+            chain.apply(context, filterService);
+            if (context.getMatchedRules().isEmpty() != wantMatching) selected.add(message);
+        }
+        if (selected.isEmpty()) throw new IllegalStateException("No " + messages + " messages for " + rules);
+        corpus = selected.toArray(new String[selected.size()]);
+    }
+
+    private void executeAll(Blackhole bh) {
+        for (String message : corpus) {
+            FilterContext context = new FilterContext(message, author, client);
+            chain.execute(context, filterService);
+            bh.consume(context.isCancelled());
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void singleThread(Blackhole bh) {
+        executeAll(bh);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void multiThread(Blackhole bh) {
+        executeAll(bh);
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.bench;
+
+import com.pwn9.filter.engine.api.FilterContext;
+import com.pwn9.filter.minecraft.util.ColoredString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * ColoredString construction, replaceText() and getRaw(), on a chat
+ * message with and without colour codes.  Also FilterContext.messageChanged()
+ * on a message that no rule touched, and on one that was modified.  Run with
+ * "-prof gc" to compare the allocation per message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColoredStringBenchmark {
+
+    private static final Pattern WORD = Pattern.compile("fudge", Pattern.CASE_INSENSITIVE);
+    private static final Pattern VOWEL = Pattern.compile("[aeiou]");
+
+    @Param({"plain", "colored"})
+    public String message;
+
+    private String raw;
+    private ColoredString string;
+    private ColoredString modified;
+    private ColoredString page;
+    private FilterContext unchangedContext;
+    private FilterContext changedContext;
+
+    @Setup
+    public void setup() {
+        raw = message.equals("colored") ?
+                "&4Hey &lguys&r, what the &6fudge&r is going on at &1sp&2aw&3n&r?  Oh &cFUDGE&r, I fell in lava." :
+                "Hey guys, what the fudge is going on at spawn?  Oh FUDGE, I fell in lava.";
+        string = new ColoredString(raw);
+        modified = string.replaceText(WORD, "&k*****&r");
+        // A book page, with over 100 matches for VOWEL.
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 8; i++) {
+            sb.append(raw).append(' ');
+        }
+        page = new ColoredString(sb.toString());
+        unchangedContext = new FilterContext(string, null, null);
+        changedContext = new FilterContext(string, null, null);
+        changedContext.setModifiedMessage(modified);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ColoredString construct() {
+        return new ColoredString(raw);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public ColoredString constructThreaded() {
+        return new ColoredString(raw);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ColoredString replaceText() {
+        return string.replaceText(WORD, "&k*****&r");
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public ColoredString replaceTextThreaded() {
+        return string.replaceText(WORD, "&k*****&r");
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ColoredString replaceTextManyMatches() {
+        return page.replaceText(VOWEL, "&k3&r");
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ColoredString patternToUpperManyMatches() {
+        return page.patternToUpper(VOWEL);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String getRaw() {
+        return modified.getRaw();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String getRawThreaded() {
+        return modified.getRaw();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean messageUnchanged() {
+        return unchangedContext.messageChanged();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean messageChanged() {
+        return changedContext.messageChanged();
+    }
+}
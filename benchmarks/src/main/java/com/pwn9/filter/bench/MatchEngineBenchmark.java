@@ -0,0 +1,87 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.bench;
+
+import com.pwn9.filter.engine.FilterService;
+import com.pwn9.filter.engine.api.FilterContext;
+import com.pwn9.filter.engine.api.MessageAuthor;
+import com.pwn9.filter.engine.rules.chain.RuleChain;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the java.util.regex and linear-time match engines on the shipped
+ * chat.txt rules.
+ * <p>
+ * "corpus" runs through a mix of ordinary chat messages.  "hostile" runs
+ * messages built to make a backtracking engine work hard.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatchEngineBenchmark {
+
+    @Param({"regex", "linear"})
+    public String engine;
+
+    @Param({"corpus", "hostile"})
+    public String messages;
+
+    private FilterService filterService;
+    private RuleChain chain;
+    private BenchClient client;
+    private MessageAuthor author;
+    private String[] corpus;
+
+    @Setup
+    public void setup() throws Exception {
+        filterService = BenchmarkSupport.newFilterService();
+        chain = filterService.parseRules(
+                BenchmarkSupport.copyRules(filterService, "chat.txt", "engine " + engine));
+        client = new BenchClient("CHAT", filterService, chain);
+        author = new BenchAuthor();
+        corpus = messages.equals("hostile") ? BenchmarkSupport.hostileMessages() : BenchmarkSupport.loadCorpus("chat.txt");
+    }
+
+    @Benchmark
+    public void executeChain(Blackhole bh) {
+        for (String message : corpus) {
+            FilterContext context = new FilterContext(message, author, client);
+            chain.execute(context, filterService);
+            bh.consume(context.isCancelled());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.bench;
+
+import com.pwn9.filter.engine.FilterService;
+import com.pwn9.filter.engine.rules.chain.InvalidChainException;
+import com.pwn9.filter.engine.rules.chain.RuleChain;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TextConfigParser.parse() on large generated rule files.
+ * <p>
+ * The rules are modelled on the shipped chat.txt: word-boundary patterns
+ * with a few alternatives, ids and descriptions, permission conditions,
+ * and a mix of replace / warn / deny actions, with some action and
+ * condition groups.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({"1000", "10000", "50000"})
+    public int rules;
+
+    private FilterService filterService;
+    private File ruleFile;
+
+    @Setup
+    public void setup() throws IOException {
+        filterService = BenchmarkSupport.newFilterService();
+        ruleFile = writeRules(new File(filterService.getConfig().getRulesDir(), "generated.txt"), rules);
+        ruleFile.deleteOnExit();
+    }
+
+    /**
+     * Write a rule file with the given number of rules.
+     *
+     * @param file  File to write
+     * @param count Number of rules
+     * @return the file
+     * @throws IOException if the file can't be written
+     */
+    static File writeRules(File file, int count) throws IOException {
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            out.write("# Generated rules for ParserBenchmark\n\n");
+            out.write("actiongroup swear\nthen replace ****\nthen warn Watch your language!\nthen points 1\n\n");
+            out.write("conditiongroup staff\nignore permission pwnfilter.admin\nignore permission pwnfilter.mod\n\n");
+            for (int i = 0; i < count; i++) {
+                out.write("match (?<!\\w)w" + i + "rd(s|ing|er)?(?!\\w)\n");
+                out.write("rule G" + i + " Generated rule " + i + "\n");
+                switch (i % 4) {
+                    case 0:
+                        out.write("conditions staff\nactions swear\n");
+                        break;
+                    case 1:
+                        out.write("ignore permission pwnfilter.bypass.chat\nthen replace ****\n");
+                        break;
+                    case 2:
+                        out.write("ignore user Notch\nrequire permission pwnfilter.guest\nthen deny\n" +
+                                "then warn &4That word isn't allowed here.\nthen log\n");
+                        break;
+                    default:
+                        out.write("then rewrite w" + i + "rd\nthen notify pwnfilter.admin %player% said %string%\n");
+                }
+                out.write("\n");
+            }
+        }
+        return file;
+    }
+
+    private RuleChain parse() throws InvalidChainException {
+        return filterService.parseRules(ruleFile);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public RuleChain singleThread() throws InvalidChainException {
+        return parse();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public RuleChain multiThread() throws InvalidChainException {
+        return parse();
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.bench;
+
+import com.pwn9.filter.engine.points.PointsJournal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The points journal, with the balances of many players.
+ * <p>
+ * "recover" reads a snapshot of every player's balance, plus a journal with
+ * one more update for each of them, as the PointManager does at startup.
+ * <p>
+ * "record" writes one update for each player, flushing every 1000 updates
+ * (about what a busy server queues between flushes), and taking snapshots
+ * when the journal asks for them, as the PointManager does.  The bytes
+ * written for each update (the write amplification, counting snapshots)
+ * are printed at the end of each iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PointsJournalBenchmark {
+
+    @Param({"100000"})
+    public int players;
+
+    private Path recoverDir;
+    private Path recordDir;
+    private UUID[] ids;
+    private PointsJournal journal;
+    private long updates;
+
+    @Setup
+    public void setup() throws IOException {
+        ids = new UUID[players];
+        for (int i = 0; i < players; i++) ids[i] = UUID.randomUUID();
+
+        recoverDir = Files.createTempDirectory("pwnfilter-bench-points");
+        PointsJournal saved = new PointsJournal(recoverDir.toFile());
+        saved.open();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < players; i++) saved.record(ids[i], 1 + i % 30, now);
+        saved.snapshot();
+        for (int i = 0; i < players; i++) saved.record(ids[i], 2 + i % 30, now);
+        saved.close();
+
+        recordDir = Files.createTempDirectory("pwnfilter-bench-points");
+    }
+
+    @Setup(Level.Iteration)
+    public void openJournal() throws IOException {
+        journal = new PointsJournal(recordDir.toFile());
+        journal.open();
+        updates = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeJournal() throws IOException {
+        journal.close();
+        if (updates > 0) {
+            System.out.printf("%n%.1f bytes written per update (%d byte records)%n",
+                    (double) journal.getBytesWritten() / updates, PointsJournal.RECORD_SIZE);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        for (Path dir : new Path[]{recoverDir, recordDir}) {
+            try (Stream<Path> paths = Files.walk(dir)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    @Benchmark
+    public int recover() throws IOException {
+        PointsJournal recovered = new PointsJournal(recoverDir.toFile());
+        int size = recovered.open().size();
+        recovered.close();
+        return size;
+    }
+
+    @Benchmark
+    public void record() throws IOException {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < players; i++) {
+            journal.record(ids[i], 1 + (updates + i) % 30, now);
+            if (i % 1000 == 999) {
+                journal.flush();
+                if (journal.needsSnapshot()) journal.snapshot();
+            }
+        }
+        journal.flush();
+        updates += players;
+    }
+
+}
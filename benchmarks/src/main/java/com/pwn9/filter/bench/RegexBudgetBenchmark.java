@@ -0,0 +1,180 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.bench;
+
+import com.google.common.base.Stopwatch;
+import com.pwn9.filter.engine.FilterService;
+import com.pwn9.filter.engine.rules.Rule;
+import com.pwn9.filter.engine.rules.chain.ChainEntry;
+import com.pwn9.filter.engine.rules.chain.RuleChain;
+import com.pwn9.filter.util.LimitedRegexCharSequence;
+import com.pwn9.filter.util.MatchBudget;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Measure the cost of guarding regex matches against runaway patterns.
+ * <p>
+ * Every pattern in the shipped chat.txt is tested against each message, the
+ * way a chain would, using:
+ * <ul>
+ * <li>none: the plain String, with no timeout at all</li>
+ * <li>stopwatch: a new sequence per rule, reading the clock on every
+ * charAt (how LimitedRegexCharSequence used to work)</li>
+ * <li>budget: one reused sequence and {@link MatchBudget} per message</li>
+ * </ul>
+ * "clean" messages are corpus lines that no rule matches, "matching" are the
+ * lines that at least one rule matches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegexBudgetBenchmark {
+
+    @Param({"none", "stopwatch", "budget"})
+    public String guard;
+
+    @Param({"clean", "matching"})
+    public String messages;
+
+    private Pattern[] patterns;
+    private String[] corpus;
+    private LimitedRegexCharSequence reused;
+
+    @Setup
+    public void setup() throws Exception {
+        FilterService filterService = BenchmarkSupport.newFilterService();
+        RuleChain chain = filterService.parseRules(
+                BenchmarkSupport.copyRules(filterService, "chat.txt", null));
+        List<Pattern> found = new ArrayList<>();
+        collectPatterns(chain, found);
+        patterns = found.toArray(new Pattern[found.size()]);
+
+        boolean wantMatching = messages.equals("matching");
+        List<String> selected = new ArrayList<>();
+        for (String message : BenchmarkSupport.loadCorpus("chat.txt")) {
+            if (matchesAny(message) == wantMatching) selected.add(message);
+        }
+        if (selected.isEmpty()) throw new IllegalStateException("No " + messages + " messages in corpus");
+        corpus = selected.toArray(new String[selected.size()]);
+
+        reused = new LimitedRegexCharSequence("", new MatchBudget(1000, 2000));
+    }
+
+    private static void collectPatterns(RuleChain chain, List<Pattern> found) {
+        for (ChainEntry entry : chain.getChain()) {
+            if (entry instanceof RuleChain) {
+                collectPatterns((RuleChain) entry, found);
+            } else if (entry instanceof Rule && ((Rule) entry).getPattern() != null) {
+                found.add(((Rule) entry).getPattern());
+            }
+        }
+    }
+
+    private boolean matchesAny(String message) {
+        for (Pattern p : patterns) {
+            if (p.matcher(message).find()) return true;
+        }
+        return false;
+    }
+
+    @Benchmark
+    public void matchAll(Blackhole bh) {
+        for (String message : corpus) {
+            switch (guard) {
+                case "none":
+                    for (Pattern p : patterns) {
+                        bh.consume(p.matcher(message).find());
+                    }
+                    break;
+                case "stopwatch":
+                    for (Pattern p : patterns) {
+                        bh.consume(p.matcher(new StopwatchCharSequence(message, 1000)).find());
+                    }
+                    break;
+                default:
+                    reused.reset(message);
+                    reused.getBudget().startMessage();
+                    for (Pattern p : patterns) {
+                        reused.getBudget().startRule();
+                        bh.consume(p.matcher(reused).find());
+                    }
+            }
+        }
+    }
+
+    /**
+     * The previous LimitedRegexCharSequence, which checked a Stopwatch on
+     * every access.
+     */
+    private static final class StopwatchCharSequence implements CharSequence {
+        private final CharSequence inner;
+        private final Stopwatch stopwatch;
+        private final int timeoutMillis;
+
+        StopwatchCharSequence(CharSequence inner, int timeoutMillis) {
+            this.inner = inner;
+            this.stopwatch = Stopwatch.createStarted();
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (stopwatch.elapsed(TimeUnit.MILLISECONDS) > timeoutMillis) {
+                throw new IllegalStateException("Timeout occurred after " + timeoutMillis + "ms");
+            }
+            return inner.charAt(index);
+        }
+
+        @Override
+        public int length() {
+            return inner.length();
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new StopwatchCharSequence(inner.subSequence(start, end), timeoutMillis);
+        }
+
+        @Override
+        public String toString() {
+            return inner.toString();
+        }
+    }
+}
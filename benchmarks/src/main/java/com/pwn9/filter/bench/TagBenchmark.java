@@ -0,0 +1,81 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.bench;
+
+import com.pwn9.filter.engine.api.FilterContext;
+import com.pwn9.filter.engine.rules.Rule;
+import com.pwn9.filter.util.tag.RegisterTags;
+import com.pwn9.filter.util.tag.TagRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TagRegistry.replaceTags() on action text with no tags, and with several.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TagBenchmark {
+
+    @Param({"none", "tags"})
+    public String line;
+
+    private String text;
+    private FilterContext context;
+
+    @Setup
+    public void setup() throws Exception {
+        RegisterTags.all();
+        text = line.equals("tags") ?
+                "[%ruleid%] %player% said '%string%' in %event%, and now has %points% points.  (%unknown%)" :
+                "&4[&6PwnFilter&4] &4Warned by PwnFilter!";
+        BenchClient client = new BenchClient("CHAT", BenchmarkSupport.newFilterService(), null);
+        context = new FilterContext("what the fudge", new BenchAuthor(), client);
+        context.setRule(new Rule("A1", "Bad words"));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String replaceTags() {
+        return TagRegistry.replaceTags(text, context);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String replaceTagsThreaded() {
+        return TagRegistry.replaceTags(text, context);
+    }
+}
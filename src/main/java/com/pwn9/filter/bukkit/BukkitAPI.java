@@ -20,13 +20,13 @@
 
 package com.pwn9.filter.bukkit;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import com.pwn9.filter.engine.api.AuthorService;
 import com.pwn9.filter.engine.api.NotifyTarget;
 import com.pwn9.filter.minecraft.DeathMessages;
+import com.pwn9.filter.minecraft.api.AuthorCache;
 import com.pwn9.filter.minecraft.api.MinecraftAPI;
 import com.pwn9.filter.minecraft.api.MinecraftConsole;
+import com.pwn9.filter.minecraft.api.PermissionSnapshots;
 import net.milkbowl.vault.economy.EconomyResponse;
 import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
@@ -36,6 +36,7 @@ import org.bukkit.plugin.Plugin;
 import org.bukkit.scheduler.BukkitRunnable;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.*;
@@ -46,43 +47,30 @@ import java.util.concurrent.*;
  * Also, we can't always schedule a task, because we might be running in the
  * main thread.
  * <p/>
- * This will cache data about players for 10s.
+ * Online players are added to the author cache when they join, and removed
+ * when they quit.
  */
 
 class BukkitAPI implements MinecraftAPI, AuthorService, NotifyTarget {
 
     private final PwnFilterPlugin plugin;
     private final MinecraftAPI playerAPI = this;
-    private final Cache<UUID, BukkitPlayer> playerCache = CacheBuilder.newBuilder()
-            .maximumSize(100)
-            .build();
-
-    /*
-    Note: The "load" call can cause blocking of the main Bukkit thread, if it is called
-    from the main thread while there is an outstanding request.
-     */
+    private final PermissionSnapshots permissions;
+    private final AuthorCache<BukkitPlayer> authors = new AuthorCache<>(id -> new BukkitPlayer(id, this));
 
     BukkitAPI(PwnFilterPlugin p) {
         plugin = p;
+        permissions = new PermissionSnapshots(() -> plugin.getFilterService().getPermissions());
     }
 
     public BukkitPlayer getAuthorById(final UUID u) {
-        /* Not sure if this is the best way of doing this, but we need to make
-        certain that we do not block the main server thread while waiting for a
-        FutureTask in the same thread when the Cache loads a missing value.
-         */
-        BukkitPlayer bPlayer;
-        bPlayer = playerCache.getIfPresent(u);
-        if (bPlayer == null) {
-            Player onlinePlayer = safeBukkitAPICall(() -> Bukkit.getPlayer(u));
-            if (onlinePlayer != null) {
-                playerCache.asMap().putIfAbsent(u, new BukkitPlayer(u, this));
-            }
+        BukkitPlayer bPlayer = authors.get(u);
+        if (bPlayer == null && Bukkit.isPrimaryThread() && Bukkit.getPlayer(u) != null) {
+            // Joined before we were listening.  Off the main thread we can't
+            // ask Bukkit without blocking, so the player is treated as offline.
+            bPlayer = authors.add(u);
         }
-        // At this point, the player should be in the cache if they are online.
-        // If player is offline, returns null
-        return playerCache.getIfPresent(u);
-
+        return bPlayer;
     }
 
     public MinecraftConsole getConsole() {
@@ -91,7 +79,23 @@ class BukkitAPI implements MinecraftAPI, AuthorService, NotifyTarget {
 
     @Override
     public synchronized void reset() {
-        playerCache.invalidateAll();
+        // Keep the players who are still online, so lookups don't miss.
+        safeBukkitAPICall(() -> {
+            List<UUID> online = new ArrayList<>();
+            for (Player player : Bukkit.getOnlinePlayers()) {
+                online.add(player.getUniqueId());
+            }
+            authors.retain(online);
+            return null;
+        });
+    }
+
+    /**
+     * @return The authors of the online players, which the player listener
+     * keeps up to date.
+     */
+    AuthorCache<BukkitPlayer> getAuthorCache() {
+        return authors;
     }
 
 
@@ -179,12 +183,32 @@ class BukkitAPI implements MinecraftAPI, AuthorService, NotifyTarget {
         });
     }
 
-    // Check if a player has a perm. (not cached)
+    /**
+     * Check if a player has a perm.  Async threads only get the answer from
+     * the player's permission snapshot, they never wait for the main thread.
+     *
+     * @return The answer, or null if it isn't known yet.
+     */
     @Override
     public Boolean playerIdHasPermission(final UUID u, final String s) {
-        return safeBukkitAPICall(() -> {
-            Player p = Bukkit.getPlayer(u);
-            return p != null && p.hasPermission(s);
+        Boolean snapshot = permissions.hasPermission(u, s);
+        if (snapshot != null || !Bukkit.isPrimaryThread()) return snapshot;
+        Player p = Bukkit.getPlayer(u);
+        return p != null && p.hasPermission(s);
+    }
+
+    PermissionSnapshots getPermissionSnapshots() {
+        return permissions;
+    }
+
+    /**
+     * Take the next batch of permission snapshots.  Run on the main thread
+     * every tick.
+     */
+    void refreshPermissions() {
+        permissions.refresh(id -> {
+            Player p = Bukkit.getPlayer(id);
+            return (p == null) ? null : p::hasPermission;
         });
     }
 
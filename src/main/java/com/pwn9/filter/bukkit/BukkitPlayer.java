@@ -20,8 +20,6 @@
 
 package com.pwn9.filter.bukkit;
 
-import com.google.common.base.Stopwatch;
-import com.google.common.base.Ticker;
 import com.pwn9.filter.engine.api.MessageAuthor;
 import com.pwn9.filter.engine.rules.action.targeted.BurnTarget;
 import com.pwn9.filter.engine.rules.action.targeted.FineTarget;
@@ -32,8 +30,6 @@ import org.jetbrains.annotations.NotNull;
 
 import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Author of a text string sent to us by Bukkit.  This is typically a player.
@@ -43,53 +39,24 @@ import java.util.concurrent.TimeUnit;
  */
 public class BukkitPlayer implements MessageAuthor, FineTarget, BurnTarget, KillTarget, KickTarget {
 
-    static final int MAX_CACHE_AGE_SECS = 60; //
-
     private final MinecraftAPI minecraftAPI;
     private final UUID playerId;
-    private final Stopwatch stopwatch;
-    private final ConcurrentHashMap<String, Boolean> playerPermCache =
-            new ConcurrentHashMap<>(16, 0.9f, 1); // Optimizations for Map
     private String playerName = "";
 
     BukkitPlayer(UUID uuid, MinecraftAPI api) {
         this.playerId = uuid;
         this.minecraftAPI = api;
-        this.stopwatch = Stopwatch.createStarted();
-    }
-
-    // For testing
-    BukkitPlayer(UUID uuid, MinecraftAPI api, Ticker ticker) {
-        this.playerId = uuid;
-        this.minecraftAPI = api;
-        this.stopwatch = Stopwatch.createStarted(ticker);
     }
 
     @Override
     public boolean hasPermission(String permString) {
 
-        // We are caching permissions, so we don't have to ask the API every time,
-        // as that could get expensive for complex rulechains.  Every MAX_CACHE_AGE_SECS
-        // we invalidate the cache on access.  This should have us asking if a player
-        // has any given perm only 1 or 2 times every MAX_CACHE_AGE_SECS
-
-        if (stopwatch.elapsed(TimeUnit.SECONDS) > MAX_CACHE_AGE_SECS) {
-            stopwatch.reset();
-            stopwatch.start();
-            playerPermCache.clear();
-        }
-
-        Boolean hasPerm = playerPermCache.get(permString);
-
-        if (hasPerm == null) {
-            Boolean newPerm = minecraftAPI.playerIdHasPermission(playerId, permString);
-            if (newPerm != null)
-                playerPermCache.putIfAbsent(permString, newPerm);
-        }
-        // At this point, the player should be in the cache if they are online.
-        // If player is offline, or there is an API failure, returns null
+        // The API answers from the player's permission snapshot, which is
+        // kept up to date by the main thread, so this is cheap, and doesn't
+        // block.  If the player is offline, or the answer isn't known yet,
+        // the API returns null.
 
-        hasPerm = playerPermCache.get(permString);
+        Boolean hasPerm = minecraftAPI.playerIdHasPermission(playerId, permString);
 
         return hasPerm != null && hasPerm;
     }
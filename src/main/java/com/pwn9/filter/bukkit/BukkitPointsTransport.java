@@ -0,0 +1,69 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.bukkit;
+
+import com.google.common.collect.Iterables;
+import com.pwn9.filter.engine.points.PointsTransport;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.messaging.PluginMessageListener;
+
+/**
+ * Sends points messages to the proxy over plugin messaging.  Plugin
+ * messages travel on a player's connection, so nothing can be sent while no
+ * players are online.  Messages must be sent from the main thread, and
+ * messages from the proxy arrive on it.
+ */
+public class BukkitPointsTransport implements PointsTransport, PluginMessageListener {
+
+    private final Plugin plugin;
+    private volatile Receiver receiver;
+
+    public BukkitPointsTransport(Plugin plugin) {
+        this.plugin = plugin;
+        plugin.getServer().getMessenger().registerOutgoingPluginChannel(plugin, CHANNEL);
+        plugin.getServer().getMessenger().registerIncomingPluginChannel(plugin, CHANNEL, this);
+    }
+
+    @Override
+    public boolean send(String server, byte[] message) {
+        // Not safe off the main thread.  The sender keeps the message for later.
+        if (!plugin.getServer().isPrimaryThread()) return false;
+        Player player = Iterables.getFirst(plugin.getServer().getOnlinePlayers(), null);
+        if (player == null) return false;
+        player.sendPluginMessage(plugin, CHANNEL, message);
+        return true;
+    }
+
+    @Override
+    public void setReceiver(Receiver receiver) {
+        this.receiver = receiver;
+    }
+
+    @Override
+    public void onPluginMessageReceived(String channel, Player player, byte[] message) {
+        Receiver current = receiver;
+        if (current != null && CHANNEL.equals(channel)) {
+            current.receive(null, message);
+        }
+    }
+
+}
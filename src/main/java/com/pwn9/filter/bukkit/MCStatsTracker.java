@@ -74,7 +74,7 @@ class MCStatsTracker implements StatsTracker {
 
     @Override
     public void incrementMatch() {
-        matchTracker.increment();
+        if (matchTracker != null) matchTracker.increment();
     }
 
     /**
@@ -24,16 +24,19 @@ import com.google.common.collect.MapMaker;
 import com.pwn9.filter.bukkit.config.BukkitConfig;
 import com.pwn9.filter.bukkit.listener.*;
 import com.pwn9.filter.engine.FilterService;
-import com.pwn9.filter.engine.rules.action.minecraft.MinecraftAction;
-import com.pwn9.filter.engine.rules.action.targeted.TargetedAction;
+import com.pwn9.filter.engine.rules.RuleStatsReport;
 import com.pwn9.filter.minecraft.api.MinecraftConsole;
+import com.pwn9.filter.minecraft.api.PermissionSnapshots;
 import com.pwn9.filter.minecraft.command.pfcls;
 import com.pwn9.filter.minecraft.command.pfmute;
 import com.pwn9.filter.minecraft.command.pfreload;
+import com.pwn9.filter.minecraft.command.pfrules;
+import com.pwn9.filter.minecraft.command.pfstats;
 import com.pwn9.filter.util.tag.RegisterTags;
 import net.milkbowl.vault.economy.Economy;
 import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
 import org.bukkit.event.HandlerList;
 import org.bukkit.plugin.RegisteredServiceProvider;
 import org.bukkit.plugin.java.JavaPlugin;
@@ -74,8 +77,6 @@ public class PwnFilterBukkitPlugin extends JavaPlugin implements PwnFilterPlugin
         console = new MinecraftConsole(minecraftAPI);
         statsTracker = new MCStatsTracker(this);
         filterService = new FilterService(getLogger());
-        filterService.getActionFactory().addActionTokens(MinecraftAction.class);
-        filterService.getActionFactory().addActionTokens(TargetedAction.class);
         filterService.getConfig().setTemplateProvider(this);
         RegisterTags.all();
     }
@@ -112,6 +113,7 @@ public class PwnFilterBukkitPlugin extends JavaPlugin implements PwnFilterPlugin
 
         // Activate Statistics Tracking
         statsTracker.startTracking();
+        filterService.setStatsTracker(statsTracker);
 
         filterService.registerAuthorService(minecraftAPI);
         filterService.registerNotifyTarget(minecraftAPI);
@@ -130,15 +132,25 @@ public class PwnFilterBukkitPlugin extends JavaPlugin implements PwnFilterPlugin
         // The Entity Death handler, for custom death messages.
         getServer().getPluginManager().registerEvents(new PwnFilterEntityListener(), this);
         // The DataCache handler, for async-safe player info (name/world/permissions)
-        getServer().getPluginManager().registerEvents(new PlayerCacheListener(), this);
+        PermissionSnapshots permissions = minecraftAPI.getPermissionSnapshots();
+        getServer().getPluginManager().registerEvents(
+                new PlayerCacheListener(minecraftAPI.getAuthorCache(), permissions), this);
 
         // Enable the listeners
         filterService.enableClients();
 
+        // Snapshot the permissions the rules check, and keep them up to date
+        for (Player player : getServer().getOnlinePlayers()) {
+            permissions.take(player.getUniqueId(), player::hasPermission);
+        }
+        getServer().getScheduler().runTaskTimer(this, minecraftAPI::refreshPermissions, 1, 1);
+
         // Set up Command Handlers
         getCommand("pfreload").setExecutor(new pfreload(filterService, this));
         getCommand("pfcls").setExecutor(new pfcls(getLogger(), console));
         getCommand("pfmute").setExecutor(new pfmute(getLogger(), console));
+        getCommand("pfrules").setExecutor(new pfrules(filterService));
+        getCommand("pfstats").setExecutor(new pfstats(filterService, getDataFolder(), minecraftAPI.getAuthorCache()));
 
     }
 
@@ -147,8 +159,16 @@ public class PwnFilterBukkitPlugin extends JavaPlugin implements PwnFilterPlugin
      */
     public void onDisable() {
         HandlerList.unregisterAll(this); // Unregister all Bukkit Event handlers.
+        try {
+            RuleStatsReport.collect(filterService.getActiveClients(), null)
+                    .writeCsv(new File(getDataFolder(), pfstats.CSV_FILE));
+        } catch (IOException ex) {
+            filterService.getLogger().warning("Unable to write rule stats: " + ex.getMessage());
+        }
         filterService.shutdown();
         filterService.deregisterAuthorService(minecraftAPI);
+        minecraftAPI.getPermissionSnapshots().clear();
+        minecraftAPI.getAuthorCache().clear();
     }
 
     public boolean configurePlugin() {
@@ -22,10 +22,13 @@ package com.pwn9.filter.bukkit;
 
 import org.mcstats.Metrics;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 class Tracker extends Metrics.Plotter {
 
     private final String name;
-    private int value, last;
+    private final AtomicInteger value = new AtomicInteger();
+    private volatile int last;
 
     /**
      * <p>Constructor for Tracker.</p>
@@ -34,7 +37,6 @@ class Tracker extends Metrics.Plotter {
      */
     Tracker(String name) {
         this.name = name;
-        this.value = 0;
         this.last = 0;
     }
 
@@ -51,15 +53,15 @@ class Tracker extends Metrics.Plotter {
      */
     @Override
     public int getValue() {
-        this.last = this.value;
-        return this.value;
+        this.last = this.value.get();
+        return this.last;
     }
 
     /**
      * <p>increment.</p>
      */
     void increment() {
-        this.value++;
+        this.value.incrementAndGet();
     }
 
     /**
@@ -67,7 +69,7 @@ class Tracker extends Metrics.Plotter {
      */
     @Override
     public void reset() {
-        this.value = this.value - this.last;
+        this.value.addAndGet(-this.last);
     }
 
 }
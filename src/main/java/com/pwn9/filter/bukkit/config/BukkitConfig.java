@@ -20,9 +20,16 @@
 
 package com.pwn9.filter.bukkit.config;
 
+import com.pwn9.filter.bukkit.BukkitPointsTransport;
+import com.pwn9.filter.bukkit.PwnFilterBukkitPlugin;
 import com.pwn9.filter.engine.FilterService;
 import com.pwn9.filter.engine.PointManager;
 import com.pwn9.filter.engine.api.Action;
+import com.pwn9.filter.engine.points.FilePointStore;
+import com.pwn9.filter.engine.points.MemoryPointStore;
+import com.pwn9.filter.engine.points.PointStore;
+import com.pwn9.filter.engine.points.ProxyPointStore;
+import com.pwn9.filter.engine.rules.RuleQuarantine;
 import com.pwn9.filter.engine.rules.action.ActionFactory;
 import com.pwn9.filter.engine.rules.action.InvalidActionException;
 import com.pwn9.filter.engine.rules.action.targeted.TargetedAction;
@@ -36,6 +43,7 @@ import org.jetbrains.annotations.NotNull;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -51,6 +59,7 @@ public class BukkitConfig {
     private static Configuration config;
 
     private static File dataFolder;
+    private static BukkitPointsTransport pointsTransport;
 
     public static void loadConfiguration(Configuration configuration, File folder, FilterService filterService) throws InvalidConfigurationException {
 
@@ -98,6 +107,33 @@ public class BukkitConfig {
         }
         filterService.getConfig().setLogLevel(logLevel);
 
+        // Regex time limits
+        filterService.getConfig().setRuleTimeoutMillis(config.getInt("ruletimeout", 1000));
+        filterService.getConfig().setMessageTimeoutMillis(config.getInt("messagetimeout", 2000));
+
+        // Long messages have read-only rules tested in parallel
+        filterService.getConfig().setParallelMinLength(config.getInt("parallelminlength", 0));
+
+        // Quarantine of rules that keep timing out
+        RuleQuarantine quarantine = filterService.getRuleQuarantine();
+        quarantine.setMaxTimeouts(config.getInt("quarantine.timeouts", 3));
+        quarantine.setWindowMillis(TimeUnit.SECONDS.toMillis(config.getInt("quarantine.window", 60)));
+        quarantine.setBackoffMillis(TimeUnit.SECONDS.toMillis(config.getInt("quarantine.backoff", 300)));
+        String captureFile = config.getString("quarantine.capturefile", "timeouts.txt");
+        quarantine.setCaptureFile(captureFile == null || captureFile.isEmpty() ? null :
+                new File(dataFolder, captureFile));
+
+        // Results of chains, replayed for repeated messages
+        filterService.getVerdictCache().setMaximumSize(config.getInt("verdictcache", 0));
+
+        // Keep compiled rule files, so they don't have to be parsed at startup
+        String rulePackDir = config.getString("rulepackdirectory", "");
+        filterService.getConfig().setRulePackDir(rulePackDir == null || rulePackDir.isEmpty() ? null :
+                setupDirectory(rulePackDir, filterService.getLogger()));
+
+        // Reload rule chains when their files change
+        filterService.setAutoReload(config.getBoolean("autoreload", false));
+
         setupPoints(filterService);
 
     }
@@ -114,6 +150,9 @@ public class BukkitConfig {
                 pointManager.setLeakPoints(pointsSection.getDouble("leak.points", 1));
                 pointManager.setLeakInterval(pointsSection.getInt("leak.interval", 30));
 
+                // Where to keep points
+                pointManager.setStore(setupPointStore(pointsSection, filterService.getLogger()));
+
                 try {
                     parseThresholds(pointsSection.getConfigurationSection("thresholds"), pointManager, filterService.getActionFactory());
                 } catch (InvalidActionException ex) {
@@ -125,6 +164,30 @@ public class BukkitConfig {
         }
     }
 
+    private static PointStore setupPointStore(ConfigurationSection pointsSection, Logger logger) {
+        String store = pointsSection.getString("store", "file").toLowerCase();
+        switch (store) {
+            case "proxy":
+                PwnFilterBukkitPlugin plugin = PwnFilterBukkitPlugin.getInstance();
+                if (plugin == null) break;
+                if (pointsTransport == null) pointsTransport = new BukkitPointsTransport(plugin);
+                // Plugin messages can only be sent from the main thread.
+                return new ProxyPointStore(pointsTransport, pointsSection.getLong("batch", 250),
+                        task -> plugin.getServer().getScheduler().runTask(plugin, task), logger);
+            case "file":
+                // Keep points across restarts
+                String journalDir = pointsSection.getString("journal", "points");
+                File directory = (journalDir == null || journalDir.isEmpty()) ? null :
+                        setupDirectory(journalDir, logger);
+                if (directory != null) return new FilePointStore(directory, logger);
+                return new MemoryPointStore();
+            case "memory":
+                return new MemoryPointStore();
+        }
+        logger.warning("Unable to keep points in: " + store + ".  Keeping them in memory.");
+        return new MemoryPointStore();
+    }
+
     private static void parseThresholds(ConfigurationSection configSection,
                                         PointManager pointManager,
                                         ActionFactory actionFactory)
@@ -21,9 +21,13 @@
 package com.pwn9.filter.bukkit.listener;
 
 import com.pwn9.filter.bukkit.PwnFilterBukkitPlugin;
+import com.pwn9.filter.minecraft.api.AuthorCache;
+import com.pwn9.filter.minecraft.api.PermissionSnapshots;
+import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 
 /**
@@ -37,6 +41,37 @@ import org.bukkit.event.player.PlayerQuitEvent;
  */
 public class PlayerCacheListener implements Listener {
 
+    private final AuthorCache<?> authors;
+    private final PermissionSnapshots permissions;
+
+    public PlayerCacheListener(AuthorCache<?> authors, PermissionSnapshots permissions) {
+        this.authors = authors;
+        this.permissions = permissions;
+    }
+
+    /**
+     * Add the player to the author cache, before any other plugin can make
+     * them chat.
+     *
+     * @param event a {@link org.bukkit.event.player.PlayerJoinEvent} object.
+     */
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void cacheAuthor(PlayerJoinEvent event) {
+        authors.add(event.getPlayer().getUniqueId());
+    }
+
+    /**
+     * Take a snapshot of the player's permissions, after the permissions
+     * plugins have set them up.
+     *
+     * @param event a {@link org.bukkit.event.player.PlayerJoinEvent} object.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        Player player = event.getPlayer();
+        permissions.take(player.getUniqueId(), player::hasPermission);
+    }
+
     /**
      * <p>onPlayerQuit.</p>
      *
@@ -50,14 +85,16 @@ public class PlayerCacheListener implements Listener {
         }
     }
 
-//    /**
-//     * <p>onPlayerJoin.</p>
-//     *
-//     * @param event a {@link org.bukkit.event.player.PlayerJoinEvent} object.
-//     */
-//    @EventHandler(priority = EventPriority.LOWEST)
-//    public void onPlayerJoin(PlayerJoinEvent event) {
-//        // In future, might want to load points data?
-//    }
+    /**
+     * Forget the player, after every other plugin has handled the quit.
+     *
+     * @param event a {@link org.bukkit.event.player.PlayerQuitEvent} object.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void forgetPlayer(PlayerQuitEvent event) {
+        if (event.getPlayer() == null) return;
+        authors.remove(event.getPlayer().getUniqueId());
+        permissions.remove(event.getPlayer().getUniqueId());
+    }
 
 }
@@ -34,6 +34,7 @@ import org.bukkit.inventory.meta.BookMeta;
 import org.bukkit.plugin.PluginManager;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 
@@ -57,6 +58,11 @@ public class PwnFilterBookListener extends BaseListener {
         return "BOOK";
     }
 
+    @Override
+    public List<String> getRuleFiles() {
+        return Collections.singletonList("book.txt");
+    }
+
     // This is the handler
     void onBookEdit(PlayerEditBookEvent event) {
         Player player;
@@ -128,7 +134,7 @@ public class PwnFilterBookListener extends BaseListener {
 
         if (BukkitConfig.bookfilterEnabled()) {
             try {
-                ruleChain = getCompiledChain(filterService.getConfig().getRuleFile("book.txt"));
+                ruleChain = getCompiledChain("book.txt");
                 pm.registerEvent(PlayerEditBookEvent.class, this, priority,
                         (l, e) -> onBookEdit((PlayerEditBookEvent) e),
                         PwnFilterBukkitPlugin.getInstance());
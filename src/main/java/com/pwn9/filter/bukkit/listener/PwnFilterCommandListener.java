@@ -33,6 +33,10 @@ import org.bukkit.event.EventPriority;
 import org.bukkit.event.player.PlayerCommandPreprocessEvent;
 import org.bukkit.plugin.PluginManager;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Apply the filter to commands.
  *
@@ -41,7 +45,7 @@ import org.bukkit.plugin.PluginManager;
  */
 public class PwnFilterCommandListener extends BaseListener {
     private final PwnFilterBukkitPlugin plugin;
-    private RuleChain chatRuleChain;
+    private volatile RuleChain chatRuleChain;
 
     public PwnFilterCommandListener(PwnFilterBukkitPlugin plugin) {
         super(plugin.getFilterService());
@@ -52,6 +56,22 @@ public class PwnFilterCommandListener extends BaseListener {
         return "COMMAND";
     }
 
+    @Override
+    public List<String> getRuleFiles() {
+        return Arrays.asList("command.txt", "chat.txt");
+    }
+
+    @Override
+    public RuleChain getChain(String ruleFile) {
+        return ruleFile.equals("chat.txt") ? chatRuleChain : super.getChain(ruleFile);
+    }
+
+    @Override
+    public void swapChains(Map<String, RuleChain> chains) {
+        super.swapChains(chains);
+        if (chains.containsKey("chat.txt")) chatRuleChain = chains.get("chat.txt");
+    }
+
     @Override
     public void activate() {
         if (isActive()) return;
@@ -60,8 +80,8 @@ public class PwnFilterCommandListener extends BaseListener {
         EventPriority priority = BukkitConfig.getCmdpriority();
         if (BukkitConfig.cmdfilterEnabled()) {
             try {
-                ruleChain = getCompiledChain(filterService.getConfig().getRuleFile("command.txt"));
-                chatRuleChain = getCompiledChain(filterService.getConfig().getRuleFile("chat.txt"));
+                ruleChain = getCompiledChain("command.txt");
+                chatRuleChain = getCompiledChain("chat.txt");
 
                 pm.registerEvent(PlayerCommandPreprocessEvent.class, this, priority,
                         (l, e) -> eventProcessor((PlayerCommandPreprocessEvent) e),
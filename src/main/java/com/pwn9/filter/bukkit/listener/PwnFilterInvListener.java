@@ -35,6 +35,9 @@ import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 import org.bukkit.plugin.PluginManager;
 
+import java.util.Collections;
+import java.util.List;
+
 
 /**
  * Listen for Sign Change events and apply the filter to the text.
@@ -56,6 +59,11 @@ public class PwnFilterInvListener extends BaseListener {
         return "ITEM";
     }
 
+    @Override
+    public List<String> getRuleFiles() {
+        return Collections.singletonList("item.txt");
+    }
+
     // This is the handler
     private void onInventoryEvent(InventoryClickEvent event) {
         Player player;
@@ -118,7 +126,7 @@ public class PwnFilterInvListener extends BaseListener {
 
         if (BukkitConfig.itemFilterEnabled()) {
             try {
-                ruleChain = getCompiledChain(filterService.getConfig().getRuleFile("item.txt"));
+                ruleChain = getCompiledChain("item.txt");
                 // Now register the listener with the appropriate priority
                 pm.registerEvent(InventoryClickEvent.class, this, priority,
                         (l, e) -> onInventoryEvent((InventoryClickEvent) e),
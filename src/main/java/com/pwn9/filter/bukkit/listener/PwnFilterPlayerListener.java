@@ -34,6 +34,9 @@ import org.bukkit.ChatColor;
 import org.bukkit.event.player.AsyncPlayerChatEvent;
 import org.bukkit.plugin.PluginManager;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Listen for Chat events and apply the filter.
  */
@@ -49,6 +52,11 @@ public class PwnFilterPlayerListener extends BaseListener {
         return "CHAT";
     }
 
+    @Override
+    public List<String> getRuleFiles() {
+        return Collections.singletonList("chat.txt");
+    }
+
     void onPlayerChat(AsyncPlayerChatEvent event) {
 
         if (event.isCancelled()) return;
@@ -124,7 +132,7 @@ public class PwnFilterPlayerListener extends BaseListener {
 
         try {
 
-            ruleChain = getCompiledChain(filterService.getConfig().getRuleFile("chat.txt"));
+            ruleChain = getCompiledChain("chat.txt");
 
             PluginManager pm = Bukkit.getServer().getPluginManager();
 
@@ -30,6 +30,9 @@ import org.bukkit.event.EventPriority;
 import org.bukkit.event.server.ServerCommandEvent;
 import org.bukkit.plugin.PluginManager;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Apply the filter to commands.
  *
@@ -50,6 +53,11 @@ public class PwnFilterServerCommandListener extends BaseListener {
         return "CONSOLE";
     }
 
+    @Override
+    public List<String> getRuleFiles() {
+        return Collections.singletonList("console.txt");
+    }
+
     private void onServerCommandEvent(ServerCommandEvent event) {
 
         String command = event.getCommand();
@@ -100,7 +108,7 @@ public class PwnFilterServerCommandListener extends BaseListener {
 
             if (BukkitConfig.consolefilterEnabled()) {
 
-                ruleChain = getCompiledChain(filterService.getConfig().getRuleFile("console.txt"));
+                ruleChain = getCompiledChain("console.txt");
                 PluginManager pm = Bukkit.getPluginManager();
                 EventPriority priority = BukkitConfig.getCmdpriority();
 
@@ -57,6 +57,11 @@ public class PwnFilterSignListener extends BaseListener {
         return "SIGN";
     }
 
+    @Override
+    public List<String> getRuleFiles() {
+        return Collections.singletonList("sign.txt");
+    }
+
     /**
      * The sign filter has extra work to do that the chat doesn't:
      * 1. Take lines of sign and aggregate them into one string for processing
@@ -149,7 +154,7 @@ public class PwnFilterSignListener extends BaseListener {
             EventPriority priority = BukkitConfig.getSignpriority();
 
             if (BukkitConfig.signfilterEnabled()) {
-                ruleChain = getCompiledChain(filterService.getConfig().getRuleFile("sign.txt"));
+                ruleChain = getCompiledChain("sign.txt");
                 // Now register the listener with the appropriate priority
                 pm.registerEvent(SignChangeEvent.class, this, priority,
                         (l, e) -> onSignChange((SignChangeEvent) e),
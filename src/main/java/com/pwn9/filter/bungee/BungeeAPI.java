@@ -35,17 +35,17 @@
 
 package com.pwn9.filter.bungee;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import com.pwn9.filter.bukkit.PwnFilterPlugin;
 import com.pwn9.filter.engine.api.AuthorService;
 import com.pwn9.filter.engine.api.NotifyTarget;
+import com.pwn9.filter.minecraft.api.AuthorCache;
 import com.pwn9.filter.minecraft.api.MinecraftAPI;
 import com.pwn9.filter.minecraft.api.MinecraftConsole;
 import net.md_5.bungee.api.ProxyServer;
 import net.md_5.bungee.api.connection.ProxiedPlayer;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
@@ -56,9 +56,7 @@ public class BungeeAPI implements MinecraftAPI, AuthorService, NotifyTarget {
 
 	private final PwnFilterPlugin plugin;
 	private final MinecraftAPI playerAPI = this;
-	private final Cache<UUID, BungeePlayer> playerCache = CacheBuilder.newBuilder()
-			.maximumSize(100)
-			.build();
+	private final AuthorCache<BungeePlayer> authors = new AuthorCache<>(id -> new BungeePlayer(id, this));
 
 	BungeeAPI(PwnFilterPlugin p) {
 		plugin = p;
@@ -70,23 +68,31 @@ public class BungeeAPI implements MinecraftAPI, AuthorService, NotifyTarget {
 
 	@Override
 	public synchronized void reset() {
-		playerCache.invalidateAll();
+		// Keep the players who are still online, so lookups don't miss.
+		List<UUID> online = new ArrayList<>();
+		for (ProxiedPlayer player : ProxyServer.getInstance().getPlayers()) {
+			online.add(player.getUniqueId());
+		}
+		authors.retain(online);
+	}
+
+	/**
+	 * @return The authors of the online players, which the player listener
+	 * keeps up to date.
+	 */
+	public AuthorCache<BungeePlayer> getAuthorCache() {
+		return authors;
 	}
 
 	@Override
 	public BungeePlayer getAuthorById(final UUID u) {
 
-		BungeePlayer bPlayer = playerCache.getIfPresent(u);
-		if (bPlayer == null) {
-			ProxiedPlayer onlinePlayer = ProxyServer.getInstance().getPlayer( u );
-			if (onlinePlayer != null) {
-				playerCache.asMap().putIfAbsent(u, new BungeePlayer(u, this));
-			}
+		BungeePlayer bPlayer = authors.get(u);
+		if (bPlayer == null && ProxyServer.getInstance().getPlayer( u ) != null) {
+			// Joined before we were listening.
+			bPlayer = authors.add(u);
 		}
-
-		// At this point, the player should be in the cache if they are online.
-		// If player is offline, returns null
-		return playerCache.getIfPresent(u);
+		return bPlayer;
 
 	}
 
@@ -0,0 +1,97 @@
+/*
+ * http://ryred.co/
+ * ace[at]ac3-servers.eu
+ *
+ * =================================================================
+ *
+ * Copyright (c) 2016, Cory Redmond
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of PwnFilter nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.pwn9.filter.bungee;
+
+import com.pwn9.filter.engine.points.PointsTransport;
+import net.md_5.bungee.api.config.ServerInfo;
+import net.md_5.bungee.api.connection.ProxiedPlayer;
+import net.md_5.bungee.api.connection.Server;
+import net.md_5.bungee.api.event.PluginMessageEvent;
+import net.md_5.bungee.api.plugin.Listener;
+import net.md_5.bungee.api.plugin.Plugin;
+import net.md_5.bungee.event.EventHandler;
+
+import java.util.UUID;
+
+/**
+ * Sends points messages to the servers behind the proxy over plugin
+ * messaging.  Points messages from players are dropped, so they can't be
+ * forged.
+ */
+public class BungeePointsTransport implements PointsTransport, Listener {
+
+	private final Plugin plugin;
+	private volatile Receiver receiver;
+
+	public BungeePointsTransport(Plugin plugin) {
+		this.plugin = plugin;
+		plugin.getProxy().registerChannel(CHANNEL);
+		plugin.getProxy().getPluginManager().registerListener(plugin, this);
+	}
+
+	@Override
+	public boolean send(String server, byte[] message) {
+		ServerInfo info = (server == null) ? null : plugin.getProxy().getServerInfo(server);
+		// A server can only be sent a message while a player is on it.
+		if (info == null || info.getPlayers().isEmpty()) return false;
+		info.sendData(CHANNEL, message);
+		return true;
+	}
+
+	@Override
+	public String getServer(UUID id) {
+		ProxiedPlayer player = plugin.getProxy().getPlayer(id);
+		Server server = (player == null) ? null : player.getServer();
+		return (server == null) ? null : server.getInfo().getName();
+	}
+
+	@Override
+	public void setReceiver(Receiver receiver) {
+		this.receiver = receiver;
+	}
+
+	@EventHandler
+	public void onPluginMessage(PluginMessageEvent event) {
+		if (!CHANNEL.equals(event.getTag())) return;
+		event.setCancelled(true);
+
+		Receiver current = receiver;
+		if (current != null && event.getSender() instanceof Server) {
+			current.receive(((Server) event.getSender()).getInfo().getName(), event.getData());
+		}
+	}
+
+}
@@ -44,8 +44,6 @@ import com.pwn9.filter.bungee.listener.PlayerCacheListener;
 import com.pwn9.filter.bungee.listener.PwnFilterChatListener;
 import com.pwn9.filter.bungee.listener.PwnFilterCommandListener;
 import com.pwn9.filter.engine.FilterService;
-import com.pwn9.filter.engine.rules.action.minecraft.MinecraftAction;
-import com.pwn9.filter.engine.rules.action.targeted.TargetedAction;
 import com.pwn9.filter.minecraft.api.MinecraftConsole;
 import com.pwn9.filter.util.tag.RegisterTags;
 import net.md_5.bungee.api.plugin.Plugin;
@@ -89,8 +87,6 @@ public class PwnFilterBungeePlugin extends Plugin implements PwnFilterPlugin, Te
 		minecraftAPI = new BungeeAPI(this);
 		console = new MinecraftConsole(minecraftAPI);
 		filterService = new FilterService(getLogger());
-		filterService.getActionFactory().addActionTokens(MinecraftAction.class);
-		filterService.getActionFactory().addActionTokens(TargetedAction.class);
 		filterService.getConfig().setTemplateProvider(this);
 		RegisterTags.all();
 
@@ -127,7 +123,7 @@ public class PwnFilterBungeePlugin extends Plugin implements PwnFilterPlugin, Te
 		filterService.registerClient(new PwnFilterCommandListener(this));
 		filterService.registerClient(new PwnFilterChatListener(this));
 
-		getProxy().getPluginManager().registerListener( this, new PlayerCacheListener() );
+		getProxy().getPluginManager().registerListener( this, new PlayerCacheListener( minecraftAPI.getAuthorCache() ) );
 
 		// Enable the listeners
 		filterService.enableClients();
@@ -136,8 +132,10 @@ public class PwnFilterBungeePlugin extends Plugin implements PwnFilterPlugin, Te
 
 	@Override
 	public void onDisable() {
+		BungeeConfig.closePointsRelay();
 		filterService.shutdown();
 		filterService.deregisterAuthorService(minecraftAPI);
+		minecraftAPI.getAuthorCache().clear();
 		_instance = null;
 	}
 
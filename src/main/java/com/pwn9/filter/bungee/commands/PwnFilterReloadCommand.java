@@ -35,12 +35,14 @@
 
 package com.pwn9.filter.bungee.commands;
 
-import com.pwn9.filter.bukkit.PwnFilterBukkitPlugin;
+import com.pwn9.filter.bungee.PwnFilterBungeePlugin;
 import com.pwn9.filter.engine.FilterService;
 import net.md_5.bungee.api.CommandSender;
 import net.md_5.bungee.api.plugin.Command;
 import org.bukkit.ChatColor;
 
+import java.util.concurrent.CompletionException;
+
 /**
  * @author Cory Redmond &lt;ace@ac3-servers.eu&gt;
  */
@@ -53,21 +55,31 @@ public class PwnFilterReloadCommand extends Command {
 	@Override
 	public void execute( CommandSender sender, String[] args ) {
 
-		FilterService filterService = PwnFilterBukkitPlugin.getInstance().getFilterService();
+		PwnFilterBungeePlugin plugin = PwnFilterBungeePlugin.getInstance();
+		FilterService filterService = plugin.getFilterService();
 
 		sender.sendMessage( ChatColor.RED + "Reloading config.yml and rules/*.txt files.");
 
-		filterService.getLogger().info("Disabling all listeners");
-		filterService.disableClients();
-
-		if (!PwnFilterBukkitPlugin.getInstance().configurePlugin()) return;
+		if (!plugin.configurePlugin()) return;
 
 		filterService.getLogger().config("Reloaded config.yml as requested by " + sender.getName());
-		filterService.getLogger().config("All rules reloaded by " + sender.getName());
 
-		// Re-register our listeners
-		filterService.enableClients();
-		filterService.getLogger().info("All listeners re-enabled");
+		// Compile in the background, and keep the old rules if anything fails.
+		filterService.reloadRules(task -> plugin.getProxy().getScheduler().runAsync(plugin, task))
+				.whenComplete((count, ex) -> {
+					if (ex != null) {
+						Throwable cause = ex instanceof CompletionException && ex.getCause() != null ?
+								ex.getCause() : ex;
+						filterService.getLogger().warning("Rule reload failed.  Keeping previous rules.  Error: "
+								+ cause.getMessage());
+						sender.sendMessage( ChatColor.RED + "Rule reload failed, still using the previous rules: "
+								+ cause.getMessage());
+					} else {
+						filterService.enableClients();
+						filterService.getLogger().config("All rules reloaded by " + sender.getName());
+						sender.sendMessage( ChatColor.RED + "Reloaded " + count + " rule files.");
+					}
+				});
 
 	}
 
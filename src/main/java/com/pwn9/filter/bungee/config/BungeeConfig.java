@@ -35,9 +35,16 @@
 
 package com.pwn9.filter.bungee.config;
 
+import com.pwn9.filter.bungee.BungeePointsTransport;
+import com.pwn9.filter.bungee.PwnFilterBungeePlugin;
 import com.pwn9.filter.engine.FilterService;
 import com.pwn9.filter.engine.PointManager;
 import com.pwn9.filter.engine.api.Action;
+import com.pwn9.filter.engine.points.FilePointStore;
+import com.pwn9.filter.engine.points.MemoryPointStore;
+import com.pwn9.filter.engine.points.PointStore;
+import com.pwn9.filter.engine.points.PointsRelay;
+import com.pwn9.filter.engine.rules.RuleQuarantine;
 import com.pwn9.filter.engine.rules.action.ActionFactory;
 import com.pwn9.filter.engine.rules.action.InvalidActionException;
 import com.pwn9.filter.engine.rules.action.targeted.TargetedAction;
@@ -48,6 +55,7 @@ import org.jetbrains.annotations.NotNull;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -60,6 +68,8 @@ public class BungeeConfig {
 	private static Configuration config;
 
 	private static File dataFolder;
+	private static BungeePointsTransport pointsTransport;
+	private static PointsRelay pointsRelay;
 
 	public static void loadConfiguration(Configuration configuration, File folder, FilterService filterService) {
 
@@ -107,15 +117,47 @@ public class BungeeConfig {
 		}
 		filterService.getConfig().setLogLevel(logLevel);
 
+		// Regex time limits
+		filterService.getConfig().setRuleTimeoutMillis(config.getInt("ruletimeout", 1000));
+		filterService.getConfig().setMessageTimeoutMillis(config.getInt("messagetimeout", 2000));
+
+		// Long messages have read-only rules tested in parallel
+		filterService.getConfig().setParallelMinLength(config.getInt("parallelminlength", 0));
+
+		// Quarantine of rules that keep timing out
+		RuleQuarantine quarantine = filterService.getRuleQuarantine();
+		quarantine.setMaxTimeouts(config.getInt("quarantine.timeouts", 3));
+		quarantine.setWindowMillis(TimeUnit.SECONDS.toMillis(config.getInt("quarantine.window", 60)));
+		quarantine.setBackoffMillis(TimeUnit.SECONDS.toMillis(config.getInt("quarantine.backoff", 300)));
+		String captureFile = config.getString("quarantine.capturefile", "timeouts.txt");
+		quarantine.setCaptureFile(captureFile == null || captureFile.isEmpty() ? null :
+				new File(dataFolder, captureFile));
+
+		// Results of chains, replayed for repeated messages
+		filterService.getVerdictCache().setMaximumSize(config.getInt("verdictcache", 0));
+
+		// Keep compiled rule files, so they don't have to be parsed at startup
+		String rulePackDir = config.getString("rulepackdirectory", "");
+		filterService.getConfig().setRulePackDir(rulePackDir == null || rulePackDir.isEmpty() ? null :
+				setupDirectory(rulePackDir, filterService.getLogger()));
+
+		// Reload rule chains when their files change
+		filterService.setAutoReload(config.getBoolean("autoreload", false));
+
 		setupPoints(filterService);
 
 	}
 
 	private static void setupPoints(FilterService filterService) {
+		// Always drop points messages sent by players, even if this proxy
+		// doesn't keep points, so they can't be forged to the servers.
+		setupPointsTransport();
+
 		PointManager pointManager = filterService.getPointManager();
 		Configuration pointsSection = config.getSection("points");
 		if (!pointsSection.getBoolean("enabled")) {
 			if (pointManager.isEnabled()) {
+				closePointsRelay();
 				pointManager.shutdown();
 			}
 		} else {
@@ -123,6 +165,9 @@ public class BungeeConfig {
 				pointManager.setLeakPoints(pointsSection.getDouble("leak.points", 1));
 				pointManager.setLeakInterval(pointsSection.getInt("leak.interval", 30));
 
+				// Where to keep points
+				pointManager.setStore(setupPointStore(pointsSection, filterService.getLogger()));
+
 				try {
 					parseThresholds(pointsSection.getSection( "thresholds" ), pointManager, filterService.getActionFactory());
 				} catch (InvalidActionException ex) {
@@ -130,10 +175,54 @@ public class BungeeConfig {
 					pointManager.shutdown();
 				}
 				pointManager.start();
+
+				// Keep the points of the servers behind the proxy
+				if (pointsSection.getBoolean("relay", false)) {
+					setupPointsRelay(pointManager, pointsSection.getLong("batch", 250));
+				}
 			}
 		}
 	}
 
+	private static PointStore setupPointStore(Configuration pointsSection, Logger logger) {
+		String store = pointsSection.getString("store", "file").toLowerCase();
+		switch (store) {
+			case "file":
+				// Keep points across restarts
+				String journalDir = pointsSection.getString("journal", "points");
+				File directory = (journalDir == null || journalDir.isEmpty()) ? null :
+						setupDirectory(journalDir, logger);
+				if (directory != null) return new FilePointStore(directory, logger);
+				return new MemoryPointStore();
+			case "memory":
+				return new MemoryPointStore();
+		}
+		logger.warning("Unable to keep points in: " + store + ".  Keeping them in memory.");
+		return new MemoryPointStore();
+	}
+
+	private static void setupPointsTransport() {
+		PwnFilterBungeePlugin plugin = PwnFilterBungeePlugin.getInstance();
+		if (plugin != null && pointsTransport == null) pointsTransport = new BungeePointsTransport(plugin);
+	}
+
+	private static void setupPointsRelay(PointManager pointManager, long batchMillis) {
+		closePointsRelay();
+		if (pointsTransport == null) return;
+		pointsRelay = new PointsRelay(pointManager, pointsTransport, batchMillis);
+		pointsRelay.start();
+	}
+
+	/**
+	 * Stop keeping the points of the servers behind the proxy.
+	 */
+	public static void closePointsRelay() {
+		if (pointsRelay != null) {
+			pointsRelay.close();
+			pointsRelay = null;
+		}
+	}
+
 	private static void parseThresholds(Configuration configSection,
 	                                    PointManager pointManager,
 	                                    ActionFactory actionFactory)
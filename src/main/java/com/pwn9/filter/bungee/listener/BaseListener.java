@@ -36,7 +36,7 @@
 package com.pwn9.filter.bungee.listener;
 
 import com.pwn9.filter.engine.FilterService;
-import com.pwn9.filter.engine.api.FilterClient;
+import com.pwn9.filter.engine.api.ReloadableClient;
 import com.pwn9.filter.engine.rules.chain.Chain;
 import com.pwn9.filter.engine.rules.chain.InvalidChainException;
 import com.pwn9.filter.engine.rules.chain.RuleChain;
@@ -44,11 +44,12 @@ import net.md_5.bungee.api.plugin.Event;
 import net.md_5.bungee.api.plugin.Listener;
 
 import java.io.File;
+import java.util.Map;
 
 /**
  * @author Cory Redmond &lt;ace@ac3-servers.eu&gt;
  */
-abstract class BaseListener<E extends Event> implements FilterClient, Listener {
+abstract class BaseListener<E extends Event> implements ReloadableClient, Listener {
 	protected final FilterService filterService;
 	volatile RuleChain ruleChain;
 	private boolean active;
@@ -58,6 +59,14 @@ abstract class BaseListener<E extends Event> implements FilterClient, Listener {
 		this.filterService = filterService;
 	}
 
+	/**
+	 * Get the chain of a rule file from the FilterService, which only compiles
+	 * it if no other client has already.
+	 */
+	RuleChain getCompiledChain(String name) throws InvalidChainException {
+		return filterService.getRuleChain(name);
+	}
+
 	RuleChain getCompiledChain(File ruleFile) throws InvalidChainException {
 		Chain newChain = filterService.parseRules(ruleFile);
 		return (RuleChain) newChain;
@@ -78,7 +87,25 @@ abstract class BaseListener<E extends Event> implements FilterClient, Listener {
 	}
 
 	void loadRuleChain(String name) throws InvalidChainException {
-		ruleChain = getCompiledChain(filterService.getConfig().getRuleFile(name));
+		ruleChain = getCompiledChain(name);
+	}
+
+	/**
+	 * The first of {@link #getRuleFiles()} is this listener's primary chain.
+	 */
+	@Override
+	public RuleChain getChain(String ruleFile) {
+		return ruleFile.equals(getRuleFiles().get(0)) ? ruleChain : null;
+	}
+
+	/**
+	 * Swap in a new primary chain.  Messages already being filtered finish
+	 * with the old chain.
+	 */
+	@Override
+	public void swapChains(Map<String, RuleChain> chains) {
+		RuleChain newChain = chains.get(getRuleFiles().get(0));
+		if (newChain != null) ruleChain = newChain;
 	}
 
 
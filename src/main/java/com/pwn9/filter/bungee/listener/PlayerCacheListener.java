@@ -36,7 +36,9 @@
 package com.pwn9.filter.bungee.listener;
 
 import com.pwn9.filter.bukkit.PwnFilterBukkitPlugin;
+import com.pwn9.filter.minecraft.api.AuthorCache;
 import net.md_5.bungee.api.event.PlayerDisconnectEvent;
+import net.md_5.bungee.api.event.PostLoginEvent;
 import net.md_5.bungee.api.plugin.Listener;
 import net.md_5.bungee.event.EventHandler;
 import net.md_5.bungee.event.EventPriority;
@@ -46,6 +48,17 @@ import net.md_5.bungee.event.EventPriority;
  */
 public class PlayerCacheListener implements Listener {
 
+	private final AuthorCache<?> authors;
+
+	public PlayerCacheListener( AuthorCache<?> authors ) {
+		this.authors = authors;
+	}
+
+	@EventHandler(priority = EventPriority.LOWEST)
+	public void onPlayerJoin( PostLoginEvent event ) {
+		authors.add( event.getPlayer().getUniqueId() );
+	}
+
 	@EventHandler(priority = EventPriority.LOWEST)
 	public void onPlayerLeave( PlayerDisconnectEvent event ) {
 		if (event.getPlayer() != null && PwnFilterBukkitPlugin.lastMessage.containsKey(event.getPlayer().getUniqueId())) {
@@ -53,4 +66,9 @@ public class PlayerCacheListener implements Listener {
 		}
 	}
 
+	@EventHandler(priority = EventPriority.HIGHEST)
+	public void forgetPlayer( PlayerDisconnectEvent event ) {
+		if (event.getPlayer() != null) authors.remove( event.getPlayer().getUniqueId() );
+	}
+
 }
@@ -54,6 +54,9 @@ import net.md_5.bungee.event.EventHandler;
 import net.md_5.bungee.event.EventPriority;
 import org.bukkit.ChatColor;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * @author Cory Redmond &lt;ace@ac3-servers.eu&gt;
  */
@@ -70,6 +73,11 @@ public class PwnFilterChatListener extends BaseListener<ChatEvent> {
 		return "CHAT";
 	}
 
+	@Override
+	public List<String> getRuleFiles() {
+		return Collections.singletonList("chat.txt");
+	}
+
 
 	public void eventProcessor(ChatEvent event) {
 
@@ -147,7 +155,7 @@ public class PwnFilterChatListener extends BaseListener<ChatEvent> {
 
 		try {
 
-			ruleChain = getCompiledChain(filterService.getConfig().getRuleFile("chat.txt"));
+			ruleChain = getCompiledChain("chat.txt");
 
 			PluginManager pm = ProxyServer.getInstance().getPluginManager();
 
@@ -51,13 +51,17 @@ import net.md_5.bungee.event.EventHandler;
 import net.md_5.bungee.event.EventPriority;
 import org.bukkit.ChatColor;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
 /**
  * @author Cory Redmond &lt;ace@ac3-servers.eu&gt;
  */
 public class PwnFilterCommandListener extends BaseListener<ChatEvent> {
 
 	private final PwnFilterBungeePlugin plugin;
-	private RuleChain chatRuleChain;
+	private volatile RuleChain chatRuleChain;
 
 	public PwnFilterCommandListener(PwnFilterBungeePlugin plugin) {
 		super(plugin.getFilterService());
@@ -68,6 +72,22 @@ public class PwnFilterCommandListener extends BaseListener<ChatEvent> {
 		return "COMMAND";
 	}
 
+	@Override
+	public List<String> getRuleFiles() {
+		return Arrays.asList("command.txt", "chat.txt");
+	}
+
+	@Override
+	public RuleChain getChain(String ruleFile) {
+		return ruleFile.equals("chat.txt") ? chatRuleChain : super.getChain(ruleFile);
+	}
+
+	@Override
+	public void swapChains(Map<String, RuleChain> chains) {
+		super.swapChains(chains);
+		if (chains.containsKey("chat.txt")) chatRuleChain = chains.get("chat.txt");
+	}
+
 	@Override
 	public void activate() {
 		if (isActive()) return;
@@ -76,8 +96,8 @@ public class PwnFilterCommandListener extends BaseListener<ChatEvent> {
 		setPriority( BungeeConfig.getCmdpriority() );
 		if (BungeeConfig.cmdfilterEnabled()) {
 			try {
-				ruleChain = getCompiledChain(filterService.getConfig().getRuleFile("command.txt"));
-				chatRuleChain = getCompiledChain(filterService.getConfig().getRuleFile("chat.txt"));
+				ruleChain = getCompiledChain("command.txt");
+				chatRuleChain = getCompiledChain("chat.txt");
 
 				pm.registerListener( PwnFilterBungeePlugin.getInstance(), this );
 
@@ -37,8 +37,12 @@ public class FilterConfig {
     private final Logger logger;
     private volatile File textDir;
     private volatile File rulesDir;
+    private volatile File rulePackDir;
     private Level logLevel;
     private TemplateProvider templateProvider;
+    private volatile int ruleTimeoutMillis = 1000;
+    private volatile int messageTimeoutMillis = 0;
+    private volatile int parallelMinLength = 0;
 
     FilterConfig(Logger logger) {
         this.logger = logger;
@@ -62,6 +66,19 @@ public class FilterConfig {
         this.rulesDir = rulesDir;
     }
 
+    /**
+     * @return The directory that compiled rule files (see
+     * {@link com.pwn9.filter.engine.rules.parser.RulePack}) are kept in, or
+     * null if they aren't kept.
+     */
+    public File getRulePackDir() {
+        return rulePackDir;
+    }
+
+    public void setRulePackDir(File rulePackDir) {
+        this.rulePackDir = rulePackDir;
+    }
+
     public TemplateProvider getTemplateProvider() {
         return templateProvider;
     }
@@ -82,6 +99,42 @@ public class FilterConfig {
         this.logLevel = logLevel;
     }
 
+    /**
+     * @return Time a single rule's regex may run on a message before it is
+     * abandoned.
+     */
+    public int getRuleTimeoutMillis() {
+        return ruleTimeoutMillis;
+    }
+
+    public void setRuleTimeoutMillis(int ruleTimeoutMillis) {
+        this.ruleTimeoutMillis = ruleTimeoutMillis;
+    }
+
+    /**
+     * @return Total time all of the regexes may run on one message before
+     * the remaining rules are skipped.  0 means no limit.
+     */
+    public int getMessageTimeoutMillis() {
+        return messageTimeoutMillis;
+    }
+
+    public void setMessageTimeoutMillis(int messageTimeoutMillis) {
+        this.messageTimeoutMillis = messageTimeoutMillis;
+    }
+
+    /**
+     * @return Messages at least this long have runs of read-only rules
+     * tested in parallel.  0 means never.
+     */
+    public int getParallelMinLength() {
+        return parallelMinLength;
+    }
+
+    public void setParallelMinLength(int parallelMinLength) {
+        this.parallelMinLength = parallelMinLength;
+    }
+
     public File getRuleFile(String path) {
         // TODO: This can most certainly be cleaned up.
         File ruleFile;
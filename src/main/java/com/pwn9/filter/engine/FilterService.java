@@ -22,19 +22,38 @@ package com.pwn9.filter.engine;
 
 import com.google.common.collect.Sets;
 import com.pwn9.filter.engine.api.*;
+import com.pwn9.filter.engine.rules.RuleQuarantine;
+import com.pwn9.filter.engine.rules.RuleStatsReport;
+import com.pwn9.filter.engine.rules.ShortCutManager;
 import com.pwn9.filter.engine.rules.action.ActionFactory;
+import com.pwn9.filter.engine.rules.chain.ChainRegistry;
 import com.pwn9.filter.engine.rules.chain.InvalidChainException;
 import com.pwn9.filter.engine.rules.chain.RuleChain;
+import com.pwn9.filter.engine.rules.chain.VerdictCache;
+import com.pwn9.filter.engine.rules.parser.RulePack;
 import com.pwn9.filter.engine.rules.parser.TextConfigParser;
 import com.pwn9.filter.util.PwnFormatter;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiPredicate;
+import java.util.function.Supplier;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -55,12 +74,18 @@ import java.util.stream.Collectors;
 @SuppressWarnings("UnusedDeclaration")
 public class FilterService {
 
+    // Wait for changes to rule files to settle for this long before reloading.
+    private static final long AUTO_RELOAD_DEBOUNCE_MILLIS = 500;
+
     private final FilterConfig config;
     private final Set<FilterClient> registeredClients = Sets.newCopyOnWriteArraySet();
     private final Set<NotifyTarget> notifyTargets = Sets.newCopyOnWriteArraySet();
     private final ActionFactory actionFactory;
     private final Logger logger;
     private final PointManager pointManager = new PointManager(this);
+    private final RuleQuarantine ruleQuarantine = new RuleQuarantine(this);
+    private final VerdictCache verdictCache = new VerdictCache();
+    private final ChainRegistry chainRegistry = new ChainRegistry();
     // Author Lookup Service
     private final List<AuthorService> authorServices = new CopyOnWriteArrayList<>();
     /*
@@ -68,6 +93,10 @@ public class FilterService {
      * TODO: Maybe these should be moved into their own class in the future.
      */
     private FileHandler logfileHandler;
+    private volatile StatsTracker statsTracker;
+    private RuleWatcher ruleWatcher;
+    // The last reload started.  Each reload waits for the one before it.
+    private CompletableFuture<Integer> lastReload = CompletableFuture.completedFuture(0);
 
     public FilterService() {
         this(Logger.getLogger("com.pwn9.filter"));
@@ -83,6 +112,31 @@ public class FilterService {
         return pointManager;
     }
 
+    public RuleQuarantine getRuleQuarantine() {
+        return ruleQuarantine;
+    }
+
+    public VerdictCache getVerdictCache() {
+        return verdictCache;
+    }
+
+    public ChainRegistry getChainRegistry() {
+        return chainRegistry;
+    }
+
+    public StatsTracker getStatsTracker() {
+        return statsTracker;
+    }
+
+    /**
+     * Set the tracker that is told about every rule match.
+     *
+     * @param statsTracker a {@link StatsTracker}, or null for none.
+     */
+    public void setStatsTracker(StatsTracker statsTracker) {
+        this.statsTracker = statsTracker;
+    }
+
     @SuppressWarnings("WeakerAccess")
     public Set<FilterClient> getActiveClients() {
         return Collections.unmodifiableSet(registeredClients
@@ -90,8 +144,26 @@ public class FilterService {
                 .collect(Collectors.toSet()));
     }
 
+    /**
+     * @return The permissions checked by conditions in the rule chains of
+     * the registered clients.
+     */
+    public Set<String> getPermissions() {
+        Set<String> permissions = new HashSet<>();
+        for (FilterClient client : registeredClients) {
+            RuleChain chain = client.getRuleChain();
+            if (chain != null) permissions.addAll(chain.getConditionsMatching("permission"));
+        }
+        return permissions;
+    }
+
     public void shutdown() {
+        setAutoReload(false);
         unregisterAllClients();
+        pointManager.shutdown();
+        ruleQuarantine.flush();
+        chainRegistry.clear();
+        actionFactory.clearActions();
         clearLogFileHandler();
     }
 
@@ -108,13 +180,44 @@ public class FilterService {
         return config;
     }
 
+    /**
+     * Activate every registered client.  The rule files of the
+     * {@link ReloadableClient}s that aren't active yet are compiled first, in
+     * parallel, so each client just picks up its chains from the
+     * {@link ChainRegistry}.
+     */
     public void enableClients() {
-        registeredClients.forEach(FilterClient::activate);
+        Set<String> names = new LinkedHashSet<>();
+        for (FilterClient client : registeredClients) {
+            if (!client.isActive() && client instanceof ReloadableClient) {
+                names.addAll(((ReloadableClient) client).getRuleFiles());
+            }
+        }
+        names.removeAll(chainRegistry.getNames());
+        if (names.size() > 1) {
+            // A file that fails is compiled again by its client, which reports the error.
+            CompletableFuture<?>[] loading = names.stream()
+                    .map(name -> CompletableFuture.runAsync(() -> {
+                        try {
+                            getRuleChain(name);
+                        } catch (InvalidChainException ignored) {
+                        }
+                    }, ForkJoinPool.commonPool()))
+                    .toArray(CompletableFuture[]::new);
+            CompletableFuture.allOf(loading).join();
+        }
 
+        registeredClients.forEach(FilterClient::activate);
     }
 
+    /**
+     * Shut down every active client.  Their chains are forgotten, so they are
+     * compiled again when the clients are next enabled.
+     */
     public void disableClients() {
         getActiveClients().forEach(FilterClient::shutdown);
+        chainRegistry.clear();
+        actionFactory.clearActions();
     }
 
     /**
@@ -207,10 +310,237 @@ public class FilterService {
         }
     }
 
+    /**
+     * Parse a rule file into a RuleChain.
+     * <p>
+     * If a rule pack directory is configured, and it holds a
+     * {@link RulePack} of the file that is still current (none of the files
+     * it was built from have changed), the chain is loaded from the pack
+     * instead.  Otherwise, the file is parsed, and a new pack is written.
+     *
+     * @param ruleFile The rule file
+     * @return The RuleChain
+     * @throws InvalidChainException if the rule file couldn't be parsed.
+     */
     public RuleChain parseRules(File ruleFile) throws InvalidChainException {
+        File packFile = getRulePackFile(ruleFile);
+        if (packFile != null && packFile.isFile()) {
+            try {
+                RulePack pack = RulePack.read(packFile);
+                if (pack.isCurrent(ruleFile, config.getRulesDir())) {
+                    RuleChain chain = pack.toChain(actionFactory, config.getRulesDir(), chainRegistry);
+                    logger.fine("Loaded " + ruleFile.getName() + " from rule pack: " + packFile);
+                    return chain;
+                }
+            } catch (IOException | InvalidChainException ex) {
+                logger.fine("Unable to use rule pack: " + packFile + ": " + ex.getMessage());
+            }
+        }
+
         TextConfigParser parser = new TextConfigParser(this);
+        RuleChain chain = parser.parse(ruleFile);
 
-        return parser.parse(ruleFile);
+        if (packFile != null) {
+            try {
+                parser.getRulePack().write(packFile);
+            } catch (IOException ex) {
+                logger.warning("Unable to write rule pack: " + packFile + ": " + ex.getMessage());
+            }
+        }
+        return chain;
+    }
+
+    /**
+     * Get the chain of a rule file, compiling it if no client has asked for
+     * it yet.  Every client asking for the same file gets the same chain.
+     *
+     * @param name The name of the rule file, relative to the rules
+     *             directory.  (See {@link FilterConfig#getRuleFile(String)})
+     * @return The RuleChain.
+     * @throws InvalidChainException if the rule file couldn't be found or
+     *                               parsed.
+     */
+    public RuleChain getRuleChain(String name) throws InvalidChainException {
+        RuleChain chain = chainRegistry.get(name);
+        if (chain == null) {
+            chain = chainRegistry.register(name, loadRuleFile(name));
+        }
+        return chain;
+    }
+
+    /*
+     * Rule files in subdirectories get a pack named after their path, so
+     * that they don't share a pack with another file of the same name.
+     */
+    private File getRulePackFile(File ruleFile) {
+        File packDir = config.getRulePackDir();
+        if (packDir == null) return null;
+
+        Path path = ruleFile.toPath().toAbsolutePath().normalize();
+        String name = ruleFile.getName();
+        if (config.getRulesDir() != null) {
+            Path rulesDir = config.getRulesDir().toPath().toAbsolutePath().normalize();
+            if (path.startsWith(rulesDir)) {
+                name = rulesDir.relativize(path).toString().replace(File.separatorChar, '_');
+            }
+        }
+        return new File(packDir, name + ".pack");
+    }
+
+    /**
+     * Reload the rule chains of every active {@link ReloadableClient}, without
+     * shutting them down.
+     * <p>
+     * Each rule file is compiled once, on the executor, while the clients keep
+     * filtering with their current chains.  Actions are made again from the
+     * current configuration.  When every file has compiled, the new chains are
+     * swapped into the clients, and the quarantine, verdict cache and rule
+     * stats are cleared.  If any file fails, nothing is swapped, and the
+     * returned future completes exceptionally with the
+     * {@link InvalidChainException} (wrapped in a {@link CompletionException}).
+     * <p>
+     * Reloads run one at a time, in the order they were asked for, so a
+     * slow reload can't swap in chains older than those of a later one.
+     *
+     * @param executor The {@link Executor} to compile the rule files on.
+     * @return A future that completes with the number of rule files loaded,
+     * after the chains have been swapped.
+     */
+    public CompletableFuture<Integer> reloadRules(Executor executor) {
+        return afterLastReload(() -> {
+            ShortCutManager.getInstance().reloadFiles();
+            chainRegistry.clearRules();
+            actionFactory.clearActions();
+            return reload(executor, (client, name) -> true, true);
+        });
+    }
+
+    /**
+     * Reload only the chains that were built from any of the changed files,
+     * in the same way as {@link #reloadRules(Executor)}.
+     *
+     * @param executor The {@link Executor} to compile the rule files on.
+     * @param changed  Absolute, normalized paths of the rule, include or
+     *                 shortcut files that have changed.
+     * @return A future that completes with the number of rule files loaded.
+     * @see RuleChain#dependsOn(Collection)
+     */
+    public CompletableFuture<Integer> reloadChangedRules(Executor executor, Collection<Path> changed) {
+        return afterLastReload(() -> {
+            for (Path path : changed) {
+                ShortCutManager.getInstance().reloadFile(path.toFile());
+            }
+            return reload(executor, (client, name) -> {
+                RuleChain current = client.getChain(name);
+                return current != null && current.dependsOn(changed);
+            }, false);
+        });
+    }
+
+    /*
+     * Start the reload when the last one has finished, whether or not it
+     * succeeded.  If nothing is reloading, it starts on this thread.
+     */
+    private synchronized CompletableFuture<Integer> afterLastReload(Supplier<CompletableFuture<Integer>> reload) {
+        CompletableFuture<Integer> next = lastReload
+                .handle((count, ex) -> null)
+                .thenCompose(ignored -> reload.get());
+        lastReload = next;
+        return next;
+    }
+
+    /*
+     * If this is a full reload, chains of files that no active client uses
+     * are forgotten, too.
+     */
+    private CompletableFuture<Integer> reload(Executor executor,
+                                              BiPredicate<ReloadableClient, String> needsReload,
+                                              boolean full) {
+        Map<ReloadableClient, List<String>> clients = new LinkedHashMap<>();
+        for (FilterClient client : registeredClients) {
+            if (client.isActive() && client instanceof ReloadableClient) {
+                ReloadableClient reloadable = (ReloadableClient) client;
+                List<String> names = reloadable.getRuleFiles().stream()
+                        .filter(name -> needsReload.test(reloadable, name))
+                        .collect(Collectors.toList());
+                if (!names.isEmpty()) clients.put(reloadable, names);
+            }
+        }
+        if (clients.isEmpty()) return CompletableFuture.completedFuture(0);
+
+        Map<String, CompletableFuture<RuleChain>> compiling = new LinkedHashMap<>();
+        for (List<String> names : clients.values()) {
+            for (String name : names) {
+                compiling.computeIfAbsent(name, n ->
+                        CompletableFuture.supplyAsync(() -> compileRuleFile(n), executor));
+            }
+        }
+
+        return CompletableFuture.allOf(compiling.values().toArray(new CompletableFuture[compiling.size()]))
+                .thenApply(done -> {
+                    Map<String, RuleChain> compiled = new HashMap<>();
+                    compiling.forEach((name, chain) -> compiled.put(name, chain.join()));
+                    if (full) chainRegistry.retain(compiled.keySet());
+                    chainRegistry.replace(compiled);
+                    // Unchanged rules are reused, so start their stats over.
+                    compiled.values().forEach(RuleStatsReport::reset);
+
+                    for (Map.Entry<ReloadableClient, List<String>> client : clients.entrySet()) {
+                        Map<String, RuleChain> chains = new HashMap<>();
+                        for (String name : client.getValue()) {
+                            chains.put(name, compiled.get(name));
+                        }
+                        client.getKey().swapChains(chains);
+                    }
+                    ruleQuarantine.clear();
+                    verdictCache.invalidateAll();
+                    logger.info("Reloaded " + compiling.size() + " rule files for " +
+                            clients.size() + " listeners: " + String.join(", ", compiling.keySet()));
+                    return compiling.size();
+                });
+    }
+
+    /**
+     * Turn automatic reloading of changed rule files on or off.  Turning it on
+     * again restarts the watcher, so it picks up a new rules directory.
+     *
+     * @param enabled true to watch the rules directory for changes.
+     * @see RuleWatcher
+     */
+    public synchronized void setAutoReload(boolean enabled) {
+        if (ruleWatcher != null) {
+            ruleWatcher.stop();
+            ruleWatcher = null;
+        }
+        if (enabled && config.getRulesDir() != null) {
+            RuleWatcher watcher = new RuleWatcher(this, config.getRulesDir(), AUTO_RELOAD_DEBOUNCE_MILLIS);
+            try {
+                watcher.start();
+                ruleWatcher = watcher;
+            } catch (IOException ex) {
+                logger.warning("Unable to watch rules directory for changes: " + ex.getMessage());
+            }
+        }
+    }
+
+    public synchronized boolean isAutoReloading() {
+        return ruleWatcher != null;
+    }
+
+    private RuleChain compileRuleFile(String name) {
+        try {
+            return loadRuleFile(name);
+        } catch (InvalidChainException ex) {
+            throw new CompletionException(ex);
+        }
+    }
+
+    private RuleChain loadRuleFile(String name) throws InvalidChainException {
+        File ruleFile = config.getRuleFile(name);
+        if (ruleFile == null) {
+            throw new InvalidChainException("Unable to find or create rule file: " + name);
+        }
+        return parseRules(ruleFile);
     }
 
     /*
@@ -24,6 +24,8 @@ import com.pwn9.filter.engine.api.Action;
 import com.pwn9.filter.engine.api.FilterClient;
 import com.pwn9.filter.engine.api.FilterContext;
 import com.pwn9.filter.engine.api.MessageAuthor;
+import com.pwn9.filter.engine.points.MemoryPointStore;
+import com.pwn9.filter.engine.points.PointStore;
 import com.pwn9.filter.engine.rules.chain.RuleChain;
 import com.pwn9.filter.util.SimpleString;
 import org.jetbrains.annotations.NotNull;
@@ -37,6 +39,10 @@ import java.util.concurrent.*;
  * Each entity that is capable of having points assigned must have a UUID.
  * This manager will track the points assigned to a particular UUID.
  * <p>
+ * The balances are kept in a {@link PointStore}, which applies the leak, and
+ * tells the manager about every change, so it can run the actions of any
+ * thresholds crossed.  By default, the balances are kept in memory.
+ * <p>
  * User: Sage905
  * Date: 13-10-31
  * Time: 3:49 PM
@@ -45,26 +51,28 @@ import java.util.concurrent.*;
  * @version $Id: $Id
  */
 @SuppressWarnings("UnusedDeclaration")
-public class PointManager implements FilterClient {
+public class PointManager implements FilterClient, PointStore.Listener {
 
-    private final Map<UUID, Double> pointsMap = new ConcurrentHashMap<>(8, 0.75f, 2);
-    private final TreeMap<Double, Threshold> thresholds = new TreeMap<>();
+    private final NavigableMap<Double, Threshold> thresholds = new ConcurrentSkipListMap<>();
+    private final List<PointStore.Listener> listeners = new CopyOnWriteArrayList<>();
     private final ScheduledExecutorService scheduler =
             Executors.newScheduledThreadPool(1);
     private final FilterService filterService;
     private int leakInterval = 10;
-    private Double leakPoints = 1.0;
+    private double leakPoints = 1.0;
+    private volatile PointStore store;
     private ScheduledFuture<?> scheduledFuture;
 
     PointManager(FilterService filterService) {
         this.filterService = filterService;
+        setStore(new MemoryPointStore());
         this.clearThresholds();
     }
 
     public void reset() {
         stop();
         // Reset all player points.
-        pointsMap.clear();
+        store.clear();
         start();
     }
 
@@ -74,14 +82,50 @@ public class PointManager implements FilterClient {
 
     public void setLeakInterval(int leakInterval) {
         this.leakInterval = leakInterval;
+        store.setLeak(leakPoints, leakInterval);
+    }
+
+    public PointStore getStore() {
+        return store;
+    }
+
+    /**
+     * Set where the balances are kept.  This should only be changed while
+     * the manager is stopped.
+     *
+     * @param store The new {@link PointStore}.
+     */
+    public void setStore(PointStore store) {
+        store.init(thresholds.navigableKeySet(), this);
+        store.setLeak(leakPoints, leakInterval);
+        this.store = store;
     }
 
     public Double getLeakPoints() {
         return leakPoints;
     }
 
+    /**
+     * Set the points that leak away each interval.  This may cost the store
+     * a pass over the balances, so should only be done when configuring.
+     *
+     * @param leakPoints Points to leak each interval.
+     */
     public void setLeakPoints(Double leakPoints) {
         this.leakPoints = leakPoints;
+        store.setLeak(leakPoints, leakInterval);
+    }
+
+    /**
+     * @param listener Told about every change to a balance, after the
+     *                 threshold actions have run.
+     */
+    public void addListener(PointStore.Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(PointStore.Listener listener) {
+        listeners.remove(listener);
     }
 
     private void clearThresholds() {
@@ -91,14 +135,12 @@ public class PointManager implements FilterClient {
     }
 
     void leakTask(PointManager pointManager) {
-        //Every interval, check point balances, and if they are > 0, subtract leakPoints
-        // from the players balance.  If they reach 0, remove them from the list.
-        pointManager.getPointsMap().stream()
-                .forEach((id) -> pointManager.subPoints(id, leakPoints));
+        pointManager.store.leak();
     }
 
     public void start() {
         if (scheduledFuture == null) {
+            store.start(scheduler);
             scheduledFuture = scheduler.scheduleAtFixedRate(
                     () -> leakTask(this), 1, leakInterval, TimeUnit.SECONDS);
         }
@@ -110,41 +152,46 @@ public class PointManager implements FilterClient {
             scheduledFuture.cancel(true);
             scheduledFuture = null;
         }
+        store.stop();
     }
 
-
+    /**
+     * @return The ids that have points.  This is a copy, which costs a pass
+     * over the balances.
+     */
     Set<UUID> getPointsMap() {
-        return pointsMap.keySet();
+        return store.getIds();
     }
 
     Double getPoints(UUID uuid) {
-        return (pointsMap.containsKey(uuid)) ? pointsMap.get(uuid) : 0.0;
+        return store.getPoints(uuid);
     }
 
     public Double getPoints(MessageAuthor author) {
-        return (pointsMap.containsKey(author.getId())) ? pointsMap.get(author.getId()) : 0.0;
+        return getPoints(author.getId());
     }
 
     void setPoints(UUID id, Double points) {
-        Double old = pointsMap.getOrDefault(id, 0d);
-        pointsMap.put(id, points);
+        store.setPoints(id, points);
     }
 
     public void addPoints(UUID id, Double points) {
-        Double current = pointsMap.getOrDefault(id, 0d);
-        Double updated = current + points;
-
-        pointsMap.put(id, updated);
-
-        executeActions(current, updated, id);
-
+        store.addPoints(id, points);
     }
 
     public boolean isEnabled() {
         return scheduledFuture != null;
     }
 
-    private void executeActions(final Double fromValue, final Double toValue, final UUID id) {
+    @Override
+    public void balanceChanged(UUID id, double from, double to) {
+        executeActions(from, to, id);
+        for (PointStore.Listener listener : listeners) {
+            listener.balanceChanged(id, from, to);
+        }
+    }
+
+    private void executeActions(final double fromValue, final double toValue, final UUID id) {
         final Double oldKey = thresholds.floorKey(fromValue);
         final Double newKey = thresholds.floorKey(toValue);
 
@@ -166,22 +213,12 @@ public class PointManager implements FilterClient {
     }
 
     void subPoints(UUID id, Double points) {
-        Double updated;
-        Double current = pointsMap.getOrDefault(id, 0d);
-        updated = current - points;
-        if (updated <= 0) {
-            pointsMap.remove(id);
-            updated = 0.0;
-        } else {
-            pointsMap.put(id, updated);
-        }
-
-        executeActions(current, updated, id);
-
+        store.addPoints(id, -points);
     }
 
     public void addThreshold(String name, Double points, List<Action> ascending, List<Action> descending) {
         thresholds.put(points, new Threshold(name, points, ascending, descending));
+        store.thresholdsChanged();
     }
 
     @Override
@@ -233,6 +270,7 @@ public class PointManager implements FilterClient {
         }
 
         void executeAscending(UUID id, FilterClient client) {
+            if (actionsAscending.isEmpty()) return;
             FilterContext state = new FilterContext(new SimpleString(""), getFilterService().getAuthor(id), client);
             for (Action a : actionsAscending) {
                 client.getFilterService().getLogger().finest("Executing Action: " + a + " on " + state.getAuthor().getName());
@@ -241,6 +279,7 @@ public class PointManager implements FilterClient {
         }
 
         void executeDescending(UUID id, FilterClient client) {
+            if (actionsDescending.isEmpty()) return;
             FilterContext state = new FilterContext(new SimpleString(""), getFilterService().getAuthor(id), client);
             for (Action a : actionsDescending) {
                 client.getFilterService().getLogger().finest("Executing Action: " + a + " on " + state.getAuthor().getName());
@@ -0,0 +1,164 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package com.pwn9.filter.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Watches the rules directory, and reloads the chains that were built from
+ * any file that changes.
+ * <p>
+ * Changes are collected until no more have arrived for the debounce time, so
+ * that an editor saving several files (or writing one file in several steps)
+ * only causes one reload.  The affected chains are then compiled on the
+ * watcher's own thread, and swapped in with
+ * {@link FilterService#reloadChangedRules}.  Chains that don't use the changed
+ * files are left alone.  If a changed file doesn't compile, the old chains stay
+ * in use, and the error is logged.
+ */
+public class RuleWatcher implements Runnable {
+
+    private final FilterService filterService;
+    private final Path rulesDir;
+    private final long debounceMillis;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private volatile WatchService watchService;
+    private Thread thread;
+
+    /**
+     * @param filterService  The FilterService whose clients will be reloaded.
+     * @param rulesDir       The directory to watch, including subdirectories.
+     * @param debounceMillis How long to wait after the last change before
+     *                       reloading.
+     */
+    public RuleWatcher(FilterService filterService, File rulesDir, long debounceMillis) {
+        this.filterService = filterService;
+        this.rulesDir = rulesDir.toPath().toAbsolutePath().normalize();
+        this.debounceMillis = debounceMillis;
+    }
+
+    public synchronized void start() throws IOException {
+        if (thread != null) return;
+        watchService = FileSystems.getDefault().newWatchService();
+        try (Stream<Path> paths = Files.walk(rulesDir)) {
+            for (Path dir : (Iterable<Path>) paths.filter(Files::isDirectory)::iterator) {
+                register(dir);
+            }
+        }
+        thread = new Thread(this, "PwnFilter Rule Watcher");
+        thread.setDaemon(true);
+        thread.start();
+        filterService.getLogger().info("Watching " + rulesDir + " for rule changes.");
+    }
+
+    public synchronized void stop() {
+        if (thread == null) return;
+        try {
+            watchService.close();
+        } catch (IOException ex) {
+            filterService.getLogger().warning("Unable to close rule watcher: " + ex.getMessage());
+        }
+        thread.interrupt();
+        thread = null;
+    }
+
+    public synchronized boolean isRunning() {
+        return thread != null;
+    }
+
+    private void register(Path dir) throws IOException {
+        directories.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+    }
+
+    @Override
+    public void run() {
+        WatchService watcher = watchService;
+        Set<Path> changed = new HashSet<>();
+        boolean overflow = false;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = changed.isEmpty() && !overflow ? watcher.take() :
+                        watcher.poll(debounceMillis, TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    // Nothing more has changed for debounceMillis.
+                    reload(changed, overflow);
+                    changed = new HashSet<>();
+                    overflow = false;
+                    continue;
+                }
+                Path dir = directories.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW || dir == null) {
+                        overflow = true;
+                        continue;
+                    }
+                    Path path = dir.resolve((Path) event.context());
+                    if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                        register(path);
+                    }
+                    changed.add(path);
+                }
+                if (!key.reset()) {
+                    directories.remove(key);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ex) {
+            // Stopped.
+        } catch (IOException ex) {
+            filterService.getLogger().warning("Rule watcher stopped.  Error: " + ex.getMessage());
+        }
+    }
+
+    private void reload(Set<Path> changed, boolean overflow) {
+        // If we lost track of the changes, reload everything.
+        CompletableFuture<Integer> result = overflow ?
+                filterService.reloadRules(Runnable::run) :
+                filterService.reloadChangedRules(Runnable::run, changed);
+        try {
+            result.join();
+        } catch (CompletionException ex) {
+            Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+            filterService.getLogger().warning("Rule files changed, but could not be reloaded.  " +
+                    "Keeping previous rules.  Error: " + cause.getMessage());
+        }
+    }
+
+}
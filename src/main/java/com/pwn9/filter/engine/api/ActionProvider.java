@@ -0,0 +1,38 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.engine.api;
+
+/**
+ * Supplies a set of {@link ActionToken}s to the ActionFactory.
+ * <p>
+ * Providers are found with {@link java.util.ServiceLoader}, so a plugin can
+ * add its own actions by listing its provider in
+ * META-INF/services/com.pwn9.filter.engine.api.ActionProvider.  Providers
+ * must have a public no-argument constructor.
+ */
+public interface ActionProvider {
+
+    /**
+     * @return The enum of {@link ActionToken}s this provider adds.
+     */
+    Class<? extends ActionToken> getActionTokens();
+
+}
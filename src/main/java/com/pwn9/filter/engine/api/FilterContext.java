@@ -20,11 +20,16 @@
 
 package com.pwn9.filter.engine.api;
 
+import com.pwn9.filter.engine.FilterConfig;
 import com.pwn9.filter.engine.rules.Rule;
+import com.pwn9.filter.util.CaseFolding;
+import com.pwn9.filter.util.LimitedRegexCharSequence;
+import com.pwn9.filter.util.MatchBudget;
 import com.pwn9.filter.util.SimpleString;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -50,11 +55,22 @@ public class FilterContext {
     private final List<Rule> matchedRules = new ArrayList<>(); // An array containing all the rules we matched.
     private final ConcurrentHashMap<String, String> notifyMessages = new ConcurrentHashMap<>(8, 0.9f, 1);
     private EnhancedString modifiedMessage; // Modified message string
+    private int messageVersion = 0; // Incremented each time the modified message is replaced.
     private boolean logging = false;  // If true, actions will be logged
     private boolean aborted = false; // If set true by a rule, will stop further processing.
     private boolean cancelled = false; // If set true, will cancel this event.
+    private boolean incomplete = false; // If set true, some rules were skipped due to timeouts.
     private Rule rule; // Rule we currently match
     private Pattern pattern; // Pattern that we currently matched.
+    private static final ThreadLocal<RegexScratch> regexScratch = ThreadLocal.withInitial(RegexScratch::new);
+    private LimitedRegexCharSequence regexText; // Reused by every rule, shares one MatchBudget.
+    private boolean matchTimedOut = false; // If set true, a view given up to another message had timed out.
+    private int textVersion = -1; // The messageVersion that text / foldedText were made from.
+    private String text;
+    private String foldedText;
+    private Map<String, Boolean> permissions; // Permissions of the author we've already asked about.
+    private String upperOriginalText; // For "string" conditions
+    private String commandName; // For "command" conditions
 
     /**
      * FilterContext Constructor
@@ -103,16 +119,37 @@ public class FilterContext {
     /**
      * <p>messageChanged.</p>
      *
+     * If no rule has replaced the message, this doesn't need to compare the
+     * text at all.
+     *
      * @return true if the modified message is different than the original.
      */
     public boolean messageChanged() {
-        return !originalMessage.equals(modifiedMessage);
+        return messageVersion != 0 && modifiedMessage != originalMessage &&
+                !originalMessage.equals(modifiedMessage);
     }
 
     public MessageAuthor getAuthor() {
         return author;
     }
 
+    /**
+     * Check if the author has a permission.  Each permission is only looked
+     * up once per message, no matter how many rules ask about it.
+     *
+     * @param permission The permission string
+     * @return true if the author has the permission.
+     */
+    public boolean authorHasPermission(String permission) {
+        if (permissions == null) permissions = new HashMap<>();
+        Boolean result = permissions.get(permission);
+        if (result == null) {
+            result = author.hasPermission(permission);
+            permissions.put(permission, result);
+        }
+        return result;
+    }
+
     public boolean isCancelled() {
         return cancelled;
     }
@@ -130,7 +167,18 @@ public class FilterContext {
     }
 
     public void setModifiedMessage(EnhancedString newMessage) {
-        modifiedMessage = newMessage;
+        if (newMessage != modifiedMessage) {
+            modifiedMessage = newMessage;
+            messageVersion++;
+        }
+    }
+
+    /**
+     * @return A counter that changes every time the modified message is
+     * replaced.  It is 0 until a rule modifies the message.
+     */
+    public int getMessageVersion() {
+        return messageVersion;
     }
 
     public boolean loggingOn() {
@@ -149,6 +197,19 @@ public class FilterContext {
         this.aborted = true;
     }
 
+    /**
+     * @return true if any rule was skipped on this message because it timed
+     * out or was quarantined, so the result can't be reused for other
+     * copies of the message.
+     */
+    public boolean isIncomplete() {
+        return incomplete;
+    }
+
+    public void setIncomplete() {
+        this.incomplete = true;
+    }
+
     public Rule getRule() {
         return rule;
     }
@@ -170,6 +231,143 @@ public class FilterContext {
         return matchedRules;
     }
 
+    /**
+     * Get the plain text of the modified message.  This is only converted
+     * once for each version of the modified message, no matter how many
+     * rules are tested against it.
+     *
+     * @return modifiedMessage.toString()
+     */
+    public String getModifiedText() {
+        if (textVersion != messageVersion) {
+            textVersion = messageVersion;
+            text = modifiedMessage.toString();
+            foldedText = null;
+        }
+        return text;
+    }
+
+    /**
+     * Get the modified message with its ASCII letters lower-cased, for rules
+     * that match case-sensitively on folded text.  (See {@link CaseFolding})
+     * <p>
+     * Folding maps each char to one char, so the index of a char in the
+     * folded text is its index in {@link #getModifiedText()}.
+     *
+     * @return The folded text of the modified message.
+     */
+    public String getFoldedText() {
+        String current = getModifiedText();
+        if (foldedText == null) {
+            foldedText = CaseFolding.fold(current);
+        }
+        return foldedText;
+    }
+
+    /**
+     * Get the original message, upper-cased, for conditions that look for
+     * strings in it.  It is only converted once per message.
+     *
+     * @return getOriginalMessage().toString().toUpperCase()
+     */
+    public String getUpperOriginalText() {
+        if (upperOriginalText == null) {
+            upperOriginalText = originalMessage.toString().toUpperCase();
+        }
+        return upperOriginalText;
+    }
+
+    /**
+     * Get the name of the command in the original message: its first word,
+     * without a leading '/', upper-cased.  It is only found once per message.
+     *
+     * @return The command name, which is empty if the message starts with
+     * whitespace.
+     */
+    public String getCommandName() {
+        if (commandName == null) {
+            String message = originalMessage.toString();
+            int end = 0;
+            while (end < message.length() && !isWhitespace(message.charAt(end))) end++;
+            int start = (end > 0 && message.charAt(0) == '/') ? 1 : 0;
+            commandName = message.substring(start, end).toUpperCase();
+        }
+        return commandName;
+    }
+
+    /*
+     * The characters matched by the regex \s.
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Get the time-limited view of the message that rules run their regex
+     * against.  The first call starts the {@link MatchBudget} for this
+     * message, which is then shared by every rule applied to it.
+     * <p>
+     * The view and budget are borrowed from the current thread, so that a
+     * new message doesn't have to allocate them.  A FilterContext should only
+     * be filtered by one thread at a time.
+     *
+     * @param config The {@link FilterConfig} holding the rule and message
+     *               timeouts.
+     * @return A {@link LimitedRegexCharSequence}, which the caller should
+     * reset() to the current message text.
+     */
+    public LimitedRegexCharSequence getRegexText(FilterConfig config) {
+        if (regexText == null) {
+            regexText = regexScratch.get().take(this, config);
+        }
+        return regexText;
+    }
+
+    /*
+     * Another message has taken this thread's view.  If this one is filtered
+     * again (eg: an action filtered a message of its own), it takes the view
+     * back, with a new message timeout.
+     */
+    private void giveUpRegexText() {
+        matchTimedOut |= regexText.getBudget().isMessageExpired();
+        regexText = null;
+    }
+
+    /*
+     * The regex view and budget that each thread lends to the message it is
+     * filtering.
+     */
+    private static final class RegexScratch {
+        private LimitedRegexCharSequence text;
+        private FilterContext owner;
+
+        LimitedRegexCharSequence take(FilterContext context, FilterConfig config) {
+            if (owner != null && owner != context && owner.regexText == text) {
+                owner.giveUpRegexText();
+            }
+            MatchBudget budget = (text == null) ? null : text.getBudget();
+            if (budget == null ||
+                    budget.getRuleTimeoutMillis() != config.getRuleTimeoutMillis() ||
+                    budget.getMessageTimeoutMillis() != config.getMessageTimeoutMillis()) {
+                text = new LimitedRegexCharSequence("", new MatchBudget(
+                        config.getRuleTimeoutMillis(), config.getMessageTimeoutMillis()));
+            } else {
+                budget.startMessage();
+                text.reset("");
+            }
+            owner = context;
+            return text;
+        }
+    }
+
+    /**
+     * @return true if the regexes run on this message have used up the
+     * message timeout.
+     */
+    public boolean isMatchTimedOut() {
+        return matchTimedOut || (regexText != null && regexText.getBudget().isMessageExpired());
+    }
+
     public FilterClient getFilterClient() {
         return filterClient;
     }
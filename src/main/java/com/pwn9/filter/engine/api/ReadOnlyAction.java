@@ -0,0 +1,31 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package com.pwn9.filter.engine.api;
+
+/**
+ * Marker for {@link Action}s that never change the message text.  (eg:
+ * deny, log, notify, warn)
+ * <p>
+ * Rules made up only of these actions can't affect whether the rules after
+ * them match, so a run of them can have their patterns tested at the same
+ * time.  Their actions are still executed one at a time, in order.
+ */
+public interface ReadOnlyAction extends Action {
+}
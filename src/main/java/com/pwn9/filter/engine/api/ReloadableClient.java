@@ -0,0 +1,61 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package com.pwn9.filter.engine.api;
+
+import com.pwn9.filter.engine.rules.chain.RuleChain;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link FilterClient} whose rule chains can be replaced while it is
+ * running, so a reload doesn't have to shut it down.
+ * <p>
+ * The {@link com.pwn9.filter.engine.FilterService} compiles the new chains in
+ * the background, while the client keeps using its old ones, and then calls
+ * {@link #swapChains(Map)} from the background thread.  Clients should keep
+ * their chains in volatile fields, so the swap is seen by the threads
+ * handling messages.
+ */
+public interface ReloadableClient extends FilterClient {
+
+    /**
+     * @return The names of the rule files this client uses (eg: chat.txt),
+     * as passed to {@link com.pwn9.filter.engine.FilterConfig#getRuleFile(String)}
+     */
+    List<String> getRuleFiles();
+
+    /**
+     * @param ruleFile One of the names returned by {@link #getRuleFiles()}
+     * @return The chain currently loaded from that rule file, or null if it
+     * hasn't been loaded.
+     */
+    RuleChain getChain(String ruleFile);
+
+    /**
+     * Replace some or all of this client's rule chains.
+     *
+     * @param chains A newly compiled {@link RuleChain} for some of the names
+     *               returned by {@link #getRuleFiles()}.  Chains for names
+     *               that aren't in the map are kept.
+     */
+    void swapChains(Map<String, RuleChain> chains);
+
+}
@@ -0,0 +1,33 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package com.pwn9.filter.engine.api;
+
+/**
+ * Marker for {@link Action}s that only change the {@link FilterContext}, and
+ * always do the same thing given the same message and pattern.  (eg: deny,
+ * replace, lower)
+ * <p>
+ * A chain made up only of these actions has no effect outside of the
+ * context, so its result for a message can be remembered and replayed.
+ * Actions that touch the player, the server or the points ledger, or that
+ * use random numbers or the clock, must not implement this.
+ */
+public interface StatelessAction extends Action {
+}
@@ -0,0 +1,136 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.engine.points;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Keeps points balances in memory, and records every change to a balance in
+ * a {@link PointsJournal}, which is written to disk once a second, off the
+ * chat threads.  When the store is started, the balances are read back, less
+ * the leak for the time since they were recorded (including any time the
+ * server was down).
+ */
+public class FilePointStore extends MemoryPointStore {
+
+    private final PointsJournal journal;
+    private final Logger logger;
+    private ScheduledFuture<?> flushFuture;
+
+    /**
+     * @param directory The directory to keep the journal in.
+     * @param logger    For any problems reading or writing it.
+     */
+    public FilePointStore(File directory, Logger logger) {
+        this.journal = new PointsJournal(directory);
+        this.logger = logger;
+    }
+
+    @Override
+    public void start(ScheduledExecutorService scheduler) {
+        if (flushFuture != null) return;
+        if (!recover()) return;
+        flushFuture = scheduler.scheduleWithFixedDelay(this::flush, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void stop() {
+        if (flushFuture != null) {
+            // Don't interrupt a write, it would close the journal.
+            flushFuture.cancel(false);
+            flushFuture = null;
+        }
+        if (journal.isOpen()) {
+            try {
+                journal.snapshot();
+                journal.close();
+            } catch (IOException e) {
+                logger.warning("Unable to save points journal: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        try {
+            journal.clear();
+        } catch (IOException e) {
+            logger.warning("Unable to clear points journal: " + e.getMessage());
+        }
+    }
+
+    @Override
+    protected void record(UUID id, double balance, long time) {
+        journal.record(id, balance, time);
+    }
+
+    /**
+     * Replace the balances with those in the journal, less the leak since
+     * they were recorded.
+     *
+     * @return false if the journal couldn't be read.
+     */
+    private boolean recover() {
+        Map<UUID, PointsJournal.Balance> saved;
+        try {
+            saved = journal.open();
+        } catch (IOException e) {
+            logger.warning("Unable to read points journal: " + e.getMessage() +
+                    ".  Points will not be saved.");
+            return false;
+        }
+
+        long now = System.currentTimeMillis();
+        long interval = TimeUnit.SECONDS.toMillis(getLeakInterval());
+        double leakPoints = getLeakPoints();
+        super.clear();
+        for (Map.Entry<UUID, PointsJournal.Balance> entry : saved.entrySet()) {
+            UUID id = entry.getKey();
+            long intervals = (interval > 0) ? Math.max(0, now - entry.getValue().time) / interval : 0;
+            double balance = entry.getValue().balance - intervals * leakPoints;
+            if (balance > 0) {
+                restore(id, balance);
+            } else {
+                journal.record(id, 0, now);
+            }
+        }
+        logger.fine("Loaded points of " + saved.size() + " players.");
+        return true;
+    }
+
+    private void flush() {
+        try {
+            journal.flush();
+            if (journal.needsSnapshot()) journal.snapshot();
+        } catch (IOException e) {
+            logger.warning("Unable to write points journal: " + e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.engine.points;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Connects a proxy and its servers within one process, in place of plugin
+ * messaging.  This is for testing the points relay without a network.
+ */
+public class LoopbackTransport {
+
+    private final Executor executor;
+    private final Endpoint proxy = new Endpoint(null);
+    private final ConcurrentMap<String, Endpoint> servers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<UUID, String> players = new ConcurrentHashMap<>();
+    private final AtomicLong messages = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+
+    /**
+     * Deliver messages on the sending thread, before send() returns.
+     */
+    public LoopbackTransport() {
+        this(Runnable::run);
+    }
+
+    /**
+     * @param executor Delivers the messages.
+     */
+    public LoopbackTransport(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @return The proxy's end of the transport.
+     */
+    public PointsTransport getProxy() {
+        return proxy;
+    }
+
+    /**
+     * @param server The name the proxy knows the server by
+     * @return The server's end of the transport.
+     */
+    public PointsTransport connect(String server) {
+        Endpoint endpoint = servers.computeIfAbsent(server, Endpoint::new);
+        endpoint.connected = true;
+        return endpoint;
+    }
+
+    /**
+     * Messages sent to or from the server fail until it is connected again.
+     */
+    public void disconnect(String server) {
+        Endpoint endpoint = servers.get(server);
+        if (endpoint != null) endpoint.connected = false;
+    }
+
+    /**
+     * Move a player to a server, as the proxy sees it.
+     *
+     * @param id     The player's id
+     * @param server The server, or null if the player has left the network.
+     */
+    public void setServer(UUID id, String server) {
+        if (server == null) {
+            players.remove(id);
+        } else {
+            players.put(id, server);
+        }
+    }
+
+    /**
+     * @return The number of messages delivered.
+     */
+    public long getMessages() {
+        return messages.get();
+    }
+
+    /**
+     * @return The size of the messages delivered.
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    private final class Endpoint implements PointsTransport {
+        private final String name;
+        private volatile Receiver receiver;
+        private volatile boolean connected = true;
+
+        Endpoint(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public boolean send(String server, byte[] message) {
+            Endpoint to = proxy;
+            if (name == null) {
+                to = (server == null) ? null : servers.get(server);
+            }
+            Receiver target = (to == null || !to.connected || !connected) ? null : to.receiver;
+            if (target == null) return false;
+
+            messages.incrementAndGet();
+            bytes.addAndGet(message.length);
+            executor.execute(() -> target.receive(name, message));
+            return true;
+        }
+
+        @Override
+        public String getServer(UUID id) {
+            return (name == null) ? players.get(id) : null;
+        }
+
+        @Override
+        public void setReceiver(Receiver receiver) {
+            this.receiver = receiver;
+        }
+    }
+
+}
@@ -0,0 +1,370 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.engine.points;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps points balances in memory.
+ * <p>
+ * Points leak away by leakPoints every leakInterval.  Rather than subtracting
+ * from every balance on each interval, {@link #leak()} only counts intervals
+ * (epochs).  Each balance is stored with the epoch it was last updated in, and
+ * the leak since then is applied when it is read or updated.  A balance only
+ * needs attention from the leak task when its leak will take it below a
+ * threshold (or to 0), so it is put in a timing wheel for that epoch, and the
+ * descending actions still run on time.  The cost of an interval depends on
+ * how many balances cross a threshold, not on how many players have points.
+ * Each id is in the wheel at most once, and is only moved when the epoch it
+ * is due in changes.
+ * <p>
+ * Balances are updated atomically, so concurrent "then points" actions can't
+ * lose each other's points.
+ */
+public class MemoryPointStore implements PointStore {
+
+    private final ConcurrentMap<UUID, Account> pointsMap = new ConcurrentHashMap<>(8, 0.75f, 2);
+    private final Wheel wheel = new Wheel(256);
+    private NavigableSet<Double> thresholds;
+    private Listener listener;
+    private volatile double leakPoints = 1.0;
+    private volatile int leakInterval = 10;
+
+    @Override
+    public void init(NavigableSet<Double> thresholds, Listener listener) {
+        this.thresholds = thresholds;
+        this.listener = listener;
+    }
+
+    @Override
+    public void start(ScheduledExecutorService scheduler) {
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    /**
+     * Start a new epoch, and settle the balances whose leak crosses a
+     * threshold in it.  If they reach 0, remove them.
+     */
+    @Override
+    public void leak() {
+        long epoch = wheel.advance();
+        for (UUID id : wheel.expired(epoch)) {
+            leak(id, epoch);
+        }
+    }
+
+    /**
+     * Set the leak.  The leak so far is applied to every balance at the old
+     * rate first, so this costs a pass over the balances, and should only be
+     * done when configuring.
+     */
+    @Override
+    public void setLeak(double points, int interval) {
+        settle();
+        leakPoints = points;
+        leakInterval = interval;
+        reschedule();
+    }
+
+    public double getLeakPoints() {
+        return leakPoints;
+    }
+
+    public int getLeakInterval() {
+        return leakInterval;
+    }
+
+    @Override
+    public void thresholdsChanged() {
+        reschedule();
+    }
+
+    /**
+     * @return The ids that have points.  This is a copy, which costs a pass
+     * over the balances.
+     */
+    @Override
+    public Set<UUID> getIds() {
+        long epoch = wheel.getEpoch();
+        return pointsMap.values().stream()
+                .filter(account -> balanceAt(account, epoch) > 0)
+                .map(account -> account.id)
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public double getPoints(UUID id) {
+        Account account = pointsMap.get(id);
+        return (account == null) ? 0.0 : balanceAt(account, wheel.getEpoch());
+    }
+
+    @Override
+    public void setPoints(UUID id, double points) {
+        long epoch = wheel.getEpoch();
+        long now = System.currentTimeMillis();
+        pointsMap.compute(id, (k, old) -> {
+            record(id, Math.max(0, points), now);
+            return schedule(id, (points > 0) ? newAccount(id, points, epoch) : null);
+        });
+    }
+
+    /**
+     * Atomically add points (which may be negative) to a balance, and tell
+     * the listener about it.  Any threshold the balance had leaked past, but
+     * the leak task hadn't got to yet, is crossed first.
+     */
+    @Override
+    public void addPoints(UUID id, double points) {
+        long epoch = wheel.getEpoch();
+        long now = System.currentTimeMillis();
+        // Recorded, leaked and updated balance.
+        double[] change = new double[3];
+        pointsMap.compute(id, (k, old) -> {
+            if (old == null) {
+                change[2] = Math.max(0, points);
+                record(id, change[2], now);
+                return schedule(id, (change[2] > 0) ? newAccount(id, change[2], epoch) : null);
+            }
+            change[0] = old.balance;
+            change[1] = balanceAt(old, epoch);
+            change[2] = Math.max(0, change[1] + points);
+            record(id, change[2], now);
+            // The leak task may have settled it in a later epoch.
+            return schedule(id, (change[2] > 0) ? newAccount(id, change[2], Math.max(epoch, old.epoch)) : null);
+        });
+
+        changed(id, change[0], change[1]);
+        changed(id, change[1], change[2]);
+    }
+
+    @Override
+    public void clear() {
+        pointsMap.clear();
+        wheel.clear();
+    }
+
+    /**
+     * Put a balance, as of the current epoch, without telling the listener.
+     * This is for loading saved balances.
+     */
+    protected void restore(UUID id, double balance) {
+        if (balance <= 0) return;
+        pointsMap.compute(id, (k, old) -> schedule(id, newAccount(id, balance, wheel.getEpoch())));
+    }
+
+    /**
+     * Called with every new balance, while it is being changed, so the
+     * calls for each id are in the same order as the changes.  A balance of
+     * 0 means the id has no points.
+     *
+     * @param id      The id the balance belongs to
+     * @param balance The new balance
+     * @param time    The time of the change, in milliseconds
+     */
+    protected void record(UUID id, double balance, long time) {
+    }
+
+    private void changed(UUID id, double from, double to) {
+        if (from != to) listener.balanceChanged(id, from, to);
+    }
+
+    /**
+     * Settle a balance that the leak task found in the wheel, if it is
+     * still due.  If it was updated after the wheel gave it up, it has been
+     * scheduled again already.
+     */
+    private void leak(UUID id, long epoch) {
+        boolean[] settled = new boolean[1];
+        double[] change = new double[2];
+        pointsMap.computeIfPresent(id, (k, current) -> {
+            if (current.due > epoch) return current;
+            settled[0] = true;
+            change[0] = current.balance;
+            change[1] = balanceAt(current, epoch);
+            if (change[1] <= 0) record(id, 0, System.currentTimeMillis());
+            return schedule(id, (change[1] > 0) ? newAccount(id, change[1], epoch) : null);
+        });
+        if (settled[0]) changed(id, change[0], change[1]);
+    }
+
+    private double balanceAt(Account account, long epoch) {
+        return Math.max(0, account.balance - Math.max(0, epoch - account.epoch) * leakPoints);
+    }
+
+    private Account newAccount(UUID id, double balance, long epoch) {
+        long due = Long.MAX_VALUE;
+        double leak = leakPoints;
+        if (leak > 0) {
+            Double threshold = thresholds.floor(balance);
+            if (threshold != null && threshold > 0) {
+                // The first epoch in which the balance drops below the threshold.
+                due = epoch + (long) Math.floor((balance - threshold) / leak) + 1;
+            } else {
+                // The first epoch in which the balance reaches 0.
+                due = epoch + (long) Math.ceil(balance / leak);
+            }
+        }
+        return new Account(id, balance, epoch, due);
+    }
+
+    /*
+     * Put the id in the wheel for the epoch its new account is due in, or
+     * take it out if it has no account, or it doesn't leak.  This is called
+     * while the account is being replaced, so the wheel sees the changes to
+     * each id in order.
+     */
+    private Account schedule(UUID id, Account account) {
+        if (account != null && account.due != Long.MAX_VALUE) {
+            wheel.add(id, account.due);
+        } else {
+            wheel.remove(id);
+        }
+        return account;
+    }
+
+    /**
+     * Apply the leak so far to every balance.
+     */
+    private void settle() {
+        long epoch = wheel.getEpoch();
+        wheel.clear();
+        pointsMap.replaceAll((id, account) -> new Account(id, balanceAt(account, epoch), epoch, Long.MAX_VALUE));
+        pointsMap.values().removeIf(account -> {
+            if (account.balance > 0) return false;
+            record(account.id, 0, System.currentTimeMillis());
+            return true;
+        });
+    }
+
+    /**
+     * Work out again when every balance next crosses a threshold.
+     */
+    private void reschedule() {
+        if (thresholds == null) return;
+        wheel.clear();
+        for (UUID id : pointsMap.keySet()) {
+            pointsMap.computeIfPresent(id, (k, account) ->
+                    schedule(k, newAccount(k, account.balance, account.epoch)));
+        }
+    }
+
+    /**
+     * A balance as of an epoch, and the epoch in which its leak next crosses
+     * a threshold.  Accounts are never changed, they are replaced.
+     */
+    private static final class Account {
+        final UUID id;
+        final double balance;
+        final long epoch;
+        final long due;
+
+        Account(UUID id, double balance, long epoch, long due) {
+            this.id = id;
+            this.balance = balance;
+            this.epoch = epoch;
+            this.due = due;
+        }
+    }
+
+    /**
+     * A hashed timing wheel of ids, with one slot per epoch.  Each id is in
+     * the slot of the epoch it is due in, and nowhere else.  Ids due more
+     * than a turn of the wheel away stay in their slot until the wheel comes
+     * round to them.
+     */
+    private static final class Wheel {
+        private final List<Set<UUID>> slots;
+        private final Map<UUID, Long> dues = new HashMap<>();
+        private volatile long epoch = 0;
+
+        Wheel(int size) {
+            slots = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) slots.add(new HashSet<>());
+        }
+
+        long getEpoch() {
+            return epoch;
+        }
+
+        synchronized long advance() {
+            return ++epoch;
+        }
+
+        synchronized void add(UUID id, long due) {
+            // If the leak task has already passed it, settle it next epoch.
+            due = Math.max(due, epoch + 1);
+            Long old = dues.put(id, due);
+            if (old != null) {
+                if (old == due) return;
+                slot(old).remove(id);
+            }
+            slot(due).add(id);
+        }
+
+        synchronized void remove(UUID id) {
+            Long old = dues.remove(id);
+            if (old != null) slot(old).remove(id);
+        }
+
+        /**
+         * @return The ids due in or before the epoch, which are taken out of
+         * the wheel.
+         */
+        synchronized List<UUID> expired(long epoch) {
+            List<UUID> result = new ArrayList<>();
+            Iterator<UUID> ids = slot(epoch).iterator();
+            while (ids.hasNext()) {
+                UUID id = ids.next();
+                if (dues.get(id) <= epoch) {
+                    ids.remove();
+                    dues.remove(id);
+                    result.add(id);
+                }
+            }
+            return result;
+        }
+
+        synchronized void clear() {
+            slots.forEach(Set::clear);
+            dues.clear();
+        }
+
+        private Set<UUID> slot(long due) {
+            return slots.get((int) (due % slots.size()));
+        }
+
+    }
+}
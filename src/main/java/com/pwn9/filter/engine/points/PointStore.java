@@ -0,0 +1,112 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.engine.points;
+
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Where the PointManager keeps points balances.
+ * <p>
+ * A store applies the leak, and tells its {@link Listener} about every change
+ * to a balance, so that the PointManager can run the actions of any
+ * thresholds crossed.  The stores are:
+ * <ul>
+ * <li>{@link MemoryPointStore}: balances are forgotten on restart.</li>
+ * <li>{@link FilePointStore}: balances are kept in a {@link PointsJournal}.</li>
+ * <li>{@link ProxyPointStore}: balances are kept by the proxy, and shared by
+ * every server behind it.  (See {@link PointsRelay})</li>
+ * </ul>
+ */
+public interface PointStore {
+
+    /**
+     * Called once, before the store is used.
+     *
+     * @param thresholds The points of each threshold.  This is a live view,
+     *                   {@link #thresholdsChanged()} is called when it changes.
+     * @param listener   Told about every change to a balance.
+     */
+    void init(NavigableSet<Double> thresholds, Listener listener);
+
+    /**
+     * Start keeping balances.
+     *
+     * @param scheduler For any background work the store needs to do.  Tasks
+     *                  must not block for long.
+     */
+    void start(ScheduledExecutorService scheduler);
+
+    /**
+     * Stop keeping balances, and save them, if the store can.
+     */
+    void stop();
+
+    /**
+     * Called every leak interval.
+     */
+    void leak();
+
+    /**
+     * @param points   How many points leak away every interval.
+     * @param interval The leak interval, in seconds.
+     */
+    void setLeak(double points, int interval);
+
+    void thresholdsChanged();
+
+    double getPoints(UUID id);
+
+    /**
+     * Add points to a balance.  The points may be negative, but the balance
+     * never goes below 0.
+     */
+    void addPoints(UUID id, double points);
+
+    void setPoints(UUID id, double points);
+
+    /**
+     * @return The ids that have points.
+     */
+    Set<UUID> getIds();
+
+    /**
+     * Forget every balance.
+     */
+    void clear();
+
+    /**
+     * Told about every change to a balance.
+     */
+    interface Listener {
+
+        /**
+         * @param id   The id the balance belongs to
+         * @param from The balance before the change
+         * @param to   The balance after the change
+         */
+        void balanceChanged(UUID id, double from, double to);
+
+    }
+
+}
@@ -0,0 +1,377 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.engine.points;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Keeps points balances on disk, so they survive a restart.
+ * <p>
+ * Every change to a balance is recorded, with the time it was made, by
+ * {@link #record(UUID, double, long)}.  That only queues the record, so it
+ * is cheap enough to call from a chat thread.  {@link #flush()} appends the
+ * queued records to a memory-mapped journal, and forces them to disk in one
+ * go.  Each record holds the balance after the change, rather than the
+ * change itself, so replaying a record twice does no harm.
+ * <p>
+ * The journal keeps the last balance it has written for each id.  When it
+ * has grown to twice the number of balances (or 64k records), a compact
+ * snapshot of those balances is written, and the journal starts again.
+ * Since the snapshot is made from the records themselves, it can't miss a
+ * change that was being made while it was written.  The snapshot and journal carry a generation number, and a
+ * journal is only replayed on top of the snapshot of the same generation.
+ * Records carry a checksum that includes the generation, so replay stops at
+ * a record that was only partly written, or left over from an older
+ * generation.
+ * <p>
+ * The snapshot is replaced atomically.  The journal is reused in place, and
+ * never shrinks.
+ */
+public final class PointsJournal implements Closeable {
+
+    /**
+     * Files written by any other version of the format are ignored.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    /**
+     * Bytes taken by each record in the journal.
+     */
+    public static final int RECORD_SIZE = 40;
+
+    private static final int SNAPSHOT_MAGIC = 0x50465053; // "PFPS"
+    private static final int JOURNAL_MAGIC = 0x5046504A; // "PFPJ"
+    private static final int HEADER_SIZE = 16;
+    private static final int MIN_MAPPED = 1 << 20;
+    private static final int MIN_SNAPSHOT_RECORDS = 1 << 16;
+
+    private final File directory;
+    private final File snapshotFile;
+    private final File journalFile;
+    private final Queue<Record> pending = new ConcurrentLinkedQueue<>();
+    private final Map<UUID, Balance> latest = new HashMap<>(); // As written
+    private volatile boolean open = false;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long generation = 0;
+    private int records = 0; // Records in the journal
+    private long bytesWritten = 0;
+
+    public PointsJournal(File directory) {
+        this.directory = directory;
+        snapshotFile = new File(directory, "points.snapshot");
+        journalFile = new File(directory, "points.journal");
+    }
+
+    /**
+     * Read the snapshot and the journal, and make the journal ready to append
+     * to.
+     *
+     * @return The last recorded balance of every id, and the time it was
+     * recorded.  Ids with no points are left out.
+     * @throws IOException if the snapshot or journal can't be read.
+     */
+    public synchronized Map<UUID, Balance> open() throws IOException {
+        if (open) throw new IllegalStateException("Journal is already open.");
+
+        Map<UUID, Balance> result = latest;
+        result.clear();
+        generation = snapshotFile.exists() ? readSnapshot(result) : 0;
+
+        Files.createDirectories(directory.toPath());
+        channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), MIN_MAPPED));
+
+        records = 0;
+        if (buffer.getInt(0) == JOURNAL_MAGIC && buffer.getInt(4) == FORMAT_VERSION &&
+                buffer.getLong(8) == generation) {
+            buffer.position(HEADER_SIZE);
+            while (buffer.remaining() >= RECORD_SIZE) {
+                int start = buffer.position();
+                long msb = buffer.getLong();
+                long lsb = buffer.getLong();
+                long bits = buffer.getLong();
+                long time = buffer.getLong();
+                if (buffer.getLong() != check(msb, lsb, bits, time)) {
+                    buffer.position(start);
+                    break;
+                }
+                update(new UUID(msb, lsb), Double.longBitsToDouble(bits), time);
+                records++;
+            }
+            // Anything after the last whole record can't be trusted, and
+            // must not be replayed after the next crash.
+            int end = buffer.position();
+            while (buffer.remaining() >= 8) buffer.putLong(0);
+            while (buffer.hasRemaining()) buffer.put((byte) 0);
+            buffer.position(end);
+        } else {
+            // Missing, or older than the snapshot.
+            writeHeader();
+        }
+        buffer.force();
+        open = true;
+        return new HashMap<>(result);
+    }
+
+    /**
+     * Queue a balance to be written to the journal.  This doesn't block, and
+     * doesn't do any I/O.  Records for the same id must be queued in the
+     * order the changes were made.
+     *
+     * @param id      The id the balance belongs to
+     * @param balance The balance after the change
+     * @param time    The time of the change, in milliseconds since the epoch
+     */
+    public void record(UUID id, double balance, long time) {
+        if (open) pending.add(new Record(id, balance, time));
+    }
+
+    /**
+     * Write the queued records to the journal, and force them to disk.
+     *
+     * @throws IOException if the journal can't be written.
+     */
+    public synchronized void flush() throws IOException {
+        if (!open) return;
+        int written = 0;
+        Record record;
+        while ((record = pending.poll()) != null) {
+            if (buffer.remaining() < RECORD_SIZE) grow();
+            long bits = Double.doubleToLongBits(record.balance);
+            long msb = record.id.getMostSignificantBits();
+            long lsb = record.id.getLeastSignificantBits();
+            buffer.putLong(msb);
+            buffer.putLong(lsb);
+            buffer.putLong(bits);
+            buffer.putLong(record.time);
+            buffer.putLong(check(msb, lsb, bits, record.time));
+            update(record.id, record.balance, record.time);
+            written++;
+        }
+        if (written > 0) {
+            buffer.force();
+            records += written;
+            bytesWritten += (long) written * RECORD_SIZE;
+        }
+    }
+
+    /**
+     * @return true if the journal has grown enough that it should be
+     * replaced by a snapshot.
+     */
+    public synchronized boolean needsSnapshot() {
+        return records > Math.max(MIN_SNAPSHOT_RECORDS, 2 * latest.size());
+    }
+
+    /**
+     * Write any queued records, then a snapshot of every balance, and start
+     * the journal again.
+     *
+     * @throws IOException if the snapshot can't be written.
+     */
+    public synchronized void snapshot() throws IOException {
+        flush();
+        long next = generation + 1;
+        writeSnapshot(next);
+        generation = next;
+        records = 0;
+        if (open) {
+            // Old records after the header fail the check for the new generation.
+            buffer.position(0);
+            writeHeader();
+            buffer.force();
+        }
+    }
+
+    /**
+     * Forget every balance.
+     *
+     * @throws IOException if the (empty) snapshot can't be written.
+     */
+    public synchronized void clear() throws IOException {
+        pending.clear();
+        if (!open && snapshotFile.exists()) {
+            generation = readSnapshot(new HashMap<>());
+        }
+        latest.clear();
+        snapshot();
+    }
+
+    /**
+     * Write any queued records, and close the journal.
+     *
+     * @throws IOException if the journal can't be written.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!open) return;
+        flush();
+        open = false;
+        pending.clear();
+        buffer = null;
+        channel.close();
+        channel = null;
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * @return The bytes written to the journal and snapshots since this
+     * object was created.
+     */
+    public synchronized long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    private void writeHeader() {
+        buffer.putInt(JOURNAL_MAGIC);
+        buffer.putInt(FORMAT_VERSION);
+        buffer.putLong(generation);
+        bytesWritten += HEADER_SIZE;
+    }
+
+    private void update(UUID id, double balance, long time) {
+        if (balance > 0) {
+            latest.put(id, new Balance(balance, time));
+        } else {
+            latest.remove(id);
+        }
+    }
+
+    private void grow() throws IOException {
+        int position = buffer.position();
+        buffer.force();
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) buffer.capacity() * 2);
+        buffer.position(position);
+    }
+
+    private long check(long msb, long lsb, long bits, long time) {
+        long h = generation ^ 0x50465050_4A524E4CL;
+        h = (h ^ msb) * 0x9E3779B97F4A7C15L;
+        h = (h ^ lsb) * 0x9E3779B97F4A7C15L;
+        h = (h ^ bits) * 0x9E3779B97F4A7C15L;
+        h = (h ^ time) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    /**
+     * Read the snapshot into the map.
+     *
+     * @return The generation of the snapshot.
+     */
+    private long readSnapshot(Map<UUID, Balance> result) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(snapshotFile.toPath())))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new InvalidObjectException("Not a points snapshot: " + snapshotFile);
+            }
+            long snapshotGeneration = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                UUID id = new UUID(in.readLong(), in.readLong());
+                double balance = in.readDouble();
+                result.put(id, new Balance(balance, in.readLong()));
+            }
+            return snapshotGeneration;
+        }
+    }
+
+    private void writeSnapshot(long snapshotGeneration) throws IOException {
+        Path target = snapshotFile.toPath().toAbsolutePath();
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), snapshotFile.getName(), ".tmp");
+        try {
+            try (FileOutputStream file = new FileOutputStream(temp.toFile());
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(snapshotGeneration);
+                out.writeInt(latest.size());
+                for (Map.Entry<UUID, Balance> entry : latest.entrySet()) {
+                    out.writeLong(entry.getKey().getMostSignificantBits());
+                    out.writeLong(entry.getKey().getLeastSignificantBits());
+                    out.writeDouble(entry.getValue().balance);
+                    out.writeLong(entry.getValue().time);
+                }
+                out.flush();
+                file.getFD().sync();
+                bytesWritten += out.size();
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * A balance, and the time it was recorded.
+     */
+    public static final class Balance {
+        public final double balance;
+        public final long time;
+
+        Balance(double balance, long time) {
+            this.balance = balance;
+            this.time = time;
+        }
+    }
+
+    private static final class Record {
+        final UUID id;
+        final double balance;
+        final long time;
+
+        Record(UUID id, double balance, long time) {
+            this.id = id;
+            this.balance = balance;
+            this.time = time;
+        }
+    }
+
+}
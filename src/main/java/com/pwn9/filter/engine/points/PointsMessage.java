@@ -0,0 +1,115 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.engine.points;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * A batch of points deltas (from a server to the proxy) or balance changes
+ * (from the proxy to a server).  The format is:
+ * <pre>
+ * byte type        1 = deltas, 2 = changes
+ * int  count
+ * count times:
+ *   long, long     The id
+ *   double         The delta (deltas), or
+ *   double, double The balance before and after (changes)
+ * </pre>
+ * A message holds at most {@link #MAX_ENTRIES}, which keeps it under the
+ * 32766 byte limit of a plugin message.
+ */
+final class PointsMessage {
+
+    static final byte DELTAS = 1;
+    static final byte CHANGES = 2;
+    static final int MAX_ENTRIES = 1000;
+
+    private final ByteBuffer buffer;
+    private int count;
+
+    PointsMessage(byte type) {
+        buffer = ByteBuffer.allocate(5 + MAX_ENTRIES * entrySize(type));
+        buffer.put(type).putInt(0);
+    }
+
+    private static int entrySize(byte type) {
+        return (type == CHANGES) ? 32 : 24;
+    }
+
+    boolean isEmpty() {
+        return count == 0;
+    }
+
+    boolean isFull() {
+        return count == MAX_ENTRIES;
+    }
+
+    void addDelta(UUID id, double delta) {
+        buffer.putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits())
+                .putDouble(delta);
+        count++;
+    }
+
+    void addChange(UUID id, double from, double to) {
+        buffer.putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits())
+                .putDouble(from).putDouble(to);
+        count++;
+    }
+
+    byte[] toBytes() {
+        buffer.putInt(1, count);
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    /**
+     * Read the entries of a message.  For deltas, the second value is 0.
+     *
+     * @throws IllegalArgumentException if it isn't a message of this type.
+     */
+    static void read(byte[] message, byte type, Entries entries) {
+        ByteBuffer in = ByteBuffer.wrap(message);
+        try {
+            if (in.get() != type) {
+                throw new IllegalArgumentException("Unexpected points message type: " + message[0]);
+            }
+            int count = in.getInt();
+            if (count < 0 || count > MAX_ENTRIES || in.remaining() != count * entrySize(type)) {
+                throw new IllegalArgumentException("Points message is the wrong size.");
+            }
+            for (int i = 0; i < count; i++) {
+                UUID id = new UUID(in.getLong(), in.getLong());
+                double first = in.getDouble();
+                double second = (type == CHANGES) ? in.getDouble() : 0;
+                entries.entry(id, first, second);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Points message is truncated.");
+        }
+    }
+
+    interface Entries {
+        void entry(UUID id, double first, double second);
+    }
+
+}
@@ -0,0 +1,143 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.engine.points;
+
+import com.pwn9.filter.engine.PointManager;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs on the proxy, and keeps the points balances of the servers behind it
+ * that use a {@link ProxyPointStore}.
+ * <p>
+ * The points the servers send are added to the proxy's PointManager, which
+ * applies the leak, and runs the actions of any thresholds it has.  Every
+ * change to a balance is sent back to the server the player is on now, or,
+ * if the transport doesn't know, the server that last sent points for that
+ * player.  The changes to each balance are combined, so a server is
+ * sent at most one change per player each batch interval.
+ */
+public class PointsRelay implements PointStore.Listener {
+
+    private final PointManager pointManager;
+    private final PointsTransport transport;
+    private final long batchMillis;
+    private final ConcurrentMap<UUID, String> servers = new ConcurrentHashMap<>();
+    // Server -> id -> {from, to}
+    private final ConcurrentMap<String, ConcurrentMap<UUID, double[]>> changes = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param pointManager The proxy's PointManager
+     * @param transport    The connection to the servers
+     * @param batchMillis  How long to combine changes for before sending them.
+     */
+    public PointsRelay(PointManager pointManager, PointsTransport transport, long batchMillis) {
+        this.pointManager = pointManager;
+        this.transport = transport;
+        this.batchMillis = batchMillis;
+        transport.setReceiver(this::receive);
+        pointManager.addListener(this);
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleWithFixedDelay(this::flush, batchMillis, batchMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler == null) return;
+        scheduler.shutdown();
+        scheduler = null;
+        flush();
+    }
+
+    /**
+     * Stop relaying points.  The relay can't be used after this.
+     */
+    public void close() {
+        stop();
+        pointManager.removeListener(this);
+        transport.setReceiver(null);
+    }
+
+    @Override
+    public void balanceChanged(UUID id, double from, double to) {
+        String reported = (to > 0) ? servers.get(id) : servers.remove(id);
+        String current = transport.getServer(id);
+        String server = (current != null) ? current : reported;
+        if (server == null) return;
+        changes.computeIfAbsent(server, k -> new ConcurrentHashMap<>())
+                .merge(id, new double[]{from, to}, (first, last) -> new double[]{first[0], last[1]});
+    }
+
+    /**
+     * Send each server the changes since the last flush.  Changes that
+     * couldn't be sent are kept for the next flush.
+     */
+    public void flush() {
+        for (Map.Entry<String, ConcurrentMap<UUID, double[]>> entry : changes.entrySet()) {
+            String server = entry.getKey();
+            ConcurrentMap<UUID, double[]> pending = entry.getValue();
+            while (!pending.isEmpty()) {
+                PointsMessage message = new PointsMessage(PointsMessage.CHANGES);
+                Map<UUID, double[]> sent = new HashMap<>();
+                for (UUID id : pending.keySet()) {
+                    double[] change = pending.remove(id);
+                    if (change == null) continue;
+                    message.addChange(id, change[0], change[1]);
+                    sent.put(id, change);
+                    if (message.isFull()) break;
+                }
+                if (message.isEmpty()) break;
+
+                if (!transport.send(server, message.toBytes())) {
+                    // Any later change goes after the ones that weren't sent.
+                    sent.forEach((id, change) -> pending.merge(id, change,
+                            (later, first) -> new double[]{first[0], later[1]}));
+                    break;
+                }
+            }
+        }
+    }
+
+    private void receive(String server, byte[] message) {
+        if (server == null) return;
+        try {
+            PointsMessage.read(message, PointsMessage.DELTAS, (id, delta, unused) -> {
+                servers.put(id, server);
+                pointManager.addPoints(id, delta);
+            });
+        } catch (IllegalArgumentException e) {
+            pointManager.getFilterService().getLogger().warning(
+                    "Ignoring points message from " + server + ": " + e.getMessage());
+        }
+    }
+
+}
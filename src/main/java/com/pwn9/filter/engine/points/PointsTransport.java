@@ -0,0 +1,76 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.engine.points;
+
+import java.util.UUID;
+
+/**
+ * Carries points messages between the servers behind a proxy and the proxy.
+ * On a server, messages are always sent to the proxy.  On the proxy, they are
+ * sent to a named server.
+ * <p>
+ * Plugin messages can only be sent to a server while a player is connected
+ * to it, so sending may fail.
+ */
+public interface PointsTransport {
+
+    /**
+     * The plugin messaging channel points messages are sent on.
+     */
+    String CHANNEL = "pwnfilter:points";
+
+    /**
+     * Send a message.  This must not block.
+     *
+     * @param server  The server to send it to, or null to send it to the proxy.
+     * @param message The message
+     * @return false if the message couldn't be sent.
+     */
+    boolean send(String server, byte[] message);
+
+    /**
+     * On the proxy, find the server a player is on now.
+     *
+     * @param id The player's id
+     * @return The server's name, or null if it isn't known (or this isn't
+     * the proxy).
+     */
+    default String getServer(UUID id) {
+        return null;
+    }
+
+    /**
+     * @param receiver Given every message that arrives.
+     */
+    void setReceiver(Receiver receiver);
+
+    interface Receiver {
+
+        /**
+         * @param server  The server the message came from, or null if it
+         *                came from the proxy.
+         * @param message The message
+         */
+        void receive(String server, byte[] message);
+
+    }
+
+}
@@ -0,0 +1,228 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.engine.points;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Keeps points balances on the proxy, so that they follow a player from
+ * server to server.  (The proxy runs a {@link PointsRelay})
+ * <p>
+ * Points given on this server are added up for each player, and sent to the
+ * proxy in one message per batch interval, however many times the player
+ * was given points.  The proxy applies them, and the leak, and sends back
+ * the changes to the balances of the players on this server.  The listener
+ * is told about those, so the thresholds crossed on the proxy run their
+ * actions here.
+ * <p>
+ * The balances here are the last ones the proxy sent, plus any points that
+ * haven't been sent yet.  A player who has just moved to this server has no
+ * balance here until the proxy has sent one.
+ * <p>
+ * The changes can't be told apart from plugin messages sent by a player,
+ * unless the proxy drops those.  If points are sent, but nothing comes back
+ * from the proxy, a warning is logged.
+ */
+public class ProxyPointStore implements PointStore {
+
+    static final long RELAY_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final ConcurrentMap<UUID, Double> pending = new ConcurrentHashMap<>();
+    private final ConcurrentMap<UUID, Double> balances = new ConcurrentHashMap<>();
+    private final PointsTransport transport;
+    private final long batchMillis;
+    private final Executor sender;
+    private final Logger logger;
+    private Listener listener;
+    private ScheduledFuture<?> flushFuture;
+    private volatile boolean relayAnswered;
+    private volatile long firstSentMillis;
+    private boolean relayWarned;
+
+    /**
+     * @param transport   The connection to the proxy
+     * @param batchMillis How long to add up points for before sending them.
+     * @param logger      For any problems talking to the proxy.
+     */
+    public ProxyPointStore(PointsTransport transport, long batchMillis, Logger logger) {
+        this(transport, batchMillis, Runnable::run, logger);
+    }
+
+    /**
+     * @param transport   The connection to the proxy
+     * @param batchMillis How long to add up points for before sending them.
+     * @param sender      Runs each batch's {@link #flush()}, for transports
+     *                    that can only send from a particular thread.
+     * @param logger      For any problems talking to the proxy.
+     */
+    public ProxyPointStore(PointsTransport transport, long batchMillis, Executor sender, Logger logger) {
+        this.transport = transport;
+        this.batchMillis = batchMillis;
+        this.sender = sender;
+        this.logger = logger;
+    }
+
+    @Override
+    public void init(NavigableSet<Double> thresholds, Listener listener) {
+        this.listener = listener;
+        transport.setReceiver(this::receive);
+    }
+
+    @Override
+    public void start(ScheduledExecutorService scheduler) {
+        if (flushFuture != null) return;
+        flushFuture = scheduler.scheduleWithFixedDelay(() -> sender.execute(this::flush),
+                batchMillis, batchMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop sending batches, and send what is left on this thread.
+     */
+    @Override
+    public void stop() {
+        if (flushFuture != null) {
+            flushFuture.cancel(false);
+            flushFuture = null;
+        }
+        flush();
+    }
+
+    /**
+     * The proxy applies the leak.
+     */
+    @Override
+    public void leak() {
+    }
+
+    @Override
+    public void setLeak(double points, int interval) {
+    }
+
+    @Override
+    public void thresholdsChanged() {
+    }
+
+    @Override
+    public double getPoints(UUID id) {
+        return Math.max(0, balances.getOrDefault(id, 0.0) + pending.getOrDefault(id, 0.0));
+    }
+
+    @Override
+    public void addPoints(UUID id, double points) {
+        pending.merge(id, points, Double::sum);
+    }
+
+    /**
+     * Sent to the proxy as the difference from the balance here, so it is
+     * only exact if the proxy has sent this server the latest balance.
+     */
+    @Override
+    public void setPoints(UUID id, double points) {
+        addPoints(id, Math.max(0, points) - getPoints(id));
+    }
+
+    @Override
+    public Set<UUID> getIds() {
+        Set<UUID> ids = new HashSet<>(pending.keySet());
+        ids.addAll(balances.keySet());
+        ids.removeIf(id -> getPoints(id) <= 0);
+        return ids;
+    }
+
+    /**
+     * Forget the balances here.  The balances on the proxy are not changed.
+     */
+    @Override
+    public void clear() {
+        pending.clear();
+        balances.clear();
+    }
+
+    /**
+     * Send the points added up since the last flush to the proxy.  Points
+     * that couldn't be sent are kept for the next flush.
+     */
+    public void flush() {
+        while (!pending.isEmpty()) {
+            PointsMessage message = new PointsMessage(PointsMessage.DELTAS);
+            List<UUID> ids = new ArrayList<>();
+            List<Double> deltas = new ArrayList<>();
+            for (UUID id : pending.keySet()) {
+                Double delta = pending.remove(id);
+                if (delta == null) continue;
+                message.addDelta(id, delta);
+                ids.add(id);
+                deltas.add(delta);
+                if (message.isFull()) break;
+            }
+            if (message.isEmpty()) return;
+
+            if (!transport.send(null, message.toBytes())) {
+                for (int i = 0; i < ids.size(); i++) pending.merge(ids.get(i), deltas.get(i), Double::sum);
+                return;
+            }
+            // Until the proxy answers, assume the points were added.
+            for (int i = 0; i < ids.size(); i++) {
+                balances.merge(ids.get(i), deltas.get(i), (a, b) -> Math.max(0, a + b));
+            }
+            if (firstSentMillis == 0) firstSentMillis = System.currentTimeMillis();
+        }
+        checkRelay();
+    }
+
+    private synchronized void checkRelay() {
+        if (relayAnswered || relayWarned || firstSentMillis == 0 ||
+                System.currentTimeMillis() - firstSentMillis < RELAY_TIMEOUT_MILLIS) return;
+        relayWarned = true;
+        logger.warning("Points have been sent to the proxy, but no balances have come back.  " +
+                "Set 'relay: true' in the proxy's config.  Until then, points messages from " +
+                "players are not dropped, and can be forged.");
+    }
+
+    private void receive(String server, byte[] message) {
+        try {
+            PointsMessage.read(message, PointsMessage.CHANGES, (id, from, to) -> {
+                relayAnswered = true;
+                if (to > 0) {
+                    balances.put(id, to);
+                } else {
+                    balances.remove(id);
+                }
+                if (from != to) listener.balanceChanged(id, from, to);
+            });
+        } catch (IllegalArgumentException e) {
+            logger.warning("Ignoring points message from proxy: " + e.getMessage());
+        }
+    }
+
+}
@@ -22,9 +22,23 @@ package com.pwn9.filter.engine.rules;
 
 import com.pwn9.filter.engine.api.FilterContext;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
 
 /**
  * <p>Condition class.</p>
+ * <p>
+ * The parameters are split and compiled when the condition is created, so
+ * that checking it is cheap, and doesn't allocate.  The upper-cased message
+ * and command name they check are worked out once per message, by the
+ * {@link FilterContext}.  "user" and "permission" conditions take a
+ * space-separated list, "string" and "command" a |-separated list.  Command
+ * names are matched as (upper-cased) regexes.
  *
  * @author Sage905
  * @version $Id: $Id
@@ -35,17 +49,40 @@ public class Condition {
     final CondType type;
     final CondFlag flag;
     final String parameters;
+    private final List<String> values;
+    private final String[] upperStrings;      // string: upper-cased literals
+    private final Pattern[] commands;         // command: upper-cased regexes
+
     /**
      * <p>Constructor for Condition.</p>
      *
      * @param t a {@link com.pwn9.filter.engine.rules.Condition.CondType} object.
      * @param f a {@link com.pwn9.filter.engine.rules.Condition.CondFlag} object.
      * @param p a {@link java.lang.String} object.
+     * @throws PatternSyntaxException if a command condition isn't a valid regex.
      */
     private Condition(CondType t, CondFlag f, String p) {
         type = t;
         flag = f;
         parameters = p;
+
+        String[] parts = p.split(t == CondType.string || t == CondType.command ? "\\|" : "\\s");
+        values = Collections.unmodifiableList(Arrays.asList(parts));
+
+        String[] upper = null;
+        Pattern[] patterns = null;
+        switch (t) {
+            case string:
+                upper = new String[parts.length];
+                for (int i = 0; i < parts.length; i++) upper[i] = parts[i].toUpperCase();
+                break;
+            case command:
+                patterns = new Pattern[parts.length];
+                for (int i = 0; i < parts.length; i++) patterns[i] = Pattern.compile(parts[i].toUpperCase());
+                break;
+        }
+        upperStrings = upper;
+        commands = patterns;
     }
 
     /**
@@ -55,7 +92,7 @@ public class Condition {
      * @return a {@link com.pwn9.filter.engine.rules.Condition} object.
      */
     public static Condition newCondition(String line) {
-        String[] parts = line.split("\\s", 2);
+        String[] parts = splitFirstWord(line);
         String conditionName = parts[0];
         String conditionData;
         conditionData = ((parts.length > 1) ? parts[1] : "");
@@ -68,7 +105,8 @@ public class Condition {
      *
      * @param command         a {@link java.lang.String} object.
      * @param parameterString a {@link java.lang.String} object.
-     * @return a {@link com.pwn9.filter.engine.rules.Condition} object.
+     * @return a {@link com.pwn9.filter.engine.rules.Condition} object, or
+     * null if it couldn't be parsed.
      */
     public static Condition newCondition(String command, String parameterString) {
         String subCmd;
@@ -82,7 +120,7 @@ public class Condition {
             return null;
         }
 
-        String[] parts = parameterString.split("\\s", 2);
+        String[] parts = splitFirstWord(parameterString);
         subCmd = parts[0].toLowerCase();
         try {
             newType = Condition.CondType.valueOf(subCmd);
@@ -95,7 +133,24 @@ public class Condition {
             newParameters = "";
         }
 
-        return new Condition(newType, newFlag, newParameters);
+        try {
+            return new Condition(newType, newFlag, newParameters);
+        } catch (PatternSyntaxException e) {
+            return null;
+        }
+    }
+
+    /*
+     * The same as s.split("\\s", 2), without compiling a regex.
+     */
+    private static String[] splitFirstWord(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r') {
+                return new String[]{s.substring(0, i), s.substring(i + 1)};
+            }
+        }
+        return new String[]{s};
     }
 
     /**
@@ -112,6 +167,50 @@ public class Condition {
         }
     }
 
+    /**
+     * @return The values this condition checks for (user names, permissions,
+     * strings or commands), as they appear in the rule.
+     */
+    public List<String> getValues() {
+        return values;
+    }
+
+    /**
+     * Conditions that only look at the author or the client are much cheaper
+     * than a regex, and don't depend on the message text.  These are checked
+     * before the rule's pattern is tested.
+     *
+     * @return true if this is a "user", "permission" or "command" condition.
+     */
+    public boolean isCheap() {
+        return type != CondType.string;
+    }
+
+    /**
+     * @return true if this is a "permission" condition.
+     */
+    public boolean isPermission() {
+        return type == CondType.permission;
+    }
+
+    /**
+     * Check a "permission" condition, using the given test for the
+     * author's permissions.
+     *
+     * @param hasPermission Returns true if the author has a permission.
+     * @return true if this condition is met, false otherwise
+     */
+    public boolean checkPermissions(Predicate<String> hasPermission) {
+        boolean matched = false;
+        for (int i = 0; i < values.size(); i++) {
+            if (hasPermission.test(values.get(i))) {
+                matched = true;
+                break;
+            }
+        }
+        return flag == CondFlag.ignore ? !matched : flag == CondFlag.require && matched;
+    }
+
     /**
      * Checks a message against this condition.  This method returns true if
      * the condition is met, false otherwise.  Processing of the current rule
@@ -124,28 +223,36 @@ public class Condition {
         boolean matched = false;
         switch (type) {
             case user:
-                for (String check : parameters.split("\\s")) {
-                    if (state.getAuthor().getName().equalsIgnoreCase(check))
+                String name = state.getAuthor().getName();
+                for (int i = 0; i < values.size(); i++) {
+                    if (name.equalsIgnoreCase(values.get(i))) {
                         matched = true;
+                        break;
+                    }
                 }
+                break;
             case permission:
-                for (String check : parameters.split("\\s")) {
-                    if (state.getAuthor().hasPermission(check)) matched = true;
-                }
+                return checkPermissions(state::authorHasPermission);
             case string:
-                for (String check : parameters.split("\\|")) {
-                    if (state.getOriginalMessage().toString().toUpperCase().contains(check.toUpperCase()))
+                String message = state.getUpperOriginalText();
+                for (String check : upperStrings) {
+                    if (message.contains(check)) {
                         matched = true;
+                        break;
+                    }
                 }
+                break;
             case command:
-                for (String check : parameters.split("\\|")) {
-                    if (state.getFilterClient().getShortName().equals("COMMAND")) {
-                        String command = state.getOriginalMessage().toString().split("\\s")[0].replaceFirst("^\\/", "");
-                        if (command.toUpperCase().matches(check.toUpperCase()))
+                if (state.getFilterClient().getShortName().equals("COMMAND")) {
+                    String command = state.getCommandName();
+                    for (Pattern check : commands) {
+                        if (check.matcher(command).matches()) {
                             matched = true;
+                            break;
+                        }
                     }
                 }
-
+                break;
         }
         switch (flag) {
             case ignore:
@@ -166,4 +273,3 @@ public class Condition {
     }
 
 }
-
@@ -0,0 +1,36 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.engine.rules;
+
+/**
+ * The engine used to decide whether a Rule's pattern matches a message.
+ * <p>
+ * REGEX uses java.util.regex, which supports every pattern, but can take a
+ * very long time (up to the regex timeout) on some inputs, due to
+ * backtracking.  LINEAR uses {@link com.pwn9.filter.util.LinearPattern},
+ * which always takes time proportional to the length of the message, but
+ * only supports a subset of the regex syntax.  Rules set to LINEAR with a
+ * pattern it doesn't support will use REGEX instead.
+ */
+public enum MatchEngine {
+    REGEX,
+    LINEAR
+}
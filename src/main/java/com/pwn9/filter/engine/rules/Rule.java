@@ -20,13 +20,22 @@
 
 package com.pwn9.filter.engine.rules;
 
+import com.google.common.collect.MapMaker;
 import com.pwn9.filter.engine.FilterService;
 import com.pwn9.filter.engine.api.Action;
 import com.pwn9.filter.engine.api.FilterContext;
+import com.pwn9.filter.engine.api.ReadOnlyAction;
+import com.pwn9.filter.engine.api.StatsTracker;
 import com.pwn9.filter.engine.rules.chain.ChainEntry;
+import com.pwn9.filter.util.CaseFolding;
 import com.pwn9.filter.util.LimitedRegexCharSequence;
+import com.pwn9.filter.util.LinearPattern;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -40,12 +49,26 @@ import java.util.regex.Pattern;
  * @version $Id: $Id
  */
 public class Rule implements ChainEntry {
-    public static int matches = 0;
+    // Compiled patterns are shared by all the rules with the same pattern,
+    // for as long as any rule uses them.  Patterns are immutable, and each
+    // rule has its own Matchers.
+    private static final ConcurrentMap<String, Pattern> patterns =
+            new MapMaker().concurrencyLevel(2).weakValues().makeMap();
+    private static final ConcurrentMap<String, LinearPattern> linearPatterns =
+            new MapMaker().concurrencyLevel(2).weakValues().makeMap();
+
     private final List<Condition> conditions = new ArrayList<>();
     private final List<Action> actions = new ArrayList<>();
     private Pattern pattern;
+    private Pattern foldedPattern;
+    // Each thread reuses one Matcher, instead of making one for every message.
+    private ThreadLocal<Matcher> matchers;
+    private MatchEngine engine = MatchEngine.REGEX;
+    private LinearPattern linearPattern;
     private String description = "";
     private String id = "";
+    private volatile boolean quarantined;
+    private final ConcurrentHashMap<String, RuleStats> stats = new ConcurrentHashMap<>(8, 0.75f, 2);
 
         /* Constructors */
 
@@ -61,7 +84,7 @@ public class Rule implements ChainEntry {
      * @param matchStr a {@link java.lang.String} object.
      */
     public Rule(String matchStr) {
-        this.pattern = Pattern.compile(matchStr, Pattern.CASE_INSENSITIVE);
+        setPattern(matchStr);
     }
 
     /**
@@ -90,7 +113,112 @@ public class Rule implements ChainEntry {
      * @param pattern a {@link java.lang.String} object.
      */
     public void setPattern(String pattern) {
-        this.pattern = Pattern.compile(pattern, Pattern.CASE_INSENSITIVE);
+        this.pattern = compile(pattern, Pattern.CASE_INSENSITIVE);
+        compileFoldedPattern();
+        compileLinearPattern();
+    }
+
+    /**
+     * <p>Getter for the field <code>engine</code>.</p>
+     *
+     * @return the {@link MatchEngine} this rule was asked to use.
+     */
+    public MatchEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Select the engine used to match this rule's pattern.  If LINEAR is
+     * requested, but the pattern uses features it doesn't support, the rule
+     * will continue to use REGEX.  (See {@link #usesLinearEngine()})
+     *
+     * @param engine a {@link MatchEngine}
+     */
+    public void setEngine(MatchEngine engine) {
+        this.engine = engine;
+        compileLinearPattern();
+    }
+
+    /**
+     * @return true if this rule is matched by the linear-time engine.
+     */
+    public boolean usesLinearEngine() {
+        return linearPattern != null;
+    }
+
+    /**
+     * @return true if this rule's pattern is matched case-sensitively against
+     * the folded message text.  (See {@link CaseFolding})
+     */
+    public boolean usesFoldedText() {
+        return foldedPattern != null;
+    }
+
+    private void compileFoldedPattern() {
+        String folded = CaseFolding.foldPattern(pattern.pattern());
+        foldedPattern = (folded != null) ? compile(folded, 0) : null;
+        final Pattern matchPattern = (foldedPattern != null) ? foldedPattern : pattern;
+        matchers = ThreadLocal.withInitial(() -> matchPattern.matcher(""));
+    }
+
+    private void compileLinearPattern() {
+        if (engine == MatchEngine.LINEAR && pattern != null) {
+            String regex = pattern.pattern();
+            LinearPattern linear = linearPatterns.get(regex);
+            if (linear == null) {
+                // Patterns the linear engine doesn't support compile to null.
+                linear = LinearPattern.compile(regex);
+                if (linear != null) {
+                    LinearPattern existing = linearPatterns.putIfAbsent(regex, linear);
+                    if (existing != null) linear = existing;
+                }
+            }
+            linearPattern = linear;
+        } else {
+            linearPattern = null;
+        }
+    }
+
+    private static Pattern compile(String regex, int flags) {
+        return patterns.computeIfAbsent(flags + ":" + regex, key -> Pattern.compile(regex, flags));
+    }
+
+    /**
+     * @return true if this rule has been quarantined for repeatedly timing
+     * out.  (See {@link RuleQuarantine})
+     */
+    public boolean isQuarantined() {
+        return quarantined;
+    }
+
+    void setQuarantined(boolean quarantined) {
+        this.quarantined = quarantined;
+    }
+
+    /**
+     * Get the performance counters for this rule on the given client,
+     * creating them if necessary.
+     *
+     * @param clientName The {@link com.pwn9.filter.engine.api.FilterClient} short name.
+     * @return The {@link RuleStats} for this rule on that client.
+     */
+    public RuleStats getStats(String clientName) {
+        RuleStats ruleStats = stats.get(clientName);
+        return ruleStats != null ? ruleStats : stats.computeIfAbsent(clientName, k -> new RuleStats());
+    }
+
+    /**
+     * @return The performance counters for this rule, by client short name.
+     */
+    public Map<String, RuleStats> getStats() {
+        return Collections.unmodifiableMap(stats);
+    }
+
+    /**
+     * Start the performance counters over, for every client.
+     */
+    public void resetStats() {
+        stats.clear();
     }
 
     /**
@@ -144,7 +272,7 @@ public class Rule implements ChainEntry {
         }
 
         conditions.stream().filter(c -> c.type == matchType).
-                forEach(c -> Collections.addAll(retVal, c.parameters.split("\\|")));
+                forEach(c -> retVal.addAll(c.getValues()));
 
         return retVal;
     }
@@ -157,31 +285,149 @@ public class Rule implements ChainEntry {
      * apply this action to the current message / event.  May trigger other bukkit events.
      */
     public void apply(FilterContext filterContext, FilterService filterService) {
+        if (!checkCheapConditions(filterContext)) return;
+        switch (evaluate(filterContext, filterService, filterContext.getRegexText(filterService.getConfig()))) {
+            case MATCHED:
+                applyMatch(filterContext, filterService);
+                break;
+            case SKIPPED:
+                filterContext.setIncomplete();
+                break;
+        }
+    }
+
+    /**
+     * Check the conditions that are cheaper than the pattern (see
+     * {@link Condition#isCheap()}).  Conditions only look at the author, the
+     * client and the original message, so the result is the same before or
+     * after the pattern is tested.  If this returns false, the rule can't
+     * apply, so its pattern doesn't need to be tested, and it won't be
+     * recorded as a match.
+     *
+     * @param filterContext The message
+     * @return true if all of the cheap conditions are met.
+     */
+    public boolean checkCheapConditions(FilterContext filterContext) {
+        // Indexed, so the common case (no conditions) doesn't make an Iterator.
+        for (int i = 0; i < conditions.size(); i++) {
+            Condition c = conditions.get(i);
+            if (c.isCheap() && !c.check(filterContext)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Check this rule's "permission" conditions.
+     *
+     * @param hasPermission Returns true if the author has a permission.
+     * @return true if an author with these permissions passes all of them.
+     */
+    public boolean checkPermissionConditions(Predicate<String> hasPermission) {
+        for (Condition c : conditions) {
+            if (c.isPermission() && !c.checkPermissions(hasPermission)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Test this rule's pattern against the current message, without changing
+     * the {@link FilterContext}.
+     * <p>
+     * This may be called for several rules at once, from different threads,
+     * so long as each has its own regexText, and the context's text views
+     * ({@link FilterContext#getModifiedText()} and
+     * {@link FilterContext#getFoldedText()}) have already been made.
+     *
+     * @param filterContext The message
+     * @param filterService The {@link FilterService}
+     * @param regexText     The time-limited sequence to match on.  It will be
+     *                      reset to the message text.
+     * @return The {@link Result} of the test.
+     */
+    public Result evaluate(FilterContext filterContext, FilterService filterService,
+                           LimitedRegexCharSequence regexText) {
 
         Logger logger = filterService.getLogger();
 
-        // If finest logging is set, then generate our logging info. (This is a
-        // lambda + Supplier pattern.)
-        logger.finest(() -> "Testing Pattern: '" + pattern.toString() + "' on string: '" +
-                filterContext.getModifiedMessage().toString() + "'");
+        // Skip rules that keep timing out, unless it's time to retry them.
+        final boolean retrying = quarantined;
+        if (retrying && !filterService.getRuleQuarantine().allow(this)) return Result.SKIPPED;
+
+        // Only build the message if finest logging is set.  (Even a lambda
+        // would be an allocation for every rule on every message.)
+        if (logger.isLoggable(Level.FINEST)) {
+            logger.finest("Testing Pattern: '" + pattern.toString() + "' on string: '" +
+                    filterContext.getModifiedText() + "'");
+        }
+
+        final RuleStats ruleStats = getStats(filterContext.getFilterClient().getShortName());
+        final long start = System.nanoTime();
+
+        if (linearPattern != null) {
+            // The linear engine can't be stalled by the input, so it doesn't
+            // need a timeout.
+            boolean found = linearPattern.find(filterContext.getModifiedText());
+            ruleStats.recordEvaluation(System.nanoTime() - start, found);
+            if (!found) return Result.NOT_MATCHED;
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Match String: (linear engine) " + linearPattern);
+            }
+            return Result.MATCHED;
+        }
 
-        // Check if action matches the current state of the message
-        LimitedRegexCharSequence limitedRegexCharSequence =
-                new LimitedRegexCharSequence(filterContext.getModifiedMessage().toString(), 1000);
-        final Matcher matcher = pattern.matcher(limitedRegexCharSequence);
+        // Check if action matches the current state of the message.  If we
+        // can, match case-sensitively against the folded text.
+        regexText.reset(foldedPattern != null ?
+                filterContext.getFoldedText() : filterContext.getModifiedText());
+        regexText.getBudget().startRule();
+        final Matcher matcher = matchers.get().reset(regexText);
 
         // If we don't match, return immediately with the original message
         try {
-            if (!matcher.find()) return;
+            boolean found = matcher.find();
+            ruleStats.recordEvaluation(System.nanoTime() - start, found);
+            if (retrying) filterService.getRuleQuarantine().recordSuccess(this);
+            if (!found) return Result.NOT_MATCHED;
+            // Folded indexes are the same as the original's.
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Match String: " +
+                        filterContext.getModifiedText().substring(matcher.start(), matcher.end()));
+            }
         } catch (LimitedRegexCharSequence.RegexTimeoutException ex) {
-            logger.severe("Regex match timed out! Regex: " + pattern.toString());
-            logger.severe("Failed string was: " + limitedRegexCharSequence);
-            return;
+            ruleStats.recordTimeout(System.nanoTime() - start);
+            if (regexText.getBudget().isMessageExpired()) {
+                logger.warning(ex.getMessage() + ", skipping remaining rules.  Regex: " + pattern.toString());
+                logger.severe("Failed string was: " + filterContext.getModifiedText());
+                if (retrying) filterService.getRuleQuarantine().cancelRetry(this);
+            } else {
+                logger.severe("Regex match timed out! Regex: " + pattern.toString());
+                logger.severe("Failed string was: " + filterContext.getModifiedText());
+                filterService.getRuleQuarantine().recordTimeout(this, filterContext,
+                        filterContext.getModifiedText());
+            }
+            return Result.SKIPPED;
         } catch (RuntimeException ex) {
+            ruleStats.recordEvaluation(System.nanoTime() - start, true);
+            if (retrying) filterService.getRuleQuarantine().recordSuccess(this);
             // Note: Due to this:
             // https://stackoverflow.com/questions/16008974/strange-java-unicode-regular-expression-stringindexoutofboundsexception
             // Supplementary UTF characters will cause index-out-of-bounds.  Not sure what to do about this, right now.
         }
+        return Result.MATCHED;
+    }
+
+    /**
+     * Record a match of this rule in the {@link FilterContext}, check its
+     * remaining conditions, and if they are met, execute its actions.  The
+     * cheap conditions must already have been checked.  (See
+     * {@link #checkCheapConditions(FilterContext)})
+     *
+     * @param filterContext The message
+     * @param filterService The {@link FilterService}
+     */
+    public void applyMatch(FilterContext filterContext, FilterService filterService) {
+        StatsTracker statsTracker = filterService.getStatsTracker();
+        if (statsTracker != null) statsTracker.incrementMatch();
 
         // If we do match, update the pattern and rule in the filter.
         filterContext.setPattern(pattern);
@@ -191,13 +437,11 @@ public class Rule implements ChainEntry {
         filterContext.addLogMessage("|" + filterContext.getFilterClient().getShortName() + "| MATCH " +
                 (id.isEmpty() ? "" : "(" + id + ")") +
                 " <" +
-                filterContext.getAuthor().getName() + "> " + filterContext.getModifiedMessage().toString());
-
-        logger.fine(() -> "Match String: " + matcher.group());
+                filterContext.getAuthor().getName() + "> " + filterContext.getModifiedText());
 
         for (Condition c : conditions) {
             // This checks that EVERY condition is met (conditions are AND)
-            if (!c.check(filterContext)) {
+            if (!c.isCheap() && !c.check(filterContext)) {
                 filterContext.addLogMessage("CONDITION not met <" + c.flag.toString() +
                         " " + c.type.toString() + " " + c.parameters + "> " + filterContext.getOriginalMessage());
                 return;
@@ -212,6 +456,17 @@ public class Rule implements ChainEntry {
 
     }
 
+    /**
+     * @return true if none of this rule's actions can change the message.
+     * (See {@link ReadOnlyAction})
+     */
+    public boolean isReadOnly() {
+        for (Action a : actions) {
+            if (!(a instanceof ReadOnlyAction)) return false;
+        }
+        return true;
+    }
+
     /**
      * <p>isValid.</p>
      *
@@ -289,5 +544,15 @@ public class Rule implements ChainEntry {
         return actions;
     }
 
-
+    /**
+     * The outcome of {@link #evaluate}.
+     */
+    public enum Result {
+        MATCHED,
+        NOT_MATCHED,
+        /**
+         * The rule was not tested, because it timed out or is quarantined.
+         */
+        SKIPPED
+    }
 }
@@ -0,0 +1,371 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.engine.rules;
+
+import com.google.common.base.Ticker;
+import com.pwn9.filter.engine.FilterService;
+import com.pwn9.filter.engine.api.FilterContext;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps rules that repeatedly time out from slowing down every message.
+ * <p>
+ * Each regex timeout is recorded against its rule.  If a rule times out
+ * {@link #getMaxTimeouts()} times within the window, it is quarantined: it is
+ * skipped until its backoff has passed, and staff with the
+ * {@link #NOTIFY_PERM} permission are notified.  After the backoff, the rule
+ * is tried on one message.  If that completes, the rule is released.  If it
+ * times out again, it goes back into quarantine with double the backoff (up
+ * to {@link #MAX_BACKOFF_MILLIS}).
+ * <p>
+ * The messages that caused timeouts are appended to the capture file (if
+ * one is set), so they can be replayed against the rules later.  Each is
+ * preceded by a comment line starting with '#' describing the rule.  They are
+ * queued, and written by a background thread, so the thread filtering the
+ * message (often the server's main thread) never waits for the disk.
+ */
+public class RuleQuarantine {
+
+    public static final String NOTIFY_PERM = "pwnfilter.admins";
+    public static final long MAX_BACKOFF_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final FilterService filterService;
+    private final Ticker ticker;
+    private final ConcurrentHashMap<Rule, Record> records = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Capture> captures = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushQueued = new AtomicBoolean();
+    // Only has a thread while there are captures to write.
+    private final ThreadPoolExecutor writer = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), task -> {
+        Thread thread = new Thread(task, "PwnFilter Timeout Capture");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile int maxTimeouts = 3;
+    private volatile long windowMillis = TimeUnit.MINUTES.toMillis(1);
+    private volatile long backoffMillis = TimeUnit.MINUTES.toMillis(5);
+    private volatile File captureFile;
+
+    public RuleQuarantine(FilterService filterService) {
+        this(filterService, Ticker.systemTicker());
+    }
+
+    RuleQuarantine(FilterService filterService, Ticker ticker) {
+        this.filterService = filterService;
+        this.ticker = ticker;
+        writer.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Called before applying a quarantined rule.
+     *
+     * @param rule The rule
+     * @return true if the rule should be tried on this message.
+     */
+    boolean allow(Rule rule) {
+        Record record = records.get(rule);
+        if (record == null) {
+            rule.setQuarantined(false);
+            return true;
+        }
+        synchronized (record) {
+            if (!record.quarantined) {
+                rule.setQuarantined(false);
+                return true;
+            }
+            if (record.probing || ticker.read() - record.releaseTime < 0) return false;
+            // Backoff is over.  Let one message through, to see if it's better.
+            record.probing = true;
+            return true;
+        }
+    }
+
+    /**
+     * Called when a quarantined rule, which was allowed a retry, has
+     * completed without timing out.
+     *
+     * @param rule The rule
+     */
+    void recordSuccess(Rule rule) {
+        Record record = records.get(rule);
+        if (record == null) return;
+        synchronized (record) {
+            if (!record.probing) return;
+            record.probing = false;
+            record.quarantined = false;
+            record.timeouts.clear();
+            rule.setQuarantined(false);
+        }
+        notifyStaff("Rule " + describe(rule) + " has been released from quarantine.");
+    }
+
+    /**
+     * Called when a quarantined rule, which was allowed a retry, didn't get
+     * to finish for some other reason.  It will be retried on the next
+     * message.
+     *
+     * @param rule The rule
+     */
+    void cancelRetry(Rule rule) {
+        Record record = records.get(rule);
+        if (record == null) return;
+        synchronized (record) {
+            record.probing = false;
+        }
+    }
+
+    /**
+     * Called when a rule's regex has timed out.
+     *
+     * @param rule          The rule
+     * @param filterContext The message being filtered
+     * @param input         The text the regex was run on
+     */
+    void recordTimeout(Rule rule, FilterContext filterContext, String input) {
+        Record record = records.computeIfAbsent(rule, Record::new);
+        long now = ticker.read();
+        long backoff = 0;
+
+        synchronized (record) {
+            long windowStart = now - TimeUnit.MILLISECONDS.toNanos(windowMillis);
+            while (!record.timeouts.isEmpty() && record.timeouts.peekFirst() - windowStart < 0) {
+                record.timeouts.removeFirst();
+            }
+            record.timeouts.addLast(now);
+            record.totalTimeouts++;
+
+            if (record.probing || (maxTimeouts > 0 && record.timeouts.size() >= maxTimeouts)) {
+                record.probing = false;
+                record.quarantined = true;
+                record.strikes++;
+                backoff = backoffMillis << Math.min(record.strikes - 1, 30);
+                if (backoff <= 0 || backoff > MAX_BACKOFF_MILLIS) backoff = MAX_BACKOFF_MILLIS;
+                record.releaseTime = now + TimeUnit.MILLISECONDS.toNanos(backoff);
+                record.timeouts.clear();
+                rule.setQuarantined(true);
+            }
+        }
+
+        capture(rule, filterContext, input);
+
+        if (backoff > 0) {
+            notifyStaff("Rule " + describe(rule) + " keeps timing out, and has been quarantined for " +
+                    TimeUnit.MILLISECONDS.toSeconds(backoff) + "s.");
+        }
+    }
+
+    private void notifyStaff(String message) {
+        filterService.getLogger().warning(message);
+        filterService.notifyTargets(NOTIFY_PERM, "[PwnFilter] " + message);
+    }
+
+    private void capture(Rule rule, FilterContext filterContext, String input) {
+        File file = captureFile;
+        if (file == null) return;
+        captures.add(new Capture(file, "# " + Instant.now() + " " +
+                filterContext.getFilterClient().getShortName() + " " + describe(rule) + "\n" +
+                input.replace("\r", "").replace('\n', ' ') + "\n"));
+        if (flushQueued.compareAndSet(false, true)) {
+            writer.execute(() -> {
+                flushQueued.set(false);
+                flush();
+            });
+        }
+    }
+
+    /**
+     * Write any captured messages that are still queued.  This is done in
+     * the background as they are captured, and should be called on shutdown.
+     */
+    public void flush() {
+        synchronized (captures) {
+            Capture capture;
+            while ((capture = captures.poll()) != null) {
+                File file = capture.file;
+                // Write every queued capture for the same file in one go.
+                try (Writer out = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+                    while (true) {
+                        out.write(capture.text);
+                        Capture next = captures.peek();
+                        if (next == null || !next.file.equals(file)) break;
+                        capture = captures.poll();
+                    }
+                } catch (IOException ex) {
+                    filterService.getLogger().warning("Unable to write to " + file + ": " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Release all quarantined rules immediately.
+     *
+     * @return The number of rules released
+     */
+    public int releaseAll() {
+        int count = 0;
+        for (Record record : records.values()) {
+            synchronized (record) {
+                if (record.quarantined) count++;
+                record.quarantined = false;
+                record.probing = false;
+                record.timeouts.clear();
+                record.rule.setQuarantined(false);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Forget about all rules.  Called when rules are reloaded.
+     */
+    public void clear() {
+        releaseAll();
+        records.clear();
+    }
+
+    /**
+     * Get a description of every rule that has timed out, quarantined ones
+     * first.
+     *
+     * @return One line per rule
+     */
+    public List<String> getStatus() {
+        long now = ticker.read();
+        List<String> quarantined = new ArrayList<>();
+        List<String> others = new ArrayList<>();
+        for (Record record : records.values()) {
+            synchronized (record) {
+                String counts = " (timeouts: " + record.totalTimeouts + ", quarantined: " + record.strikes + "x)";
+                if (record.quarantined) {
+                    long remaining = TimeUnit.NANOSECONDS.toSeconds(Math.max(0, record.releaseTime - now));
+                    quarantined.add("QUARANTINED " + describe(record.rule) +
+                            (record.probing ? " retrying now" : " retry in " + remaining + "s") + counts);
+                } else {
+                    others.add("active " + describe(record.rule) + counts);
+                }
+            }
+        }
+        quarantined.addAll(others);
+        return quarantined;
+    }
+
+    /**
+     * @param rule The rule
+     * @return true if the rule is currently quarantined.
+     */
+    public boolean isQuarantined(Rule rule) {
+        Record record = records.get(rule);
+        return record != null && record.quarantined;
+    }
+
+    static String describe(Rule rule) {
+        return rule.getId().isEmpty() ? "'" + rule.getPattern() + "'" : "(" + rule.getId() + ")";
+    }
+
+    /* Getters and Setters */
+
+    public int getMaxTimeouts() {
+        return maxTimeouts;
+    }
+
+    /**
+     * @param maxTimeouts Number of timeouts within the window that will
+     *                    quarantine a rule.  0 disables quarantine.
+     */
+    public void setMaxTimeouts(int maxTimeouts) {
+        this.maxTimeouts = maxTimeouts;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    public void setWindowMillis(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    public long getBackoffMillis() {
+        return backoffMillis;
+    }
+
+    /**
+     * @param backoffMillis How long a rule is skipped the first time it is
+     *                      quarantined.  Doubles each subsequent time.
+     */
+    public void setBackoffMillis(long backoffMillis) {
+        this.backoffMillis = backoffMillis;
+    }
+
+    public File getCaptureFile() {
+        return captureFile;
+    }
+
+    /**
+     * @param captureFile File to append timed-out messages to, or null to
+     *                    not capture them.
+     */
+    public void setCaptureFile(File captureFile) {
+        this.captureFile = captureFile;
+    }
+
+    private static final class Capture {
+        private final File file;
+        private final String text;
+
+        private Capture(File file, String text) {
+            this.file = file;
+            this.text = text;
+        }
+    }
+
+    private static final class Record {
+        private final Rule rule;
+        private final Deque<Long> timeouts = new ArrayDeque<>();
+        private long totalTimeouts;
+        private int strikes;
+        private boolean quarantined;
+        private boolean probing;
+        private long releaseTime;
+
+        private Record(Rule rule) {
+            this.rule = rule;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.engine.rules;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Performance counters for one rule, on one FilterClient.
+ * <p>
+ * The counters are striped adders, so that they can be updated by any number
+ * of threads without contention.  Reads are not atomic across counters, but
+ * are good enough for reporting.
+ */
+public final class RuleStats {
+
+    private final LongAdder evaluations = new LongAdder();
+    private final LongAdder matches = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder timeouts = new LongAdder();
+
+    void recordEvaluation(long nanos, boolean matched) {
+        evaluations.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+        if (matched) matches.increment();
+    }
+
+    void recordTimeout(long nanos) {
+        recordEvaluation(nanos, false);
+        timeouts.increment();
+    }
+
+    /**
+     * @return Number of times the rule's pattern was tested.
+     */
+    public long getEvaluations() {
+        return evaluations.sum();
+    }
+
+    /**
+     * @return Number of times the rule's pattern matched.
+     */
+    public long getMatches() {
+        return matches.sum();
+    }
+
+    /**
+     * @return Total time spent testing the rule's pattern.
+     */
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    /**
+     * @return Longest time spent testing the rule's pattern on one message.
+     */
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * @return Number of times the rule's pattern timed out.
+     */
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    public void reset() {
+        evaluations.reset();
+        matches.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+        timeouts.reset();
+    }
+}
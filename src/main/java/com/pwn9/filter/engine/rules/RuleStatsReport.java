@@ -0,0 +1,226 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.engine.rules;
+
+import com.pwn9.filter.engine.api.FilterClient;
+import com.pwn9.filter.engine.api.ReloadableClient;
+import com.pwn9.filter.engine.rules.chain.ChainEntry;
+import com.pwn9.filter.engine.rules.chain.RuleChain;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A snapshot of the {@link RuleStats} of every rule in the active clients'
+ * chains, ranked by the total time spent testing them.  Every chain a
+ * {@link ReloadableClient} uses is included, not just its main one.
+ */
+public final class RuleStatsReport {
+
+    private final List<Entry> entries;
+
+    private RuleStatsReport(List<Entry> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Collect the stats of the rules used by the given clients.
+     *
+     * @param clients    The clients to report on.
+     * @param clientName Only report on the client with this short name
+     *                   (case-insensitive), or null for all clients.
+     * @return a new report
+     */
+    public static RuleStatsReport collect(Collection<FilterClient> clients, @Nullable String clientName) {
+        List<Entry> entries = new ArrayList<>();
+        for (FilterClient client : clients) {
+            if (clientName != null && !client.getShortName().equalsIgnoreCase(clientName)) continue;
+            Set<Rule> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (RuleChain chain : chainsOf(client)) {
+                collect(client.getShortName(), chain, seen, entries);
+            }
+        }
+        entries.sort(Comparator.comparingLong(Entry::getTotalNanos).reversed());
+        return new RuleStatsReport(entries);
+    }
+
+    private static List<RuleChain> chainsOf(FilterClient client) {
+        List<RuleChain> chains = new ArrayList<>();
+        if (client instanceof ReloadableClient) {
+            ReloadableClient reloadable = (ReloadableClient) client;
+            for (String name : reloadable.getRuleFiles()) {
+                RuleChain chain = reloadable.getChain(name);
+                if (chain != null && !chains.contains(chain)) chains.add(chain);
+            }
+        } else if (client.getRuleChain() != null) {
+            chains.add(client.getRuleChain());
+        }
+        return chains;
+    }
+
+    /**
+     * Start the stats of every rule in the chain over.
+     *
+     * @param chain The chain to reset, including any chains it includes.
+     */
+    public static void reset(RuleChain chain) {
+        for (ChainEntry entry : chain.getChain()) {
+            if (entry instanceof RuleChain) {
+                reset((RuleChain) entry);
+            } else if (entry instanceof Rule) {
+                ((Rule) entry).resetStats();
+            }
+        }
+    }
+
+    private static void collect(String clientName, RuleChain chain, Set<Rule> seen, List<Entry> entries) {
+        for (ChainEntry entry : chain.getChain()) {
+            if (entry instanceof RuleChain) {
+                collect(clientName, (RuleChain) entry, seen, entries);
+            } else if (entry instanceof Rule && seen.add((Rule) entry)) {
+                RuleStats stats = ((Rule) entry).getStats().get(clientName);
+                if (stats != null && stats.getEvaluations() > 0) {
+                    entries.add(new Entry(clientName, (Rule) entry, stats));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return All rules that have been tested, most expensive first.
+     */
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * @param n Number of entries
+     * @return The n most expensive rules, or none if n is less than 1
+     */
+    public List<Entry> top(int n) {
+        return getEntries().subList(0, Math.max(0, Math.min(n, entries.size())));
+    }
+
+    /**
+     * @return Total time spent testing all of the rules in the report.
+     */
+    public long getTotalNanos() {
+        long total = 0;
+        for (Entry e : entries) total += e.getTotalNanos();
+        return total;
+    }
+
+    /**
+     * Write the report as CSV, with a header row.
+     *
+     * @param out Writer to write to
+     * @throws IOException if the writer fails
+     */
+    public void writeCsv(Writer out) throws IOException {
+        out.write("client,id,pattern,evaluations,matches,total_ns,max_ns,timeouts\n");
+        for (Entry e : entries) {
+            out.write(e.getClientName() + "," + csvQuote(e.getRule().getId()) + "," +
+                    csvQuote(String.valueOf(e.getRule().getPattern())) + "," +
+                    e.getEvaluations() + "," + e.getMatches() + "," + e.getTotalNanos() + "," +
+                    e.getMaxNanos() + "," + e.getTimeouts() + "\n");
+        }
+    }
+
+    /**
+     * Write the report as CSV to a file, replacing it if it exists.
+     *
+     * @param file File to write
+     * @throws IOException if the file can't be written
+     */
+    public void writeCsv(File file) throws IOException {
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writeCsv(out);
+        }
+    }
+
+    private static String csvQuote(String s) {
+        return "\"" + s.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * The stats for one rule on one client.  The counters are read when the
+     * entry is created.
+     */
+    public static final class Entry {
+        private final String clientName;
+        private final Rule rule;
+        private final long evaluations;
+        private final long matches;
+        private final long totalNanos;
+        private final long maxNanos;
+        private final long timeouts;
+
+        private Entry(String clientName, Rule rule, RuleStats stats) {
+            this.clientName = clientName;
+            this.rule = rule;
+            this.evaluations = stats.getEvaluations();
+            this.matches = stats.getMatches();
+            this.totalNanos = stats.getTotalNanos();
+            this.maxNanos = stats.getMaxNanos();
+            this.timeouts = stats.getTimeouts();
+        }
+
+        public String getClientName() {
+            return clientName;
+        }
+
+        public Rule getRule() {
+            return rule;
+        }
+
+        public long getEvaluations() {
+            return evaluations;
+        }
+
+        public long getMatches() {
+            return matches;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        public long getTimeouts() {
+            return timeouts;
+        }
+    }
+}
@@ -24,9 +24,8 @@ import java.io.*;
 import java.text.ParseException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Manage all the shortcut mappings
@@ -38,48 +37,70 @@ import java.util.regex.Pattern;
  * @version $Id: $Id
  */
 public class ShortCutManager {
-    private static final Map<File, Map<String, String>> shortcutFiles = new HashMap<>();
-    private static ShortCutManager _instance;
+    // Rule files may be parsed on several threads at once.
+    private static final Map<File, Map<String, String>> shortcutFiles = new ConcurrentHashMap<>();
+    private static final ShortCutManager _instance = new ShortCutManager();
 
     private ShortCutManager() {
     }
 
     public static ShortCutManager getInstance() {
-        if (_instance == null) {
-            _instance = new ShortCutManager();
-        }
         return _instance;
     }
 
+    /**
+     * Replace each &lt;var&gt; in the line (up to 3 letters or _) with its
+     * shortcut.  Shortcuts that aren't defined are removed, with a warning.
+     * This does the same as matching "&lt;[a-zA-Z_]{0,3}&gt;", in one scan of
+     * the line.
+     */
     public static String replace(Logger logger, Map<String, String> shortcuts, String lineData) {
         // If we don't have a shortcuts file to process, just return what we were given.
         if (shortcuts == null) return lineData;
 
-        Pattern shortcutMatch = Pattern.compile("<[a-zA-Z_]{0,3}>", Pattern.CASE_INSENSITIVE);
-        Matcher matcher = shortcutMatch.matcher(lineData);
-        StringBuffer newLineData = new StringBuffer();
-        while (matcher.find()) {
-            String thisMatch = matcher.group();
-            String var = thisMatch.substring(1, thisMatch.length() - 1);
-            String replacement = shortcuts.get(var.toLowerCase());
-            if (replacement == null || replacement.isEmpty()) {
-                logger.warning("Could not find shortcut: <" + var + ">" +
-                        "when parsing: '" + lineData + "'");
-                matcher.appendReplacement(newLineData, "");
+        int open = lineData.indexOf('<');
+        if (open < 0) return lineData;
+
+        StringBuilder newLineData = null;
+        int copied = 0;
+        final int length = lineData.length();
+        while (open >= 0) {
+            int end = open + 1;
+            while (end < length && end - open <= 3 && isShortcutChar(lineData.charAt(end))) end++;
+            if (end < length && lineData.charAt(end) == '>') {
+                String var = lineData.substring(open + 1, end);
+                String replacement = shortcuts.get(var.toLowerCase());
+                if (newLineData == null) newLineData = new StringBuilder(length + 64);
+                newLineData.append(lineData, copied, open);
+                if (replacement == null || replacement.isEmpty()) {
+                    logger.warning("Could not find shortcut: <" + var + ">" +
+                            "when parsing: '" + lineData + "'");
+                } else {
+                    newLineData.append(replacement);
+                }
+                copied = end + 1;
+                open = lineData.indexOf('<', copied);
             } else {
-                matcher.appendReplacement(newLineData, Matcher.quoteReplacement(replacement));
+                open = lineData.indexOf('<', open + 1);
             }
         }
-        matcher.appendTail(newLineData);
-        if (!newLineData.toString().equals(lineData)) {
-            logger.finer(() -> "Original regex: " + lineData + "\n New regex: " + newLineData);
+        if (newLineData == null) return lineData;
+
+        newLineData.append(lineData, copied, length);
+        String result = newLineData.toString();
+        if (!result.equals(lineData)) {
+            logger.finer(() -> "Original regex: " + lineData + "\n New regex: " + result);
         }
-        return newLineData.toString();
+        return result;
+
+    }
 
+    private static boolean isShortcutChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
     }
 
     public Map<String, String> getShortcutMap(File shortcutFile) throws IOException, ParseException {
-        File absoluteFile = shortcutFile.getAbsoluteFile();
+        File absoluteFile = normalize(shortcutFile);
         Map<String, String> returnValue = shortcutFiles.get(absoluteFile);
 
         if (returnValue != null) {
@@ -95,6 +116,20 @@ public class ShortCutManager {
         shortcutFiles.clear();
     }
 
+    /**
+     * Forget a shortcut file that has changed.  It will be reloaded on next
+     * access.
+     *
+     * @param shortcutFile The shortcut file.
+     */
+    public void reloadFile(File shortcutFile) {
+        shortcutFiles.remove(normalize(shortcutFile));
+    }
+
+    private static File normalize(File file) {
+        return file.toPath().toAbsolutePath().normalize().toFile();
+    }
+
     private void loadFile(File shortcutFile) throws IOException, ParseException {
 
         Map<String, String> varset = new HashMap<>();
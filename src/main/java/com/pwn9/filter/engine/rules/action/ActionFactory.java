@@ -20,32 +20,52 @@
 
 package com.pwn9.filter.engine.rules.action;
 
+import com.google.common.collect.MapMaker;
 import com.pwn9.filter.engine.FilterConfig;
 import com.pwn9.filter.engine.FilterService;
 import com.pwn9.filter.engine.api.Action;
+import com.pwn9.filter.engine.api.ActionProvider;
 import com.pwn9.filter.engine.api.ActionToken;
 import com.pwn9.filter.engine.rules.action.core.CoreAction;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * This factory returns an action object selected by the rules file.
  * eg: "then kick" would return the Actionkick object.
+ * <p>
+ * Tokens are looked up by name in a map, which is filled as token enums are
+ * added.  The Core Actions are always present, and any {@link ActionProvider}
+ * found by {@link ServiceLoader} is added when the factory is created.  If
+ * two token enums have a token of the same name, the first one added wins.
+ * <p>
+ * Actions don't change once they are created, so identical actions (eg: every
+ * "then deny", or the same "then warn" message) are shared between rules.
+ * The shared actions are forgotten by {@link #clearActions()}, which must be
+ * called when the configuration they were made from (default messages, the
+ * text directory) changes.
  *
  * @author Sage905
  * @version $Id: $Id
  */
 public final class ActionFactory {
 
-    private final List<Class<? extends ActionToken>> actionTokens =
-            new ArrayList<>();
+    private final ConcurrentMap<String, ActionToken> actionTokens =
+            new ConcurrentHashMap<>();
+    // Actions in use by any rule, keyed by token name and parameters.
+    private final ConcurrentMap<String, Action> actions =
+            new MapMaker().weakValues().makeMap();
     private final FilterConfig filterConfig;
 
     public ActionFactory(FilterService filterService) {
-        // Ensure that all instances get the Core Actions
-        actionTokens.add(CoreAction.class);
         filterConfig = filterService.getConfig();
+        // Ensure that all instances get the Core Actions
+        addActionTokens(CoreAction.class);
+        addActionProviders(ActionFactory.class.getClassLoader());
     }
 
     public Action getActionFromString(String s) throws InvalidActionException {
@@ -60,22 +80,65 @@ public final class ActionFactory {
     public Action getAction(final String actionName, final String actionData)
             throws InvalidActionException {
 
-        // Scan all tokens for a match
+        ActionToken token = actionTokens.get(actionName.toUpperCase());
+        if (token == null) {
+            throw new InvalidActionException("Unable to implement action: " + actionName
+                    + " / " + actionData);
+        }
 
-        for (Class<? extends ActionToken> tokens : actionTokens) {
-            for (ActionToken token : tokens.getEnumConstants()) {
-                if (token.toString().equals(actionName.toUpperCase())) {
-                    return token.getAction(actionData, filterConfig);
-                }
+        // Token names never contain a space, so this can't be ambiguous.
+        String key = token.toString() + ' ' + actionData;
+        Action action = actions.get(key);
+        if (action == null) {
+            action = token.getAction(actionData, filterConfig);
+            if (action != null) {
+                Action existing = actions.putIfAbsent(key, action);
+                if (existing != null) action = existing;
             }
         }
-        throw new InvalidActionException("Unable to implement action: " + actionName
-                + " / " + actionData);
+        return action;
     }
 
-    synchronized public void addActionTokens(Class<? extends ActionToken> tokenEnum) {
-        actionTokens.add(tokenEnum);
+    public void addActionTokens(Class<? extends ActionToken> tokenEnum) {
+        for (ActionToken token : tokenEnum.getEnumConstants()) {
+            actionTokens.putIfAbsent(token.toString(), token);
+        }
     }
 
-}
+    /**
+     * Add the tokens of every {@link ActionProvider} that the class loader
+     * can find.  A provider that can't be loaded is skipped, and logged.
+     *
+     * @param classLoader The {@link ClassLoader} to search for providers.
+     */
+    public void addActionProviders(ClassLoader classLoader) {
+        Iterator<ActionProvider> providers = ServiceLoader.load(ActionProvider.class, classLoader).iterator();
+        String lastError = null;
+        while (true) {
+            try {
+                if (!providers.hasNext()) break;
+            } catch (ServiceConfigurationError e) {
+                // A bad configuration file is skipped, unless it can't be got past.
+                if (e.getMessage() != null && e.getMessage().equals(lastError)) break;
+                lastError = e.getMessage();
+                filterConfig.getLogger().warning("Unable to load action providers: " + lastError);
+                continue;
+            }
+            lastError = null;
+            try {
+                addActionTokens(providers.next().getActionTokens());
+            } catch (ServiceConfigurationError e) {
+                filterConfig.getLogger().warning("Unable to load action provider: " + e.getMessage());
+            }
+        }
+    }
 
+    /**
+     * Forget the shared actions, so the next rules that ask for them get
+     * new ones made with the current configuration.
+     */
+    public void clearActions() {
+        actions.clear();
+    }
+
+}
@@ -21,8 +21,9 @@
 package com.pwn9.filter.engine.rules.action.core;
 
 import com.pwn9.filter.engine.FilterService;
-import com.pwn9.filter.engine.api.Action;
 import com.pwn9.filter.engine.api.FilterContext;
+import com.pwn9.filter.engine.api.ReadOnlyAction;
+import com.pwn9.filter.engine.api.StatelessAction;
 
 /**
  * This Internal action stops processing of any more rules.
@@ -32,7 +33,7 @@ import com.pwn9.filter.engine.api.FilterContext;
  * @author Sage905
  * @version $Id: $Id
  */
-public enum Abort implements Action {
+public enum Abort implements StatelessAction, ReadOnlyAction {
 
     INSTANCE;
 
@@ -21,8 +21,9 @@
 package com.pwn9.filter.engine.rules.action.core;
 
 import com.pwn9.filter.engine.FilterService;
-import com.pwn9.filter.engine.api.Action;
 import com.pwn9.filter.engine.api.FilterContext;
+import com.pwn9.filter.engine.api.ReadOnlyAction;
+import com.pwn9.filter.engine.api.StatelessAction;
 
 /**
  * Deny this event from propagating by cancelling it (i.e.: throw the message
@@ -34,7 +35,7 @@ import com.pwn9.filter.engine.api.FilterContext;
  * @author Sage905
  * @version $Id: $Id
  */
-public enum Deny implements Action {
+public enum Deny implements StatelessAction, ReadOnlyAction {
 
     INSTANCE;
 
@@ -23,6 +23,8 @@ package com.pwn9.filter.engine.rules.action.core;
 import com.pwn9.filter.engine.FilterService;
 import com.pwn9.filter.engine.api.Action;
 import com.pwn9.filter.engine.api.FilterContext;
+import com.pwn9.filter.engine.api.ReadOnlyAction;
+import com.pwn9.filter.engine.api.StatelessAction;
 
 /**
  * Log this event.
@@ -34,7 +36,7 @@ import com.pwn9.filter.engine.api.FilterContext;
  * @version $Id: $Id
  */
 @SuppressWarnings("UnusedDeclaration")
-class Log implements Action {
+class Log implements StatelessAction, ReadOnlyAction {
 
     private Log() {
     }
@@ -25,6 +25,7 @@ import com.pwn9.filter.engine.PointManager;
 import com.pwn9.filter.engine.api.Action;
 import com.pwn9.filter.engine.api.FilterContext;
 import com.pwn9.filter.engine.api.MessageAuthor;
+import com.pwn9.filter.engine.api.ReadOnlyAction;
 import com.pwn9.filter.engine.rules.Rule;
 import com.pwn9.filter.engine.rules.action.InvalidActionException;
 import org.bukkit.ChatColor;
@@ -36,7 +37,7 @@ import org.bukkit.ChatColor;
  * @version $Id: $Id
  */
 
-class Points implements Action {
+class Points implements ReadOnlyAction {
 
     private final String messageString;
     private final double pointsAmount; // How much to fine the player.
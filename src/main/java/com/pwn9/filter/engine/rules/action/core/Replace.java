@@ -23,6 +23,7 @@ package com.pwn9.filter.engine.rules.action.core;
 import com.pwn9.filter.engine.FilterService;
 import com.pwn9.filter.engine.api.Action;
 import com.pwn9.filter.engine.api.FilterContext;
+import com.pwn9.filter.engine.api.StatelessAction;
 import com.pwn9.filter.util.SimpleString;
 import org.bukkit.ChatColor;
 
@@ -32,7 +33,7 @@ import org.bukkit.ChatColor;
  * @author Sage905
  * @version $Id: $Id
  */
-class Replace implements Action {
+class Replace implements StatelessAction {
 
     // messageString is what we will use to replace any matched text.
     private final String messageString;
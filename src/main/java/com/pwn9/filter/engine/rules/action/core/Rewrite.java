@@ -23,12 +23,13 @@ package com.pwn9.filter.engine.rules.action.core;
 import com.pwn9.filter.engine.FilterService;
 import com.pwn9.filter.engine.api.Action;
 import com.pwn9.filter.engine.api.FilterContext;
+import com.pwn9.filter.engine.api.StatelessAction;
 import org.bukkit.ChatColor;
 
 /**
  * Rewrite the string by replacing the matched text with the provided string.
  */
-class Rewrite implements Action {
+class Rewrite implements StatelessAction {
 
     // messageString is what we will use to replace any matched text.
     private final String messageString;
@@ -25,6 +25,7 @@ import com.pwn9.filter.engine.FilterService;
 import com.pwn9.filter.engine.api.Action;
 import com.pwn9.filter.engine.api.FilterContext;
 import com.pwn9.filter.engine.api.MessageAuthor;
+import com.pwn9.filter.engine.api.ReadOnlyAction;
 import com.pwn9.filter.util.tag.TagRegistry;
 import org.bukkit.ChatColor;
 
@@ -36,7 +37,7 @@ import java.util.ArrayList;
  * TODO: Extract Broadcast actions from Minecraft to make them universal.
  */
 
-class Broadcast implements Action {
+class Broadcast implements ReadOnlyAction {
     private final String[] messageStrings;
 
     private Broadcast(String[] strings) {
@@ -26,6 +26,7 @@ import com.pwn9.filter.engine.FilterService;
 import com.pwn9.filter.engine.api.Action;
 import com.pwn9.filter.engine.api.FilterContext;
 import com.pwn9.filter.engine.api.MessageAuthor;
+import com.pwn9.filter.engine.api.ReadOnlyAction;
 import com.pwn9.filter.engine.rules.action.InvalidActionException;
 import com.pwn9.filter.util.tag.TagRegistry;
 import org.bukkit.ChatColor;
@@ -43,7 +44,7 @@ import java.util.stream.Stream;
  * Broadcasts the contents of the named file to all users.
  */
 
-class BroadcastFile implements Action {
+class BroadcastFile implements ReadOnlyAction {
     private final ImmutableList<String> messageStrings;
 
     private BroadcastFile(ArrayList<String> s) {
@@ -24,6 +24,7 @@ import com.pwn9.filter.bukkit.BukkitPlayer;
 import com.pwn9.filter.engine.FilterService;
 import com.pwn9.filter.engine.api.Action;
 import com.pwn9.filter.engine.api.FilterContext;
+import com.pwn9.filter.engine.api.ReadOnlyAction;
 import com.pwn9.filter.engine.rules.action.InvalidActionException;
 import com.pwn9.filter.util.tag.TagRegistry;
 
@@ -34,9 +35,9 @@ import com.pwn9.filter.util.tag.TagRegistry;
  * @version $Id: $Id
  */
 @SuppressWarnings("UnusedDeclaration")
-public class Command implements Action {
+public class Command implements ReadOnlyAction {
 
-    private String command;
+    private final String command;
 
     public Command(String s) {
         this.command = s;
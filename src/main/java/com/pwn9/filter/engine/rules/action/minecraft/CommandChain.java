@@ -25,6 +25,7 @@ import com.pwn9.filter.engine.FilterService;
 import com.pwn9.filter.engine.api.Action;
 import com.pwn9.filter.engine.api.FilterContext;
 import com.pwn9.filter.engine.api.MessageAuthor;
+import com.pwn9.filter.engine.api.ReadOnlyAction;
 import com.pwn9.filter.engine.rules.action.InvalidActionException;
 import com.pwn9.filter.util.tag.TagRegistry;
 
@@ -41,7 +42,7 @@ import java.util.List;
  * @version $Id: $Id
  */
 
-class CommandChain implements Action {
+class CommandChain implements ReadOnlyAction {
     private final List<String> commands;
 
     private CommandChain(List<String> commands) {
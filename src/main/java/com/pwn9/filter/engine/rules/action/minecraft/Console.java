@@ -25,6 +25,7 @@ import com.pwn9.filter.engine.FilterService;
 import com.pwn9.filter.engine.api.Action;
 import com.pwn9.filter.engine.api.FilterContext;
 import com.pwn9.filter.engine.api.MessageAuthor;
+import com.pwn9.filter.engine.api.ReadOnlyAction;
 import com.pwn9.filter.engine.rules.action.InvalidActionException;
 import com.pwn9.filter.util.tag.TagRegistry;
 
@@ -35,7 +36,7 @@ import com.pwn9.filter.util.tag.TagRegistry;
  * @version $Id: $Id
  */
 
-class Console implements Action {
+class Console implements ReadOnlyAction {
     private final String command;
 
     private Console(String s) {
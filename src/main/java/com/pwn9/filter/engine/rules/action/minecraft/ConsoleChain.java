@@ -25,6 +25,7 @@ import com.pwn9.filter.engine.FilterService;
 import com.pwn9.filter.engine.api.Action;
 import com.pwn9.filter.engine.api.FilterContext;
 import com.pwn9.filter.engine.api.MessageAuthor;
+import com.pwn9.filter.engine.api.ReadOnlyAction;
 import com.pwn9.filter.engine.rules.action.InvalidActionException;
 import com.pwn9.filter.util.tag.TagRegistry;
 
@@ -39,9 +40,9 @@ import java.util.List;
  * @version $Id: $Id
  */
 
-class ConsoleChain implements Action {
+class ConsoleChain implements ReadOnlyAction {
 
-    private List<String> commands;
+    private final List<String> commands;
 
     private ConsoleChain(List<String> cmds) {
         this.commands = cmds;
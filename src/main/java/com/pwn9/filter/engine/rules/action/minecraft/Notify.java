@@ -23,6 +23,7 @@ package com.pwn9.filter.engine.rules.action.minecraft;
 import com.pwn9.filter.engine.FilterService;
 import com.pwn9.filter.engine.api.Action;
 import com.pwn9.filter.engine.api.FilterContext;
+import com.pwn9.filter.engine.api.ReadOnlyAction;
 import com.pwn9.filter.engine.rules.action.InvalidActionException;
 import com.pwn9.filter.util.tag.TagRegistry;
 import org.bukkit.ChatColor;
@@ -34,7 +35,7 @@ import org.bukkit.ChatColor;
  * @version $Id: $Id
  */
 
-class Notify implements Action {
+class Notify implements ReadOnlyAction {
     private final String permissionString;
     private final String messageString;
 
@@ -24,6 +24,7 @@ import com.pwn9.filter.engine.FilterService;
 import com.pwn9.filter.engine.api.Action;
 import com.pwn9.filter.engine.api.FilterContext;
 import com.pwn9.filter.engine.api.MessageAuthor;
+import com.pwn9.filter.engine.api.ReadOnlyAction;
 import org.bukkit.ChatColor;
 
 /**
@@ -36,7 +37,7 @@ import org.bukkit.ChatColor;
  * @version $Id: $Id
  */
 
-class Burn implements Action {
+class Burn implements ReadOnlyAction {
     // Default message to apply to this burn action
     private static String defaultMessage = "";
     // Message to apply to this burn action
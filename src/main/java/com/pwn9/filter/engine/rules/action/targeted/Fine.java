@@ -23,6 +23,7 @@ package com.pwn9.filter.engine.rules.action.targeted;
 import com.pwn9.filter.engine.FilterService;
 import com.pwn9.filter.engine.api.Action;
 import com.pwn9.filter.engine.api.FilterContext;
+import com.pwn9.filter.engine.api.ReadOnlyAction;
 import com.pwn9.filter.engine.rules.action.InvalidActionException;
 import org.bukkit.ChatColor;
 
@@ -33,7 +34,7 @@ import org.bukkit.ChatColor;
  * @version $Id: $Id
  */
 
-class Fine implements Action {
+class Fine implements ReadOnlyAction {
 
     // Default message to apply to this burn action
     private static String defaultMessage = "";
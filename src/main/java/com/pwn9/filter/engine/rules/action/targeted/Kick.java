@@ -23,6 +23,7 @@ package com.pwn9.filter.engine.rules.action.targeted;
 import com.pwn9.filter.engine.FilterService;
 import com.pwn9.filter.engine.api.Action;
 import com.pwn9.filter.engine.api.FilterContext;
+import com.pwn9.filter.engine.api.ReadOnlyAction;
 import org.bukkit.ChatColor;
 
 import static com.pwn9.filter.util.tag.TagRegistry.replaceTags;
@@ -34,7 +35,7 @@ import static com.pwn9.filter.util.tag.TagRegistry.replaceTags;
  * @version $Id: $Id
  */
 @SuppressWarnings("UnusedDeclaration")
-class Kick implements Action {
+class Kick implements ReadOnlyAction {
     // Default message to apply to this burn action
     private static String defaultMessage = "";
     // Message to apply to this kick action
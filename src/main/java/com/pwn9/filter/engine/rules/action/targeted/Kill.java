@@ -23,8 +23,9 @@ package com.pwn9.filter.engine.rules.action.targeted;
 import com.pwn9.filter.engine.FilterService;
 import com.pwn9.filter.engine.api.Action;
 import com.pwn9.filter.engine.api.FilterContext;
+import com.pwn9.filter.engine.api.ReadOnlyAction;
 
-class Kill implements Action {
+class Kill implements ReadOnlyAction {
     // Default message to apply to this burn action
     private static String defaultMessage = "";
     // Message to apply to this kick action
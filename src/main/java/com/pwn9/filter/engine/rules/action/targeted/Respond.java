@@ -24,6 +24,7 @@ import com.google.common.collect.ImmutableList;
 import com.pwn9.filter.engine.FilterService;
 import com.pwn9.filter.engine.api.Action;
 import com.pwn9.filter.engine.api.FilterContext;
+import com.pwn9.filter.engine.api.ReadOnlyAction;
 import com.pwn9.filter.util.tag.TagRegistry;
 import org.bukkit.ChatColor;
 
@@ -38,7 +39,7 @@ import java.util.stream.Collectors;
  * @version $Id: $Id
  */
 @SuppressWarnings("UnusedDeclaration")
-public class Respond implements Action {
+public class Respond implements ReadOnlyAction {
     private final List<String> messageStrings;
 
     private Respond(List<String> messageStrings) {
@@ -24,6 +24,7 @@ import com.google.common.collect.ImmutableList;
 import com.pwn9.filter.engine.FilterService;
 import com.pwn9.filter.engine.api.Action;
 import com.pwn9.filter.engine.api.FilterContext;
+import com.pwn9.filter.engine.api.ReadOnlyAction;
 import com.pwn9.filter.engine.rules.action.InvalidActionException;
 import com.pwn9.filter.util.tag.TagRegistry;
 import org.bukkit.ChatColor;
@@ -47,7 +48,7 @@ import java.util.stream.Stream;
  * @version $Id: $Id
  */
 
-class RespondFile implements Action {
+class RespondFile implements ReadOnlyAction {
     private final List<String> messageStrings;
 
     private RespondFile(List<String> messageStrings) {
@@ -24,6 +24,7 @@ import com.pwn9.filter.bukkit.BukkitPlayer;
 import com.pwn9.filter.engine.FilterService;
 import com.pwn9.filter.engine.api.Action;
 import com.pwn9.filter.engine.api.FilterContext;
+import com.pwn9.filter.engine.api.ReadOnlyAction;
 import com.pwn9.filter.util.tag.TagRegistry;
 import org.bukkit.ChatColor;
 
@@ -34,7 +35,7 @@ import org.bukkit.ChatColor;
  * @version $Id: $Id
  */
 
-class Warn implements Action {
+class Warn implements ReadOnlyAction {
     // Default message to apply to this burn action
     private static String defaultMessage = "";
     // Message to apply to this warn action
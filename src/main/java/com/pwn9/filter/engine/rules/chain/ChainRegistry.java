@@ -0,0 +1,122 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package com.pwn9.filter.engine.rules.chain;
+
+import com.google.common.collect.MapMaker;
+import com.pwn9.filter.engine.rules.Rule;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the compiled {@link RuleChain} of each rule file, so that every
+ * client that uses the same file (eg: the chat and command listeners both
+ * use chat.txt) gets the same chain, instead of parsing it again.
+ * <p>
+ * It also keeps every compiled {@link Rule}, by a key describing everything
+ * that went into it (its id, description, expanded pattern, engine,
+ * conditions and actions).  A file included by several rule files, with the
+ * same shortcuts and actions, becomes the same Rule objects in each chain.
+ * Rules are only kept while a chain uses them.
+ */
+public class ChainRegistry {
+
+    private final ConcurrentHashMap<String, RuleChain> chains = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Rule> rules = new MapMaker().concurrencyLevel(2).weakValues().makeMap();
+
+    /**
+     * @param name The name of the rule file, as given to
+     *             {@link com.pwn9.filter.engine.FilterConfig#getRuleFile(String)}
+     * @return The chain compiled from the file, or null if it hasn't been.
+     */
+    public RuleChain get(String name) {
+        return chains.get(name);
+    }
+
+    /**
+     * Keep a newly compiled chain, unless one has already been registered
+     * for the same file.
+     *
+     * @return The registered chain.
+     */
+    public RuleChain register(String name, RuleChain chain) {
+        RuleChain existing = chains.putIfAbsent(name, chain);
+        return (existing != null) ? existing : chain;
+    }
+
+    /**
+     * Replace the chains of the given files, after a reload.
+     */
+    public void replace(Map<String, RuleChain> newChains) {
+        chains.putAll(newChains);
+    }
+
+    /**
+     * Forget the chains of every file not in the set.
+     */
+    public void retain(Set<String> names) {
+        chains.keySet().retainAll(names);
+    }
+
+    /**
+     * @return The names of the rule files that have a chain.
+     */
+    public Set<String> getNames() {
+        return Collections.unmodifiableSet(chains.keySet());
+    }
+
+    /**
+     * @param key The description of a rule.
+     * @return The Rule with that description, if a chain still uses one.
+     */
+    public Rule getRule(String key) {
+        return rules.get(key);
+    }
+
+    /**
+     * @param key  The description of the rule.
+     * @param rule A newly compiled Rule.
+     * @return The Rule already kept for the key, or the new rule if there
+     * wasn't one.
+     */
+    public Rule intern(String key, Rule rule) {
+        Rule existing = rules.putIfAbsent(key, rule);
+        return (existing != null) ? existing : rule;
+    }
+
+    /**
+     * Forget the kept Rules, so that the next chains are built from scratch
+     * (eg: after the config, and so the actions' defaults, have changed).
+     */
+    public void clearRules() {
+        rules.clear();
+    }
+
+    /**
+     * Forget all chains and Rules.
+     */
+    public void clear() {
+        chains.clear();
+        rules.clear();
+    }
+}
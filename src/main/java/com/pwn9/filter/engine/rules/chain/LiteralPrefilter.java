@@ -0,0 +1,107 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.engine.rules.chain;
+
+import com.pwn9.filter.engine.rules.Rule;
+import com.pwn9.filter.util.AhoCorasick;
+import com.pwn9.filter.util.RegexLiterals;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decides which rules in a chain could possibly match a message, before
+ * running any of their regexes.
+ * <p>
+ * Most rules can only match if the message contains some literal text (eg:
+ * "fudge" in "fudge(ing)?").  The literals for every rule in the chain are
+ * loaded into one automaton, so a single pass over the message tells us which
+ * rules are worth testing.  Rules that we can't get literals from, and nested
+ * chains, are always tested.
+ */
+final class LiteralPrefilter {
+
+    private final AhoCorasick automaton;
+    private final BitSet filtered;
+
+    private LiteralPrefilter(AhoCorasick automaton, BitSet filtered) {
+        this.automaton = automaton;
+        this.filtered = filtered;
+    }
+
+    /**
+     * Build a prefilter for the given chain entries.
+     *
+     * @param chain The entries of the chain, in order.
+     * @return A prefilter, or null if none of the entries can be filtered.
+     */
+    @Nullable
+    static LiteralPrefilter build(List<ChainEntry> chain) {
+        AhoCorasick.Builder builder = new AhoCorasick.Builder();
+        BitSet filtered = new BitSet(chain.size());
+
+        for (int i = 0; i < chain.size(); i++) {
+            ChainEntry entry = chain.get(i);
+            if (!(entry instanceof Rule)) continue;
+            Rule rule = (Rule) entry;
+            if (rule.getPattern() == null) continue;
+            Set<String> literals = RegexLiterals.requiredLiterals(rule.getPattern().pattern());
+            if (literals == null) continue;
+
+            for (String literal : literals) {
+                builder.add(literal, i);
+            }
+            filtered.set(i);
+        }
+
+        if (filtered.isEmpty()) return null;
+        return new LiteralPrefilter(builder.build(), filtered);
+    }
+
+    /**
+     * @param index Position of the entry in the chain
+     * @return true if the entry at this index is subject to the prefilter.
+     */
+    boolean isFiltered(int index) {
+        return filtered.get(index);
+    }
+
+    /**
+     * Find the filtered entries that could match the given text.
+     *
+     * @param text  Message text
+     * @param hits  BitSet to receive the positions of entries that may match.
+     *              It is cleared first.
+     */
+    void scan(CharSequence text, BitSet hits) {
+        hits.clear();
+        automaton.scan(text, hits);
+    }
+
+    /**
+     * @return The number of entries that are subject to the prefilter.
+     */
+    int filteredCount() {
+        return filtered.cardinality();
+    }
+}
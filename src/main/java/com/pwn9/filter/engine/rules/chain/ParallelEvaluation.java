@@ -0,0 +1,99 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package com.pwn9.filter.engine.rules.chain;
+
+import com.pwn9.filter.engine.FilterService;
+import com.pwn9.filter.engine.api.FilterContext;
+import com.pwn9.filter.engine.rules.Rule;
+import com.pwn9.filter.util.LimitedRegexCharSequence;
+import com.pwn9.filter.util.MatchBudget;
+
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Tests the patterns of a list of rules against a message on a
+ * {@link java.util.concurrent.ForkJoinPool}.  The list is split in half
+ * until each task has one rule.
+ * <p>
+ * Each rule gets its own {@link MatchBudget}, forked from the message's
+ * budget, so they all share the message deadline.  Nothing in the
+ * {@link FilterContext} is changed; the caller applies the results.
+ */
+final class ParallelEvaluation extends RecursiveAction {
+
+    private final List<Rule> rules;
+    private final FilterContext context;
+    private final FilterService filterService;
+    private final MatchBudget budget;
+    private final Rule.Result[] results;
+    private final MatchBudget[] budgets;
+    private final int from;
+    private final int to;
+
+    ParallelEvaluation(List<Rule> rules, FilterContext context, FilterService filterService,
+                       MatchBudget budget) {
+        this(rules, context, filterService, budget,
+                new Rule.Result[rules.size()], new MatchBudget[rules.size()], 0, rules.size());
+    }
+
+    private ParallelEvaluation(List<Rule> rules, FilterContext context, FilterService filterService,
+                               MatchBudget budget, Rule.Result[] results, MatchBudget[] budgets,
+                               int from, int to) {
+        this.rules = rules;
+        this.context = context;
+        this.filterService = filterService;
+        this.budget = budget;
+        this.results = results;
+        this.budgets = budgets;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from == 1) {
+            MatchBudget forked = budget.fork();
+            budgets[from] = forked;
+            results[from] = rules.get(from).evaluate(context, filterService,
+                    new LimitedRegexCharSequence("", forked));
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        invokeAll(new ParallelEvaluation(rules, context, filterService, budget, results, budgets, from, mid),
+                new ParallelEvaluation(rules, context, filterService, budget, results, budgets, mid, to));
+    }
+
+    /**
+     * @param index Position of the rule in the list
+     * @return The result of testing the rule.
+     */
+    Rule.Result getResult(int index) {
+        return results[index];
+    }
+
+    /**
+     * @param index Position of the rule in the list
+     * @return The budget used to test the rule.
+     */
+    MatchBudget getBudget(int index) {
+        return budgets[index];
+    }
+}
@@ -23,18 +23,33 @@ package com.pwn9.filter.engine.rules.chain;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multimap;
+import com.pwn9.filter.engine.FilterConfig;
 import com.pwn9.filter.engine.FilterService;
 import com.pwn9.filter.engine.api.Action;
+import com.pwn9.filter.engine.api.EnhancedString;
 import com.pwn9.filter.engine.api.FilterContext;
+import com.pwn9.filter.engine.api.StatelessAction;
 import com.pwn9.filter.engine.rules.Condition;
 import com.pwn9.filter.engine.rules.Rule;
 
+import java.io.File;
 import java.io.InvalidObjectException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 
 
 /**
@@ -51,18 +66,44 @@ import java.util.TreeSet;
  */
 public class RuleChain implements Chain, ChainEntry {
 
+    private static final AtomicLong versions = new AtomicLong();
+    // More permission profiles than this are worked out, but not kept.
+    private static final int MAX_PROFILES = 64;
+
     private final ImmutableList<ChainEntry> chain;
     private final ImmutableMultimap<String, Action> actionGroups;
     private final ImmutableMultimap<String, Condition> conditionGroups;
     private final int ruleCount;
     private final String configName;
+    private final ImmutableSet<Path> sources;
+    private final LiteralPrefilter prefilter;
+    private final int[] runEnds;
+    private final long version;
+    private final boolean cacheable;
+    private final String[] permissions;
+    private final boolean userConditions;
+    private final boolean permissionRules;
+    private final ConcurrentHashMap<BitSet, BitSet> profiles = new ConcurrentHashMap<>();
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
 
 
     public RuleChain(List<ChainEntry> chain, String configName,
                      Multimap<String, Action> actionGroups,
                      Multimap<String, Condition> conditionGroups) {
+        this(chain, configName, actionGroups, conditionGroups, Collections.emptySet());
+    }
+
+    /**
+     * @param sources The files this chain was built from: the rule file, and
+     *                any files it included, or took shortcuts from.
+     */
+    public RuleChain(List<ChainEntry> chain, String configName,
+                     Multimap<String, Action> actionGroups,
+                     Multimap<String, Condition> conditionGroups,
+                     Collection<Path> sources) {
         this.chain = ImmutableList.copyOf(chain);
         this.configName = configName;
+        this.sources = ImmutableSet.copyOf(sources);
         this.actionGroups = ImmutableMultimap.copyOf(actionGroups);
         this.conditionGroups = ImmutableMultimap.copyOf(conditionGroups);
 
@@ -75,6 +116,54 @@ public class RuleChain implements Chain, ChainEntry {
         }
         ruleCount = count;
 
+        prefilter = LiteralPrefilter.build(this.chain);
+        runEnds = findReadOnlyRuns(this.chain);
+
+        version = versions.incrementAndGet();
+        cacheable = checkCacheable(this.chain);
+
+        Set<String> perms = getConditionsMatching("permission");
+        permissions = perms.toArray(new String[perms.size()]);
+        userConditions = !getConditionsMatching("user").isEmpty();
+        permissionRules = this.chain.stream().anyMatch(e -> e instanceof Rule &&
+                ((Rule) e).getConditions().stream().anyMatch(Condition::isPermission));
+    }
+
+    /*
+     * Find runs of two or more consecutive rules that can't change the
+     * message.  runEnds[i] is the index after the end of the run starting at
+     * i, or 0 if no run starts there.
+     */
+    private static int[] findReadOnlyRuns(List<ChainEntry> chain) {
+        int[] ends = null;
+        int i = 0;
+        while (i < chain.size()) {
+            int j = i;
+            while (j < chain.size() && chain.get(j) instanceof Rule && ((Rule) chain.get(j)).isReadOnly()) {
+                j++;
+            }
+            if (j - i >= 2) {
+                if (ends == null) ends = new int[chain.size()];
+                ends[i] = j;
+            }
+            i = Math.max(j, i + 1);
+        }
+        return ends;
+    }
+
+    private static boolean checkCacheable(List<ChainEntry> chain) {
+        for (ChainEntry entry : chain) {
+            if (entry instanceof RuleChain) {
+                if (!((RuleChain) entry).isCacheable()) return false;
+            } else if (entry instanceof Rule) {
+                for (Action a : ((Rule) entry).getActions()) {
+                    if (!(a instanceof StatelessAction)) return false;
+                }
+            } else {
+                return false;
+            }
+        }
+        return true;
     }
 
     public String getConfigName() {
@@ -85,6 +174,111 @@ public class RuleChain implements Chain, ChainEntry {
         return ruleCount;
     }
 
+    /**
+     * @return The absolute, normalized paths of the files this chain was
+     * built from.
+     */
+    public Set<Path> getSources() {
+        return sources;
+    }
+
+    /**
+     * @param files Absolute, normalized paths of files that have changed.
+     * @return true if this chain was built from any of the files.
+     */
+    public boolean dependsOn(Collection<Path> files) {
+        for (Path file : files) {
+            if (sources.contains(file)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return A number that is different for every RuleChain that has been
+     * built, so a reloaded chain never shares results with the old one.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return true if every action in this chain (and the chains it
+     * includes) is a {@link StatelessAction}, so that its results can be
+     * kept in the {@link VerdictCache}.
+     */
+    public boolean isCacheable() {
+        return cacheable;
+    }
+
+    /**
+     * @return The permissions checked by conditions in this chain, sorted.
+     */
+    String[] getPermissions() {
+        return permissions;
+    }
+
+    /**
+     * @return true if any rule in this chain has a "user" condition.
+     */
+    boolean hasUserConditions() {
+        return userConditions;
+    }
+
+    /**
+     * Find which of this chain's {@link #getPermissions() permissions} the
+     * author of the message has.
+     *
+     * @param context The message
+     * @return A BitSet, with bit i set if the author has permission i.
+     */
+    BitSet getFingerprint(FilterContext context) {
+        BitSet fingerprint = new BitSet(permissions.length);
+        fillFingerprint(context, fingerprint);
+        return fingerprint;
+    }
+
+    private void fillFingerprint(FilterContext context, BitSet fingerprint) {
+        fingerprint.clear();
+        for (int i = 0; i < permissions.length; i++) {
+            if (context.authorHasPermission(permissions[i])) fingerprint.set(i);
+        }
+    }
+
+    /*
+     * Find the rules in this chain that can't apply to the author of the
+     * message, because they don't pass the rule's permission conditions.
+     * Authors with the same permissions get the same answer, so it is only
+     * worked out once for each permission profile.
+     */
+    private BitSet getExcludedRules(FilterContext context, BitSet scratch) {
+        fillFingerprint(context, scratch);
+        BitSet excluded = profiles.get(scratch);
+        if (excluded != null) return excluded;
+
+        BitSet fingerprint = (BitSet) scratch.clone();
+
+        Predicate<String> hasPermission = perm -> {
+            int i = Arrays.binarySearch(permissions, perm);
+            return i >= 0 && fingerprint.get(i);
+        };
+        excluded = new BitSet(chain.size());
+        for (int i = 0; i < chain.size(); i++) {
+            ChainEntry entry = chain.get(i);
+            if (entry instanceof Rule && !((Rule) entry).checkPermissionConditions(hasPermission)) {
+                excluded.set(i);
+            }
+        }
+        if (profiles.size() < MAX_PROFILES) profiles.putIfAbsent(fingerprint, excluded);
+        return excluded;
+    }
+
+    /**
+     * @return The number of permission profiles this chain has seen.
+     */
+    public int getProfileCount() {
+        return profiles.size();
+    }
+
     /**
      * Iterate over the chain in order, checking the Rule pattern against the
      * current message.  If the text pattern matches, test the rule conditions, to
@@ -92,17 +286,132 @@ public class RuleChain implements Chain, ChainEntry {
      * actions in sequential order.  If the Rule sets the stop=true of the FilterTask,
      * stop processing rules.  If not, continue along the rule chain, checking the
      * (possibly modified) message against subsequent rules.
+     * <p>
+     * Rules that can't match the current message, because it doesn't contain
+     * any of the literal text their pattern requires, are skipped.  If a rule
+     * modifies the message, it is re-scanned before testing the next rule.
+     * <p>
+     * If the regexes have used up the message timeout, the remaining rules
+     * are skipped.
+     * <p>
+     * If the message is at least {@link FilterConfig#getParallelMinLength()}
+     * chars long, the patterns of each run of read-only rules (see
+     * {@link Rule#isReadOnly()}) are tested in parallel.  The matching rules
+     * are then applied in order, so the result is the same as testing them
+     * one at a time.
+     * <p>
+     * Rules whose permission conditions rule out the author are skipped
+     * without testing them.
      */
     public void apply(FilterContext context, FilterService filterService) throws IllegalStateException {
+        // Use this thread's scratch space, unless an action has called back
+        // into this chain while it is already being applied.
+        Scratch work = scratch.get();
+        if (work.inUse) {
+            apply(context, filterService, new Scratch());
+        } else {
+            work.inUse = true;
+            try {
+                apply(context, filterService, work);
+            } finally {
+                work.inUse = false;
+            }
+        }
+    }
 
-        for (ChainEntry entry : chain) {
-            if (context.isAborted()) break;
-            entry.apply(context, filterService);
+    private void apply(FilterContext context, FilterService filterService, Scratch work) {
+
+        BitSet candidates = work.candidates;
+        EnhancedString scanned = null;
+        int minLength = filterService.getConfig().getParallelMinLength();
+        boolean parallel = runEnds != null && minLength > 0 &&
+                context.getModifiedText().length() >= minLength;
+        BitSet excluded = permissionRules ? getExcludedRules(context, work.fingerprint) : null;
+
+        for (int i = 0; i < chain.size(); i++) {
+            if (context.isAborted() || context.isMatchTimedOut()) break;
+
+            boolean runStart = parallel && runEnds[i] > 0;
+
+            if (prefilter != null && (runStart || prefilter.isFiltered(i))) {
+                EnhancedString current = context.getModifiedMessage();
+                if (current != scanned) {
+                    prefilter.scan(context.getModifiedText(), candidates);
+                    scanned = current;
+                }
+            }
+
+            if (runStart) {
+                applyRun(i, runEnds[i], candidates, excluded, context, filterService);
+                i = runEnds[i] - 1;
+                continue;
+            }
+
+            if (excluded != null && excluded.get(i)) continue;
+            if (prefilter != null && prefilter.isFiltered(i) && !candidates.get(i)) continue;
+
+            chain.get(i).apply(context, filterService);
         }
     }
 
+    /*
+     * Test the rules from start to end (which must all be read-only) in
+     * parallel, and then apply the ones that matched, in order.
+     */
+    private void applyRun(int start, int end, BitSet candidates, BitSet excluded,
+                          FilterContext context, FilterService filterService) {
+        List<Rule> rules = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++) {
+            Rule rule = (Rule) chain.get(i);
+            if ((excluded == null || !excluded.get(i)) &&
+                    (prefilter == null || !prefilter.isFiltered(i) || candidates.get(i)) &&
+                    rule.checkCheapConditions(context)) {
+                rules.add(rule);
+            }
+        }
+        if (rules.isEmpty()) return;
+
+        // Make the text views now, so the other threads only read them.
+        context.getModifiedText();
+        context.getFoldedText();
+        ParallelEvaluation evaluation = new ParallelEvaluation(rules, context, filterService,
+                context.getRegexText(filterService.getConfig()).getBudget());
+        if (rules.size() == 1) {
+            evaluation.invoke(); // Just run it on this thread.
+        } else {
+            ForkJoinPool.commonPool().invoke(evaluation);
+        }
+
+        for (int i = 0; i < rules.size(); i++) {
+            if (context.isAborted()) return;
+            switch (evaluation.getResult(i)) {
+                case MATCHED:
+                    rules.get(i).applyMatch(context, filterService);
+                    break;
+                case SKIPPED:
+                    context.setIncomplete();
+                    // Not kept from above: an action may have filtered another
+                    // message, which takes this thread's budget.
+                    context.getRegexText(filterService.getConfig()).getBudget()
+                            .merge(evaluation.getBudget(i));
+                    if (context.isMatchTimedOut()) return;
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Apply the chain to the message, and then log / notify the results.
+     * <p>
+     * If the chain is {@link #isCacheable() cacheable}, the result may come
+     * from the {@link VerdictCache}, instead of testing every rule again.
+     */
     public void execute(FilterContext context, FilterService filterService) {
-        apply(context, filterService);
+        if (cacheable) {
+            filterService.getVerdictCache().apply(this, context, filterService);
+        } else {
+            apply(context, filterService);
+        }
 
         if (!context.getMatchedRules().isEmpty()) {
 
@@ -163,11 +472,22 @@ public class RuleChain implements Chain, ChainEntry {
         return conditionGroups;
     }
 
+    /*
+     * Work space for apply(), kept per thread so that a message which
+     * matches nothing doesn't allocate anything.
+     */
+    private static final class Scratch {
+        final BitSet candidates = new BitSet();
+        final BitSet fingerprint = new BitSet();
+        boolean inUse;
+    }
+
     public static final class Builder {
 
         private final List<ChainEntry> chain;
         private final Multimap<String, Action> actionGroups;
         private final Multimap<String, Condition> conditionGroups;
+        private final Set<Path> sources = new LinkedHashSet<>();
         private String configName;
 
         public Builder() {
@@ -192,6 +512,15 @@ public class RuleChain implements Chain, ChainEntry {
             this.configName = s;
         }
 
+        /**
+         * Record a file that this chain is built from.
+         *
+         * @param file A rule, include or shortcut file.
+         */
+        public void addSource(File file) {
+            sources.add(file.toPath().toAbsolutePath().normalize());
+        }
+
         public void addConditionGroup(String name, List<Condition> cGroup) throws InvalidObjectException {
             if (name != null && cGroup != null)
                 if (conditionGroups.get(name).isEmpty()) {
@@ -221,7 +550,7 @@ public class RuleChain implements Chain, ChainEntry {
         }
 
         public RuleChain build() {
-            return new RuleChain(chain, configName, actionGroups, conditionGroups);
+            return new RuleChain(chain, configName, actionGroups, conditionGroups, sources);
         }
     }
 
@@ -0,0 +1,207 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package com.pwn9.filter.engine.rules.chain;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.pwn9.filter.engine.FilterService;
+import com.pwn9.filter.engine.api.EnhancedString;
+import com.pwn9.filter.engine.api.FilterContext;
+import com.pwn9.filter.engine.api.MessageAuthor;
+import com.pwn9.filter.engine.api.StatsTracker;
+import com.pwn9.filter.engine.rules.Rule;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * Remembers what a {@link RuleChain} did to a message, so that when the same
+ * message is sent again (signs, anvil renames, macros, spam...) the result
+ * can be replayed instead of testing every rule again.
+ * <p>
+ * Only chains that are {@link RuleChain#isCacheable() cacheable} are stored.
+ * The key is the client, the chain version, the raw message, and which of
+ * the permissions used by the chain's conditions the author has.  If the
+ * chain has "user" conditions, the author's name is part of the key, too.
+ * Results that depended on a timeout or a quarantined rule, or that turned
+ * on logging, are not stored.
+ * <p>
+ * The cache is disabled (size 0) until {@link #setMaximumSize(long)} is
+ * called.  When full, the least-recently used results are dropped.
+ */
+public class VerdictCache {
+
+    private volatile long maximumSize;
+    private volatile Cache<Key, Verdict> cache;
+
+    public VerdictCache() {
+        setMaximumSize(0);
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Set the number of results to keep.  This empties the cache.
+     *
+     * @param maximumSize Number of results to keep, or 0 to disable.
+     */
+    public void setMaximumSize(long maximumSize) {
+        this.maximumSize = Math.max(0, maximumSize);
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(this.maximumSize)
+                .recordStats()
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return maximumSize > 0;
+    }
+
+    /**
+     * Apply the chain to the message, or replay its result if we have seen
+     * this message before.
+     *
+     * @param chain         A cacheable {@link RuleChain}
+     * @param context       The message
+     * @param filterService The {@link FilterService}
+     */
+    void apply(RuleChain chain, FilterContext context, FilterService filterService) {
+        Cache<Key, Verdict> current = cache;
+        if (maximumSize == 0) {
+            chain.apply(context, filterService);
+            return;
+        }
+
+        Key key = new Key(chain, context);
+        Verdict verdict = current.getIfPresent(key);
+        if (verdict != null) {
+            verdict.replay(context, filterService);
+            return;
+        }
+
+        chain.apply(context, filterService);
+        if (!context.isIncomplete() && !context.loggingOn()) {
+            current.put(key, new Verdict(context));
+        }
+    }
+
+    /**
+     * Forget all stored results.  Called when rules are reloaded.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * @return Hit / miss counts since the cache was last resized.
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    private static final class Key {
+        private final String client;
+        private final long version;
+        private final Class<?> messageType;
+        private final String message;
+        private final BitSet permissions;
+        @Nullable
+        private final String author;
+        private final int hash;
+
+        Key(RuleChain chain, FilterContext context) {
+            MessageAuthor messageAuthor = context.getAuthor();
+            EnhancedString original = context.getOriginalMessage();
+            client = context.getFilterClient().getShortName();
+            version = chain.getVersion();
+            messageType = original.getClass();
+            message = original.getRaw();
+
+            permissions = chain.getFingerprint(context);
+            author = chain.hasUserConditions() ? messageAuthor.getName().toLowerCase() : null;
+
+            hash = Objects.hash(client, version, messageType, message, permissions, author);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return hash == other.hash && version == other.version &&
+                    client.equals(other.client) &&
+                    messageType == other.messageType &&
+                    message.equals(other.message) &&
+                    permissions.equals(other.permissions) &&
+                    Objects.equals(author, other.author);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * The part of a FilterContext that the rules of a cacheable chain can
+     * change.
+     */
+    private static final class Verdict {
+        private final boolean cancelled;
+        private final boolean aborted;
+        @Nullable
+        private final EnhancedString modifiedMessage;
+        @Nullable
+        private final Pattern pattern;
+        private final List<Rule> matchedRules;
+
+        Verdict(FilterContext context) {
+            cancelled = context.isCancelled();
+            aborted = context.isAborted();
+            modifiedMessage = context.getModifiedMessage() == context.getOriginalMessage() ?
+                    null : context.getModifiedMessage();
+            pattern = context.getPattern();
+            matchedRules = new ArrayList<>(context.getMatchedRules());
+        }
+
+        void replay(FilterContext context, FilterService filterService) {
+            StatsTracker statsTracker = filterService.getStatsTracker();
+            for (Rule rule : matchedRules) {
+                if (statsTracker != null) statsTracker.incrementMatch();
+                context.setRule(rule);
+            }
+            context.setPattern(pattern);
+            if (modifiedMessage != null) context.setModifiedMessage(modifiedMessage);
+            if (aborted) context.setAborted();
+            if (cancelled) context.setCancelled();
+        }
+    }
+}
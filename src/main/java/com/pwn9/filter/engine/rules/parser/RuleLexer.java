@@ -0,0 +1,190 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package com.pwn9.filter.engine.rules.parser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a rules file into statements, in one pass over its text.  (See
+ * docs/grammar.txt)
+ * <p>
+ * Lines are trimmed, and comment lines (starting with a #) are skipped.  A
+ * line ending in &lt;&lt;EOF starts a multi-line statement, which continues
+ * until a line that is just EOF.
+ * <p>
+ * Line numbers are counted the way the parser has always reported them:
+ * they start at 1, and are incremented after every line that is read, so
+ * after reading a statement, {@link #getLineNumber()} is one more than the
+ * line the statement ended on.
+ */
+class RuleLexer {
+
+    private final InputStream in;
+    private final MessageDigest digest;
+    private String text; // The whole file, once it has been read.
+    private int position;
+    private int lineNumber = 1;
+
+    /**
+     * @param in     The stream to read.  It is read completely, and closed,
+     *               when the first statement is read.
+     * @param digest A digest to update with the bytes of the stream, or null.
+     */
+    RuleLexer(InputStream in, MessageDigest digest) {
+        this.in = in;
+        this.digest = digest;
+    }
+
+    /**
+     * Lexer for a string, for testing.
+     */
+    RuleLexer(String text) {
+        this.in = null;
+        this.digest = null;
+        this.text = text;
+    }
+
+    int getLineNumber() {
+        return lineNumber;
+    }
+
+    private void load() throws IOException {
+        if (text != null) return;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(in.available(), 1024));
+        try (InputStream stream = in) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = stream.read(buffer)) != -1) {
+                bytes.write(buffer, 0, n);
+            }
+        }
+        byte[] data = bytes.toByteArray();
+        if (digest != null) digest.update(data);
+        // Rule files have always been read in the platform's charset.
+        text = new String(data, Charset.defaultCharset());
+    }
+
+    /*
+     * Read the next line, trimmed.  A line ends at \n, \r or \r\n, or the
+     * end of the text.
+     */
+    private String nextLine() {
+        final String s = text;
+        final int length = s.length();
+        if (position >= length) return null;
+
+        int start = position;
+        int end = start;
+        while (end < length) {
+            char c = s.charAt(end);
+            if (c == '\n' || c == '\r') break;
+            end++;
+        }
+        position = end;
+        if (end < length) {
+            position++;
+            if (s.charAt(end) == '\r' && position < length && s.charAt(position) == '\n') position++;
+        }
+        lineNumber++;
+
+        // The same as String.trim()
+        while (start < end && s.charAt(start) <= ' ') start++;
+        while (end > start && s.charAt(end - 1) <= ' ') end--;
+        return s.substring(start, end);
+    }
+
+    /*
+     * A comment is a line starting with #.  (Historically, it was matched
+     * with "^#.*", which doesn't match a line with a Unicode line separator
+     * in it, so neither does this.)
+     */
+    private static boolean isComment(String line) {
+        if (line.isEmpty() || line.charAt(0) != '#') return false;
+        for (int i = 1; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\u0085' || c == '\u2028' || c == '\u2029') return false;
+        }
+        return true;
+    }
+
+    /**
+     * Read the next statement: a line that isn't a comment.  Blank lines
+     * are returned as "", as they end a section.
+     * <p>
+     * If the line ends with &lt;&lt;EOF, the lines that follow, up to one
+     * that is just EOF, are appended to it, each followed by a newline, and
+     * the last character is removed.  Comment lines are skipped, even here,
+     * and another line ending with &lt;&lt;EOF starts the statement again.
+     * If the file ends first, the statement is returned as it is.
+     *
+     * @return The statement, or null at the end of the file.
+     * @throws IOException if the stream couldn't be read.
+     */
+    String readLine() throws IOException {
+        load();
+
+        StringBuilder result = null;
+        String line;
+
+        while ((line = nextLine()) != null) {
+            if (isComment(line)) continue;
+
+            if (result != null && line.equals("EOF")) {
+                result.setLength(result.length() - 1);
+                break;
+            } else if (line.endsWith("<<EOF")) {
+                result = new StringBuilder(line.length() + 64);
+                result.append(line, 0, line.length() - 5);
+            } else if (result != null) {
+                result.append(line).append('\n');
+            } else {
+                return line;
+            }
+        }
+        return (result == null) ? null : result.toString();
+    }
+
+    /**
+     * Read statements until the end of the file, or a blank line.
+     *
+     * @return A List of NumberedLine's containing the lines for this section.
+     * @throws IOException if the stream couldn't be read.
+     */
+    List<NumberedLine> readSection() throws IOException {
+        List<NumberedLine> result = new ArrayList<>();
+        String line;
+
+        while ((line = readLine()) != null) {
+            if (line.isEmpty()) {
+                break;
+            } else {
+                result.add(new NumberedLine(getLineNumber(), line));
+            }
+        }
+        return result;
+    }
+}
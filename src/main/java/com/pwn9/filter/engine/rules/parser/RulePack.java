@@ -0,0 +1,604 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package com.pwn9.filter.engine.rules.parser;
+
+import com.pwn9.filter.engine.api.Action;
+import com.pwn9.filter.engine.rules.Condition;
+import com.pwn9.filter.engine.rules.MatchEngine;
+import com.pwn9.filter.engine.rules.Rule;
+import com.pwn9.filter.engine.rules.action.ActionFactory;
+import com.pwn9.filter.engine.rules.action.InvalidActionException;
+import com.pwn9.filter.engine.rules.chain.ChainRegistry;
+import com.pwn9.filter.engine.rules.chain.InvalidChainException;
+import com.pwn9.filter.engine.rules.chain.RuleChain;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidObjectException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A rule file that has already been parsed, stored so that it can be loaded
+ * without parsing it again.
+ * <p>
+ * The pack holds each rule with its shortcuts expanded, and its conditions
+ * and actions as they appeared in the rule file (inline, or by reference to
+ * a group), along with the condition and action groups.  It also holds the
+ * SHA-256 hash of every file that was read to build the chain: the rule
+ * file, the files it includes, and its shortcut files.  A pack is only
+ * used if all of those files still have the same content.
+ * <p>
+ * Files in the rules directory are recorded by their path relative to it,
+ * so the same pack can be used by any server that has the same rule files.
+ * Loading a pack still compiles the patterns, and creates the actions with
+ * the {@link ActionFactory}, so it needs the same action tokens as parsing.
+ */
+public final class RulePack {
+
+    /**
+     * Packs written by any other version of the format are ignored.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int MAGIC = 0x50465250; // "PFRP"
+    private static final String DIGEST = "SHA-256";
+
+    // Kinds of Step
+    private static final byte CONDITION = 1;
+    private static final byte CONDITION_GROUP = 2;
+    private static final byte ACTION = 3;
+    private static final byte ACTION_GROUP = 4;
+
+    private final String configName;
+    private final String root; // The rule file, relative to the rules dir
+    private final long created;
+    private final Map<String, byte[]> sources; // Path (relative to the rules dir) -> hash
+    private final Map<String, List<Step>> conditionGroups;
+    private final Map<String, List<Step>> actionGroups;
+    private final List<RuleEntry> rules;
+
+    private RulePack(String configName, String root, long created, Map<String, byte[]> sources,
+                     Map<String, List<Step>> conditionGroups,
+                     Map<String, List<Step>> actionGroups, List<RuleEntry> rules) {
+        this.configName = configName;
+        this.root = root;
+        this.created = created;
+        this.sources = sources;
+        this.conditionGroups = conditionGroups;
+        this.actionGroups = actionGroups;
+        this.rules = rules;
+    }
+
+    public String getConfigName() {
+        return configName;
+    }
+
+    /**
+     * @return The time the rule file was parsed, in milliseconds since the
+     * epoch.
+     */
+    public long getCreated() {
+        return created;
+    }
+
+    public int ruleCount() {
+        return rules.size();
+    }
+
+    /**
+     * @param rulesDir The rules directory.
+     * @return The absolute paths of the files the chain was built from.
+     */
+    public List<Path> getSources(File rulesDir) {
+        List<Path> result = new ArrayList<>(sources.size());
+        for (String source : sources.keySet()) {
+            result.add(resolve(source, rulesDir));
+        }
+        return result;
+    }
+
+    /**
+     * Check that this pack was built from the rule file, and that none of
+     * the files it was built from have changed.
+     *
+     * @param ruleFile The rule file to be loaded.
+     * @param rulesDir The rules directory.
+     * @return true if the pack can be used instead of parsing the rule file.
+     * @throws IOException if one of the files couldn't be read.
+     */
+    public boolean isCurrent(File ruleFile, File rulesDir) throws IOException {
+        if (!root.equals(relativize(ruleFile.toPath(), rulesDir))) return false;
+
+        for (Map.Entry<String, byte[]> source : sources.entrySet()) {
+            File file = resolve(source.getKey(), rulesDir).toFile();
+            if (!file.isFile() || !Arrays.equals(source.getValue(), hash(file))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Build the RuleChain stored in this pack.
+     *
+     * @param actionFactory The factory to create the actions with.
+     * @param rulesDir      The rules directory.
+     * @return A new RuleChain, the same as parsing the rule file would
+     * produce.
+     * @throws InvalidChainException if a condition or action can no longer be
+     *                               created.
+     */
+    public RuleChain toChain(ActionFactory actionFactory, File rulesDir) throws InvalidChainException {
+        return toChain(actionFactory, rulesDir, null);
+    }
+
+    /**
+     * Build the RuleChain stored in this pack, reusing any identical Rules
+     * kept in the registry.
+     *
+     * @param actionFactory The factory to create the actions with.
+     * @param rulesDir      The rules directory.
+     * @param registry      The {@link ChainRegistry} to share Rules through,
+     *                      or null.
+     * @return A new RuleChain, the same as parsing the rule file would
+     * produce.
+     * @throws InvalidChainException if a condition or action can no longer be
+     *                               created.
+     */
+    public RuleChain toChain(ActionFactory actionFactory, File rulesDir, ChainRegistry registry)
+            throws InvalidChainException {
+        RuleChain.Builder builder = new RuleChain.Builder();
+        builder.setConfigName(configName);
+        for (Path source : getSources(rulesDir)) {
+            builder.addSource(source.toFile());
+        }
+
+        try {
+            for (Map.Entry<String, List<Step>> group : conditionGroups.entrySet()) {
+                List<Condition> conditions = new ArrayList<>(group.getValue().size());
+                for (Step step : group.getValue()) {
+                    conditions.add(step.newCondition());
+                }
+                builder.addConditionGroup(group.getKey(), conditions);
+            }
+            for (Map.Entry<String, List<Step>> group : actionGroups.entrySet()) {
+                List<Action> actions = new ArrayList<>(group.getValue().size());
+                for (Step step : group.getValue()) {
+                    actions.add(actionFactory.getAction(step.name, step.parameters));
+                }
+                builder.addActionGroup(group.getKey(), actions);
+            }
+
+            for (RuleEntry entry : rules) {
+                String key = null;
+                if (registry != null) {
+                    key = ruleKey(entry, conditionGroups, actionGroups);
+                    Rule shared = registry.getRule(key);
+                    if (shared != null) {
+                        builder.append(shared);
+                        continue;
+                    }
+                }
+                Rule rule = new Rule(entry.id, entry.description);
+                rule.setEngine(entry.engine);
+                rule.setPattern(entry.pattern);
+                for (Step step : entry.steps) {
+                    switch (step.kind) {
+                        case CONDITION:
+                            rule.addCondition(step.newCondition());
+                            break;
+                        case CONDITION_GROUP:
+                            rule.addConditions(builder.getConditionGroups().get(step.name));
+                            break;
+                        case ACTION:
+                            rule.addAction(actionFactory.getAction(step.name, step.parameters));
+                            break;
+                        case ACTION_GROUP:
+                            rule.addActions(builder.getActionGroups().get(step.name));
+                            break;
+                    }
+                }
+                builder.append(registry != null ? registry.intern(key, rule) : rule);
+            }
+        } catch (InvalidActionException | InvalidObjectException ex) {
+            throw new InvalidChainException("Unable to load rule pack for " + configName + ": " + ex.getMessage());
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Write this pack to a file.  The pack is written to a temporary file,
+     * and then moved into place, so a server loading it never sees half of
+     * it.
+     *
+     * @param file The file to write.
+     * @throws IOException if the file couldn't be written.
+     */
+    public void write(File file) throws IOException {
+        Path target = file.toPath().toAbsolutePath();
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                write(out);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void write(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        writeString(out, configName);
+        writeString(out, root);
+        out.writeLong(created);
+
+        out.writeInt(sources.size());
+        for (Map.Entry<String, byte[]> source : sources.entrySet()) {
+            writeString(out, source.getKey());
+            out.writeInt(source.getValue().length);
+            out.write(source.getValue());
+        }
+
+        writeGroups(out, conditionGroups);
+        writeGroups(out, actionGroups);
+
+        out.writeInt(rules.size());
+        for (RuleEntry rule : rules) {
+            writeString(out, rule.id);
+            writeString(out, rule.description);
+            writeString(out, rule.pattern);
+            writeString(out, rule.engine.name());
+            writeSteps(out, rule.steps);
+        }
+    }
+
+    /**
+     * Read a pack from a file.
+     *
+     * @param file The file to read.
+     * @return The RulePack.
+     * @throws IOException if the file couldn't be read, or isn't a pack
+     *                     written by this version of the format.
+     */
+    public static RulePack read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a rule pack: " + file);
+            }
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported rule pack version " + version + ": " + file);
+            }
+            String configName = readString(in);
+            String root = readString(in);
+            long created = in.readLong();
+
+            int count = in.readInt();
+            Map<String, byte[]> sources = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                String path = readString(in);
+                byte[] hash = new byte[in.readInt()];
+                in.readFully(hash);
+                sources.put(path, hash);
+            }
+
+            Map<String, List<Step>> conditionGroups = readGroups(in);
+            Map<String, List<Step>> actionGroups = readGroups(in);
+
+            count = in.readInt();
+            List<RuleEntry> rules = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String id = readString(in);
+                String description = readString(in);
+                String pattern = readString(in);
+                MatchEngine engine;
+                try {
+                    engine = MatchEngine.valueOf(readString(in));
+                } catch (IllegalArgumentException ex) {
+                    throw new IOException("Unknown match engine in rule pack: " + file);
+                }
+                rules.add(new RuleEntry(id, description, pattern, engine, readSteps(in)));
+            }
+            return new RulePack(configName, root, created, sources, conditionGroups, actionGroups, rules);
+        }
+    }
+
+    private static void writeGroups(DataOutputStream out, Map<String, List<Step>> groups) throws IOException {
+        out.writeInt(groups.size());
+        for (Map.Entry<String, List<Step>> group : groups.entrySet()) {
+            writeString(out, group.getKey());
+            writeSteps(out, group.getValue());
+        }
+    }
+
+    private static Map<String, List<Step>> readGroups(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Map<String, List<Step>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            String name = readString(in);
+            groups.put(name, readSteps(in));
+        }
+        return groups;
+    }
+
+    private static void writeSteps(DataOutputStream out, List<Step> steps) throws IOException {
+        out.writeInt(steps.size());
+        for (Step step : steps) {
+            out.writeByte(step.kind);
+            writeString(out, step.name);
+            writeString(out, step.parameters);
+        }
+    }
+
+    private static List<Step> readSteps(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<Step> steps = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte kind = in.readByte();
+            if (kind < CONDITION || kind > ACTION_GROUP) {
+                throw new IOException("Corrupt rule pack.");
+            }
+            steps.add(new Step(kind, readString(in), readString(in)));
+        }
+        return steps;
+    }
+
+    // Patterns can be longer than writeUTF() allows.
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) throw new IOException("Corrupt rule pack.");
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /*
+     * Describe everything that went into a rule, with the groups it uses
+     * written out, so that rules with the same key are interchangeable.
+     */
+    private static String ruleKey(RuleEntry rule, Map<String, List<Step>> conditionGroups,
+                                  Map<String, List<Step>> actionGroups) {
+        StringBuilder key = new StringBuilder(rule.pattern.length() + 64);
+        key.append(rule.id).append('\0').append(rule.description).append('\0')
+                .append(rule.engine).append('\0').append(rule.pattern);
+        for (Step step : rule.steps) {
+            switch (step.kind) {
+                case CONDITION_GROUP:
+                    for (Step s : conditionGroups.get(step.name)) s.appendTo(key);
+                    break;
+                case ACTION_GROUP:
+                    for (Step s : actionGroups.get(step.name)) s.appendTo(key);
+                    break;
+                default:
+                    step.appendTo(key);
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * @return A new digest, of the kind used to hash the source files.
+     */
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST);
+        } catch (NoSuchAlgorithmException ex) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * @param file A file
+     * @return The hash of the file's content.
+     * @throws IOException if the file couldn't be read.
+     */
+    static byte[] hash(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        return digest.digest();
+    }
+
+    /*
+     * Files in the rules directory are stored relative to it, with / as the
+     * separator.  Anything else is stored as an absolute path.
+     */
+    private static String relativize(Path file, File rulesDir) {
+        Path path = file.toAbsolutePath().normalize();
+        if (rulesDir != null) {
+            Path dir = rulesDir.toPath().toAbsolutePath().normalize();
+            if (path.startsWith(dir)) {
+                return dir.relativize(path).toString().replace(File.separatorChar, '/');
+            }
+        }
+        return path.toString();
+    }
+
+    private static Path resolve(String source, File rulesDir) {
+        Path path = Paths.get(source);
+        if (!path.isAbsolute() && rulesDir != null) {
+            path = rulesDir.toPath().resolve(path);
+        }
+        return path.toAbsolutePath().normalize();
+    }
+
+    /**
+     * A condition or action, inline or by group, in the order it appeared
+     * in the rule file.
+     */
+    private static final class Step {
+        final byte kind;
+        final String name;
+        final String parameters;
+
+        Step(byte kind, String name, String parameters) {
+            this.kind = kind;
+            this.name = name;
+            this.parameters = parameters;
+        }
+
+        void appendTo(StringBuilder key) {
+            key.append('\0').append(kind).append(name).append('\0').append(parameters);
+        }
+
+        Condition newCondition() throws InvalidChainException {
+            Condition condition = Condition.newCondition(name, parameters);
+            if (condition == null) {
+                throw new InvalidChainException("Could not parse condition: " + name + " " + parameters);
+            }
+            return condition;
+        }
+    }
+
+    private static final class RuleEntry {
+        final String id;
+        final String description;
+        final String pattern;
+        final MatchEngine engine;
+        final List<Step> steps;
+
+        RuleEntry(String id, String description, String pattern, MatchEngine engine, List<Step> steps) {
+            this.id = id;
+            this.description = description;
+            this.pattern = pattern;
+            this.engine = engine;
+            this.steps = steps;
+        }
+    }
+
+    /**
+     * Records a rule file as it is parsed.  (See {@link TextConfigParser})
+     */
+    static final class Builder {
+        private final String configName;
+        private final String root;
+        private final File rulesDir;
+        private final Map<String, byte[]> sources = new LinkedHashMap<>();
+        private final Map<String, List<Step>> conditionGroups = new LinkedHashMap<>();
+        private final Map<String, List<Step>> actionGroups = new LinkedHashMap<>();
+        private final List<RuleEntry> rules = new ArrayList<>();
+        private List<Step> steps = new ArrayList<>();
+
+        Builder(File source, File rulesDir) {
+            this.configName = source.getName();
+            this.root = relativize(source.toPath(), rulesDir);
+            this.rulesDir = rulesDir;
+        }
+
+        /**
+         * Record a file the chain is built from, with the hash of the
+         * content that was parsed.
+         */
+        void addSource(File file, byte[] hash) {
+            sources.put(relativize(file.toPath(), rulesDir), hash);
+        }
+
+        void condition(String command, String parameters) {
+            steps.add(new Step(CONDITION, command, parameters));
+        }
+
+        void conditionGroup(String name) {
+            steps.add(new Step(CONDITION_GROUP, name, ""));
+        }
+
+        void action(String name, String data) {
+            steps.add(new Step(ACTION, name, data));
+        }
+
+        void actionGroup(String name) {
+            steps.add(new Step(ACTION_GROUP, name, ""));
+        }
+
+        /**
+         * Forget the steps recorded since the last rule or group ended.
+         */
+        void start() {
+            steps = new ArrayList<>();
+        }
+
+        /**
+         * @return A key describing everything that went into the rule.  (See
+         * {@link ChainRegistry#intern(String, Rule)})
+         */
+        String endRule(Rule rule) {
+            RuleEntry entry = new RuleEntry(rule.getId(), rule.getDescription(),
+                    rule.getPattern().pattern(), rule.getEngine(), steps);
+            rules.add(entry);
+            steps = new ArrayList<>();
+            return ruleKey(entry, conditionGroups, actionGroups);
+        }
+
+        void endConditionGroup(String name) {
+            conditionGroups.put(name, steps);
+            steps = new ArrayList<>();
+        }
+
+        void endActionGroup(String name) {
+            actionGroups.put(name, steps);
+            steps = new ArrayList<>();
+        }
+
+        RulePack build() {
+            return new RulePack(configName, root, System.currentTimeMillis(),
+                    Collections.unmodifiableMap(new LinkedHashMap<>(sources)),
+                    Collections.unmodifiableMap(new LinkedHashMap<>(conditionGroups)),
+                    Collections.unmodifiableMap(new LinkedHashMap<>(actionGroups)),
+                    Collections.unmodifiableList(new ArrayList<>(rules)));
+        }
+    }
+}
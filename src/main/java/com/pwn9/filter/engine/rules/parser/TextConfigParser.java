@@ -24,14 +24,17 @@ import com.pwn9.filter.engine.FilterConfig;
 import com.pwn9.filter.engine.FilterService;
 import com.pwn9.filter.engine.api.Action;
 import com.pwn9.filter.engine.rules.Condition;
+import com.pwn9.filter.engine.rules.MatchEngine;
 import com.pwn9.filter.engine.rules.Rule;
 import com.pwn9.filter.engine.rules.ShortCutManager;
 import com.pwn9.filter.engine.rules.action.ActionFactory;
 import com.pwn9.filter.engine.rules.action.InvalidActionException;
+import com.pwn9.filter.engine.rules.chain.ChainRegistry;
 import com.pwn9.filter.engine.rules.chain.InvalidChainException;
 import com.pwn9.filter.engine.rules.chain.RuleChain;
 
 import java.io.*;
+import java.security.MessageDigest;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -58,11 +61,15 @@ public class TextConfigParser implements FilterConfigParser {
     private final Logger logger;
     private final ActionFactory actionFactory;
     private final FilterConfig filterConfig;
+    private final ChainRegistry chainRegistry;
+    private MatchEngine engine = MatchEngine.REGEX;
+    private RulePack.Builder pack;
 
     public TextConfigParser(FilterService filterService) {
         this.logger = filterService.getLogger();
         this.actionFactory = filterService.getActionFactory();
         this.filterConfig = filterService.getConfig();
+        this.chainRegistry = filterService.getChainRegistry();
     }
 
     public RuleChain parse(File source) throws InvalidChainException {
@@ -73,9 +80,18 @@ public class TextConfigParser implements FilterConfigParser {
     public RuleChain parse(File source, List<File> parents) throws InvalidChainException {
         RuleChain.Builder builder = new RuleChain.Builder();
         builder.setConfigName(source.getName());
+        pack = new RulePack.Builder(source, filterConfig.getRulesDir());
         return parse(source, parents, builder);
     }
 
+    /**
+     * @return A {@link RulePack} of the last rule file parsed, which can be
+     * loaded instead of parsing it again, or null if nothing has been parsed.
+     */
+    public RulePack getRulePack() {
+        return (pack == null) ? null : pack.build();
+    }
+
     /**
      * Consumes a Reader Stream and outputs a Chain
      *
@@ -83,9 +99,11 @@ public class TextConfigParser implements FilterConfigParser {
      */
     private RuleChain parse(File source, List<File> parents, RuleChain.Builder builder) throws InvalidChainException {
 
-        RuleStreamReader reader;
+        RuleLexer reader;
+        MessageDigest digest = RulePack.newDigest();
+        builder.addSource(source);
         try {
-            reader = new RuleStreamReader(new InputStreamReader(new FileInputStream(source)));
+            reader = new RuleLexer(new FileInputStream(source), digest);
         } catch (FileNotFoundException ex) {
             throw new InvalidChainException("Rule File not found: " + source.getAbsoluteFile());
         }
@@ -144,21 +162,27 @@ public class TextConfigParser implements FilterConfigParser {
                             shortcuts.clear();
                         } else {
                             File shortcutFile = new File(filterConfig.getRulesDir(), fileName);
+                            builder.addSource(shortcutFile);
+                            pack.addSource(shortcutFile, RulePack.hash(shortcutFile));
                             useShortcuts(shortcutFile, reader.getLineNumber());
                         }
                     }
+                    // Select the match engine for the rules that follow.
+                    else if (command.equalsIgnoreCase("engine")) {
+                        engine = parseEngine(tokenString.popToken(), reader.getLineNumber());
+                    }
                     // Process an included file
                     else if (command.equalsIgnoreCase("include")) {
                         String fileName = tokenString.popToken();
                         processIncludedFile(fileName, source.getParentFile(), builder, parents);
                     }
                     // Parse a rule starting with the pattern
-                    else if (command.matches("match|catch|replace|rewrite")) {
+                    else if (isMatch(command)) {
                         String pattern = ShortCutManager.replace(logger, shortcuts, tokenString.getString());
                         parseRule(new Rule(pattern), reader.readSection(), builder, actionFactory);
                     }
                     // Parse a rule starting with the ID/Description
-                    else if (command.matches("rule")) {
+                    else if (command.equals("rule")) {
                         String id = tokenString.popToken();
                         String descr = tokenString.getString();
                         parseRule(new Rule(id, descr), reader.readSection(), builder, actionFactory);
@@ -169,7 +193,7 @@ public class TextConfigParser implements FilterConfigParser {
 
             }
 
-            reader.close();
+            pack.addSource(source, digest.digest());
 
         } catch (IOException e) {
             String err = "IO Exception during processing: " + e.getMessage();
@@ -187,6 +211,9 @@ public class TextConfigParser implements FilterConfigParser {
                            RuleChain.Builder builder,
                            ActionFactory factory) throws ParseException {
 
+        rule.setEngine(engine);
+        pack.start();
+
         for (NumberedLine line : lines) {
             TokenString tokenString = new TokenString(line.string);
             String command = tokenString.popToken();
@@ -198,12 +225,17 @@ public class TextConfigParser implements FilterConfigParser {
             } else if (command.equalsIgnoreCase("match")) {
                 rule.setPattern(ShortCutManager.replace(logger, shortcuts, tokenString.getString()));
             }
+            // engine <regex|linear>
+            else if (command.equalsIgnoreCase("engine")) {
+                rule.setEngine(parseEngine(tokenString.popToken(), line.number));
+            }
             // conditions <conditiongroup>
             else if (command.equalsIgnoreCase("conditions")) {
                 String groupName = tokenString.popToken();
                 if (!rule.addConditions(builder.getConditionGroups().get(groupName))) {
                     throw new ParseException("Unable to find Condition Group: " + groupName, line.number);
                 }
+                pack.conditionGroup(groupName);
             }
             // actions <actiongroup>
             else if (command.equalsIgnoreCase("actions")) {
@@ -211,12 +243,14 @@ public class TextConfigParser implements FilterConfigParser {
                 if (!rule.addActions(builder.getActionGroups().get(groupName))) {
                     throw new ParseException("Unable to find Action Group: " + groupName, line.number);
                 }
+                pack.actionGroup(groupName);
             }
             // then <action> [parameters]
             else if (command.equalsIgnoreCase("then")) {
                 String actionName = tokenString.popToken();
                 try {
                     rule.addAction(factory.getAction(actionName, tokenString.getString()));
+                    pack.action(actionName, tokenString.getString());
                     logger.finest("(parser) then action: " + actionName);
                 } catch (InvalidActionException ex) {
                     throw new ParseException("Error in action line: " + ex.getMessage(), line.number);
@@ -225,14 +259,19 @@ public class TextConfigParser implements FilterConfigParser {
             // condition <parameters>
             else if (Condition.isCondition(command)) {
                 // This is a condition.  Add a new condition to this rule.
-                Condition newCondition = Condition.newCondition(tokenString.getOriginalString());
+                Condition newCondition = Condition.newCondition(command, tokenString.getString());
                 if (!rule.addCondition(newCondition)) {
                     throw new ParseException("Could not parse condition: " + tokenString.getOriginalString(), line.number);
                 }
+                pack.condition(command, tokenString.getString());
             }
         }
         if (rule != null && rule.isValid()) {
-            builder.append(rule);
+            if (rule.getEngine() == MatchEngine.LINEAR && !rule.usesLinearEngine()) {
+                logger.fine("(parser) pattern not supported by linear engine, using regex: " + rule.getPattern());
+            }
+            // Use the same Rule as any other chain with an identical one.
+            builder.append(chainRegistry.intern(pack.endRule(rule), rule));
             return;
         }
 
@@ -249,6 +288,7 @@ public class TextConfigParser implements FilterConfigParser {
     private void parseActionGroup(String groupName, List<NumberedLine> lines, RuleChain.Builder builder) throws ParseException {
 
         ArrayList<Action> actionGroup = new ArrayList<>();
+        pack.start();
 
         for (NumberedLine line : lines) {
             TokenString tString = new TokenString(line.string);
@@ -258,6 +298,7 @@ public class TextConfigParser implements FilterConfigParser {
 
             try {
                 actionGroup.add(actionFactory.getAction(command, tString.getString()));
+                pack.action(command, tString.getString());
             } catch (InvalidActionException ex) {
                 throw new ParseException("Error parsing action: " + ex.getMessage(), line.number);
             }
@@ -268,6 +309,7 @@ public class TextConfigParser implements FilterConfigParser {
         } else {
             try {
                 builder.addActionGroup(groupName, actionGroup);
+                pack.endActionGroup(groupName);
             } catch (InvalidObjectException e) {
                 throw new ParseException(e.getMessage(), lines.get(0).number);
             }
@@ -285,6 +327,7 @@ public class TextConfigParser implements FilterConfigParser {
     private void parseConditionGroup(String groupName, List<NumberedLine> lines, RuleChain.Builder builder) throws ParseException {
 
         ArrayList<Condition> conditionGroup = new ArrayList<>();
+        pack.start();
 
         for (NumberedLine line : lines) {
             TokenString tString = new TokenString(line.string);
@@ -294,6 +337,7 @@ public class TextConfigParser implements FilterConfigParser {
 
             if (thisCondition != null) {
                 conditionGroup.add(thisCondition);
+                pack.condition(command, tString.getString());
             } else {
                 throw new ParseException("Unable to parse condition: " + command + " " + tString.getString(), line.number);
             }
@@ -304,6 +348,7 @@ public class TextConfigParser implements FilterConfigParser {
         } else {
             try {
                 builder.addConditionGroup(groupName, conditionGroup);
+                pack.endConditionGroup(groupName);
             } catch (InvalidObjectException e) {
                 throw new ParseException(e.getMessage(), lines.get(0).number);
             }
@@ -331,6 +376,27 @@ public class TextConfigParser implements FilterConfigParser {
 
     }
 
+    // The commands that start a rule with its pattern (case-sensitive).
+    private static boolean isMatch(String command) {
+        switch (command) {
+            case "match":
+            case "catch":
+            case "replace":
+            case "rewrite":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private MatchEngine parseEngine(String name, int lineNo) throws ParseException {
+        try {
+            return MatchEngine.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException ex) {
+            throw new ParseException("Unknown match engine: " + name, lineNo);
+        }
+    }
+
     // Updates parser with new shortcuts.
     private void useShortcuts(File shortcutFile, int lineNo) throws IOException, ParseException {
         shortcuts.clear();
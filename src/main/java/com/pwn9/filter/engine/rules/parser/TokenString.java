@@ -57,13 +57,23 @@ class TokenString {
      * @return A string containing the token.
      */
     String popToken() {
+        // The same as string.split("\\s", 2), without the regex.
+        final String s = string;
+        for (int i = 0; i < s.length(); i++) {
+            if (isWhitespace(s.charAt(i))) {
+                string = s.substring(i + 1);
+                return s.substring(0, i);
+            }
+        }
+        string = "";
+        return s;
+    }
 
-        String[] parts;
-        parts = string.split("\\s", 2);
-
-        string = (parts.length == 2) ? parts[1] : "";
-
-        return parts[0];
+    /**
+     * @return true if c is whitespace, as matched by \s in a regex.
+     */
+    static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
     }
 
     /**
@@ -0,0 +1,109 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.minecraft.api;
+
+import com.pwn9.filter.engine.api.MessageAuthor;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * The authors of the players who are online.  Players are added when they
+ * join and removed when they quit, so looking one up never has to ask the
+ * server, and is a single lock-free map lookup.
+ * <p>
+ * Lookups of players who aren't in the cache are counted as misses.  These
+ * should only be for players who are offline.
+ */
+public class AuthorCache<T extends MessageAuthor> {
+
+    private final ConcurrentMap<UUID, T> authors = new ConcurrentHashMap<>(512, 0.75f, 4);
+    private final LongAdder misses = new LongAdder();
+    private final Function<UUID, T> factory;
+
+    /**
+     * @param factory Creates the author of a player who has joined.
+     */
+    public AuthorCache(Function<UUID, T> factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * @return The author, or null if the player isn't online.
+     */
+    @Nullable
+    public T get(UUID id) {
+        T author = authors.get(id);
+        if (author == null) misses.increment();
+        return author;
+    }
+
+    /**
+     * Add a player who has joined.
+     *
+     * @return The player's author.
+     */
+    public T add(UUID id) {
+        return authors.computeIfAbsent(id, factory);
+    }
+
+    /**
+     * Remove a player who has quit.
+     */
+    public void remove(UUID id) {
+        authors.remove(id);
+    }
+
+    /**
+     * Make the cache hold exactly the players who are online, keeping the
+     * authors of players who were already in it.
+     *
+     * @param online The ids of the players who are online.
+     */
+    public void retain(Collection<UUID> online) {
+        Set<UUID> ids = new HashSet<>(online);
+        authors.keySet().retainAll(ids);
+        ids.forEach(this::add);
+    }
+
+    public void clear() {
+        authors.clear();
+    }
+
+    public int size() {
+        return authors.size();
+    }
+
+    /**
+     * @return The number of lookups of players who weren't in the cache.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+}
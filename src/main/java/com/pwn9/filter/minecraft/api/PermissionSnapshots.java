@@ -0,0 +1,173 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.minecraft.api;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * The permissions of each online player, as of their last snapshot, so they
+ * can be checked from async threads without asking the server.
+ * <p>
+ * A snapshot only holds the permissions the rule chains check, and the
+ * plugin's own permissions.  Snapshots are taken on the main thread when a
+ * player joins, and some of them are taken again every tick, so that every
+ * player's snapshot is refreshed once every {@link #REFRESH_TICKS} ticks.
+ * Reading a snapshot doesn't lock or wait.
+ * <p>
+ * If a permission isn't in a snapshot, it is added to all the snapshots
+ * taken after that.
+ */
+public class PermissionSnapshots {
+
+    /**
+     * The permissions checked by the listeners.
+     */
+    public static final List<String> PLUGIN_PERMISSIONS = Collections.unmodifiableList(Arrays.asList(
+            "pwnfilter.bypass.chat", "pwnfilter.bypass.commands", "pwnfilter.bypass.signs",
+            "pwnfilter.bypass.book", "pwnfilter.bypass.mute", "pwnfilter.bypass.spam",
+            "pwnfilter.color"));
+
+    /**
+     * How many ticks it takes to refresh every snapshot.
+     */
+    public static final int REFRESH_TICKS = 20;
+
+    private final Map<UUID, Map<String, Boolean>> snapshots = new ConcurrentHashMap<>();
+    private final Set<String> asked = ConcurrentHashMap.newKeySet();
+    private final Supplier<Set<String>> permissionSource;
+    // Only used on the main thread.
+    private final Queue<UUID> refreshQueue = new ArrayDeque<>();
+    private volatile boolean askedChanged;
+    private Set<String> permissions;
+
+    /**
+     * @param permissionSource The permissions checked by the rule chains.
+     *                         This is asked again after every round of
+     *                         refreshes.
+     */
+    public PermissionSnapshots(Supplier<Set<String>> permissionSource) {
+        this.permissionSource = permissionSource;
+    }
+
+    /**
+     * Check a permission in the player's snapshot.  This can be called from
+     * any thread.
+     *
+     * @return The permission, or null if there is no snapshot for the player,
+     * or the permission isn't in it.
+     */
+    @Nullable
+    public Boolean hasPermission(UUID id, String permission) {
+        Map<String, Boolean> snapshot = snapshots.get(id);
+        if (snapshot == null) return null;
+        Boolean result = snapshot.get(permission);
+        if (result == null && asked.add(permission)) askedChanged = true;
+        return result;
+    }
+
+    /**
+     * Take a snapshot of a player's permissions.  This must be called on the
+     * main thread.
+     *
+     * @param hasPermission Checks the player's permissions.
+     */
+    public void take(UUID id, Predicate<String> hasPermission) {
+        Set<String> wanted = getPermissions();
+        Map<String, Boolean> snapshot = new HashMap<>(wanted.size() * 2);
+        for (String permission : wanted) {
+            snapshot.put(permission, hasPermission.test(permission));
+        }
+        snapshots.put(id, snapshot);
+    }
+
+    /**
+     * Forget a player's snapshot.
+     */
+    public void remove(UUID id) {
+        snapshots.remove(id);
+    }
+
+    public void clear() {
+        snapshots.clear();
+        refreshQueue.clear();
+        asked.clear();
+        permissions = null;
+    }
+
+    /**
+     * Take the next batch of snapshots.  This must be called on the main
+     * thread, every tick.
+     *
+     * @param players Finds the permission check of an online player, or
+     *                returns null if the player is offline.
+     */
+    public void refresh(Function<UUID, Predicate<String>> players) {
+        if (refreshQueue.isEmpty()) {
+            // Start a new round, with any new permissions.
+            permissions = null;
+            refreshQueue.addAll(snapshots.keySet());
+        }
+        int batch = (snapshots.size() + REFRESH_TICKS - 1) / REFRESH_TICKS;
+        for (int i = 0; i < batch && !refreshQueue.isEmpty(); i++) {
+            UUID id = refreshQueue.poll();
+            Predicate<String> hasPermission = players.apply(id);
+            if (hasPermission == null) {
+                remove(id);
+            } else {
+                take(id, hasPermission);
+            }
+        }
+    }
+
+    /**
+     * @return The number of snapshots.
+     */
+    public int size() {
+        return snapshots.size();
+    }
+
+    private Set<String> getPermissions() {
+        if (permissions == null || askedChanged) {
+            askedChanged = false;
+            Set<String> wanted = new HashSet<>(PLUGIN_PERMISSIONS);
+            wanted.addAll(permissionSource.get());
+            wanted.addAll(asked);
+            permissions = wanted;
+        }
+        return permissions;
+    }
+
+}
@@ -22,13 +22,22 @@ package com.pwn9.filter.minecraft.command;
 
 import com.pwn9.filter.bukkit.PwnFilterBukkitPlugin;
 import com.pwn9.filter.engine.FilterService;
+import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 
+import java.util.concurrent.CompletionException;
+
 /**
  * Reload the PwnFilter config.
+ * <p>
+ * The rules are compiled in the background, and swapped into the listeners
+ * when they are all ready, so messages are filtered by the old rules until
+ * then.  If any rule file fails, the old rules stay in place.  "/pfreload full"
+ * shuts down and restarts every listener instead, which is needed to pick up
+ * changes to listener settings, like event priorities.
  * User: Sage905
  * Date: 13-08-10
  * Time: 9:23 AM
@@ -47,10 +56,42 @@ public class pfreload implements CommandExecutor {
 
     @Override
     public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        if (args.length > 0 && args[0].equalsIgnoreCase("full")) {
+            return fullReload(sender);
+        }
+
         sender.sendMessage(ChatColor.RED + "Reloading config.yml and rules/*.txt files.");
 
+        if (!plugin.configurePlugin()) return false;
+        filterService.getLogger().config("Reloaded config.yml as requested by " + sender.getName());
+
+        filterService.reloadRules(task -> Bukkit.getScheduler().runTaskAsynchronously(plugin, task))
+                .whenComplete((count, ex) -> Bukkit.getScheduler().runTask(plugin, () -> {
+                    if (ex != null) {
+                        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ?
+                                ex.getCause() : ex;
+                        filterService.getLogger().warning("Rule reload failed.  Keeping previous rules.  Error: "
+                                + cause.getMessage());
+                        sender.sendMessage(ChatColor.RED + "Rule reload failed, still using the previous rules: "
+                                + cause.getMessage());
+                    } else {
+                        // Start any listeners that weren't running before.
+                        filterService.enableClients();
+                        filterService.getLogger().config("All rules reloaded by " + sender.getName());
+                        sender.sendMessage(ChatColor.RED + "Reloaded " + count + " rule files.");
+                    }
+                }));
+
+        return true;
+    }
+
+    private boolean fullReload(CommandSender sender) {
+        sender.sendMessage(ChatColor.RED + "Restarting listeners, and reloading config.yml and rules/*.txt files.");
+
         filterService.getLogger().info("Disabling all listeners");
         filterService.disableClients();
+        filterService.getRuleQuarantine().clear();
+        filterService.getVerdictCache().invalidateAll();
 
         if (!plugin.configurePlugin()) return false;
 
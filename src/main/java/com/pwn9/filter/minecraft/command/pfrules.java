@@ -0,0 +1,65 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.minecraft.command;
+
+import com.pwn9.filter.engine.FilterService;
+import com.pwn9.filter.engine.rules.RuleQuarantine;
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+
+import java.util.List;
+
+/**
+ * Show the status of rules that have been timing out, and release
+ * quarantined rules.
+ */
+public class pfrules implements CommandExecutor {
+    private final FilterService filterService;
+
+    public pfrules(FilterService filterService) {
+        this.filterService = filterService;
+    }
+
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        RuleQuarantine quarantine = filterService.getRuleQuarantine();
+
+        if (args.length > 0) {
+            if (!args[0].equalsIgnoreCase("release")) return false;
+            int count = quarantine.releaseAll();
+            sender.sendMessage(ChatColor.RED + "Released " + count + " quarantined rule(s).");
+            filterService.getLogger().info("Quarantined rules released by " + sender.getName());
+            return true;
+        }
+
+        List<String> status = quarantine.getStatus();
+        if (status.isEmpty()) {
+            sender.sendMessage(ChatColor.GREEN + "No rules have timed out.");
+        } else {
+            sender.sendMessage(ChatColor.RED + "Rules that have timed out:");
+            status.forEach(sender::sendMessage);
+        }
+        return true;
+    }
+
+}
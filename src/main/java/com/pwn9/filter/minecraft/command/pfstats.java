@@ -0,0 +1,123 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.minecraft.command;
+
+import com.google.common.cache.CacheStats;
+import com.pwn9.filter.engine.FilterService;
+import com.pwn9.filter.engine.rules.RuleStatsReport;
+import com.pwn9.filter.engine.rules.chain.VerdictCache;
+import com.pwn9.filter.minecraft.api.AuthorCache;
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rank the rules by the time spent testing them.
+ * <p>
+ * Usage: /pfstats [client] [top N], or /pfstats dump to write all of the
+ * stats to a CSV file in the plugin folder.
+ */
+public class pfstats implements CommandExecutor {
+    public static final String CSV_FILE = "rulestats.csv";
+    private static final int DEFAULT_TOP = 10;
+
+    private final FilterService filterService;
+    private final File dataFolder;
+    private final AuthorCache<?> authors;
+
+    public pfstats(FilterService filterService, File dataFolder, AuthorCache<?> authors) {
+        this.filterService = filterService;
+        this.dataFolder = dataFolder;
+        this.authors = authors;
+    }
+
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        if (args.length == 1 && args[0].equalsIgnoreCase("dump")) {
+            File csv = new File(dataFolder, CSV_FILE);
+            try {
+                RuleStatsReport.collect(filterService.getActiveClients(), null).writeCsv(csv);
+                sender.sendMessage(ChatColor.GREEN + "Rule stats written to " + csv);
+            } catch (IOException ex) {
+                sender.sendMessage(ChatColor.RED + "Unable to write " + csv + ": " + ex.getMessage());
+            }
+            return true;
+        }
+
+        String client = null;
+        int top = DEFAULT_TOP;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equalsIgnoreCase("top") && i + 1 < args.length) {
+                    top = Integer.parseInt(args[++i]);
+                    if (top < 1) return false;
+                } else if (client == null) {
+                    client = args[i];
+                } else {
+                    return false;
+                }
+            }
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+
+        RuleStatsReport report = RuleStatsReport.collect(filterService.getActiveClients(), client);
+        if (report.getEntries().isEmpty()) {
+            sender.sendMessage(ChatColor.GREEN + "No rules have been tested" +
+                    (client == null ? "." : " on " + client + "."));
+            sendCacheStats(sender);
+            return true;
+        }
+
+        long total = Math.max(1, report.getTotalNanos());
+        sender.sendMessage(ChatColor.GOLD + "Rules by total time" + (client == null ? "" : " on " + client) +
+                " (" + TimeUnit.NANOSECONDS.toMillis(total) + "ms in all):");
+        int rank = 1;
+        for (RuleStatsReport.Entry e : report.top(top)) {
+            String rule = e.getRule().getId().isEmpty() ? String.valueOf(e.getRule().getPattern()) :
+                    e.getRule().getId();
+            sender.sendMessage(String.format("%d. %s[%s]%s %s %s%.1f%%%s %dms, max %.2fms, %d/%d matched, %d timeouts",
+                    rank++, ChatColor.AQUA, e.getClientName(), ChatColor.RESET, rule,
+                    ChatColor.YELLOW, 100.0 * e.getTotalNanos() / total, ChatColor.RESET,
+                    TimeUnit.NANOSECONDS.toMillis(e.getTotalNanos()), e.getMaxNanos() / 1e6,
+                    e.getMatches(), e.getEvaluations(), e.getTimeouts()));
+        }
+        sendCacheStats(sender);
+        return true;
+    }
+
+    private void sendCacheStats(CommandSender sender) {
+        sender.sendMessage(String.format("%sPlayers:%s %d cached, %d lookups missed",
+                ChatColor.GOLD, ChatColor.RESET, authors.size(), authors.getMisses()));
+        VerdictCache cache = filterService.getVerdictCache();
+        if (!cache.isEnabled()) return;
+        CacheStats stats = cache.getStats();
+        sender.sendMessage(String.format("%sVerdict cache:%s %d/%d entries, %d hits, %d misses (%.1f%% hit rate)",
+                ChatColor.GOLD, ChatColor.RESET, cache.size(), cache.getMaximumSize(),
+                stats.hitCount(), stats.missCount(), 100.0 * stats.hitRate()));
+    }
+
+}
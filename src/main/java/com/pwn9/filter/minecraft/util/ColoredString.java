@@ -39,23 +39,32 @@ import java.util.regex.Pattern;
  * plain:
  * The quick brown fox jumped over the lazy dog
  * codes:
- * {,,,,,,,,,,&amp;4,,,,,,,,,&amp;1&amp;k,&amp;2,&amp;3,&amp;4,&amp;5,&amp;6,,,,,&amp;7,,,,,,,,,&amp;l,,,}
+ * {10:&amp;4, 20:&amp;1&amp;k, 21:&amp;2, 22:&amp;3, 23:&amp;4, 24:&amp;5, 25:&amp;6, 30:&amp;7, 40:&amp;l}
  * <p>
- * The codes array maps codes to the character following it.  In the example above, plain[10] = 'b', codes[10] = "&amp;4"
+ * The codes map to the character following them.  In the example above, plain[10] = 'b', and the code at offset
+ * 10 is "&amp;4".  A code at offset length() trails the text.  Only offsets that have a code are stored, so a
+ * message without any codes costs no more than its plain text.
  * <p>
  * In any string modification action, the codes will be updated to reflect the new string.
+ * <p>
+ * Instances are immutable.  The raw (coloured) form is built on first use, and kept.
  *
  * @author Sage905
  * @version $Id: $Id
  */
 public final class ColoredString implements EnhancedString {
 
-    private final String[] codes; // The String array containing the color / formatting codes
-    private final char[] plain; // the plain text
-    private final String COLORCODES = "0123456789AaBbCcDdEeFfKkLlMmNnOoRr";
-    private final char CR = '\r';
-    private final char LF = '\n';
-    private final String FORMATPREFIXES = "§&";
+    private static final String COLORCODES = "0123456789AaBbCcDdEeFfKkLlMmNnOoRr";
+    private static final char CR = '\r';
+    private static final char LF = '\n';
+    private static final String FORMATPREFIXES = "§&";
+    private static final int[] NO_OFFSETS = new int[0];
+    private static final String[] NO_CODES = new String[0];
+
+    private final String plain; // the plain text
+    private final int[] offsets; // Ascending offsets into plain that have a code
+    private final String[] codes; // The color / formatting codes at each offset
+    private String raw; // The coloured string, once it has been asked for.
 
     /**
      * <p>Constructor for ColoredString.</p>
@@ -63,49 +72,47 @@ public final class ColoredString implements EnhancedString {
      * @param s a {@link java.lang.String} object.
      */
     public ColoredString(String s) {
-        char[] raw = s.toCharArray();
-        char[] tmpPlain = new char[raw.length];
-        String[] tmpCodes = new String[raw.length + 1];
-
-        int textpos = 0;
-
-        for (int i = 0; i < raw.length; i++) {
-            if (i != raw.length - 1 && FORMATPREFIXES.indexOf(raw[i]) > -1
-                    && COLORCODES.indexOf(raw[i + 1]) > -1) {
-                if (tmpCodes[textpos] == null) {
-                    tmpCodes[textpos] = new String(raw, i, 2);
-                } else {
-                    tmpCodes[textpos] += new String(raw, i, 2);
-                }
+        Builder builder = new Builder(s.length());
+
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (i != s.length() - 1 && FORMATPREFIXES.indexOf(c) > -1
+                    && COLORCODES.indexOf(s.charAt(i + 1)) > -1) {
+                builder.mergeCode(s.substring(i, i + 2));
                 i++; // Move past the code character.
-            } else if (raw[i] == CR || raw[i] == LF) {
+            } else if (c == CR || c == LF) {
 
-                tmpCodes[textpos] = new String(raw, i, 1);
+                builder.setCode(String.valueOf(c));
 
-                // Now insert a tab in its place
-                tmpPlain[textpos] = ' ';
-                textpos++;
+                // Now insert a space in its place
+                builder.append(' ');
             } else {
-                tmpPlain[textpos] = raw[i];
-                textpos++;
+                builder.append(c);
             }
 
         }
-        plain = Arrays.copyOf(tmpPlain, textpos);
-        // Copy one more code than the plain string
-        // so we can capture any trailing format codes.
-        codes = Arrays.copyOf(tmpCodes, textpos + 1);
+        if (builder.size == 0) {
+            // Nothing was stripped, so the text is the raw string.
+            plain = s;
+            raw = s;
+        } else {
+            plain = builder.text.toString();
+        }
+        offsets = builder.offsets();
+        codes = builder.codes();
     }
 
     /**
      * <p>Constructor for ColoredString.</p>
      *
-     * @param plain an array of char.
-     * @param codes an array of {@link java.lang.String} objects.
+     * @param plain   The plain text.
+     * @param offsets Ascending offsets of the codes, from 0 to plain.length()
+     * @param codes   The code at each offset.
      */
-    private ColoredString(char[] plain, String[] codes) {
-        this.plain = Arrays.copyOf(plain, plain.length);
-        this.codes = Arrays.copyOf(codes, plain.length + 1);
+    private ColoredString(String plain, int[] offsets, String[] codes) {
+        this.plain = plain;
+        this.offsets = offsets;
+        this.codes = codes;
     }
 
     /* CharSequence methods */
@@ -116,21 +123,21 @@ public final class ColoredString implements EnhancedString {
      * @return a int.
      */
     public int length() {
-        return plain.length;
+        return plain.length();
     }
 
     /**
      * {@inheritDoc}
      */
     public char charAt(int i) {
-        return plain[i];
+        return plain.charAt(i);
     }
 
     /**
      * {@inheritDoc}
      */
     public CharSequence subSequence(int i, int j) {
-        return new String(Arrays.copyOfRange(plain, i, j));
+        return plain.substring(i, j);
     }
 
     /**
@@ -139,36 +146,45 @@ public final class ColoredString implements EnhancedString {
     @Override
     @NotNull
     public String toString() {
-        return new String(plain);
+        return plain;
     }
 
     // Return a string with color codes interleaved.
 
     /**
-     * Reassemble a colord string by inserting codes found in the array before the
-     * character in that spot.  If the code is a CR/LF, discard the temporary
+     * Reassemble a colord string by inserting codes before the character at
+     * their offset.  If the code is a CR/LF, discard the temporary
      * space character, and replace it with the correct code.
      *
      * @return a {@link java.lang.String} object.
      */
     String getColoredString() {
-        StringBuilder sb = new StringBuilder();
-
-        for (int i = 0; i < plain.length; i++) {
-            if (codes[i] != null) {
-                if (codes[i].indexOf(CR) > -1 || codes[i].indexOf(LF) > -1) {
-                    sb.append(codes[i]);
-                } else {
-                    sb.append(codes[i]).append(plain[i]);
-                }
-            } else {
-                sb.append(plain[i]);
+        String result = raw;
+        if (result == null) {
+            result = buildColoredString();
+            raw = result;
+        }
+        return result;
+    }
+
+    private String buildColoredString() {
+        int size = plain.length();
+        for (String code : codes) size += code.length();
+        StringBuilder sb = new StringBuilder(size);
+
+        int position = 0;
+        for (int c = 0; c < offsets.length; c++) {
+            int offset = offsets[c];
+            sb.append(plain, position, offset);
+            sb.append(codes[c]);
+            position = offset;
+            if (offset < plain.length() &&
+                    (codes[c].indexOf(CR) > -1 || codes[c].indexOf(LF) > -1)) {
+                position++; // Skip the space that stands in for the CR/LF
             }
         }
-        // Check to see if there is a code at the end of the text
-        // If so, append it to the end of the string.
-        if (codes[codes.length - 1] != null)
-            sb.append(codes[codes.length - 1]);
+        // Any code at the end of the text has been appended already.
+        sb.append(plain, position, plain.length());
         return sb.toString();
     }
 
@@ -177,17 +193,22 @@ public final class ColoredString implements EnhancedString {
     /**
      * <p>getCodeArray.</p>
      *
-     * @return an array of {@link java.lang.String} objects.
+     * @return The codes, indexed by the character they precede, with one
+     * more element than the plain text for trailing codes.
      */
     String[] getCodeArray() {
-        return codes;
+        String[] result = new String[plain.length() + 1];
+        for (int c = 0; c < offsets.length; c++) {
+            result[offsets[c]] = codes[c];
+        }
+        return result;
     }
 
 
     /**
      * Replace all occurrences of Regex pattern with replacement String.
      * If the replacement string has codes embedded, separate them and
-     * add them to the code array.
+     * add them to the codes of the new string.
      * <p>
      * This is a tricky bit of code.  We will copy the last code before
      * a replacement and prepend it to the next code of the current text.
@@ -201,6 +222,8 @@ public final class ColoredString implements EnhancedString {
      * Test &amp;1baz&amp;2
      * replace baz with nothing:
      * Test &amp;1&amp;2
+     * <p>
+     * The new text and codes are built in a single pass over the matches.
      *
      * @param p     Regex Pattern
      * @param rText Replacement Text
@@ -208,142 +231,178 @@ public final class ColoredString implements EnhancedString {
      */
     @Override
     public ColoredString replaceText(Pattern p, String rText) {
-        Matcher m = p.matcher(new String(plain));
-        ColoredString replacement = new ColoredString(rText);
+        Matcher m = p.matcher(plain);
+        if (!m.find()) return this;
 
-        // Start with an empty set of arrays.  These will be incrementally added
-        // to, as we replace each match.
-        char[] lastMatchText = new char[0];
-        String[] lastMatchCodes = new String[1];
+        ColoredString replacement = new ColoredString(rText);
+        Builder builder = new Builder(plain.length());
 
         int currentPosition = 0;
 
-        while (m.find()) {
-            int mStart = m.start();
-            int mEnd = m.end();
-
-            int lastMatchTextLength = lastMatchText.length;
-            int middleLen = mStart - currentPosition;
-
-            int newLength = lastMatchTextLength + middleLen + replacement.length();
-
-            char[] currentText = new char[newLength];
-            String[] currentCodes = new String[newLength + 1];
-
-            // Copy all of the text up to the end of the last match.
-            System.arraycopy(lastMatchText, 0, currentText, 0, lastMatchTextLength);
+        do {
             // Copy any text between the end of the last match and the start
-            // of this match.
-            System.arraycopy(plain, currentPosition, currentText, lastMatchTextLength, middleLen);
-            // Append replacement text in place of current text.
-            System.arraycopy(replacement.plain, 0, currentText, lastMatchTextLength + middleLen, replacement.length());
-
-            /*
-             Now, copy the format codes.  If there are "trailing" format codes
-             from the previous match, prepend them to the codes for the next character.
-            */
-
-            // First, the codes up to the end of the last match, including any trailing codes.
-            System.arraycopy(lastMatchCodes, 0, currentCodes, 0, lastMatchTextLength + 1);
-
-            // Append the first code to the trailing code.
-            currentCodes[lastMatchTextLength] = mergeCodes(currentCodes[lastMatchTextLength], codes[currentPosition]);
+            // of this match, with its codes.  The first code is appended to
+            // any code trailing the last replacement, and the code at the
+            // start of the match is kept.
+            builder.append(this, currentPosition, m.start());
 
-            // Copy the codes from between the last match and this one.
-            System.arraycopy(codes, currentPosition + 1, currentCodes, lastMatchTextLength + 1, middleLen);
+            // Append replacement text in place of the matched text.  Its first
+            // code is appended to the code before it.
+            builder.append(replacement, 0, replacement.length());
 
-            // Append the first replacement code to the trailing code.
-            currentCodes[lastMatchTextLength + middleLen] = mergeCodes(currentCodes[lastMatchTextLength + middleLen], replacement.codes[0]);
+            currentPosition = m.end(); // Set the position in the original string to the end of the match
+        } while (m.find());
 
-            // Copy the codes from the replacement text.
-            if (replacement.codes.length > 1)
-                System.arraycopy(replacement.codes, 1, currentCodes, lastMatchTextLength + 1 + middleLen, replacement.length());
+        // Copy the original text from the end of the last match to the end
+        // of the string, with the trailing code.
+        builder.append(this, currentPosition, plain.length());
 
+        return builder.build();
+    }
 
-            currentPosition = mEnd; // Set the position in the original string to the end of the match
+    /**
+     * @return The index of the first code at or after the offset.
+     */
+    private int firstCodeAt(int offset) {
+        int index = Arrays.binarySearch(offsets, offset);
+        return index < 0 ? -index - 1 : index;
+    }
 
-            lastMatchText = currentText;
-            lastMatchCodes = currentCodes;
+    public ColoredString patternToLower(Pattern p) {
+        return changeCase(p, false);
+    }
 
-        }
+    public ColoredString patternToUpper(Pattern p) {
+        return changeCase(p, true);
+    }
 
-        char[] tempText = new char[lastMatchText.length + plain.length - currentPosition];
-        String[] tempCodes = new String[lastMatchText.length + plain.length - currentPosition + 1];
+    /**
+     * Change the case of every match of the pattern.  The text is built in
+     * one pass, and the codes don't move, so they are shared with this string.
+     */
+    private ColoredString changeCase(Pattern p, boolean upper) {
+        Matcher m = p.matcher(plain);
+        if (!m.find()) return this;
 
-        // Copy the text we've processed in previous matches.
-        System.arraycopy(lastMatchText, 0, tempText, 0, lastMatchText.length);
-        // ... and copy the formats
-        System.arraycopy(lastMatchCodes, 0, tempCodes, 0, lastMatchText.length);
+        StringBuilder text = new StringBuilder(plain.length());
+        int currentPosition = 0;
 
-        // Copy the original text from the end of the last match to the end
-        // of the string.
-        System.arraycopy(plain, currentPosition, tempText, lastMatchText.length, plain.length - currentPosition);
+        do {
+            text.append(plain, currentPosition, m.start());
+            for (int i = m.start(); i < m.end(); i++) {
+                char c = plain.charAt(i);
+                text.append(upper ? Character.toUpperCase(c) : Character.toLowerCase(c));
+            }
+            currentPosition = m.end();
+        } while (m.find());
 
-        // Merge the codes from the end of the last segment and the beginning of this one
-        tempCodes[lastMatchText.length] = mergeCodes(lastMatchCodes[lastMatchText.length], codes[currentPosition]);
+        text.append(plain, currentPosition, plain.length());
+        return new ColoredString(text.toString(), offsets, codes);
+    }
 
-        // Copy the remaining codes (not the first one, it was already appended),
-        // as well as the trailing code.
-        System.arraycopy(codes, currentPosition + 1, tempCodes, lastMatchText.length + 1, plain.length - currentPosition);
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) return true;
+        if (obj instanceof ColoredString) {
+            ColoredString other = (ColoredString) obj;
+            return plain.equals(other.plain) &&
+                    other.getColoredString().equals(getColoredString());
+        } else {
+            return getColoredString().equals(obj);
+        }
+    }
 
-        return new ColoredString(tempText, tempCodes);
+    @Override
+    public int hashCode() {
+        return getColoredString().hashCode();
+    }
 
+    @Override
+    public String getRaw() {
+        return getColoredString();
     }
 
-    public ColoredString patternToLower(Pattern p) {
-        char[] modified = plain.clone();
+    /**
+     * Builds the plain text and codes of a new string, appending text and
+     * codes in order.
+     */
+    private static final class Builder {
+        private final StringBuilder text;
+        private int[] offsets = NO_OFFSETS;
+        private String[] codes = NO_CODES;
+        private int size;
+
+        Builder(int capacity) {
+            text = new StringBuilder(capacity);
+        }
 
-        Matcher m = p.matcher(new String(plain));
+        void append(char c) {
+            text.append(c);
+        }
 
-        while (m.find()) {
-            for (int i = m.start(); i < m.end(); i++) {
-                modified[i] = Character.toLowerCase(modified[i]);
+        /**
+         * Append the text of source from..to, and the codes at offsets
+         * from..to (inclusive).  The code at from is appended to any code
+         * already at the end of the text.
+         */
+        void append(ColoredString source, int from, int to) {
+            int position = text.length();
+            for (int c = source.firstCodeAt(from); c < source.offsets.length && source.offsets[c] <= to; c++) {
+                merge(position + source.offsets[c] - from, source.codes[c]);
             }
+            text.append(source.plain, from, to);
         }
-        return new ColoredString(modified, codes);
-    }
 
-    public ColoredString patternToUpper(Pattern p) {
-        char[] modified = plain.clone();
+        /**
+         * Add a code before the next character, appending it to any code
+         * already there.
+         */
+        void mergeCode(String code) {
+            merge(text.length(), code);
+        }
 
-        Matcher m = p.matcher(new String(plain));
+        /**
+         * Set the code before the next character, replacing any code already
+         * there.
+         */
+        void setCode(String code) {
+            int offset = text.length();
+            if (size > 0 && offsets[size - 1] == offset) {
+                codes[size - 1] = code;
+            } else {
+                add(offset, code);
+            }
+        }
 
-        while (m.find()) {
-            for (int i = m.start(); i < m.end(); i++) {
-                modified[i] = Character.toUpperCase(modified[i]);
+        private void merge(int offset, String code) {
+            if (size > 0 && offsets[size - 1] == offset) {
+                codes[size - 1] += code;
+            } else {
+                add(offset, code);
             }
         }
-        return new ColoredString(modified, codes);
-    }
 
-    /**
-     * Returns a concatenation of two strings, a + b.  If a or b are null, they
-     * are converted to an empty string.  If both a and b are null, returns null.
-     *
-     * @param a First string to concatenate
-     * @param b Second string to concatenate
-     * @return Concatenation of a and b, or null if they are both null.
-     */
-    private String mergeCodes(String a, String b) {
-        String result = (a == null) ? "" : a;
-        if (b != null) {
-            result += b;
+        private void add(int offset, String code) {
+            if (size == offsets.length) {
+                int capacity = Math.max(4, size * 2);
+                offsets = Arrays.copyOf(offsets, capacity);
+                codes = Arrays.copyOf(codes, capacity);
+            }
+            offsets[size] = offset;
+            codes[size] = code;
+            size++;
         }
-        return (result.isEmpty()) ? null : result;
 
-    }
+        int[] offsets() {
+            return size == 0 ? NO_OFFSETS : Arrays.copyOf(offsets, size);
+        }
 
-    @Override
-    public boolean equals(Object obj) {
-        if (obj instanceof ColoredString) {
-            return ((ColoredString) obj).getColoredString().equals(getColoredString());
-        } else {
-            return getColoredString().equals(obj);
+        String[] codes() {
+            return size == 0 ? NO_CODES : Arrays.copyOf(codes, size);
         }
-    }
 
-    @Override
-    public String getRaw() {
-        return getColoredString();
+        ColoredString build() {
+            return new ColoredString(text.toString(), offsets(), codes());
+        }
     }
 }
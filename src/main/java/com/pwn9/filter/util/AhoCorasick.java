@@ -0,0 +1,179 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+
+/**
+ * An Aho-Corasick automaton for finding many literals in a single pass.
+ * <p>
+ * Each literal is added with an integer id.  Several literals can share an
+ * id.  Scanning a string sets the bit for every id that had at least one of
+ * its literals found in the string.  Matching is case-insensitive, using
+ * {@link RegexLiterals#fold(char)}.
+ * <p>
+ * Instances are immutable, and safe to share between threads.
+ */
+public final class AhoCorasick {
+
+    private static final int[] NO_OUTPUT = new int[0];
+
+    // Node n has children keys[n] (sorted) -> next[n]
+    private final char[][] keys;
+    private final int[][] next;
+    private final int[] fail;
+    private final int[][] output;
+
+    private AhoCorasick(char[][] keys, int[][] next, int[] fail, int[][] output) {
+        this.keys = keys;
+        this.next = next;
+        this.fail = fail;
+        this.output = output;
+    }
+
+    /**
+     * Scan the text, and set the bit of every literal id found in it.
+     *
+     * @param text The text to search.
+     * @param hits BitSet to receive the ids of literals that were found.
+     */
+    public void scan(CharSequence text, BitSet hits) {
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = RegexLiterals.fold(text.charAt(i));
+            int target;
+            while ((target = child(state, c)) < 0 && state != 0) {
+                state = fail[state];
+            }
+            state = target < 0 ? 0 : target;
+            for (int id : output[state]) {
+                hits.set(id);
+            }
+        }
+    }
+
+    /**
+     * Get the number of states in this automaton.
+     *
+     * @return number of trie nodes, including the root.
+     */
+    public int size() {
+        return fail.length;
+    }
+
+    private int child(int state, char c) {
+        int idx = Arrays.binarySearch(keys[state], c);
+        return idx < 0 ? -1 : next[state][idx];
+    }
+
+    public static final class Builder {
+        private final List<TreeMap<Character, Integer>> children = new ArrayList<>();
+        private final List<BitSet> ids = new ArrayList<>();
+
+        public Builder() {
+            newNode();
+        }
+
+        private int newNode() {
+            children.add(new TreeMap<>());
+            ids.add(new BitSet());
+            return children.size() - 1;
+        }
+
+        /**
+         * Add a literal to the automaton.
+         *
+         * @param literal The string to search for.  Empty strings are ignored.
+         * @param id      The id to report when it is found.
+         */
+        public void add(String literal, int id) {
+            if (literal.isEmpty()) return;
+            int node = 0;
+            for (int i = 0; i < literal.length(); i++) {
+                char c = RegexLiterals.fold(literal.charAt(i));
+                Integer child = children.get(node).get(c);
+                if (child == null) {
+                    child = newNode();
+                    children.get(node).put(c, child);
+                }
+                node = child;
+            }
+            ids.get(node).set(id);
+        }
+
+        public AhoCorasick build() {
+            int size = children.size();
+            char[][] keys = new char[size][];
+            int[][] next = new int[size][];
+            int[] fail = new int[size];
+            int[][] output = new int[size][];
+
+            for (int n = 0; n < size; n++) {
+                TreeMap<Character, Integer> map = children.get(n);
+                keys[n] = new char[map.size()];
+                next[n] = new int[map.size()];
+                int i = 0;
+                for (Map.Entry<Character, Integer> e : map.entrySet()) {
+                    keys[n][i] = e.getKey();
+                    next[n][i] = e.getValue();
+                    i++;
+                }
+            }
+
+            AhoCorasick automaton = new AhoCorasick(keys, next, fail, output);
+
+            // Breadth-first, so that each node's fail link is done before its
+            // children need it.
+            output[0] = NO_OUTPUT;
+            Queue<Integer> queue = new ArrayDeque<>();
+            for (int child : next[0]) {
+                fail[child] = 0;
+                queue.add(child);
+            }
+            while (!queue.isEmpty()) {
+                int node = queue.remove();
+                BitSet merged = ids.get(node);
+                merged.or(ids.get(fail[node]));
+                output[node] = merged.isEmpty() ? NO_OUTPUT : merged.stream().toArray();
+
+                for (int i = 0; i < keys[node].length; i++) {
+                    char c = keys[node][i];
+                    int child = next[node][i];
+                    int f = fail[node];
+                    int target;
+                    while ((target = automaton.child(f, c)) < 0 && f != 0) {
+                        f = fail[f];
+                    }
+                    fail[child] = (target < 0 || target == child) ? 0 : target;
+                    queue.add(child);
+                }
+            }
+            return automaton;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.util;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Lets a CASE_INSENSITIVE regex run as a case-sensitive one.
+ * <p>
+ * Rules are compiled with {@link java.util.regex.Pattern#CASE_INSENSITIVE}
+ * (but not UNICODE_CASE), so only ASCII letters are matched without regard
+ * to case.  If we lower-case the ASCII letters in the message once, and in
+ * the pattern at compile time, the pattern can be compiled case-sensitive.
+ * This saves folding every character compared, and lets Java use its faster
+ * literal search.
+ * <p>
+ * ASCII folding maps each char to exactly one char, so an index into the
+ * folded text is the same index into the original.  Matches found on the
+ * folded text can be applied directly to the original message.
+ */
+public final class CaseFolding {
+
+    private CaseFolding() {
+    }
+
+    /**
+     * Lower-case the ASCII letters in a string.
+     *
+     * @param s String to fold
+     * @return The folded string, or s itself if it has no upper-case ASCII
+     * letters.
+     */
+    public static String fold(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                char[] folded = s.toCharArray();
+                for (int j = i; j < folded.length; j++) {
+                    folded[j] = RegexLiterals.fold(folded[j]);
+                }
+                return new String(folded);
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Convert a regex meant for CASE_INSENSITIVE matching into one which,
+     * compiled without flags and run on {@link #fold(String) folded} text,
+     * finds exactly the same matches.
+     * <p>
+     * Only literal letters are lower-cased; escapes such as \W and \S are
+     * left alone.  Patterns using anything whose meaning would change are
+     * refused: properties (\p), hex / unicode / octal / control escapes,
+     * quoting, inline flags, named groups, class intersections, and
+     * character ranges which don't contain letters of a single case.
+     *
+     * @param regex A regex, as compiled with CASE_INSENSITIVE
+     * @return The folded regex, or null if it can't be folded safely.
+     */
+    @Nullable
+    public static String foldPattern(String regex) {
+        StringBuilder out = new StringBuilder(regex.length());
+        int n = regex.length();
+        int classDepth = 0;
+        // The previous char in a class, if it can start a range.
+        int rangeStart = -1;
+
+        for (int i = 0; i < n; i++) {
+            char c = regex.charAt(i);
+
+            if (c == '\\') {
+                if (i + 1 >= n) return null;
+                char e = regex.charAt(++i);
+                if ("pPxuc0QENk".indexOf(e) >= 0) return null;
+                out.append(c).append(e);
+                // An escaped symbol is a literal, which can start a range.
+                rangeStart = (classDepth > 0 && !Character.isLetterOrDigit(e)) ? e : -1;
+                continue;
+            }
+
+            if (classDepth == 0) {
+                if (c == '[') {
+                    classDepth = 1;
+                    out.append(c);
+                    i = openClass(regex, i, out);
+                    if (i < 0) return null;
+                    rangeStart = -1;
+                    continue;
+                }
+                if (c == '(' && i + 1 < n && regex.charAt(i + 1) == '?') {
+                    // Only plain groups and lookarounds.  No flags or names.
+                    char g = i + 2 < n ? regex.charAt(i + 2) : 0;
+                    if (g == '<') {
+                        char h = i + 3 < n ? regex.charAt(i + 3) : 0;
+                        if (h != '=' && h != '!') return null;
+                    } else if (g != ':' && g != '=' && g != '!' && g != '>') {
+                        return null;
+                    }
+                }
+                out.append(RegexLiterals.fold(c));
+                continue;
+            }
+
+            // Inside a character class
+            switch (c) {
+                case '[':
+                    classDepth++;
+                    out.append(c);
+                    i = openClass(regex, i, out);
+                    if (i < 0) return null;
+                    rangeStart = -1;
+                    break;
+                case ']':
+                    classDepth--;
+                    out.append(c);
+                    rangeStart = -1;
+                    break;
+                case '&':
+                    if (i + 1 < n && regex.charAt(i + 1) == '&') return null;
+                    out.append(c);
+                    rangeStart = c;
+                    break;
+                case '-':
+                    if (rangeStart >= 0 && i + 1 < n && regex.charAt(i + 1) != ']') {
+                        int end;
+                        char next = regex.charAt(++i);
+                        if (next == '\\') {
+                            if (i + 1 >= n) return null;
+                            end = regex.charAt(++i);
+                            if (Character.isLetterOrDigit(end)) return null;
+                            out.append('-').append('\\').append((char) end);
+                        } else if (next == '[') {
+                            return null;
+                        } else {
+                            end = next;
+                            if (!foldableRange((char) rangeStart, next)) return null;
+                            out.append('-').append(RegexLiterals.fold(next));
+                        }
+                        if (!foldableRange((char) rangeStart, (char) end)) return null;
+                        rangeStart = -1;
+                    } else {
+                        out.append(c);
+                        rangeStart = c;
+                    }
+                    break;
+                default:
+                    out.append(RegexLiterals.fold(c));
+                    rangeStart = c;
+            }
+        }
+        return classDepth == 0 ? out.toString() : null;
+    }
+
+    /*
+     * Copy an optional '^' after the '[' at position i.  A ']' right after
+     * the opening is refused, rather than working out how Java reads it.
+     * Returns the position of the last char consumed, or -1.
+     */
+    private static int openClass(String regex, int i, StringBuilder out) {
+        if (i + 1 < regex.length() && regex.charAt(i + 1) == '^') {
+            out.append('^');
+            i++;
+        }
+        if (i + 1 < regex.length() && regex.charAt(i + 1) == ']') return -1;
+        return i;
+    }
+
+    /*
+     * A range can be folded if it has no ASCII letters, or it runs between two
+     * letters of the same case.
+     */
+    private static boolean foldableRange(char start, char end) {
+        if (start > end) return false;
+        boolean hasUpper = start <= 'Z' && end >= 'A';
+        boolean hasLower = start <= 'z' && end >= 'a';
+        if (!hasUpper && !hasLower) return true;
+        return (isUpper(start) && isUpper(end)) || (isLower(start) && isLower(end));
+    }
+
+    private static boolean isUpper(char c) {
+        return c >= 'A' && c <= 'Z';
+    }
+
+    private static boolean isLower(char c) {
+        return c >= 'a' && c <= 'z';
+    }
+}
@@ -20,12 +20,9 @@
 
 package com.pwn9.filter.util;
 
-import com.google.common.base.Stopwatch;
 import com.google.common.base.Ticker;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.concurrent.TimeUnit;
-
 /**
  * Create a Timed Regex match.
  * User: Sage905
@@ -38,21 +35,18 @@ import java.util.concurrent.TimeUnit;
 
 /* NOTE: The goal here is to create a matcher that won't run forever.
  Here's how this works:
- 1. The TimeoutRegexCharSequence has a timeout set in it of the system time + some interval.
- 2. On every charAt access, we check to see if we're past that time.
- 3. If so, then throw an exception, which will halt the regex processing, and notify
+ 1. The LimitedRegexCharSequence is given a MatchBudget, which holds the deadline for the rule (and message).
+ 2. Every charAt access counts a step against the budget, which checks the clock every so often.
+ 3. If we're past the deadline, throw an exception, which will halt the regex processing, and notify
  4. the caller.  In PwnFilter, we can then check for this exception, disable the rule, and log the offending regex and
  string.
+ A single sequence can be reset() to new text and reused, so matching a message doesn't need a new one per rule.
 */
 public class LimitedRegexCharSequence implements CharSequence {
 
-    private final CharSequence inner;
-
-    private final Ticker ticker;
-
-    private final Stopwatch stopwatch;
+    private final MatchBudget budget;
 
-    private final int timeoutMillis;
+    private CharSequence inner;
 
     private long accessCount;
 
@@ -68,17 +62,43 @@ public class LimitedRegexCharSequence implements CharSequence {
     }
 
     LimitedRegexCharSequence(CharSequence inner, int timeoutMillis, Ticker ticker) {
+        this(inner, new MatchBudget(timeoutMillis, 0, MatchBudget.DEFAULT_CHECK_INTERVAL, ticker));
+    }
+
+    /**
+     * Create a sequence that counts its accesses against a shared budget.
+     * The caller is responsible for starting the budget's rule / message.
+     *
+     * @param inner  a {@link java.lang.CharSequence} object.
+     * @param budget the {@link MatchBudget} to charge accesses to.
+     */
+    public LimitedRegexCharSequence(CharSequence inner, MatchBudget budget) {
         super();
         if (inner == null) {
             throw new NullPointerException("CharSequence must not be null");
         }
         this.inner = inner;
+        this.budget = budget;
+        accessCount = 0;
+    }
 
-        this.ticker = ticker;
-        this.stopwatch = Stopwatch.createStarted(this.ticker);
-
-        this.timeoutMillis = timeoutMillis;
+    /**
+     * Replace the wrapped text, so that this sequence can be reused.
+     *
+     * @param inner a {@link java.lang.CharSequence} object.
+     * @return this sequence
+     */
+    public LimitedRegexCharSequence reset(CharSequence inner) {
+        if (inner == null) {
+            throw new NullPointerException("CharSequence must not be null");
+        }
+        this.inner = inner;
         accessCount = 0;
+        return this;
+    }
+
+    public MatchBudget getBudget() {
+        return budget;
     }
 
     /**
@@ -86,8 +106,10 @@ public class LimitedRegexCharSequence implements CharSequence {
      */
     public char charAt(int index) {
         accessCount++;
-        if (stopwatch.elapsed(TimeUnit.MILLISECONDS) > timeoutMillis) {
-            throw new RegexTimeoutException("Timeout occurred after " + timeoutMillis + "ms");
+        if (!budget.step()) {
+            throw new RegexTimeoutException(budget.isMessageExpired() ?
+                    "Message timeout occurred after " + budget.getMessageTimeoutMillis() + "ms" :
+                    "Timeout occurred after " + budget.getRuleTimeoutMillis() + "ms");
         }
         return inner.charAt(index);
     }
@@ -105,7 +127,7 @@ public class LimitedRegexCharSequence implements CharSequence {
      * {@inheritDoc}
      */
     public CharSequence subSequence(int start, int end) {
-        return new LimitedRegexCharSequence(inner.subSequence(start, end), timeoutMillis, this.ticker);
+        return new LimitedRegexCharSequence(inner.subSequence(start, end), budget);
     }
 
     /**
@@ -0,0 +1,925 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.util;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A regular expression matcher that never backtracks.
+ * <p>
+ * Patterns are compiled to an NFA, which is simulated over the input one
+ * character at a time (Thompson / Pike style).  Matching takes time
+ * proportional to the length of the input times the size of the pattern,
+ * no matter what the input is, so it can't be stalled by a hostile message
+ * the way java.util.regex can.
+ * <p>
+ * Only the subset of the java.util.regex syntax that can be matched this way
+ * is supported: literals, character classes (without unions / intersections
+ * or \p{..} properties), ., groups, alternation, greedy and lazy quantifiers,
+ * the ^ $ \A \z \Z \b \B anchors, and lookaround that tests a single
+ * character, like (?!\w).  Back-references, other lookaround, atomic groups,
+ * possessive quantifiers and inline flags are not.
+ * {@link #compile(String)} returns null for anything unsupported, so that the
+ * caller can fall back to java.util.regex.
+ * <p>
+ * The semantics are those of Pattern.compile(regex, CASE_INSENSITIVE),
+ * which is how rule patterns are compiled.  Only find() is provided, since
+ * that's all a rule needs to decide if it applies.
+ */
+public final class LinearPattern {
+
+    // Refuse patterns that expand to more than this (eg: (a{1,100}){1,100})
+    private static final int MAX_PROGRAM = 10000;
+
+    private static final int OP_CHAR = 0;
+    private static final int OP_SPLIT = 1;
+    private static final int OP_JMP = 2;
+    private static final int OP_ASSERT = 3;
+    private static final int OP_MATCH = 4;
+
+    private static final int AT_BEGIN = 0;   // ^ \A
+    private static final int AT_DOLLAR = 1;  // $ \Z
+    private static final int AT_END = 2;     // \z
+    private static final int AT_BOUND = 3;   // \b
+    private static final int AT_NBOUND = 4;  // \B
+    private static final int AT_AHEAD = 5;   // (?=x)
+    private static final int AT_NOT_AHEAD = 6;  // (?!x)
+    private static final int AT_BEHIND = 7;  // (?<=x)
+    private static final int AT_NOT_BEHIND = 8; // (?<!x)
+
+    private final String pattern;
+    private final int[] op;
+    private final int[] arg1;
+    private final int[] arg2;
+    private final CharClass[] classes;
+    private final CharClass[][] lookarounds;
+    // Work space for find(), so that it doesn't allocate on every call.
+    private final ThreadLocal<Scratch> scratch;
+
+    private LinearPattern(String pattern, Program program) {
+        this.pattern = pattern;
+        int size = program.size();
+        this.op = Arrays.copyOf(program.op, size);
+        this.arg1 = Arrays.copyOf(program.arg1, size);
+        this.arg2 = Arrays.copyOf(program.arg2, size);
+        this.classes = program.classes.toArray(new CharClass[program.classes.size()]);
+        this.lookarounds = program.lookarounds.toArray(new CharClass[program.lookarounds.size()][]);
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(size));
+    }
+
+    /**
+     * Compile a regex, if it only uses features this engine supports.
+     *
+     * @param regex Regular expression, in java.util.regex syntax.
+     * @return A LinearPattern, or null if the regex can't be matched without
+     * backtracking (or uses syntax we don't understand).
+     */
+    @Nullable
+    public static LinearPattern compile(String regex) {
+        try {
+            Parser parser = new Parser(regex);
+            Node root = parser.parseAlternation();
+            if (parser.more()) return null; // Unbalanced ')'
+            Program program = new Program();
+            root.emit(program);
+            program.add(OP_MATCH, 0, 0);
+            return new LinearPattern(regex, program);
+        } catch (UnsupportedOperationException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Check whether the pattern matches anywhere in the input.
+     *
+     * @param input Text to search
+     * @return true if there is a match, the same as Matcher.find()
+     */
+    public boolean find(CharSequence input) {
+        Scratch work = scratch.get();
+        int[] current = work.current;
+        int[] next = work.next;
+        int[] seen = work.seen;
+        int[] stack = work.stack;
+        int length = input.length();
+        int pos = 0;
+
+        // seen[] marks are only valid for the current generation, so keep
+        // counting up from the last call instead of clearing it.
+        if (work.generation > Integer.MAX_VALUE - length - 2) {
+            Arrays.fill(seen, 0);
+            work.generation = 0;
+        }
+        int generation = work.generation + 1;
+
+        // Threads at the current position, waiting for a character.
+        int count = closure(0, pos, input, current, 0, seen, generation, stack);
+
+        while (count >= 0 && pos < length) {
+            int cp = Character.codePointAt(input, pos);
+            int nextPos = pos + Character.charCount(cp);
+
+            generation++;
+            int nextCount = 0;
+            for (int i = 0; i < count && nextCount >= 0; i++) {
+                int pc = current[i];
+                if (classes[arg1[pc]].matches(cp)) {
+                    nextCount = closure(pc + 1, nextPos, input, next, nextCount, seen, generation, stack);
+                }
+            }
+            // Start another attempt at the next position (unanchored search)
+            if (nextCount >= 0) {
+                nextCount = closure(0, nextPos, input, next, nextCount, seen, generation, stack);
+            }
+
+            int[] tmp = current;
+            current = next;
+            next = tmp;
+            count = nextCount;
+            pos = nextPos;
+        }
+        work.generation = generation;
+        return count < 0;
+    }
+
+    /*
+     * Follow all of the empty transitions from pc, adding any CHAR
+     * instructions we reach to the list.  Returns the new list size, or -1 if
+     * we reached a MATCH.
+     */
+    private int closure(int start, int pos, CharSequence input, int[] list, int count,
+                        int[] seen, int generation, int[] stack) {
+        int sp = 0;
+        stack[sp++] = start;
+        while (sp > 0) {
+            int pc = stack[--sp];
+            if (seen[pc] == generation) continue;
+            seen[pc] = generation;
+            switch (op[pc]) {
+                case OP_CHAR:
+                    list[count++] = pc;
+                    break;
+                case OP_MATCH:
+                    return -1;
+                case OP_JMP:
+                    stack[sp++] = arg1[pc];
+                    break;
+                case OP_SPLIT:
+                    // Push the lower-priority branch first.  Priority doesn't
+                    // change whether there is a match, but it keeps the order
+                    // the same as a backtracking engine would try them.
+                    stack[sp++] = arg2[pc];
+                    stack[sp++] = arg1[pc];
+                    break;
+                case OP_ASSERT:
+                    if (checkAssertion(arg1[pc], arg2[pc], pos, input)) {
+                        stack[sp++] = pc + 1;
+                    }
+                    break;
+            }
+        }
+        return count;
+    }
+
+    private boolean checkAssertion(int kind, int arg, int pos, CharSequence input) {
+        int length = input.length();
+        switch (kind) {
+            case AT_BEGIN:
+                return pos == 0;
+            case AT_END:
+                return pos == length;
+            case AT_DOLLAR:
+                // Same as java.util.regex: end of input, or before a line
+                // terminator at the end of input.
+                if (pos < length - 2) return false;
+                if (pos == length - 2) {
+                    return input.charAt(pos) == '\r' && input.charAt(pos + 1) == '\n';
+                }
+                if (pos == length - 1) {
+                    char ch = input.charAt(pos);
+                    if (ch == '\n') return pos == 0 || input.charAt(pos - 1) != '\r';
+                    return ch == '\r' || ch == '\u0085' || (ch | 1) == '\u2029';
+                }
+                return true;
+            case AT_BOUND:
+                return isWordBefore(input, pos) != isWordAt(input, pos);
+            case AT_NBOUND:
+                return isWordBefore(input, pos) == isWordAt(input, pos);
+            case AT_AHEAD:
+                return pos < length && anyMatch(lookarounds[arg], Character.codePointAt(input, pos));
+            case AT_NOT_AHEAD:
+                return pos >= length || !anyMatch(lookarounds[arg], Character.codePointAt(input, pos));
+            case AT_BEHIND:
+                return pos > 0 && anyMatch(lookarounds[arg], input.charAt(pos - 1));
+            case AT_NOT_BEHIND:
+                return pos == 0 || !anyMatch(lookarounds[arg], input.charAt(pos - 1));
+            default:
+                return false;
+        }
+    }
+
+    private static boolean anyMatch(CharClass[] set, int cp) {
+        for (CharClass c : set) {
+            if (c.matches(cp)) return true;
+        }
+        return false;
+    }
+
+    private static boolean isWord(int ch) {
+        return ch == '_' || Character.isLetterOrDigit(ch);
+    }
+
+    private static boolean isWordBefore(CharSequence input, int pos) {
+        if (pos <= 0) return false;
+        int ch = Character.codePointBefore(input, pos);
+        return isWord(ch) || (Character.getType(ch) == Character.NON_SPACING_MARK
+                && hasBaseCharacter(input, pos - 1));
+    }
+
+    private static boolean isWordAt(CharSequence input, int pos) {
+        if (pos >= input.length()) return false;
+        int ch = Character.codePointAt(input, pos);
+        return isWord(ch) || (Character.getType(ch) == Character.NON_SPACING_MARK
+                && hasBaseCharacter(input, pos));
+    }
+
+    // A combining mark counts as part of a word if it follows a letter/digit
+    private static boolean hasBaseCharacter(CharSequence input, int pos) {
+        for (int x = pos; x >= 0; x--) {
+            int ch = Character.codePointAt(input, x);
+            if (Character.isLetterOrDigit(ch)) return true;
+            if (Character.getType(ch) != Character.NON_SPACING_MARK) return false;
+        }
+        return false;
+    }
+
+    /**
+     * @return the size of the compiled program
+     */
+    public int size() {
+        return op.length;
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+
+    private static final class Scratch {
+        final int[] current;
+        final int[] next;
+        final int[] seen;
+        final int[] stack;
+        int generation;
+
+        Scratch(int size) {
+            current = new int[size];
+            next = new int[size];
+            seen = new int[size];
+            stack = new int[size * 2 + 1];
+        }
+    }
+
+    /* Compiled program */
+
+    private static final class Program {
+        int[] op = new int[16];
+        int[] arg1 = new int[16];
+        int[] arg2 = new int[16];
+        final List<CharClass> classes = new ArrayList<>();
+        final List<CharClass[]> lookarounds = new ArrayList<>();
+        private int size = 0;
+
+        int size() {
+            return size;
+        }
+
+        int add(int opcode, int a1, int a2) {
+            if (size >= MAX_PROGRAM) throw new UnsupportedOperationException();
+            if (size == op.length) {
+                op = Arrays.copyOf(op, size * 2);
+                arg1 = Arrays.copyOf(arg1, size * 2);
+                arg2 = Arrays.copyOf(arg2, size * 2);
+            }
+            op[size] = opcode;
+            arg1[size] = a1;
+            arg2[size] = a2;
+            return size++;
+        }
+
+        int addClass(CharClass c) {
+            classes.add(c);
+            return add(OP_CHAR, classes.size() - 1, 0);
+        }
+    }
+
+    /* Syntax tree */
+
+    private interface Node {
+        void emit(Program p);
+    }
+
+    private static final class CharNode implements Node {
+        final CharClass charClass;
+
+        CharNode(CharClass charClass) {
+            this.charClass = charClass;
+        }
+
+        public void emit(Program p) {
+            p.addClass(charClass);
+        }
+    }
+
+    private static final class AssertNode implements Node {
+        final int kind;
+        final CharClass[] lookaround;
+
+        AssertNode(int kind) {
+            this(kind, null);
+        }
+
+        AssertNode(int kind, CharClass[] lookaround) {
+            this.kind = kind;
+            this.lookaround = lookaround;
+        }
+
+        public void emit(Program p) {
+            int arg = 0;
+            if (lookaround != null) {
+                p.lookarounds.add(lookaround);
+                arg = p.lookarounds.size() - 1;
+            }
+            p.add(OP_ASSERT, kind, arg);
+        }
+    }
+
+    private static final class SequenceNode implements Node {
+        final List<Node> items;
+
+        SequenceNode(List<Node> items) {
+            this.items = items;
+        }
+
+        public void emit(Program p) {
+            for (Node n : items) n.emit(p);
+        }
+    }
+
+    private static final class AlternationNode implements Node {
+        final List<Node> choices;
+
+        AlternationNode(List<Node> choices) {
+            this.choices = choices;
+        }
+
+        public void emit(Program p) {
+            List<Integer> jumps = new ArrayList<>();
+            for (int i = 0; i < choices.size(); i++) {
+                if (i < choices.size() - 1) {
+                    int split = p.add(OP_SPLIT, 0, 0);
+                    p.arg1[split] = p.size();
+                    choices.get(i).emit(p);
+                    jumps.add(p.add(OP_JMP, 0, 0));
+                    p.arg2[split] = p.size();
+                } else {
+                    choices.get(i).emit(p);
+                }
+            }
+            for (int jmp : jumps) p.arg1[jmp] = p.size();
+        }
+    }
+
+    private static final class RepeatNode implements Node {
+        final Node node;
+        final int min;
+        final int max; // -1 for unbounded
+        final boolean lazy;
+
+        RepeatNode(Node node, int min, int max, boolean lazy) {
+            this.node = node;
+            this.min = min;
+            this.max = max;
+            this.lazy = lazy;
+        }
+
+        private void prefer(Program p, int split, int body, int exit) {
+            p.arg1[split] = lazy ? exit : body;
+            p.arg2[split] = lazy ? body : exit;
+        }
+
+        public void emit(Program p) {
+            for (int i = 0; i < min; i++) node.emit(p);
+
+            if (max < 0) {
+                int loop = p.add(OP_SPLIT, 0, 0);
+                node.emit(p);
+                p.add(OP_JMP, loop, 0);
+                prefer(p, loop, loop + 1, p.size());
+            } else {
+                List<Integer> splits = new ArrayList<>();
+                for (int i = min; i < max; i++) {
+                    splits.add(p.add(OP_SPLIT, 0, 0));
+                    node.emit(p);
+                }
+                for (int split : splits) prefer(p, split, split + 1, p.size());
+            }
+        }
+    }
+
+    /* Character classes */
+
+    private static final class CharClass {
+        // Sorted, non-overlapping [lo, hi] pairs
+        private final int[] ranges;
+        private final boolean negated;
+        private final boolean[] ascii = new boolean[128];
+
+        CharClass(int[] ranges, boolean negated) {
+            this.ranges = ranges;
+            this.negated = negated;
+            for (int c = 0; c < 128; c++) ascii[c] = search(c) != negated;
+        }
+
+        private boolean search(int cp) {
+            int lo = 0, hi = ranges.length / 2 - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (cp < ranges[mid * 2]) hi = mid - 1;
+                else if (cp > ranges[mid * 2 + 1]) lo = mid + 1;
+                else return true;
+            }
+            return false;
+        }
+
+        boolean matches(int cp) {
+            if (cp < 128) return ascii[cp];
+            return search(cp) != negated;
+        }
+    }
+
+    /*
+     * Collects ranges for a character class, including the other case of any
+     * ASCII letters (the CASE_INSENSITIVE rules java.util.regex uses).
+     */
+    private static final class ClassBuilder {
+        private final List<int[]> ranges = new ArrayList<>();
+
+        void add(int lo, int hi) {
+            ranges.add(new int[]{lo, hi});
+        }
+
+        void addFolded(int lo, int hi) {
+            add(lo, hi);
+            addOverlap(lo, hi, 'a', 'z', 'A' - 'a');
+            addOverlap(lo, hi, 'A', 'Z', 'a' - 'A');
+        }
+
+        private void addOverlap(int lo, int hi, int from, int to, int shift) {
+            int a = Math.max(lo, from), b = Math.min(hi, to);
+            if (a <= b) add(a + shift, b + shift);
+        }
+
+        void addAll(int[] pairs) {
+            for (int i = 0; i < pairs.length; i += 2) add(pairs[i], pairs[i + 1]);
+        }
+
+        CharClass build(boolean negated) {
+            ranges.sort((x, y) -> Integer.compare(x[0], y[0]));
+            int[] merged = new int[ranges.size() * 2];
+            int n = 0;
+            for (int[] r : ranges) {
+                if (n > 0 && r[0] <= merged[n - 1] + 1) {
+                    merged[n - 1] = Math.max(merged[n - 1], r[1]);
+                } else {
+                    merged[n++] = r[0];
+                    merged[n++] = r[1];
+                }
+            }
+            return new CharClass(Arrays.copyOf(merged, n), negated);
+        }
+    }
+
+    private static final int[] DIGIT = {'0', '9'};
+    private static final int[] WORD = {'0', '9', 'A', 'Z', '_', '_', 'a', 'z'};
+    private static final int[] SPACE = {'\t', '\r', ' ', ' '};
+    private static final int[] LINE_TERMINATORS = {'\n', '\n', '\r', '\r', 0x85, 0x85, 0x2028, 0x2029};
+
+    /* Parser */
+
+    private static final class Parser {
+        private final String regex;
+        private int pos = 0;
+
+        Parser(String regex) {
+            this.regex = regex;
+        }
+
+        boolean more() {
+            return pos < regex.length();
+        }
+
+        private char peek() {
+            return regex.charAt(pos);
+        }
+
+        private int nextCodePoint() {
+            if (!more()) throw new UnsupportedOperationException();
+            int cp = regex.codePointAt(pos);
+            pos += Character.charCount(cp);
+            return cp;
+        }
+
+        Node parseAlternation() {
+            List<Node> choices = new ArrayList<>();
+            choices.add(parseSequence());
+            while (more() && peek() == '|') {
+                pos++;
+                choices.add(parseSequence());
+            }
+            return choices.size() == 1 ? choices.get(0) : new AlternationNode(choices);
+        }
+
+        private Node parseSequence() {
+            List<Node> items = new ArrayList<>();
+            while (more() && peek() != '|' && peek() != ')') {
+                if (regex.startsWith("\\Q", pos)) {
+                    items.addAll(parseQuoted());
+                    continue;
+                }
+                items.add(parseQuantified(parseAtom()));
+            }
+            return new SequenceNode(items);
+        }
+
+        private List<Node> parseQuoted() {
+            pos += 2;
+            int end = regex.indexOf("\\E", pos);
+            if (end < 0) end = regex.length();
+            List<Node> items = new ArrayList<>();
+            while (pos < end) {
+                items.add(literal(nextCodePoint()));
+            }
+            pos = Math.min(end + 2, regex.length());
+            // A quantifier after \E applies to the last quoted character.
+            if (!items.isEmpty()) {
+                Node last = items.remove(items.size() - 1);
+                items.add(parseQuantified(last));
+            }
+            return items;
+        }
+
+        private Node parseQuantified(Node atom) {
+            if (!more()) return atom;
+            int min, max;
+            switch (peek()) {
+                case '?':
+                    min = 0;
+                    max = 1;
+                    break;
+                case '*':
+                    min = 0;
+                    max = -1;
+                    break;
+                case '+':
+                    min = 1;
+                    max = -1;
+                    break;
+                case '{':
+                    int close = regex.indexOf('}', pos);
+                    if (close < 0) throw new UnsupportedOperationException();
+                    String[] bounds = regex.substring(pos + 1, close).split(",", -1);
+                    try {
+                        min = Integer.parseInt(bounds[0]);
+                        if (bounds.length == 1) max = min;
+                        else if (bounds.length == 2) max = bounds[1].isEmpty() ? -1 : Integer.parseInt(bounds[1]);
+                        else throw new UnsupportedOperationException();
+                    } catch (NumberFormatException ex) {
+                        throw new UnsupportedOperationException();
+                    }
+                    if (min > MAX_PROGRAM || max > MAX_PROGRAM || (max >= 0 && max < min)) {
+                        throw new UnsupportedOperationException();
+                    }
+                    pos = close;
+                    break;
+                default:
+                    return atom;
+            }
+            pos++;
+            boolean lazy = false;
+            if (more() && peek() == '?') {
+                lazy = true;
+                pos++;
+            } else if (more() && peek() == '+') {
+                // Possessive quantifiers discard backtracking positions, which
+                // changes what can match.
+                throw new UnsupportedOperationException();
+            }
+            return new RepeatNode(atom, min, max, lazy);
+        }
+
+        private Node parseAtom() {
+            int c = nextCodePoint();
+            switch (c) {
+                case '(':
+                    return parseGroup();
+                case '[':
+                    return new CharNode(parseClass());
+                case '\\':
+                    return parseEscape();
+                case '.': {
+                    ClassBuilder b = new ClassBuilder();
+                    b.addAll(LINE_TERMINATORS);
+                    return new CharNode(b.build(true));
+                }
+                case '^':
+                    return new AssertNode(AT_BEGIN);
+                case '$':
+                    return new AssertNode(AT_DOLLAR);
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                    throw new UnsupportedOperationException();
+                default:
+                    return literal(c);
+            }
+        }
+
+        private Node literal(int cp) {
+            ClassBuilder b = new ClassBuilder();
+            b.addFolded(cp, cp);
+            return new CharNode(b.build(false));
+        }
+
+        private Node parseGroup() {
+            if (more() && peek() == '?') {
+                pos++;
+                if (!more()) throw new UnsupportedOperationException();
+                char c = regex.charAt(pos++);
+                if (c == '=') return parseLookaround(AT_AHEAD);
+                if (c == '!') return parseLookaround(AT_NOT_AHEAD);
+                if (c == '<' && more() && peek() == '=') {
+                    pos++;
+                    return parseLookaround(AT_BEHIND);
+                }
+                if (c == '<' && more() && peek() == '!') {
+                    pos++;
+                    return parseLookaround(AT_NOT_BEHIND);
+                }
+                if (c == '<' && more() && Character.isLetter(peek())) {
+                    // Named group: (?<name>X)
+                    int end = regex.indexOf('>', pos);
+                    if (end < 0) throw new UnsupportedOperationException();
+                    pos = end + 1;
+                } else if (c != ':') {
+                    // Atomic groups, inline flags.
+                    throw new UnsupportedOperationException();
+                }
+            }
+            Node inner = parseAlternation();
+            if (!more() || peek() != ')') throw new UnsupportedOperationException();
+            pos++;
+            return inner;
+        }
+
+        /*
+         * Lookaround is only supported when it tests a single character, eg:
+         * (?!\w) or (?<!'|\w), which is how rules normally use it to find
+         * word edges.  That's just a check of the next / previous character.
+         */
+        private Node parseLookaround(int kind) {
+            List<CharClass> set = new ArrayList<>();
+            collectSingleChars(parseAlternation(), set);
+            if (!more() || peek() != ')') throw new UnsupportedOperationException();
+            pos++;
+            return new AssertNode(kind, set.toArray(new CharClass[set.size()]));
+        }
+
+        private void collectSingleChars(Node node, List<CharClass> set) {
+            if (node instanceof CharNode) {
+                set.add(((CharNode) node).charClass);
+            } else if (node instanceof SequenceNode && ((SequenceNode) node).items.size() == 1) {
+                collectSingleChars(((SequenceNode) node).items.get(0), set);
+            } else if (node instanceof AlternationNode) {
+                for (Node choice : ((AlternationNode) node).choices) collectSingleChars(choice, set);
+            } else {
+                throw new UnsupportedOperationException();
+            }
+        }
+
+        private CharClass parseClass() {
+            ClassBuilder b = new ClassBuilder();
+            boolean negated = false;
+            if (more() && peek() == '^') {
+                pos++;
+                negated = true;
+            }
+            boolean first = true;
+            while (true) {
+                if (!more()) throw new UnsupportedOperationException();
+                int c = nextCodePoint();
+                if (c == ']' && !first) break;
+                if (c == '[') throw new UnsupportedOperationException(); // Union
+                if (c == '&' && more() && peek() == '&') throw new UnsupportedOperationException();
+
+                int lo;
+                if (c == '\\') {
+                    int[] predefined = predefinedClass();
+                    if (predefined != null) {
+                        b.addAll(predefined);
+                        if (more() && peek() == '-' && pos + 1 < regex.length()
+                                && regex.charAt(pos + 1) != ']') {
+                            throw new UnsupportedOperationException();
+                        }
+                        first = false;
+                        continue;
+                    }
+                    lo = escapedCodePoint();
+                } else {
+                    lo = c;
+                }
+
+                int hi = lo;
+                if (more() && peek() == '-' && pos + 1 < regex.length() && regex.charAt(pos + 1) != ']') {
+                    pos++;
+                    int h = nextCodePoint();
+                    if (h == '[') throw new UnsupportedOperationException();
+                    if (h == '\\') {
+                        if (predefinedClass() != null) throw new UnsupportedOperationException();
+                        h = escapedCodePoint();
+                    }
+                    if (h < lo) throw new UnsupportedOperationException();
+                    hi = h;
+                }
+                b.addFolded(lo, hi);
+                first = false;
+            }
+            return b.build(negated);
+        }
+
+        /*
+         * If the escape at pos (just after the backslash) is a predefined
+         * class, consume it and return its ranges.  Negated classes are
+         * returned as their complement.
+         */
+        private int[] predefinedClass() {
+            if (!more()) throw new UnsupportedOperationException();
+            int[] ranges;
+            switch (peek()) {
+                case 'd':
+                case 'D':
+                    ranges = DIGIT;
+                    break;
+                case 'w':
+                case 'W':
+                    ranges = WORD;
+                    break;
+                case 's':
+                case 'S':
+                    ranges = SPACE;
+                    break;
+                default:
+                    return null;
+            }
+            boolean negated = Character.isUpperCase(peek());
+            pos++;
+            return negated ? complement(ranges) : ranges;
+        }
+
+        private int[] complement(int[] ranges) {
+            List<Integer> out = new ArrayList<>();
+            int start = 0;
+            for (int i = 0; i < ranges.length; i += 2) {
+                if (ranges[i] > start) {
+                    out.add(start);
+                    out.add(ranges[i] - 1);
+                }
+                start = ranges[i + 1] + 1;
+            }
+            out.add(start);
+            out.add(Character.MAX_CODE_POINT);
+            int[] result = new int[out.size()];
+            for (int i = 0; i < result.length; i++) result[i] = out.get(i);
+            return result;
+        }
+
+        private Node parseEscape() {
+            int[] predefined = predefinedClass();
+            if (predefined != null) {
+                ClassBuilder b = new ClassBuilder();
+                b.addAll(predefined);
+                return new CharNode(b.build(false));
+            }
+            switch (peek()) {
+                case 'b':
+                    pos++;
+                    return new AssertNode(AT_BOUND);
+                case 'B':
+                    pos++;
+                    return new AssertNode(AT_NBOUND);
+                case 'A':
+                    pos++;
+                    return new AssertNode(AT_BEGIN);
+                case 'z':
+                    pos++;
+                    return new AssertNode(AT_END);
+                case 'Z':
+                    pos++;
+                    return new AssertNode(AT_DOLLAR);
+                default:
+                    return literal(escapedCodePoint());
+            }
+        }
+
+        /*
+         * Parse an escape that stands for a single character.  pos is just
+         * after the backslash.
+         */
+        private int escapedCodePoint() {
+            int c = nextCodePoint();
+            switch (c) {
+                case 't':
+                    return '\t';
+                case 'n':
+                    return '\n';
+                case 'r':
+                    return '\r';
+                case 'f':
+                    return '\f';
+                case 'a':
+                    return '\u0007';
+                case 'e':
+                    return '\u001B';
+                case '0': {
+                    int value = 0, digits = 0;
+                    while (digits < 3 && more() && peek() >= '0' && peek() <= '7') {
+                        int v = value * 8 + (peek() - '0');
+                        if (v > 0377) break;
+                        value = v;
+                        pos++;
+                        digits++;
+                    }
+                    if (digits == 0) throw new UnsupportedOperationException();
+                    return value;
+                }
+                case 'x':
+                    if (more() && peek() == '{') {
+                        int close = regex.indexOf('}', pos);
+                        if (close < 0) throw new UnsupportedOperationException();
+                        int cp = hex(pos + 1, close);
+                        pos = close + 1;
+                        return cp;
+                    }
+                    pos += 2;
+                    return hex(pos - 2, pos);
+                case 'u':
+                    pos += 4;
+                    int cp = hex(pos - 4, pos);
+                    if (Character.isSurrogate((char) cp)) throw new UnsupportedOperationException();
+                    return cp;
+                case 'c':
+                    return nextCodePoint() ^ 64;
+                default:
+                    if (Character.isLetterOrDigit(c)) {
+                        // Back references, \p{..}, \h, \v, \R, \G, \k<..>, etc.
+                        throw new UnsupportedOperationException();
+                    }
+                    return c;
+            }
+        }
+
+        private int hex(int start, int end) {
+            if (start >= end || end > regex.length()) throw new UnsupportedOperationException();
+            try {
+                int cp = Integer.parseInt(regex.substring(start, end), 16);
+                if (cp > Character.MAX_CODE_POINT) throw new UnsupportedOperationException();
+                return cp;
+            } catch (NumberFormatException ex) {
+                throw new UnsupportedOperationException();
+            }
+        }
+    }
+}
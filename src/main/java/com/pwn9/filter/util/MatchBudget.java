@@ -0,0 +1,176 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.util;
+
+import com.google.common.base.Ticker;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits how long regex matching may run, for one rule and for a whole
+ * message.
+ * <p>
+ * Reading the clock on every character access costs more than the access
+ * itself, so the budget just counts steps, and only reads the clock once
+ * every {@link #DEFAULT_CHECK_INTERVAL} steps (and on the first step of each
+ * rule).  A runaway regex makes millions of accesses, so it will still be
+ * stopped within a few microseconds of its deadline.
+ * <p>
+ * One budget is shared by every rule applied to a message.  Call
+ * {@link #startMessage()} before the first rule, and {@link #startRule()}
+ * before each one.  A budget is not thread-safe, but it can be
+ * {@link #fork()}ed for use by other threads.
+ */
+public class MatchBudget {
+
+    public static final int DEFAULT_CHECK_INTERVAL = 1024;
+
+    private final Ticker ticker;
+    private final long ruleTimeoutNanos;
+    private final long messageTimeoutNanos;
+    private final int checkMask;
+
+    private long messageDeadline;
+    private long ruleDeadline;
+    private long steps;
+    private boolean messageExpired;
+
+    /**
+     * @param ruleTimeoutMillis    Time allowed for a single rule.
+     * @param messageTimeoutMillis Time allowed for all rules on a message, or
+     *                             0 for no limit.
+     */
+    public MatchBudget(long ruleTimeoutMillis, long messageTimeoutMillis) {
+        this(ruleTimeoutMillis, messageTimeoutMillis, DEFAULT_CHECK_INTERVAL, Ticker.systemTicker());
+    }
+
+    /**
+     * @param ruleTimeoutMillis    Time allowed for a single rule.
+     * @param messageTimeoutMillis Time allowed for all rules on a message, or
+     *                             0 for no limit.
+     * @param checkInterval        Number of steps between clock reads.  Must
+     *                             be a power of two.
+     * @param ticker               Time source.
+     */
+    public MatchBudget(long ruleTimeoutMillis, long messageTimeoutMillis,
+                       int checkInterval, Ticker ticker) {
+        if (checkInterval <= 0 || Integer.bitCount(checkInterval) != 1) {
+            throw new IllegalArgumentException("Check interval must be a power of two: " + checkInterval);
+        }
+        this.ticker = ticker;
+        this.ruleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(ruleTimeoutMillis);
+        this.messageTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(messageTimeoutMillis);
+        this.checkMask = checkInterval - 1;
+        startMessage();
+    }
+
+    private MatchBudget(MatchBudget parent) {
+        this.ticker = parent.ticker;
+        this.ruleTimeoutNanos = parent.ruleTimeoutNanos;
+        this.messageTimeoutNanos = parent.messageTimeoutNanos;
+        this.checkMask = parent.checkMask;
+        this.messageDeadline = parent.messageDeadline;
+        startRule();
+    }
+
+    /**
+     * Create a budget for matching on another thread.  It has the same
+     * message deadline as this one, and its own rule deadline.
+     *
+     * @return A new MatchBudget
+     */
+    public MatchBudget fork() {
+        return new MatchBudget(this);
+    }
+
+    /**
+     * Take on the message expiry of a budget made by {@link #fork()}.
+     *
+     * @param forked A budget made from this one, which is no longer in use.
+     */
+    public void merge(MatchBudget forked) {
+        if (forked.messageExpired) messageExpired = true;
+    }
+
+    /**
+     * Start timing a new message.  Also starts a new rule.
+     */
+    public void startMessage() {
+        long now = ticker.read();
+        messageDeadline = now + messageTimeoutNanos;
+        messageExpired = false;
+        startRule(now);
+    }
+
+    /**
+     * Start timing a new rule.
+     */
+    public void startRule() {
+        startRule(ticker.read());
+    }
+
+    private void startRule(long now) {
+        ruleDeadline = now + ruleTimeoutNanos;
+        // Ticker values may wrap, so compare by subtraction.
+        if (messageTimeoutNanos > 0 && ruleDeadline - messageDeadline > 0) {
+            ruleDeadline = messageDeadline;
+        }
+        steps = 0;
+    }
+
+    /**
+     * Count one step of matching work.
+     *
+     * @return false if the rule, or the message, has run out of time.
+     */
+    public boolean step() {
+        return (steps++ & checkMask) != 0 || checkClock();
+    }
+
+    private boolean checkClock() {
+        long now = ticker.read();
+        if (messageTimeoutNanos > 0 && now - messageDeadline > 0) messageExpired = true;
+        return now - ruleDeadline <= 0;
+    }
+
+    /**
+     * @return true if a step has found the message deadline to be exceeded.
+     * This does not read the clock.
+     */
+    public boolean isMessageExpired() {
+        return messageExpired;
+    }
+
+    /**
+     * @return The number of steps taken by the current rule.
+     */
+    public long getSteps() {
+        return steps;
+    }
+
+    public long getRuleTimeoutMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(ruleTimeoutNanos);
+    }
+
+    public long getMessageTimeoutMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(messageTimeoutNanos);
+    }
+}
@@ -0,0 +1,463 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.util;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Works out which literal strings a regular expression requires.
+ * <p>
+ * Given a pattern, this returns a set of strings such that every possible
+ * match of the pattern contains at least one of them.  Patterns are assumed
+ * to be compiled with CASE_INSENSITIVE (and not UNICODE_CASE), so the
+ * literals are folded to lower case using the same US-ASCII rules the regex
+ * engine uses.  Use {@link #fold(char)} on the text being searched.
+ * <p>
+ * The parser is deliberately conservative.  If the pattern uses anything it
+ * doesn't understand (inline flags, quoting, hex / unicode escapes, etc.) it
+ * gives up, and the caller must assume the pattern can match anything.
+ */
+public final class RegexLiterals {
+
+    // Limits on the size of the literal sets we build, so that things like
+    // [ab][cd][ef][gh] don't explode.
+    private static final int MAX_CROSS = 16;
+    private static final int MAX_UNION = 64;
+    private static final int MAX_CLASS = 4;
+
+    private static final Set<String> EMPTY = Collections.singleton("");
+
+    private RegexLiterals() {
+    }
+
+    /**
+     * Find a set of literals, one of which must appear in any string the
+     * given regex matches.
+     *
+     * @param regex The regular expression source
+     * @return A set of lower-cased literals, or null if none could be found.
+     */
+    @Nullable
+    public static Set<String> requiredLiterals(String regex) {
+        try {
+            Parser parser = new Parser(regex);
+            Info info = parser.parseAlternation();
+            if (parser.pos != regex.length()) return null;
+            Set<String> best = info.best();
+            return best == null ? null : minimize(best);
+        } catch (UnsupportedOperationException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Fold a character the way CASE_INSENSITIVE matching does. (US-ASCII only)
+     *
+     * @param c character
+     * @return lower-case character if c is A-Z, otherwise c
+     */
+    public static char fold(char c) {
+        return (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    private static boolean useful(Set<String> s) {
+        return s != null && !s.isEmpty() && !s.contains("");
+    }
+
+    private static int minLength(Set<String> s) {
+        int min = Integer.MAX_VALUE;
+        for (String str : s) min = Math.min(min, str.length());
+        return min;
+    }
+
+    /*
+     * Pick the more selective of two candidate sets.  Longer literals are
+     * less likely to appear by accident, and fewer of them is cheaper.
+     */
+    private static Set<String> better(Set<String> a, Set<String> b) {
+        if (!useful(a)) return useful(b) ? b : null;
+        if (!useful(b)) return a;
+        int lenA = minLength(a), lenB = minLength(b);
+        if (lenA != lenB) return lenA > lenB ? a : b;
+        return a.size() <= b.size() ? a : b;
+    }
+
+    /*
+     * If one literal contains another, the longer one is redundant.
+     */
+    private static Set<String> minimize(Set<String> literals) {
+        Set<String> result = new HashSet<>();
+        for (String s : literals) {
+            boolean redundant = false;
+            for (String other : literals) {
+                if (!other.equals(s) && s.contains(other)) {
+                    redundant = true;
+                    break;
+                }
+            }
+            if (!redundant) result.add(s);
+        }
+        return result;
+    }
+
+    @Nullable
+    private static Set<String> cross(Set<String> a, Set<String> b) {
+        if (a.size() * b.size() > MAX_CROSS) return null;
+        Set<String> result = new HashSet<>();
+        for (String x : a) {
+            for (String y : b) {
+                result.add(x + y);
+            }
+        }
+        return result;
+    }
+
+    /*
+     * What we know about a fragment of the regex.
+     * exact: every string the fragment can match, if it is a small finite set.
+     * required: a set of literals, one of which is in every match.
+     */
+    private static final class Info {
+        final Set<String> exact;
+        final Set<String> required;
+
+        Info(Set<String> exact, Set<String> required) {
+            this.exact = exact;
+            this.required = required;
+        }
+
+        static Info literal(char c) {
+            return new Info(Collections.singleton(String.valueOf(fold(c))), null);
+        }
+
+        static Info empty() {
+            return new Info(EMPTY, null);
+        }
+
+        static Info any() {
+            return new Info(null, null);
+        }
+
+        Set<String> best() {
+            return better(required, exact);
+        }
+    }
+
+    private static final class Parser {
+        private final String regex;
+        private int pos = 0;
+
+        Parser(String regex) {
+            this.regex = regex;
+        }
+
+        private boolean more() {
+            return pos < regex.length();
+        }
+
+        private char peek() {
+            return regex.charAt(pos);
+        }
+
+        Info parseAlternation() {
+            Info first = parseSequence();
+            if (!more() || peek() != '|') return first;
+
+            Set<String> exact = first.exact == null ? null : new HashSet<>(first.exact);
+            Set<String> required = first.best() == null ? null : new HashSet<>(first.best());
+
+            while (more() && peek() == '|') {
+                pos++;
+                Info next = parseSequence();
+                if (exact != null && next.exact != null) {
+                    exact.addAll(next.exact);
+                    if (exact.size() > MAX_UNION) exact = null;
+                } else {
+                    exact = null;
+                }
+                Set<String> nextBest = next.best();
+                if (required != null && nextBest != null) {
+                    required.addAll(nextBest);
+                    if (required.size() > MAX_UNION) required = null;
+                } else {
+                    required = null;
+                }
+            }
+            return new Info(exact, required);
+        }
+
+        private Info parseSequence() {
+            Set<String> run = EMPTY; // Exact strings for the current run of literals
+            Set<String> all = EMPTY; // Exact strings for the whole sequence, if known
+            Set<String> required = null;
+
+            while (more() && peek() != '|' && peek() != ')') {
+                Info item = parseQuantified();
+                if (item.exact != null) {
+                    Set<String> joined = cross(run, item.exact);
+                    if (joined == null) {
+                        required = better(required, run);
+                        joined = item.exact;
+                    }
+                    run = joined;
+                    all = (all == null) ? null : cross(all, item.exact);
+                } else {
+                    required = better(required, run);
+                    required = better(required, item.required);
+                    run = EMPTY;
+                    all = null;
+                }
+            }
+            required = better(required, run);
+            return new Info(all, required);
+        }
+
+        private Info parseQuantified() {
+            Info atom = parseAtom();
+            if (!more()) return atom;
+
+            int min, max;
+            switch (peek()) {
+                case '?':
+                    min = 0;
+                    max = 1;
+                    pos++;
+                    break;
+                case '*':
+                    min = 0;
+                    max = -1;
+                    pos++;
+                    break;
+                case '+':
+                    min = 1;
+                    max = -1;
+                    pos++;
+                    break;
+                case '{':
+                    pos++;
+                    min = parseNumber();
+                    max = min;
+                    if (more() && peek() == ',') {
+                        pos++;
+                        max = (more() && peek() == '}') ? -1 : parseNumber();
+                    }
+                    if (!more() || peek() != '}') throw new UnsupportedOperationException();
+                    pos++;
+                    break;
+                default:
+                    return atom;
+            }
+            // Lazy / Possessive modifiers don't change what can match.
+            if (more() && (peek() == '?' || peek() == '+')) pos++;
+
+            if (min == 0) {
+                if (max == 0) return Info.empty();
+                if (max == 1 && atom.exact != null) {
+                    Set<String> exact = new HashSet<>(atom.exact);
+                    exact.add("");
+                    return new Info(exact, null);
+                }
+                return Info.any();
+            }
+            if (min == 1 && max == 1) return atom;
+            return new Info(null, atom.best());
+        }
+
+        private int parseNumber() {
+            int start = pos;
+            while (more() && Character.isDigit(peek())) pos++;
+            if (start == pos || pos - start > 6) throw new UnsupportedOperationException();
+            return Integer.parseInt(regex.substring(start, pos));
+        }
+
+        private Info parseAtom() {
+            char c = regex.charAt(pos++);
+            switch (c) {
+                case '(':
+                    return parseGroup();
+                case '[':
+                    return parseClass();
+                case '\\':
+                    return parseEscape(false);
+                case '.':
+                    return Info.any();
+                case '^':
+                case '$':
+                    return Info.empty();
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                    throw new UnsupportedOperationException();
+                default:
+                    return Info.literal(c);
+            }
+        }
+
+        private Info parseGroup() {
+            boolean zeroWidth = false;
+            if (more() && peek() == '?') {
+                pos++;
+                if (!more()) throw new UnsupportedOperationException();
+                char c = regex.charAt(pos++);
+                switch (c) {
+                    case ':':
+                    case '>':
+                        break;
+                    case '=':
+                    case '!':
+                        zeroWidth = true;
+                        break;
+                    case '<':
+                        if (more() && (peek() == '=' || peek() == '!')) {
+                            pos++;
+                            zeroWidth = true;
+                        } else {
+                            // Named group. Skip the name.
+                            int end = regex.indexOf('>', pos);
+                            if (end < 0) throw new UnsupportedOperationException();
+                            pos = end + 1;
+                        }
+                        break;
+                    default:
+                        // Inline flags could change case sensitivity, or
+                        // the meaning of the rest of the pattern.
+                        throw new UnsupportedOperationException();
+                }
+            }
+            Info inner = parseAlternation();
+            if (!more() || peek() != ')') throw new UnsupportedOperationException();
+            pos++;
+            return zeroWidth ? Info.empty() : inner;
+        }
+
+        /*
+         * Character classes are only treated as literals if they are a short
+         * list of plain characters, eg: [s5$].  Anything else is skipped.
+         */
+        private Info parseClass() {
+            Set<String> members = new HashSet<>();
+            boolean literal = true;
+            if (more() && peek() == '^') {
+                pos++;
+                literal = false;
+            }
+            if (more() && peek() == ']') throw new UnsupportedOperationException();
+
+            int depth = 1;
+            while (depth > 0) {
+                if (!more()) throw new UnsupportedOperationException();
+                char c = regex.charAt(pos++);
+                switch (c) {
+                    case '[':
+                        depth++;
+                        literal = false;
+                        break;
+                    case ']':
+                        depth--;
+                        break;
+                    case '\\':
+                        Info escaped = parseEscape(true);
+                        if (escaped.exact != null && escaped.exact.size() == 1 && !escaped.exact.contains("")) {
+                            members.addAll(escaped.exact);
+                        } else {
+                            literal = false;
+                        }
+                        break;
+                    case '-':
+                    case '&':
+                        literal = false;
+                        break;
+                    default:
+                        members.add(String.valueOf(fold(c)));
+                }
+            }
+            if (literal && !members.isEmpty() && members.size() <= MAX_CLASS) {
+                return new Info(members, null);
+            }
+            return Info.any();
+        }
+
+        private Info parseEscape(boolean inClass) {
+            if (!more()) throw new UnsupportedOperationException();
+            char c = regex.charAt(pos++);
+            switch (c) {
+                case 't':
+                    return Info.literal('\t');
+                case 'n':
+                    return Info.literal('\n');
+                case 'r':
+                    return Info.literal('\r');
+                case 'f':
+                    return Info.literal('\f');
+                case 'a':
+                    return Info.literal('\u0007');
+                case 'e':
+                    return Info.literal('\u001B');
+                case 'b':
+                case 'B':
+                case 'A':
+                case 'G':
+                case 'Z':
+                case 'z':
+                    if (inClass) throw new UnsupportedOperationException();
+                    return Info.empty();
+                case 'd':
+                case 'D':
+                case 's':
+                case 'S':
+                case 'w':
+                case 'W':
+                case 'h':
+                case 'H':
+                case 'v':
+                case 'V':
+                case 'R':
+                    return Info.any();
+                case 'p':
+                case 'P':
+                    if (more() && peek() == '{') {
+                        int end = regex.indexOf('}', pos);
+                        if (end < 0) throw new UnsupportedOperationException();
+                        pos = end + 1;
+                    } else {
+                        pos++;
+                    }
+                    return Info.any();
+                default:
+                    if (c >= '1' && c <= '9' && !inClass) {
+                        // Back reference.  We don't know what it will match.
+                        while (more() && Character.isDigit(peek())) pos++;
+                        return Info.any();
+                    }
+                    if (Character.isLetterOrDigit(c)) {
+                        // Quoting, hex, unicode, octal, control, named references, etc.
+                        throw new UnsupportedOperationException();
+                    }
+                    return Info.literal(c);
+            }
+        }
+    }
+}
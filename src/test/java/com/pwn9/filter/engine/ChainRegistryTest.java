@@ -0,0 +1,149 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package com.pwn9.filter.engine;
+
+import com.pwn9.filter.engine.rules.Rule;
+import com.pwn9.filter.engine.rules.chain.ChainRegistry;
+import com.pwn9.filter.engine.rules.chain.RuleChain;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for sharing compiled chains and rules between clients.
+ */
+public class ChainRegistryTest {
+
+    private final FilterService service = new FilterService();
+    private final ChainRegistry registry = service.getChainRegistry();
+    private Path rulesDir;
+
+    @Before
+    public void setUp() throws Exception {
+        rulesDir = Files.createTempDirectory("pwnfilter-rules").toAbsolutePath().normalize();
+        write("swears.txt", "match fudge\nactions fix\n\nmatch heck\nthen deny\n");
+        write("chat.txt", "actiongroup fix\nthen deny\n\ninclude swears.txt\n");
+        write("command.txt", "actiongroup fix\nthen deny\n\ninclude swears.txt\n\nmatch spam\nthen deny\n");
+        write("sign.txt", "actiongroup fix\nthen replace ***\n\ninclude swears.txt\n");
+        service.getConfig().setRulesDir(rulesDir.toFile());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> paths = Files.walk(rulesDir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private void write(String name, String content) throws IOException {
+        Files.write(rulesDir.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Rule rule(RuleChain chain, int i) {
+        return (Rule) chain.getChain().get(i);
+    }
+
+    @Test
+    public void testClientsShareChains() throws Exception {
+        RuleChain chat = service.getRuleChain("chat.txt");
+        assertSame(chat, service.getRuleChain("chat.txt"));
+        assertSame(chat, registry.get("chat.txt"));
+    }
+
+    @Test
+    public void testEnableClientsCompilesEachFileOnce() throws Exception {
+        TestReloadableClient player = new TestReloadableClient("chat.txt");
+        TestReloadableClient command = new TestReloadableClient("command.txt", "chat.txt");
+        service.registerClient(player);
+        service.registerClient(command);
+        service.enableClients();
+
+        assertTrue(registry.getNames().contains("chat.txt"));
+        assertTrue(registry.getNames().contains("command.txt"));
+        assertTrue(player.isActive());
+        assertTrue(command.isActive());
+
+        service.disableClients();
+        assertNull(registry.get("chat.txt"));
+    }
+
+    @Test
+    public void testIdenticalRulesAreShared() throws Exception {
+        RuleChain chat = service.getRuleChain("chat.txt");
+        RuleChain command = service.getRuleChain("command.txt");
+        RuleChain sign = service.getRuleChain("sign.txt");
+
+        // Same pattern, same actions.
+        assertSame(rule(chat, 0), rule(command, 0));
+        assertSame(rule(chat, 1), rule(command, 1));
+        assertSame(rule(chat, 1), rule(sign, 1));
+
+        // The "fix" group is different in sign.txt, so the rule is too, but
+        // it still shares the compiled pattern.
+        assertTrue(rule(chat, 0) != rule(sign, 0));
+        assertSame(rule(chat, 0).getPattern(), rule(sign, 0).getPattern());
+    }
+
+    @Test
+    public void testReloadReplacesRegisteredChains() throws Exception {
+        TestReloadableClient player = new TestReloadableClient("chat.txt");
+        TestReloadableClient signs = new TestReloadableClient("sign.txt");
+        service.registerClient(player);
+        service.registerClient(signs);
+        player.activate();
+        signs.activate();
+        service.reloadRules(Runnable::run).join();
+
+        RuleChain chat = registry.get("chat.txt");
+        assertSame(chat, player.getChain("chat.txt"));
+        Rule heck = rule(chat, 1);
+
+        write("sign.txt", "actiongroup fix\nthen deny\n\ninclude swears.txt\n");
+        int reloaded = service.reloadChangedRules(Runnable::run,
+                Collections.singleton(rulesDir.resolve("sign.txt"))).join();
+        assertEquals(1, reloaded);
+        assertSame(chat, registry.get("chat.txt"));
+        assertSame(signs.getChain("sign.txt"), registry.get("sign.txt"));
+
+        // Unchanged rules are kept, with their stats.
+        assertSame(heck, rule(registry.get("sign.txt"), 1));
+        assertSame(rule(chat, 0), rule(registry.get("sign.txt"), 0));
+
+        // A full reload builds everything again.
+        service.reloadRules(Runnable::run).join();
+        assertTrue(chat != registry.get("chat.txt"));
+        assertTrue(heck != rule(registry.get("chat.txt"), 1));
+        assertSame(player.getChain("chat.txt"), registry.get("chat.txt"));
+    }
+}
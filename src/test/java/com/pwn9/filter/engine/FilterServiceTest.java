@@ -21,10 +21,24 @@
 package com.pwn9.filter.engine;
 
 import com.pwn9.filter.engine.rules.TestClient;
+import com.pwn9.filter.engine.rules.action.minecraft.MinecraftAction;
+import com.pwn9.filter.engine.rules.action.targeted.TargetedAction;
+import com.pwn9.filter.engine.rules.chain.InvalidChainException;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class FilterServiceTest {
@@ -36,6 +50,10 @@ public class FilterServiceTest {
     public void setup() {
         client = new TestClient();
         service = new FilterService();
+        service.getActionFactory().addActionTokens(MinecraftAction.class);
+        service.getActionFactory().addActionTokens(TargetedAction.class);
+        File rulesDir = new File(getClass().getResource("/rules/command.txt").getFile()).getParentFile();
+        service.getConfig().setRulesDir(rulesDir);
     }
 
     @Test
@@ -48,6 +66,66 @@ public class FilterServiceTest {
         assertFalse(service.getRegisteredClients().contains(client));
     }
 
+    @Test
+    public void reloadSwapsChainsOfActiveClients() throws Exception {
+        TestReloadableClient commands = new TestReloadableClient("replace.txt", "console.txt");
+        TestReloadableClient console = new TestReloadableClient("console.txt");
+        TestReloadableClient inactive = new TestReloadableClient("item.txt");
+        service.registerClient(commands);
+        service.registerClient(console);
+        service.registerClient(inactive);
+        commands.activate();
+        console.activate();
+
+        assertEquals(2, (int) service.reloadRules(ForkJoinPool.commonPool()).join());
+
+        assertNotNull(commands.getChain("replace.txt"));
+        // Each file is only compiled once.
+        assertSame(commands.getChain("console.txt"), console.getChain("console.txt"));
+        assertEquals(null, inactive.getChain("item.txt"));
+    }
+
+    @Test
+    public void reloadKeepsOldChainsIfAnyFileFails() throws Exception {
+        TestReloadableClient good = new TestReloadableClient("console.txt");
+        TestReloadableClient bad = new TestReloadableClient("doesNotExist.txt");
+        service.registerClient(good);
+        service.registerClient(bad);
+        good.activate();
+        bad.activate();
+
+        try {
+            service.reloadRules(Runnable::run).join();
+            assertTrue("Reload should have failed", false);
+        } catch (CompletionException ex) {
+            assertTrue(ex.getCause() instanceof InvalidChainException);
+        }
+        assertEquals(null, good.getChain("console.txt"));
+        assertEquals(null, bad.getChain("doesNotExist.txt"));
+    }
+
+    @Test
+    public void reloadsRunOneAtATime() throws Exception {
+        TestReloadableClient console = new TestReloadableClient("console.txt");
+        service.registerClient(console);
+        console.activate();
+
+        List<Runnable> compiles = new ArrayList<>();
+        CompletableFuture<Integer> first = service.reloadRules(compiles::add);
+        CompletableFuture<Integer> second = service.reloadChangedRules(Runnable::run,
+                Collections.singleton(service.getConfig().getRuleFile("console.txt").toPath()
+                        .toAbsolutePath().normalize()));
+        assertEquals(1, compiles.size());
+        assertFalse(second.isDone());
+
+        compiles.forEach(Runnable::run);
+        assertEquals(1, (int) first.join());
+        // The second reload started when the first had been swapped in.
+        assertTrue(second.isDone());
+        assertEquals(1, (int) second.join());
+        assertEquals(1, compiles.size());
+    }
+
 //    @Test
 //    public void getRuleFileUsesCorrectPath() throws Exception {
 //
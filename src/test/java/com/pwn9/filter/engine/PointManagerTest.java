@@ -27,12 +27,20 @@ import com.pwn9.filter.engine.api.MessageAuthor;
 import com.pwn9.filter.engine.rules.TestAction;
 import com.pwn9.filter.engine.rules.TestAuthor;
 import com.pwn9.filter.engine.rules.TestClient;
+import com.pwn9.filter.engine.points.FilePointStore;
+import com.pwn9.filter.engine.points.PointsJournal;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -141,4 +149,96 @@ public class PointManagerTest {
         pointsAction.execute(new FilterContext("test", messageAuthor, new TestClient("Test")), filterService);
         assertEquals(pm.getPoints(messageAuthor), new Double(7));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testLeakCrossesThresholdOnTime() throws Exception {
+        pm.setLeakPoints(1d);
+        pm.setPoints(authorId, 12d);
+        pm.leakTask(pm);
+        pm.leakTask(pm);
+        assertEquals(pm.getPoints(authorId), new Double(10));
+        assertEquals(0, descending1.getCounter());
+
+        // The leak takes the balance below 10 in this interval.
+        pm.leakTask(pm);
+        assertEquals(pm.getPoints(authorId), new Double(9));
+        assertEquals(1, descending1.getCounter());
+
+        // Points added after some leak count from the leaked balance.
+        pm.addPoints(authorId, 11d);
+        assertEquals(pm.getPoints(authorId), new Double(20));
+        assertEquals(1, ascending1.getCounter());
+        assertEquals(1, ascending2.getCounter());
+        for (int i = 0; i < 20; i++) pm.leakTask(pm);
+        assertEquals(2, descending1.getCounter());
+        assertEquals(1, descending2.getCounter());
+        assertFalse(pm.getPointsMap().contains(authorId));
+    }
+
+    @Test
+    public void testFrequentUpdatesKeepTheirSchedule() throws Exception {
+        pm.setLeakPoints(1d);
+        pm.setPoints(authorId, 15d);
+        // Updates that don't change when the balance leaks below 10
+        for (int i = 0; i < 1000; i++) {
+            pm.addPoints(authorId, 1d);
+            pm.subPoints(authorId, 1d);
+        }
+        for (int i = 0; i < 5; i++) pm.leakTask(pm);
+        assertEquals(pm.getPoints(authorId), new Double(10));
+        assertEquals(0, descending1.getCounter());
+
+        pm.leakTask(pm);
+        assertEquals(pm.getPoints(authorId), new Double(9));
+        assertEquals(1, descending1.getCounter());
+    }
+
+    @Test
+    public void testConcurrentPointsAreNotLost() throws Exception {
+        pm.setLeakPoints(0d);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 1000; i++) pm.addPoints(authorId, 1d);
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) thread.join();
+        assertEquals(pm.getPoints(authorId), new Double(8000));
+        assertEquals(1, ascending1.getCounter());
+        assertEquals(1, ascending2.getCounter());
+    }
+
+    @Test
+    public void testPointsSurviveRestart() throws Exception {
+        Path dir = Files.createTempDirectory("pwnfilter-points");
+        try {
+            pm.shutdown();
+            pm.setStore(new FilePointStore(dir.toFile(), filterService.getLogger()));
+            pm.start();
+            pm.setPoints(authorId, 15d);
+            pm.addPoints(authorId, 2d);
+            filterService.shutdown();
+
+            PointManager restarted = new FilterService().getPointManager();
+            restarted.setStore(new FilePointStore(dir.toFile(), restarted.getFilterService().getLogger()));
+            restarted.start();
+            assertEquals(restarted.getPoints(authorId), new Double(17));
+            restarted.shutdown();
+
+            // Leak is applied for the time the server was down.
+            PointsJournal journal = new PointsJournal(dir.toFile());
+            journal.open();
+            journal.record(authorId, 20, System.currentTimeMillis() - 65000);
+            journal.close();
+            restarted.setLeakInterval(10);
+            restarted.start();
+            assertEquals(restarted.getPoints(authorId), new Double(14));
+            restarted.shutdown();
+        } finally {
+            try (Stream<Path> paths = Files.walk(dir)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+}
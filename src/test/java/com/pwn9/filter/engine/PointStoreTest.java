@@ -0,0 +1,199 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.engine;
+
+import com.pwn9.filter.engine.api.Action;
+import com.pwn9.filter.engine.points.LoopbackTransport;
+import com.pwn9.filter.engine.points.PointsRelay;
+import com.pwn9.filter.engine.points.ProxyPointStore;
+import com.pwn9.filter.engine.rules.TestAction;
+import com.pwn9.filter.engine.rules.TestAuthor;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for points kept on the proxy, over a {@link LoopbackTransport}.
+ */
+public class PointStoreTest {
+
+    private LoopbackTransport network;
+    private PointManager proxy;
+    private PointsRelay relay;
+    private PointManager lobby, survival;
+    private ProxyPointStore lobbyStore, survivalStore;
+    private TestAction lobbyAscending, lobbyDescending, survivalAscending, survivalDescending;
+    private UUID authorId = UUID.randomUUID();
+
+    @Before
+    public void setup() {
+        network = new LoopbackTransport();
+        proxy = new FilterService().getPointManager();
+        proxy.setLeakPoints(5d);
+        // The proxy needs the thresholds, to know when the leak crosses them.
+        proxy.addThreshold("Level1", 10d, Collections.emptyList(), Collections.emptyList());
+        relay = new PointsRelay(proxy, network.getProxy(), 250);
+
+        lobbyAscending = new TestAction();
+        lobbyDescending = new TestAction();
+        lobbyStore = new ProxyPointStore(network.connect("lobby"), 250, proxy.getFilterService().getLogger());
+        lobby = server(lobbyStore, lobbyAscending, lobbyDescending);
+
+        survivalAscending = new TestAction();
+        survivalDescending = new TestAction();
+        survivalStore = new ProxyPointStore(network.connect("survival"), 250, proxy.getFilterService().getLogger());
+        survival = server(survivalStore, survivalAscending, survivalDescending);
+    }
+
+    private PointManager server(ProxyPointStore store, Action ascending, Action descending) {
+        FilterService filterService = new FilterService();
+        filterService.registerAuthorService(TestAuthor::new);
+        PointManager pm = filterService.getPointManager();
+        pm.setStore(store);
+        List<Action> ascendingList = Collections.singletonList(ascending);
+        List<Action> descendingList = Collections.singletonList(descending);
+        pm.addThreshold("Level1", 10d, ascendingList, descendingList);
+        return pm;
+    }
+
+    @Test
+    public void testDeltasAreCoalesced() throws Exception {
+        for (int i = 0; i < 100; i++) lobby.addPoints(authorId, 0.5);
+        assertEquals(lobby.getPoints(authorId), new Double(50));
+        assertEquals(proxy.getPoints(authorId), new Double(0));
+        assertEquals(0, network.getMessages());
+
+        lobbyStore.flush();
+        assertEquals(proxy.getPoints(authorId), new Double(50));
+        relay.flush();
+        // One batch of deltas, and one change back.
+        assertEquals(2, network.getMessages());
+        assertEquals(lobby.getPoints(authorId), new Double(50));
+        assertEquals(1, lobbyAscending.getCounter());
+    }
+
+    @Test
+    public void testCrossingsRunOnServer() throws Exception {
+        lobby.addPoints(authorId, 12d);
+        lobbyStore.flush();
+        assertEquals(0, lobbyAscending.getCounter());
+        relay.flush();
+        assertEquals(1, lobbyAscending.getCounter());
+
+        // The proxy leaks the balance below the threshold.
+        proxy.leakTask(proxy);
+        relay.flush();
+        assertEquals(lobby.getPoints(authorId), new Double(7));
+        assertEquals(1, lobbyDescending.getCounter());
+
+        proxy.leakTask(proxy);
+        proxy.leakTask(proxy);
+        relay.flush();
+        assertFalse(lobby.getPointsMap().contains(authorId));
+        assertEquals(1, lobbyAscending.getCounter());
+        assertEquals(1, lobbyDescending.getCounter());
+    }
+
+    @Test
+    public void testPointsFollowPlayer() throws Exception {
+        lobby.addPoints(authorId, 8d);
+        lobbyStore.flush();
+        relay.flush();
+        assertEquals(0, lobbyAscending.getCounter());
+
+        // Hopping servers doesn't reset the balance.
+        survival.addPoints(authorId, 4d);
+        survivalStore.flush();
+        relay.flush();
+        assertEquals(proxy.getPoints(authorId), new Double(12));
+        assertEquals(survival.getPoints(authorId), new Double(12));
+        assertEquals(0, lobbyAscending.getCounter());
+        assertEquals(1, survivalAscending.getCounter());
+
+        proxy.leakTask(proxy);
+        relay.flush();
+        assertEquals(0, lobbyDescending.getCounter());
+        assertEquals(1, survivalDescending.getCounter());
+    }
+
+    @Test
+    public void testChangesGoWhereThePlayerIs() throws Exception {
+        network.setServer(authorId, "lobby");
+        lobby.addPoints(authorId, 12d);
+        lobbyStore.flush();
+        relay.flush();
+        assertEquals(1, lobbyAscending.getCounter());
+
+        // Moves to survival, and isn't given any points there.
+        network.setServer(authorId, "survival");
+        proxy.leakTask(proxy);
+        relay.flush();
+        assertEquals(0, lobbyDescending.getCounter());
+        assertEquals(1, survivalDescending.getCounter());
+        assertEquals(survival.getPoints(authorId), new Double(7));
+    }
+
+    @Test
+    public void testBatchesAreSentBySender() throws Exception {
+        BlockingQueue<Runnable> tasks = new LinkedBlockingQueue<>();
+        ProxyPointStore store = new ProxyPointStore(network.connect("hub"), 10, tasks::add,
+                proxy.getFilterService().getLogger());
+        PointManager hub = server(store, new TestAction(), new TestAction());
+        hub.addPoints(authorId, 3d);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            store.start(scheduler);
+            Runnable flush = tasks.poll(5, TimeUnit.SECONDS);
+            assertEquals(proxy.getPoints(authorId), new Double(0));
+            flush.run();
+            assertEquals(proxy.getPoints(authorId), new Double(3));
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testUnsentPointsAreKept() throws Exception {
+        network.disconnect("lobby");
+        lobby.addPoints(authorId, 3d);
+        lobbyStore.flush();
+        assertEquals(proxy.getPoints(authorId), new Double(0));
+        assertEquals(lobby.getPoints(authorId), new Double(3));
+        assertTrue(lobby.getPointsMap().contains(authorId));
+
+        network.connect("lobby");
+        lobby.addPoints(authorId, 2d);
+        lobby.getStore().stop();
+        assertEquals(proxy.getPoints(authorId), new Double(5));
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.engine;
+
+import com.pwn9.filter.engine.points.PointsJournal;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for saving points in a PointsJournal, and reading them back.
+ */
+public class PointsJournalTest {
+
+    private final UUID first = UUID.randomUUID();
+    private final UUID second = UUID.randomUUID();
+    private Path tempDir;
+
+    @Before
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("pwnfilter-points").toAbsolutePath().normalize();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(tempDir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private PointsJournal newJournal() {
+        return new PointsJournal(tempDir.toFile());
+    }
+
+    @Test
+    public void testRecordsAreReplayed() throws IOException {
+        PointsJournal journal = newJournal();
+        assertTrue(journal.open().isEmpty());
+        journal.record(first, 5, 1000);
+        journal.record(second, 3, 1000);
+        journal.record(first, 8, 2000);
+        journal.flush();
+        journal.record(second, 0, 3000);
+        journal.close();
+
+        Map<UUID, PointsJournal.Balance> balances = newJournal().open();
+        assertEquals(1, balances.size());
+        assertEquals(8, balances.get(first).balance, 0);
+        assertEquals(2000, balances.get(first).time);
+    }
+
+    @Test
+    public void testSnapshotReplacesJournal() throws IOException {
+        PointsJournal journal = newJournal();
+        journal.open();
+        journal.record(first, 5, 1000);
+        journal.record(second, 3, 1000);
+        journal.snapshot();
+        journal.record(first, 7, 2000);
+        journal.close();
+
+        journal = newJournal();
+        Map<UUID, PointsJournal.Balance> balances = journal.open();
+        assertEquals(2, balances.size());
+        assertEquals(7, balances.get(first).balance, 0);
+        assertEquals(3, balances.get(second).balance, 0);
+        assertEquals(1000, balances.get(second).time);
+
+        // Nothing left in the old journal is replayed on the next snapshot.
+        journal.snapshot();
+        journal.record(second, 1, 3000);
+        journal.close();
+        balances = newJournal().open();
+        assertEquals(7, balances.get(first).balance, 0);
+        assertEquals(1, balances.get(second).balance, 0);
+    }
+
+    @Test
+    public void testTornRecordEndsReplay() throws IOException {
+        PointsJournal journal = newJournal();
+        journal.open();
+        journal.record(first, 5, 1000);
+        journal.record(second, 3, 1000);
+        journal.close();
+
+        // Damage the second record, as if the server died while writing it.
+        File file = new File(tempDir.toFile(), "points.journal");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(16 + PointsJournal.RECORD_SIZE + 20);
+            raf.writeInt(12345);
+        }
+
+        journal = newJournal();
+        Map<UUID, PointsJournal.Balance> balances = journal.open();
+        assertEquals(1, balances.size());
+        assertTrue(balances.containsKey(first));
+
+        // New records take the place of the damaged one.
+        journal.record(first, 9, 2000);
+        journal.close();
+        balances = newJournal().open();
+        assertEquals(1, balances.size());
+        assertEquals(9, balances.get(first).balance, 0);
+    }
+
+    @Test
+    public void testClearForgetsEverything() throws IOException {
+        PointsJournal journal = newJournal();
+        journal.open();
+        journal.record(first, 5, 1000);
+        journal.snapshot();
+        journal.record(second, 3, 1000);
+        journal.close();
+
+        newJournal().clear();
+        assertTrue(newJournal().open().isEmpty());
+    }
+
+    @Test
+    public void testJournalGrowsAndAsksForSnapshot() throws IOException {
+        PointsJournal journal = newJournal();
+        journal.open();
+        for (int i = 0; i < 70000; i++) {
+            journal.record(first, i + 1, i);
+        }
+        journal.flush();
+        assertTrue(journal.needsSnapshot());
+        journal.snapshot();
+        assertFalse(journal.needsSnapshot());
+        journal.close();
+
+        assertEquals(70000, newJournal().open().get(first).balance, 0);
+    }
+
+}
@@ -0,0 +1,180 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package com.pwn9.filter.engine;
+
+import com.pwn9.filter.engine.rules.Rule;
+import com.pwn9.filter.engine.rules.chain.RuleChain;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for reloading only the chains affected by a changed file, and for
+ * the watcher that triggers it.
+ */
+public class RuleWatcherTest {
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private final FilterService service = new FilterService();
+    private Path rulesDir;
+    private TestReloadableClient chat;
+    private TestReloadableClient item;
+    private RuleWatcher watcher;
+
+    @Before
+    public void setUp() throws Exception {
+        rulesDir = Files.createTempDirectory("pwnfilter-rules").toAbsolutePath().normalize();
+        write("chat.txt", "include swears.txt\n\nmatch spam\nthen deny\n");
+        write("swears.txt", "match fudge\nthen deny\n");
+        write("item.txt", "shortcuts cuts.txt\nmatch <a>xe\nthen deny\n");
+        write("cuts.txt", "a [a@]\n");
+        service.getConfig().setRulesDir(rulesDir.toFile());
+
+        chat = new TestReloadableClient("chat.txt");
+        item = new TestReloadableClient("item.txt");
+        service.registerClient(chat);
+        service.registerClient(item);
+        chat.activate();
+        item.activate();
+        service.reloadRules(Runnable::run).join();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (watcher != null) watcher.stop();
+        try (Stream<Path> paths = Files.walk(rulesDir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private void write(String name, String content) throws IOException {
+        Files.write(rulesDir.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void awaitSwaps(TestReloadableClient client, int swaps) throws InterruptedException {
+        long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (client.getSwaps() < swaps && System.currentTimeMillis() < end) {
+            Thread.sleep(20);
+        }
+        assertEquals(swaps, client.getSwaps());
+    }
+
+    @Test
+    public void testChainsRecordSources() {
+        RuleChain chatChain = chat.getChain("chat.txt");
+        assertTrue(chatChain.getSources().contains(rulesDir.resolve("chat.txt")));
+        assertTrue(chatChain.getSources().contains(rulesDir.resolve("swears.txt")));
+        assertTrue(item.getChain("item.txt").getSources().contains(rulesDir.resolve("cuts.txt")));
+    }
+
+    @Test
+    public void testOnlyAffectedChainsReload() throws Exception {
+        RuleChain itemChain = item.getChain("item.txt");
+        int reloaded = service.reloadChangedRules(Runnable::run,
+                Collections.singleton(rulesDir.resolve("swears.txt"))).join();
+
+        assertEquals(1, reloaded);
+        assertEquals(2, chat.getSwaps());
+        assertEquals(1, item.getSwaps());
+        assertSame(itemChain, item.getChain("item.txt"));
+    }
+
+    @Test
+    public void testUnrelatedFileReloadsNothing() throws Exception {
+        int reloaded = service.reloadChangedRules(Runnable::run,
+                Collections.singleton(rulesDir.resolve("notes.txt"))).join();
+        assertEquals(0, reloaded);
+        assertEquals(1, chat.getSwaps());
+        assertEquals(1, item.getSwaps());
+    }
+
+    @Test
+    public void testWatcherReloadsChangedInclude() throws Exception {
+        watcher = new RuleWatcher(service, rulesDir.toFile(), 50);
+        watcher.start();
+
+        write("swears.txt", "match fudge\nthen deny\n\nmatch heck\nthen deny\n");
+        awaitSwaps(chat, 2);
+        assertEquals(3, chat.getChain("chat.txt").ruleCount());
+        assertEquals(1, item.getSwaps());
+
+        // Shortcut files aren't cached across the reload.
+        write("cuts.txt", "a [a@4]\n");
+        awaitSwaps(item, 2);
+        Rule rule = (Rule) item.getChain("item.txt").getChain().get(0);
+        assertEquals("[a@4]xe", rule.getPattern().pattern());
+    }
+
+    @Test
+    public void testBrokenChangeKeepsOldChain() throws Exception {
+        watcher = new RuleWatcher(service, rulesDir.toFile(), 50);
+        watcher.start();
+        RuleChain chatChain = chat.getChain("chat.txt");
+        CountDownLatch failed = new CountDownLatch(1);
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                if (record.getMessage().startsWith("Rule files changed, but could not be reloaded")) {
+                    failed.countDown();
+                }
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        service.getLogger().addHandler(handler);
+        try {
+            write("swears.txt", "match fudge\nthen nosuchaction\n");
+            assertTrue("The reload should have failed",
+                    failed.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        } finally {
+            service.getLogger().removeHandler(handler);
+        }
+        assertSame(chatChain, chat.getChain("chat.txt"));
+        assertEquals(1, chat.getSwaps());
+
+        // The watcher keeps going after a failure.
+        write("swears.txt", "match fudge\nthen deny\n");
+        awaitSwaps(chat, 2);
+    }
+}
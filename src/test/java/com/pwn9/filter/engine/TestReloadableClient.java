@@ -0,0 +1,60 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package com.pwn9.filter.engine;
+
+import com.pwn9.filter.engine.api.ReloadableClient;
+import com.pwn9.filter.engine.rules.TestClient;
+import com.pwn9.filter.engine.rules.chain.RuleChain;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class TestReloadableClient extends TestClient implements ReloadableClient {
+
+    private final List<String> ruleFiles;
+    private final Map<String, RuleChain> chains = new ConcurrentHashMap<>();
+    private volatile int swaps;
+
+    public TestReloadableClient(String... ruleFiles) {
+        this.ruleFiles = Arrays.asList(ruleFiles);
+    }
+
+    @Override
+    public List<String> getRuleFiles() {
+        return ruleFiles;
+    }
+
+    @Override
+    public RuleChain getChain(String ruleFile) {
+        return chains.get(ruleFile);
+    }
+
+    @Override
+    public void swapChains(Map<String, RuleChain> newChains) {
+        chains.putAll(newChains);
+        swaps++;
+    }
+
+    public int getSwaps() {
+        return swaps;
+    }
+}
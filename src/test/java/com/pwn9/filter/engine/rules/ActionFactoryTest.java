@@ -22,11 +22,27 @@ package com.pwn9.filter.engine.rules;
 
 import com.pwn9.filter.engine.FilterService;
 import com.pwn9.filter.engine.api.Action;
+import com.pwn9.filter.engine.api.ActionProvider;
+import com.pwn9.filter.engine.api.ActionToken;
 import com.pwn9.filter.engine.rules.action.ActionFactory;
+import com.pwn9.filter.engine.rules.action.InvalidActionException;
 import com.pwn9.filter.engine.rules.action.core.Abort;
+import com.pwn9.filter.engine.rules.action.core.CoreAction;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
 public class ActionFactoryTest {
@@ -41,4 +57,66 @@ public class ActionFactoryTest {
             fail();
         }
     }
+
+    @Test
+    public void testProvidersAreDiscovered() throws InvalidActionException {
+        ActionFactory actionFactory = new ActionFactory(new FilterService());
+        // Provided by MinecraftActionProvider and TargetedActionProvider
+        assertNotNull(actionFactory.getAction("notify", "pwnfilter.admin Test"));
+        assertNotNull(actionFactory.getAction("KICK", "Bye"));
+    }
+
+    @Test(expected = InvalidActionException.class)
+    public void testUnknownActionThrows() throws InvalidActionException {
+        new ActionFactory(new FilterService()).getAction("nosuchaction", "");
+    }
+
+    @Test
+    public void testIdenticalActionsAreShared() throws InvalidActionException {
+        ActionFactory actionFactory = new ActionFactory(new FilterService());
+        Action warn = actionFactory.getActionFromString("warn Watch your language!");
+        assertSame(warn, actionFactory.getAction("warn", "Watch your language!"));
+        assertSame(warn, actionFactory.getAction("WARN", "Watch your language!"));
+        assertFalse(warn == actionFactory.getAction("warn", "Something else"));
+        assertFalse(warn == actionFactory.getAction("respond", "Watch your language!"));
+
+        actionFactory.clearActions();
+        assertFalse(warn == actionFactory.getAction("warn", "Watch your language!"));
+    }
+
+    @Test
+    public void testBadProviderDoesNotStopTheRest() throws Exception {
+        Path services = Files.createTempFile("pwnfilter-providers", ".txt");
+        try {
+            Files.write(services, Arrays.asList("com.pwn9.filter.NoSuchProvider",
+                    CountingProvider.class.getName()), StandardCharsets.UTF_8);
+            ClassLoader loader = new ClassLoader(getClass().getClassLoader()) {
+                @Override
+                public Enumeration<URL> getResources(String name) throws IOException {
+                    if (!name.equals("META-INF/services/" + ActionProvider.class.getName())) {
+                        return super.getResources(name);
+                    }
+                    return Collections.enumeration(Collections.singletonList(services.toUri().toURL()));
+                }
+            };
+            CountingProvider.loaded = 0;
+            new ActionFactory(new FilterService()).addActionProviders(loader);
+            assertEquals(1, CountingProvider.loaded);
+        } finally {
+            Files.delete(services);
+        }
+    }
+
+    public static class CountingProvider implements ActionProvider {
+        static int loaded;
+
+        public CountingProvider() {
+            loaded++;
+        }
+
+        @Override
+        public Class<? extends ActionToken> getActionTokens() {
+            return CoreAction.class;
+        }
+    }
 }
@@ -0,0 +1,129 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package com.pwn9.filter.engine.rules;
+
+import com.pwn9.filter.engine.FilterService;
+import com.pwn9.filter.engine.api.FilterContext;
+import com.pwn9.filter.engine.rules.action.minecraft.MinecraftAction;
+import com.pwn9.filter.engine.rules.action.targeted.TargetedAction;
+import com.pwn9.filter.engine.rules.chain.ChainEntry;
+import com.pwn9.filter.engine.rules.chain.RuleChain;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A new message that matches nothing should go through the rules without
+ * allocating anything, beyond its own FilterContext.
+ */
+public class AllocationTest {
+
+    private static final int WARMUP = 2000;
+    private static final int RUNS = 1000;
+    // Reading the counter may allocate a little itself.
+    private static final long SLACK_BYTES = 1024;
+
+    private final FilterService filterService = new FilterService();
+    private com.sun.management.ThreadMXBean threadBean;
+    private final TestAuthor author = new TestAuthor();
+    private final TestClient client = new TestClient("CHAT");
+    private RuleChain chain;
+    private FilterContext lastContext; // Keeps each context from being optimized away.
+
+    @Before
+    public void setUp() throws Exception {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        filterService.getActionFactory().addActionTokens(MinecraftAction.class);
+        filterService.getActionFactory().addActionTokens(TargetedAction.class);
+        File rules = new File(getClass().getResource("/testrules.txt").getFile());
+        filterService.getConfig().setRulesDir(rules.getParentFile());
+        filterService.getConfig().setTextDir(rules.getParentFile());
+        chain = filterService.parseRules(rules);
+    }
+
+    private long allocatedBytes(boolean filter) {
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < RUNS; i++) {
+            FilterContext context = newContext();
+            if (filter) chain.apply(context, filterService);
+            lastContext = context;
+        }
+        return threadBean.getThreadAllocatedBytes(threadId) - before;
+    }
+
+    /*
+     * Bytes allocated by filtering RUNS new messages, less the bytes it takes
+     * to make their FilterContexts.
+     */
+    private long filterBytes() {
+        for (int i = 0; i < WARMUP; i++) {
+            FilterContext context = newContext();
+            chain.apply(context, filterService);
+            assertTrue(context.getMatchedRules().isEmpty());
+        }
+        allocatedBytes(false); // Warm up the baseline too.
+        return allocatedBytes(true) - allocatedBytes(false);
+    }
+
+    private FilterContext newContext() {
+        FilterContext context = new FilterContext("the quick brown fox jumps over the lazy dog",
+                author, client);
+        // Views of the message that every rule needs, made once per message.
+        context.getModifiedText();
+        context.getFoldedText();
+        context.getUpperOriginalText();
+        context.getCommandName();
+        return context;
+    }
+
+    @Test
+    public void testCleanMessageDoesntAllocate() {
+        long bytes = filterBytes();
+        assertTrue("Allocated " + bytes + " bytes in " + RUNS + " runs", bytes < SLACK_BYTES);
+    }
+
+    @Test
+    public void testLinearEngineDoesntAllocate() {
+        setEngine(chain, MatchEngine.LINEAR);
+        long bytes = filterBytes();
+        assertTrue("Allocated " + bytes + " bytes in " + RUNS + " runs", bytes < SLACK_BYTES);
+    }
+
+    private static void setEngine(RuleChain ruleChain, MatchEngine engine) {
+        for (ChainEntry entry : ruleChain.getChain()) {
+            if (entry instanceof Rule) {
+                ((Rule) entry).setEngine(engine);
+            } else if (entry instanceof RuleChain) {
+                setEngine((RuleChain) entry, engine);
+            }
+        }
+    }
+}
@@ -31,8 +31,12 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.File;
+import java.util.Set;
 
 import static junit.framework.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 /**
@@ -84,6 +88,18 @@ public class ConditionTest {
         assertEquals("/tell Ignore command test", testState2.getModifiedMessage().toString());
     }
 
+    @Test
+    public void testCommandNameAndUpperTextAreWorkedOutOnce() {
+        FilterContext state = new FilterContext("/Tell\tsomeone hi", author, new TestClient("COMMAND"));
+        assertEquals("TELL", state.getCommandName());
+        assertSame(state.getCommandName(), state.getCommandName());
+        assertEquals("/TELL\tSOMEONE HI", state.getUpperOriginalText());
+        assertSame(state.getUpperOriginalText(), state.getUpperOriginalText());
+
+        assertEquals("", new FilterContext(" /tell", author, new TestClient()).getCommandName());
+        assertEquals("", new FilterContext("/", author, new TestClient()).getCommandName());
+    }
+
     @Test
     public void testIgnoreDoesntMatch() {
         FilterContext testState2 = new FilterContext("testestest banned", author, new TestClient());
@@ -101,5 +117,50 @@ public class ConditionTest {
         assertEquals("tell banned", testState2.getModifiedMessage().toString());
     }
 
+    @Test
+    public void testPermissionDoesntFallThroughToString() {
+        FilterContext testState = new FilterContext("fallthrough qwerty", author, new TestClient());
+        rs.execute(testState, filterService);
+        assertEquals("fixed qwerty", testState.getModifiedMessage().toString());
+    }
+
+    @Test
+    public void testIgnoreUserSkipsPattern() {
+        FilterContext testState = new FilterContext("usertest", author, new TestClient());
+        rs.execute(testState, filterService);
+        assertEquals("usertest", testState.getModifiedMessage().toString());
+        // The rule can't apply to this author, so it isn't tested at all.
+        assertTrue(testState.getMatchedRules().isEmpty());
+    }
+
+    @Test
+    public void testRequirePermissionList() {
+        FilterContext testState = new FilterContext("permlist", author, new TestClient());
+        rs.execute(testState, filterService);
+        assertEquals("permlist", testState.getModifiedMessage().toString());
+
+        MessageAuthor permitted = new TestAuthor() {
+            @Override
+            public boolean hasPermission(String permString) {
+                return permString.equals("pwnfilter.two");
+            }
+        };
+        testState = new FilterContext("permlist", permitted, new TestClient());
+        rs.execute(testState, filterService);
+        assertEquals("denied", testState.getModifiedMessage().toString());
+    }
+
+    @Test
+    public void testConditionsMatching() {
+        Set<String> permissions = rs.getConditionsMatching("permission");
+        assertTrue(permissions.contains("pwnfilter.one"));
+        assertTrue(permissions.contains("pwnfilter.two"));
+        assertTrue(rs.getConditionsMatching("command").contains("tell"));
+    }
+
+    @Test
+    public void testInvalidCommandRegex() {
+        assertNull(Condition.newCondition("ignore command foo(|bar"));
+    }
 
 }
@@ -0,0 +1,100 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package com.pwn9.filter.engine.rules;
+
+import com.pwn9.filter.engine.FilterService;
+import com.pwn9.filter.engine.api.FilterContext;
+import com.pwn9.filter.engine.rules.chain.RuleChain;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs of read-only rules tested in parallel must give exactly the same
+ * result as testing them one at a time.
+ */
+public class ParallelChainTest {
+
+    private final FilterService filterService = new FilterService();
+    private final TestClient client = new TestClient("BOOK");
+    private RuleChain chain;
+
+    @Before
+    public void setUp() throws Exception {
+        File rules = new File(getClass().getResource("/parallelTest.txt").getFile());
+        filterService.getConfig().setRulesDir(rules.getParentFile());
+        chain = filterService.parseRules(rules);
+    }
+
+    private FilterContext filter(String message, int minLength) {
+        filterService.getConfig().setParallelMinLength(minLength);
+        FilterContext context = new FilterContext(message, new TestAuthor(), client);
+        chain.execute(context, filterService);
+        return context;
+    }
+
+    private void assertSameResult(String message) {
+        FilterContext sequential = filter(message, 0);
+        FilterContext parallel = filter(message, 1);
+
+        assertEquals(sequential.getMatchedRules(), parallel.getMatchedRules());
+        assertEquals(sequential.getLogMessages(), parallel.getLogMessages());
+        assertEquals(sequential.getModifiedMessage().toString(), parallel.getModifiedMessage().toString());
+        assertEquals(sequential.isCancelled(), parallel.isCancelled());
+        assertEquals(sequential.isAborted(), parallel.isAborted());
+        assertEquals(sequential.loggingOn(), parallel.loggingOn());
+        assertEquals(sequential.getPattern(), parallel.getPattern());
+    }
+
+    @Test
+    public void testSameAsSequential() {
+        assertSameResult("nothing to see here");
+        assertSameResult("foo bar");
+        assertSameResult("a bar and a baz");
+        assertSameResult("foo baz qux");
+        assertSameResult("please stop before after");
+        assertSameResult("after stop");
+        assertSameResult("foo bar baz qux stop after");
+    }
+
+    @Test
+    public void testRunResults() {
+        FilterContext context = filter("foo bar baz", 1);
+        assertEquals(4, context.getMatchedRules().size());
+        assertTrue(context.isCancelled());
+        assertEquals("foo bar qux", context.getModifiedMessage().toString());
+
+        context = filter("stop after", 1);
+        assertTrue(context.isAborted());
+        assertFalse(context.isCancelled());
+    }
+
+    @Test
+    public void testShortMessagesStaySequential() {
+        FilterContext context = filter("foo bar", 100);
+        assertEquals(2, context.getMatchedRules().size());
+        assertEquals(context.getMatchedRules(), filter("foo bar", 1).getMatchedRules());
+    }
+}
@@ -76,6 +76,18 @@ public class ParserTest {
         Assert.assertEquals(simple.ruleCount(), 1);
     }
 
+    @Test
+    public void testEngineToggle() throws InvalidChainException {
+        File engineFile = new File(parentDir, "engineTest.txt");
+        List<ChainEntry> chain = filterService.parseRules(engineFile).getChain();
+
+        assertEquals(MatchEngine.REGEX, ((Rule) chain.get(0)).getEngine());
+        assertTrue(((Rule) chain.get(1)).usesLinearEngine());
+        assertEquals(MatchEngine.LINEAR, ((Rule) chain.get(2)).getEngine());
+        assertFalse(((Rule) chain.get(2)).usesLinearEngine());
+        assertEquals(MatchEngine.REGEX, ((Rule) chain.get(3)).getEngine());
+    }
+
     @Test
     public void testShortcuts() {
         List<ChainEntry> ruleChain = rs.getChain();
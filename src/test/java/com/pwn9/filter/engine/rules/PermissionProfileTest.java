@@ -0,0 +1,103 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package com.pwn9.filter.engine.rules;
+
+import com.pwn9.filter.engine.FilterService;
+import com.pwn9.filter.engine.api.FilterContext;
+import com.pwn9.filter.engine.rules.chain.RuleChain;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Rules ruled out by permission conditions are worked out once per
+ * permission profile.
+ */
+public class PermissionProfileTest {
+
+    private final FilterService filterService = new FilterService();
+    private final TestClient client = new TestClient("CHAT");
+    private RuleChain chain;
+
+    @Before
+    public void setUp() throws Exception {
+        File rules = new File(getClass().getResource("/permissionProfileTest.txt").getFile());
+        filterService.getConfig().setRulesDir(rules.getParentFile());
+        chain = filterService.parseRules(rules);
+    }
+
+    private static class PermAuthor extends TestAuthor {
+        private final Set<String> perms;
+        int lookups;
+
+        PermAuthor(String... perms) {
+            this.perms = new HashSet<>(Arrays.asList(perms));
+        }
+
+        @Override
+        public boolean hasPermission(String permString) {
+            lookups++;
+            return perms.contains(permString);
+        }
+    }
+
+    private FilterContext filter(String message, PermAuthor author) {
+        FilterContext context = new FilterContext(message, author, client);
+        chain.execute(context, filterService);
+        return context;
+    }
+
+    @Test
+    public void testResults() {
+        assertEquals("bar", filter("foo", new PermAuthor()).getModifiedMessage().toString());
+        assertEquals("foo", filter("foo", new PermAuthor("pwnfilter.vip")).getModifiedMessage().toString());
+        assertEquals("modded", filter("foo", new PermAuthor("pwnfilter.vip", "pwnfilter.admin"))
+                .getModifiedMessage().toString());
+        assertEquals("modded", filter("foo", new PermAuthor("pwnfilter.mod")).getModifiedMessage().toString());
+        assertTrue(filter("baz", new PermAuthor()).isCancelled());
+        assertFalse(filter("baz", new PermAuthor("pwnfilter.vip")).isCancelled());
+    }
+
+    @Test
+    public void testPermissionsLookedUpOncePerMessage() {
+        PermAuthor author = new PermAuthor("pwnfilter.mod");
+        filter("foo baz", author);
+        assertEquals(3, author.lookups);
+    }
+
+    @Test
+    public void testProfilesAreShared() {
+        filter("foo", new PermAuthor());
+        filter("foo", new PermAuthor());
+        filter("foo", new PermAuthor("pwnfilter.unrelated"));
+        assertEquals(1, chain.getProfileCount());
+
+        filter("foo", new PermAuthor("pwnfilter.vip"));
+        assertEquals(2, chain.getProfileCount());
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package com.pwn9.filter.engine.rules;
+
+import com.pwn9.filter.engine.FilterService;
+import com.pwn9.filter.engine.api.FilterContext;
+import com.pwn9.filter.engine.rules.action.minecraft.MinecraftAction;
+import com.pwn9.filter.engine.rules.action.targeted.TargetedAction;
+import com.pwn9.filter.engine.rules.chain.ChainEntry;
+import com.pwn9.filter.engine.rules.chain.RuleChain;
+import com.pwn9.filter.engine.rules.parser.RulePack;
+import com.pwn9.filter.engine.rules.parser.TextConfigParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for storing parsed rule files in a RulePack, and loading them again.
+ */
+public class RulePackTest {
+
+    private final FilterService filterService = new FilterService();
+    private final TestClient client = new TestClient();
+    private final TestAuthor author = new TestAuthor();
+    private Path tempDir;
+    private Path rulesDir;
+    private Path packDir;
+
+    @Before
+    public void setUp() throws IOException {
+        filterService.getActionFactory().addActionTokens(MinecraftAction.class);
+        filterService.getActionFactory().addActionTokens(TargetedAction.class);
+        tempDir = Files.createTempDirectory("pwnfilter-rulepack").toAbsolutePath().normalize();
+        rulesDir = Files.createDirectories(tempDir.resolve("rules"));
+        packDir = tempDir.resolve("packs");
+        write("chat.txt", "shortcuts cuts.txt\n" +
+                "actiongroup fix\n" +
+                "then replace ***\n" +
+                "then log\n\n" +
+                "conditiongroup staff\n" +
+                "ignore permission pwnfilter.staff\n\n" +
+                "include more/swears.txt\n\n" +
+                "rule R1 Spam\n" +
+                "match <a>xe\n" +
+                "conditions staff\n" +
+                "actions fix\n\n" +
+                "engine linear\n" +
+                "match spam\n" +
+                "ignore user Notch\n" +
+                "then deny\n");
+        write("cuts.txt", "a [a@]\n");
+        write("more/swears.txt", "match fudge\nactions fix\n");
+        filterService.getConfig().setRulesDir(rulesDir.toFile());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(tempDir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private void write(String name, String content) throws IOException {
+        Path file = rulesDir.resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private RulePack parsePack(File ruleFile) throws Exception {
+        TextConfigParser parser = new TextConfigParser(filterService);
+        parser.parse(ruleFile);
+        return parser.getRulePack();
+    }
+
+    private static void assertSameRules(RuleChain expected, RuleChain actual) {
+        assertEquals(expected.getConfigName(), actual.getConfigName());
+        assertEquals(expected.getSources(), actual.getSources());
+        assertEquals(expected.getChain().size(), actual.getChain().size());
+        for (int i = 0; i < expected.getChain().size(); i++) {
+            Rule e = (Rule) expected.getChain().get(i);
+            Rule a = (Rule) actual.getChain().get(i);
+            assertEquals(e.getId(), a.getId());
+            assertEquals(e.getDescription(), a.getDescription());
+            assertEquals(e.getPattern().pattern(), a.getPattern().pattern());
+            assertEquals(e.getEngine(), a.getEngine());
+            assertEquals(e.getConditions().size(), a.getConditions().size());
+            for (int c = 0; c < e.getConditions().size(); c++) {
+                assertEquals(e.getConditions().get(c).type, a.getConditions().get(c).type);
+                assertEquals(e.getConditions().get(c).flag, a.getConditions().get(c).flag);
+                assertEquals(e.getConditions().get(c).parameters, a.getConditions().get(c).parameters);
+            }
+            assertEquals(e.getActions().size(), a.getActions().size());
+            for (int c = 0; c < e.getActions().size(); c++) {
+                assertEquals(e.getActions().get(c).getClass(), a.getActions().get(c).getClass());
+            }
+        }
+    }
+
+    @Test
+    public void testPackRecordsExpandedRules() throws Exception {
+        File chatFile = rulesDir.resolve("chat.txt").toFile();
+        RuleChain parsed = new TextConfigParser(filterService).parse(chatFile);
+        RulePack pack = parsePack(chatFile);
+
+        assertEquals("chat.txt", pack.getConfigName());
+        assertEquals(3, pack.ruleCount());
+        assertTrue(pack.getSources(rulesDir.toFile()).contains(rulesDir.resolve("more/swears.txt")));
+        assertTrue(pack.getSources(rulesDir.toFile()).contains(rulesDir.resolve("cuts.txt")));
+
+        RuleChain loaded = pack.toChain(filterService.getActionFactory(), rulesDir.toFile());
+        assertSameRules(parsed, loaded);
+        assertEquals("[a@]xe", ((Rule) loaded.getChain().get(1)).getPattern().pattern());
+        assertEquals(MatchEngine.LINEAR, ((Rule) loaded.getChain().get(2)).getEngine());
+
+        // Rules that use a group share its actions, like a parsed chain.
+        Rule fudge = (Rule) loaded.getChain().get(0);
+        Rule r1 = (Rule) loaded.getChain().get(1);
+        assertSame(fudge.getActions().get(0), r1.getActions().get(0));
+    }
+
+    @Test
+    public void testLoadedChainFilters() throws Exception {
+        File chatFile = rulesDir.resolve("chat.txt").toFile();
+        RuleChain loaded = parsePack(chatFile).toChain(filterService.getActionFactory(), rulesDir.toFile());
+
+        FilterContext context = new FilterContext("an @xe for fudge", author, client);
+        loaded.execute(context, filterService);
+        assertEquals("an *** for ***", context.getModifiedMessage().toString());
+
+        context = new FilterContext("spam", author, client);
+        loaded.execute(context, filterService);
+        assertTrue(context.isCancelled());
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        File chatFile = rulesDir.resolve("chat.txt").toFile();
+        File packFile = packDir.resolve("chat.txt.pack").toFile();
+        RulePack pack = parsePack(chatFile);
+        pack.write(packFile);
+
+        RulePack read = RulePack.read(packFile);
+        assertEquals(pack.getCreated(), read.getCreated());
+        assertTrue(read.isCurrent(chatFile, rulesDir.toFile()));
+        assertSameRules(pack.toChain(filterService.getActionFactory(), rulesDir.toFile()),
+                read.toChain(filterService.getActionFactory(), rulesDir.toFile()));
+    }
+
+    @Test
+    public void testChangedFilesMakePackStale() throws Exception {
+        File chatFile = rulesDir.resolve("chat.txt").toFile();
+        RulePack pack = parsePack(chatFile);
+        assertTrue(pack.isCurrent(chatFile, rulesDir.toFile()));
+        assertFalse(pack.isCurrent(rulesDir.resolve("cuts.txt").toFile(), rulesDir.toFile()));
+
+        write("more/swears.txt", "match fudge|heck\nactions fix\n");
+        assertFalse(pack.isCurrent(chatFile, rulesDir.toFile()));
+
+        pack = parsePack(chatFile);
+        write("cuts.txt", "a [a@4]\n");
+        assertFalse(pack.isCurrent(chatFile, rulesDir.toFile()));
+
+        pack = parsePack(chatFile);
+        Files.delete(rulesDir.resolve("cuts.txt"));
+        assertFalse(pack.isCurrent(chatFile, rulesDir.toFile()));
+    }
+
+    @Test
+    public void testPackCanBeShipped() throws Exception {
+        File packFile = packDir.resolve("chat.txt.pack").toFile();
+        parsePack(rulesDir.resolve("chat.txt").toFile()).write(packFile);
+
+        // Another server, with the same rule files in a different place.
+        Path otherDir = Files.createDirectories(tempDir.resolve("other"));
+        try (Stream<Path> paths = Files.walk(rulesDir)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                Path copy = otherDir.resolve(rulesDir.relativize(path).toString());
+                if (Files.isDirectory(path)) {
+                    Files.createDirectories(copy);
+                } else {
+                    Files.copy(path, copy);
+                }
+            }
+        }
+
+        RulePack pack = RulePack.read(packFile);
+        assertTrue(pack.isCurrent(otherDir.resolve("chat.txt").toFile(), otherDir.toFile()));
+        RuleChain chain = pack.toChain(filterService.getActionFactory(), otherDir.toFile());
+        assertTrue(chain.getSources().contains(otherDir.resolve("more/swears.txt")));
+    }
+
+    @Test
+    public void testParseRulesUsesPack() throws Exception {
+        filterService.getConfig().setRulePackDir(packDir.toFile());
+        File chatFile = rulesDir.resolve("chat.txt").toFile();
+        File packFile = packDir.resolve("chat.txt.pack").toFile();
+
+        RuleChain parsed = filterService.parseRules(chatFile);
+        assertTrue(packFile.isFile());
+        long created = RulePack.read(packFile).getCreated();
+
+        RuleChain loaded = filterService.parseRules(chatFile);
+        assertSameRules(parsed, loaded);
+        assertEquals(created, RulePack.read(packFile).getCreated());
+
+        // A changed include means the file is parsed, and the pack replaced.
+        Thread.sleep(5);
+        write("more/swears.txt", "match fudge|heck\nactions fix\n");
+        RuleChain reparsed = filterService.parseRules(chatFile);
+        assertEquals("fudge|heck", ((Rule) reparsed.getChain().get(0)).getPattern().pattern());
+        assertTrue(RulePack.read(packFile).getCreated() > created);
+    }
+
+    @Test
+    public void testBadPackIsIgnored() throws Exception {
+        filterService.getConfig().setRulePackDir(packDir.toFile());
+        File chatFile = rulesDir.resolve("chat.txt").toFile();
+        Files.createDirectories(packDir);
+        Files.write(packDir.resolve("chat.txt.pack"), "not a pack".getBytes(StandardCharsets.UTF_8));
+
+        RuleChain chain = filterService.parseRules(chatFile);
+        assertEquals(3, chain.ruleCount());
+        assertTrue(RulePack.read(packDir.resolve("chat.txt.pack").toFile()).isCurrent(chatFile, rulesDir.toFile()));
+    }
+
+    @Test
+    public void testTestRulesRoundTrip() throws Exception {
+        File testFile = new File(getClass().getResource("/testrules.txt").getFile());
+        File parentDir = testFile.getParentFile();
+        filterService.getConfig().setRulesDir(parentDir);
+        filterService.getConfig().setTextDir(parentDir);
+
+        TextConfigParser parser = new TextConfigParser(filterService);
+        RuleChain parsed = parser.parse(testFile);
+        File packFile = packDir.resolve("testrules.txt.pack").toFile();
+        parser.getRulePack().write(packFile);
+
+        RuleChain loaded = RulePack.read(packFile).toChain(filterService.getActionFactory(), parentDir);
+        assertSameRules(parsed, loaded);
+        List<ChainEntry> chain = loaded.getChain();
+        assertEquals(parsed.ruleCount(), chain.size());
+    }
+}
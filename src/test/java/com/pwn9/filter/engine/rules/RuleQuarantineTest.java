@@ -0,0 +1,153 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.engine.rules;
+
+import com.pwn9.filter.bukkit.TestTicker;
+import com.pwn9.filter.engine.FilterService;
+import com.pwn9.filter.engine.api.FilterContext;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the RuleQuarantine
+ */
+public class RuleQuarantineTest {
+
+    private final FilterService filterService = new FilterService();
+    private final TestTicker ticker = new TestTicker();
+    private final TestNotifier notifier = new TestNotifier();
+    private RuleQuarantine quarantine;
+    private Rule rule;
+    private FilterContext context;
+
+    @Before
+    public void setUp() {
+        filterService.registerNotifyTarget(notifier);
+        quarantine = new RuleQuarantine(filterService, ticker);
+        quarantine.setMaxTimeouts(3);
+        quarantine.setWindowMillis(60000);
+        quarantine.setBackoffMillis(1000);
+        rule = new Rule("(x+x+)+y");
+        context = new FilterContext("xxxxxxxxxxxxxxxxxxxxxxxxxxxxxx", new TestAuthor(), new TestClient());
+    }
+
+    private void elapse(long millis) {
+        ticker.setElapsed(ticker.read() + TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    @Test
+    public void testQuarantineAfterRepeatedTimeouts() {
+        quarantine.recordTimeout(rule, context, "x");
+        quarantine.recordTimeout(rule, context, "x");
+        assertFalse(rule.isQuarantined());
+        quarantine.recordTimeout(rule, context, "x");
+        assertTrue(rule.isQuarantined());
+        assertTrue(quarantine.isQuarantined(rule));
+        assertNotNull(notifier.getNotification(RuleQuarantine.NOTIFY_PERM));
+        assertFalse(quarantine.allow(rule));
+    }
+
+    @Test
+    public void testTimeoutsOutsideWindowDontCount() {
+        quarantine.recordTimeout(rule, context, "x");
+        quarantine.recordTimeout(rule, context, "x");
+        elapse(61000);
+        quarantine.recordTimeout(rule, context, "x");
+        assertFalse(rule.isQuarantined());
+    }
+
+    @Test
+    public void testRetryAfterBackoff() {
+        for (int i = 0; i < 3; i++) quarantine.recordTimeout(rule, context, "x");
+
+        elapse(1001);
+        assertTrue(quarantine.allow(rule));
+        // Only one message is used to retry.
+        assertFalse(quarantine.allow(rule));
+
+        // Times out again, so the backoff doubles.
+        quarantine.recordTimeout(rule, context, "x");
+        assertTrue(rule.isQuarantined());
+        elapse(1500);
+        assertFalse(quarantine.allow(rule));
+        elapse(600);
+        assertTrue(quarantine.allow(rule));
+
+        quarantine.recordSuccess(rule);
+        assertFalse(rule.isQuarantined());
+        assertTrue(quarantine.allow(rule));
+    }
+
+    @Test
+    public void testReleaseAll() {
+        for (int i = 0; i < 3; i++) quarantine.recordTimeout(rule, context, "x");
+        List<String> status = quarantine.getStatus();
+        assertEquals(1, status.size());
+        assertTrue(status.get(0).startsWith("QUARANTINED"));
+
+        assertEquals(1, quarantine.releaseAll());
+        assertFalse(rule.isQuarantined());
+        assertTrue(quarantine.getStatus().get(0).startsWith("active"));
+    }
+
+    @Test
+    public void testCaptureFile() throws Exception {
+        File capture = File.createTempFile("timeouts", ".txt");
+        capture.deleteOnExit();
+        quarantine.setCaptureFile(capture);
+        quarantine.recordTimeout(rule, context, "slow\nmessage");
+        quarantine.recordTimeout(rule, context, "slower message");
+        quarantine.flush();
+
+        List<String> lines = Files.readAllLines(capture.toPath(), StandardCharsets.UTF_8);
+        assertEquals(4, lines.size());
+        assertTrue(lines.get(0).startsWith("# "));
+        assertEquals("slow message", lines.get(1));
+        assertEquals("slower message", lines.get(3));
+    }
+
+    @Test
+    public void testRuleApplyIsQuarantined() {
+        filterService.getConfig().setRuleTimeoutMillis(1);
+        filterService.getRuleQuarantine().setMaxTimeouts(2);
+        for (int i = 0; i < 2; i++) {
+            rule.apply(new FilterContext("xxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxx", new TestAuthor(),
+                    new TestClient()), filterService);
+        }
+        assertTrue(rule.isQuarantined());
+
+        // Quarantined, so this returns without running the regex.
+        rule.apply(new FilterContext("xxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxx", new TestAuthor(),
+                new TestClient()), filterService);
+        assertTrue(filterService.getRuleQuarantine().getStatus().get(0).contains("timeouts: 2,"));
+    }
+}
@@ -97,5 +97,15 @@ public class RuleSetTest {
         Assert.assertEquals("Replaced", testState.getModifiedMessage().toString());
     }
 
+    @Test
+    public void testPrefilterRescansModifiedMessage() throws InvalidChainException {
+        File ruleFile = new File(getClass().getResource("/prefilterTest.txt").getFile());
+        RuleChain chain = filterService.parseRules(ruleFile);
+        FilterContext testState = new FilterContext("a FOO walks", author, new TestClient());
+        chain.execute(testState, filterService);
+        Assert.assertEquals("a baz walks", testState.getModifiedMessage().toString());
+        Assert.assertEquals(2, testState.getMatchedRules().size());
+    }
+
 
 }
@@ -0,0 +1,153 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.engine.rules;
+
+import com.pwn9.filter.engine.FilterService;
+import com.pwn9.filter.engine.TestReloadableClient;
+import com.pwn9.filter.engine.api.FilterClient;
+import com.pwn9.filter.engine.api.FilterContext;
+import com.pwn9.filter.engine.rules.chain.RuleChain;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the per-rule performance counters.
+ */
+public class RuleStatsTest {
+
+    private final FilterService filterService = new FilterService();
+    private final TestClient chat = new TestClient("CHAT");
+    private final TestClient sign = new TestClient("SIGN");
+    private final int[] trackedMatches = {0};
+    private RuleChain chain;
+
+    @Before
+    public void setUp() throws Exception {
+        File rules = new File(getClass().getResource("/prefilterTest.txt").getFile());
+        filterService.getConfig().setRulesDir(rules.getParentFile());
+        chain = filterService.parseRules(rules);
+        chat.setRuleChain(chain);
+        sign.setRuleChain(chain);
+        filterService.setStatsTracker(new TestStatsTracker() {
+            @Override
+            public void incrementMatch() {
+                trackedMatches[0]++;
+            }
+        });
+    }
+
+    private void filter(TestClient client, String message) {
+        chain.execute(new FilterContext(message, new TestAuthor(), client), filterService);
+    }
+
+    @Test
+    public void testCountersPerClient() {
+        filter(chat, "a foo walks");
+        filter(chat, "a foo runs");
+        filter(chat, "hello bar");
+        filter(sign, "a foo");
+
+        Rule foo = (Rule) chain.getChain().get(0);
+        Rule bar = (Rule) chain.getChain().get(1);
+
+        RuleStats fooStats = foo.getStats("CHAT");
+        assertEquals(2, fooStats.getEvaluations());
+        assertEquals(2, fooStats.getMatches());
+        assertTrue(fooStats.getMaxNanos() > 0);
+        assertTrue(fooStats.getTotalNanos() >= fooStats.getMaxNanos());
+
+        // foo is replaced with bar, so bar matches every message.
+        assertEquals(3, bar.getStats("CHAT").getMatches());
+        assertEquals(1, bar.getStats("SIGN").getMatches());
+        assertEquals(0, bar.getStats("CHAT").getTimeouts());
+
+        assertEquals(7, trackedMatches[0]);
+    }
+
+    @Test
+    public void testReport() throws Exception {
+        filter(chat, "a foo walks");
+        filter(sign, "hello bar");
+        List<FilterClient> clients = Arrays.asList(chat, sign);
+
+        RuleStatsReport all = RuleStatsReport.collect(clients, null);
+        assertEquals(3, all.getEntries().size());
+        assertEquals(1, all.top(1).size());
+        assertTrue(all.top(0).isEmpty());
+        assertTrue(all.top(-1).isEmpty());
+        List<RuleStatsReport.Entry> entries = all.getEntries();
+        for (int i = 1; i < entries.size(); i++) {
+            assertTrue(entries.get(i - 1).getTotalNanos() >= entries.get(i).getTotalNanos());
+        }
+
+        RuleStatsReport signOnly = RuleStatsReport.collect(clients, "sign");
+        assertEquals(1, signOnly.getEntries().size());
+        assertEquals("SIGN", signOnly.getEntries().get(0).getClientName());
+
+        StringWriter csv = new StringWriter();
+        all.writeCsv(csv);
+        String[] lines = csv.toString().split("\n");
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].startsWith("client,id,pattern"));
+    }
+
+    @Test
+    public void testReportIncludesEveryChainOfAClient() throws Exception {
+        // Like the command listener, which runs some commands through chat.txt
+        TestReloadableClient command = new TestReloadableClient("command.txt", "chat.txt");
+        RuleChain chatChain = filterService.parseRules(
+                new File(getClass().getResource("/prefilterTest.txt").getFile()));
+        Map<String, RuleChain> chains = new HashMap<>();
+        chains.put("command.txt", chain);
+        chains.put("chat.txt", chatChain);
+        command.swapChains(chains);
+
+        chatChain.execute(new FilterContext("a foo walks", new TestAuthor(), command), filterService);
+
+        RuleStatsReport report = RuleStatsReport.collect(Collections.singletonList(command), null);
+        assertEquals(2, report.getEntries().size());
+        for (RuleStatsReport.Entry e : report.getEntries()) {
+            assertEquals("TEST", e.getClientName());
+        }
+    }
+
+    @Test
+    public void testReset() {
+        filter(chat, "a foo walks");
+        filter(sign, "hello bar");
+
+        RuleStatsReport.reset(chain);
+
+        RuleStatsReport report = RuleStatsReport.collect(Arrays.asList(chat, sign), null);
+        assertTrue(report.getEntries().isEmpty());
+    }
+}
@@ -28,6 +28,7 @@ public class TestClient implements FilterClient {
 
     private final String name;
     private boolean active;
+    private RuleChain ruleChain;
 
     public TestClient() {
         this.name = "TEST";
@@ -49,7 +50,11 @@ public class TestClient implements FilterClient {
 
     @Override
     public RuleChain getRuleChain() {
-        return null;
+        return ruleChain;
+    }
+
+    public void setRuleChain(RuleChain ruleChain) {
+        this.ruleChain = ruleChain;
     }
 
     @Override
@@ -0,0 +1,133 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package com.pwn9.filter.engine.rules;
+
+import com.pwn9.filter.engine.FilterService;
+import com.pwn9.filter.engine.api.FilterContext;
+import com.pwn9.filter.engine.rules.chain.RuleChain;
+import com.pwn9.filter.engine.rules.chain.VerdictCache;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for replaying chain results from the VerdictCache.
+ */
+public class VerdictCacheTest {
+
+    private final FilterService filterService = new FilterService();
+    private final TestClient client = new TestClient("CHAT");
+    private final VerdictCache cache = filterService.getVerdictCache();
+    private RuleChain chain;
+
+    @Before
+    public void setUp() throws Exception {
+        File rules = new File(getClass().getResource("/verdictCacheTest.txt").getFile());
+        filterService.getConfig().setRulesDir(rules.getParentFile());
+        chain = filterService.parseRules(rules);
+        cache.setMaximumSize(100);
+    }
+
+    private FilterContext filter(RuleChain ruleChain, String message, TestAuthor author) {
+        FilterContext context = new FilterContext(message, author, client);
+        ruleChain.execute(context, filterService);
+        return context;
+    }
+
+    @Test
+    public void testReplaysModifiedMessage() {
+        FilterContext first = filter(chain, "a foo walks", new TestAuthor());
+        FilterContext second = filter(chain, "a foo walks", new TestAuthor());
+
+        assertEquals(1, cache.getStats().missCount());
+        assertEquals(1, cache.getStats().hitCount());
+        assertEquals("a bar walks", second.getModifiedMessage().toString());
+        assertEquals(first.getMatchedRules(), second.getMatchedRules());
+        assertEquals(first.getPattern(), second.getPattern());
+        assertFalse(second.isCancelled());
+    }
+
+    @Test
+    public void testReplaysDeny() {
+        filter(chain, "bad word", new TestAuthor());
+        FilterContext second = filter(chain, "bad word", new TestAuthor());
+
+        assertEquals(1, cache.getStats().hitCount());
+        assertTrue(second.isCancelled());
+        assertTrue(second.isAborted());
+    }
+
+    @Test
+    public void testPermissionsArePartOfKey() {
+        TestAuthor allowed = new TestAuthor() {
+            @Override
+            public boolean hasPermission(String permString) {
+                return permString.equals("pwnfilter.secret");
+            }
+        };
+
+        assertFalse(filter(chain, "a secret", new TestAuthor()).isCancelled());
+        assertTrue(filter(chain, "a secret", allowed).isCancelled());
+        assertFalse(filter(chain, "a secret", new TestAuthor()).isCancelled());
+        assertTrue(filter(chain, "a secret", allowed).isCancelled());
+
+        assertEquals(2, cache.getStats().missCount());
+        assertEquals(2, cache.getStats().hitCount());
+    }
+
+    @Test
+    public void testReloadedChainIsNotShared() throws Exception {
+        filter(chain, "a foo walks", new TestAuthor());
+        RuleChain reloaded = filterService.parseRules(
+                new File(getClass().getResource("/verdictCacheTest.txt").getFile()));
+        assertTrue(chain.getVersion() != reloaded.getVersion());
+
+        filter(reloaded, "a foo walks", new TestAuthor());
+        assertEquals(2, cache.getStats().missCount());
+        assertEquals(0, cache.getStats().hitCount());
+
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testRandomActionsAreNotCached() throws Exception {
+        RuleChain random = filterService.parseRules(
+                new File(getClass().getResource("/verdictCacheRandom.txt").getFile()));
+        assertTrue(chain.isCacheable());
+        assertFalse(random.isCacheable());
+
+        filter(random, "a foo walks", new TestAuthor());
+        filter(random, "a foo walks", new TestAuthor());
+        assertEquals(0, cache.getStats().requestCount());
+    }
+
+    @Test
+    public void testDisabled() {
+        cache.setMaximumSize(0);
+        assertFalse(cache.isEnabled());
+        filter(chain, "a foo walks", new TestAuthor());
+        assertEquals("a bar walks", filter(chain, "a foo walks", new TestAuthor()).getModifiedMessage().toString());
+        assertEquals(0, cache.getStats().requestCount());
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+package com.pwn9.filter.engine.rules.parser;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for splitting rule files into statements and tokens.  These pin down
+ * the behaviour of the LineNumberReader / regex based reader that the lexer
+ * replaced.
+ */
+public class RuleLexerTest {
+
+    @Test
+    public void testLinesAreTrimmedAndNumbered() throws IOException {
+        RuleLexer lexer = new RuleLexer("  match foo \t\n\nthen deny");
+        assertEquals(1, lexer.getLineNumber());
+        assertEquals("match foo", lexer.readLine());
+        assertEquals(2, lexer.getLineNumber());
+        assertEquals("", lexer.readLine());
+        assertEquals("then deny", lexer.readLine());
+        assertEquals(4, lexer.getLineNumber());
+        assertNull(lexer.readLine());
+        assertEquals(4, lexer.getLineNumber());
+    }
+
+    @Test
+    public void testLineEndings() throws IOException {
+        RuleLexer lexer = new RuleLexer("a\r\nb\rc\n\r\n");
+        assertEquals("a", lexer.readLine());
+        assertEquals("b", lexer.readLine());
+        assertEquals("c", lexer.readLine());
+        assertEquals("", lexer.readLine());
+        assertNull(lexer.readLine());
+        assertEquals(5, lexer.getLineNumber());
+    }
+
+    @Test
+    public void testComments() throws IOException {
+        RuleLexer lexer = new RuleLexer("# comment\n   # indented\nmatch a # not a comment\n#\u2028x\n");
+        assertEquals("match a # not a comment", lexer.readLine());
+        assertEquals(4, lexer.getLineNumber());
+        assertEquals("#\u2028x", lexer.readLine());
+    }
+
+    @Test
+    public void testHeredoc() throws IOException {
+        RuleLexer lexer = new RuleLexer("then respond <<EOF\n  line one\n# skipped\n\nline two\nEOF\nthen deny\n");
+        assertEquals("then respond line one\n\nline two", lexer.readLine());
+        assertEquals(7, lexer.getLineNumber());
+        assertEquals("then deny", lexer.readLine());
+    }
+
+    @Test
+    public void testHeredocQuirks() throws IOException {
+        // An empty heredoc loses the last char of the statement.
+        assertEquals("then replace", new RuleLexer("then replace <<EOF\nEOF\n").readLine());
+        // Another <<EOF starts the statement again.
+        assertEquals("b x", new RuleLexer("a <<EOF\none\nb <<EOF\nx\nEOF").readLine());
+        // Without an EOF line, the statement is returned as it is.
+        assertEquals("a one\n", new RuleLexer("a <<EOF\none\n").readLine());
+    }
+
+    @Test
+    public void testSection() throws IOException {
+        RuleLexer lexer = new RuleLexer("match a\nthen deny\n# c\nthen log\n\nmatch b\n");
+        assertEquals("match a", lexer.readLine());
+        List<NumberedLine> section = lexer.readSection();
+        assertEquals(2, section.size());
+        assertEquals("then deny", section.get(0).string);
+        assertEquals(3, (int) section.get(0).number);
+        assertEquals("then log", section.get(1).string);
+        assertEquals(5, (int) section.get(1).number);
+        assertEquals("match b", lexer.readLine());
+    }
+
+    @Test
+    public void testStreamIsHashed() throws Exception {
+        byte[] data = "match a\nthen deny\n".getBytes(Charset.defaultCharset());
+        MessageDigest digest = RulePack.newDigest();
+        RuleLexer lexer = new RuleLexer(new ByteArrayInputStream(data), digest);
+        assertEquals("match a", lexer.readLine());
+        assertTrue(Arrays.equals(MessageDigest.getInstance("SHA-256").digest(data), digest.digest()));
+    }
+
+    private static List<String> tokens(String s, int count) {
+        TokenString tokenString = new TokenString(s);
+        String[] result = new String[count + 1];
+        for (int i = 0; i < count; i++) result[i] = tokenString.popToken();
+        result[count] = tokenString.getString();
+        return Arrays.asList(result);
+    }
+
+    @Test
+    public void testTokens() {
+        assertEquals(Arrays.asList("then", "replace", "a b"), tokens("then replace a b", 2));
+        assertEquals(Arrays.asList("then", "", "x"), tokens("then  x", 2));
+        assertEquals(Arrays.asList("then", "deny", ""), tokens("then\tdeny", 2));
+        assertEquals(Arrays.asList("then", "", ""), tokens("then", 2));
+        assertEquals(Arrays.asList("a", "b\nc"), tokens("a\u000Bb\nc", 1));
+        // Only ASCII whitespace separates tokens.
+        assertEquals(Arrays.asList("a\u00A0b", ""), tokens("a\u00A0b", 1));
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.minecraft.api;
+
+import com.pwn9.filter.engine.api.UnknownAuthor;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class AuthorCacheTest {
+
+    private final UUID alice = UUID.randomUUID();
+    private final UUID bob = UUID.randomUUID();
+    private AuthorCache<UnknownAuthor> authors;
+    private int created = 0;
+
+    @Before
+    public void setup() {
+        authors = new AuthorCache<>(id -> {
+            created++;
+            return new UnknownAuthor(id);
+        });
+    }
+
+    @Test
+    public void testJoinedPlayersAreKeptUntilTheyQuit() {
+        UnknownAuthor author = authors.add(alice);
+        assertSame(author, authors.add(alice));
+        assertEquals(1, created);
+        for (int i = 0; i < 1000; i++) {
+            assertSame(author, authors.get(alice));
+        }
+        assertEquals(0, authors.getMisses());
+
+        authors.remove(alice);
+        assertNull(authors.get(alice));
+        assertEquals(1, authors.getMisses());
+    }
+
+    @Test
+    public void testRetainKeepsOnlinePlayers() {
+        UnknownAuthor author = authors.add(alice);
+        authors.add(bob);
+        UUID carol = UUID.randomUUID();
+
+        authors.retain(Arrays.asList(alice, carol));
+
+        assertEquals(2, authors.size());
+        assertSame(author, authors.get(alice));
+        assertEquals(carol, authors.get(carol).getId());
+        assertNull(authors.get(bob));
+        assertEquals(1, authors.getMisses());
+    }
+
+}
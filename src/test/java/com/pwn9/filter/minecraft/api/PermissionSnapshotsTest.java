@@ -0,0 +1,130 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.minecraft.api;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PermissionSnapshotsTest {
+
+    private Set<String> chainPermissions = new HashSet<>(Collections.singleton("rule.perm"));
+    private PermissionSnapshots snapshots;
+    private Map<UUID, Set<String>> granted = new HashMap<>();
+    private int checks = 0;
+
+    @Before
+    public void setup() {
+        snapshots = new PermissionSnapshots(() -> chainPermissions);
+    }
+
+    private Predicate<String> player(UUID id) {
+        Set<String> perms = granted.get(id);
+        if (perms == null) return null;
+        return perm -> {
+            checks++;
+            return perms.contains(perm);
+        };
+    }
+
+    private UUID join(String... perms) {
+        UUID id = UUID.randomUUID();
+        granted.put(id, new HashSet<>(Arrays.asList(perms)));
+        snapshots.take(id, player(id));
+        return id;
+    }
+
+    @Test
+    public void testSnapshotHasRuleAndPluginPermissions() throws Exception {
+        UUID id = join("rule.perm", "pwnfilter.bypass.chat");
+        assertTrue(snapshots.hasPermission(id, "rule.perm"));
+        assertTrue(snapshots.hasPermission(id, "pwnfilter.bypass.chat"));
+        assertFalse(snapshots.hasPermission(id, "pwnfilter.color"));
+        assertNull(snapshots.hasPermission(UUID.randomUUID(), "rule.perm"));
+    }
+
+    @Test
+    public void testMissingPermissionIsAdded() throws Exception {
+        UUID id = join("other.perm");
+        assertNull(snapshots.hasPermission(id, "other.perm"));
+        snapshots.take(id, player(id));
+        assertTrue(snapshots.hasPermission(id, "other.perm"));
+
+        // It stays in later rounds of refreshes.
+        for (int i = 0; i < PermissionSnapshots.REFRESH_TICKS * 2; i++) snapshots.refresh(this::player);
+        assertTrue(snapshots.hasPermission(id, "other.perm"));
+    }
+
+    @Test
+    public void testRefreshIsSpreadOverTicks() throws Exception {
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 40; i++) ids.add(join());
+        int perTake = checks / 40;
+
+        ids.forEach(id -> granted.get(id).add("rule.perm"));
+        checks = 0;
+        snapshots.refresh(this::player);
+        assertEquals(2 * perTake, checks);
+
+        // Every player is refreshed in one round.
+        for (int i = 1; i < PermissionSnapshots.REFRESH_TICKS; i++) snapshots.refresh(this::player);
+        for (UUID id : ids) assertTrue(snapshots.hasPermission(id, "rule.perm"));
+    }
+
+    @Test
+    public void testNewRulePermissionsAreAddedEachRound() throws Exception {
+        UUID id = join("new.perm");
+        chainPermissions.add("new.perm");
+        for (int i = 0; i < PermissionSnapshots.REFRESH_TICKS; i++) snapshots.refresh(this::player);
+        assertTrue(snapshots.hasPermission(id, "new.perm"));
+    }
+
+    @Test
+    public void testOfflinePlayersAreRemoved() throws Exception {
+        UUID staying = join("rule.perm");
+        UUID leaving = join("rule.perm");
+        granted.remove(leaving);
+        // A round is spread over REFRESH_TICKS calls.
+        for (int i = 0; i < PermissionSnapshots.REFRESH_TICKS; i++) {
+            snapshots.refresh(this::player);
+        }
+        assertEquals(1, snapshots.size());
+        assertTrue(snapshots.hasPermission(staying, "rule.perm"));
+
+        snapshots.remove(staying);
+        assertNull(snapshots.hasPermission(staying, "rule.perm"));
+    }
+}
@@ -21,12 +21,16 @@
 package com.pwn9.filter.minecraft.util;
 
 import com.pwn9.filter.engine.api.EnhancedString;
+import com.pwn9.filter.engine.api.FilterContext;
 import org.junit.Test;
 
 import java.util.regex.Pattern;
 
 import static junit.framework.Assert.assertEquals;
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 
 /**
@@ -221,6 +225,69 @@ public class ColoredStringTest {
 
     }
 
+    @Test
+    public void testCodeBeforeCRIsReplaced() {
+        // The CR/LF takes the place of any code before it.
+        ColoredString cs = new ColoredString("Test&4\rline&5");
+        assertEquals("Test line", cs.toString());
+        assertEquals("Test\rline&5", cs.getRaw());
+    }
 
-}
+    @Test
+    public void testReplaceTextWithoutMatch() {
+        assertSame(testCs, testCs.replaceText(Pattern.compile("nothing"), "derp"));
+    }
 
+    @Test
+    public void testEqualsAndHashCode() {
+        ColoredString modified = testCs.replaceText(Pattern.compile("string"), "string");
+        assertEquals(testCs, modified);
+        assertEquals(testCs.hashCode(), modified.hashCode());
+        assertFalse(testCs.equals(new ColoredString("This&1 is the string &8to test")));
+        assertEquals(testCs, original);
+    }
+
+    @Test
+    public void testMessageChanged() {
+        FilterContext context = new FilterContext(testCs, null, null);
+        assertFalse(context.messageChanged());
+        assertEquals(0, context.getMessageVersion());
+
+        // Replaced, but with the same text.
+        context.setModifiedMessage(testCs.replaceText(Pattern.compile("string"), "string"));
+        assertEquals(1, context.getMessageVersion());
+        assertFalse(context.messageChanged());
+
+        context.setModifiedMessage(context.getModifiedMessage().replaceText(Pattern.compile("string"), "&4thing"));
+        assertEquals(2, context.getMessageVersion());
+        assertTrue(context.messageChanged());
+        assertEquals("This&0 is the &4thing &8to test", context.getModifiedMessage().getRaw());
+    }
+
+    @Test
+    public void testReplaceManyMatches() {
+        StringBuilder test = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            test.append("&").append(i % 10).append("a b");
+            expected.append("&").append(i % 10).append("&4e&r b");
+        }
+        EnhancedString cs = new ColoredString(test.toString());
+        assertEquals(expected.toString(), cs.replaceText(Pattern.compile("a"), "&4e&r").getRaw());
+    }
+
+    @Test
+    public void testChangeCaseManyMatches() {
+        StringBuilder test = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            test.append("&").append(i % 10).append("ab");
+            expected.append("&").append(i % 10).append("aB");
+        }
+        EnhancedString cs = new ColoredString(test.toString());
+        EnhancedString upper = cs.patternToUpper(Pattern.compile("b"));
+        assertEquals(expected.toString(), upper.getRaw());
+        assertEquals(test.toString(), upper.patternToLower(Pattern.compile("B")).getRaw());
+        assertSame(cs, cs.patternToLower(Pattern.compile("B")));
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.util;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests for the multi-literal search automaton.
+ */
+public class AhoCorasickTest {
+
+    private AhoCorasick build(String... literals) {
+        AhoCorasick.Builder builder = new AhoCorasick.Builder();
+        for (int i = 0; i < literals.length; i++) {
+            builder.add(literals[i], i);
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void testFindsOverlappingLiterals() {
+        AhoCorasick automaton = build("he", "she", "his", "hers");
+        BitSet hits = new BitSet();
+        automaton.scan("ushers", hits);
+        assertTrue(hits.get(0));
+        assertTrue(hits.get(1));
+        assertFalse(hits.get(2));
+        assertTrue(hits.get(3));
+    }
+
+    @Test
+    public void testCaseInsensitive() {
+        AhoCorasick automaton = build("fudge");
+        BitSet hits = new BitSet();
+        automaton.scan("Oh FUDGE!", hits);
+        assertTrue(hits.get(0));
+    }
+
+    @Test
+    public void testSharedIds() {
+        AhoCorasick.Builder builder = new AhoCorasick.Builder();
+        builder.add("cat", 3);
+        builder.add("dog", 3);
+        BitSet hits = new BitSet();
+        builder.build().scan("hotdog", hits);
+        assertEquals(1, hits.cardinality());
+        assertTrue(hits.get(3));
+    }
+
+    @Test
+    public void testNoMatch() {
+        BitSet hits = new BitSet();
+        build("abcd", "bce").scan("abcabcbcd", hits);
+        assertTrue(hits.isEmpty());
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.util;
+
+import com.pwn9.filter.engine.FilterService;
+import com.pwn9.filter.engine.api.FilterContext;
+import com.pwn9.filter.engine.rules.Rule;
+import com.pwn9.filter.engine.rules.TestAuthor;
+import com.pwn9.filter.engine.rules.TestClient;
+import org.junit.Test;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for CaseFolding
+ */
+public class CaseFoldingTest {
+
+    @Test
+    public void testFold() {
+        String lower = "already lower 123 É";
+        assertSame(lower, CaseFolding.fold(lower));
+        assertEquals("what the fudge É", CaseFolding.fold("What THE fUdGe É"));
+    }
+
+    @Test
+    public void testFoldPattern() {
+        assertEquals("fudge(ing)?", CaseFolding.foldPattern("FuDgE(ING)?"));
+        assertEquals("(?<!\\w)ass(?!\\w)", CaseFolding.foldPattern("(?<!\\w)ASS(?!\\w)"));
+        // Escapes keep their case
+        assertEquals("\\W\\S\\Bx\\D", CaseFolding.foldPattern("\\W\\S\\BX\\D"));
+        assertEquals("[a-z][^a-c0-9]", CaseFolding.foldPattern("[A-Z][^A-C0-9]"));
+        assertEquals("[%-/]", CaseFolding.foldPattern("[%-/]"));
+    }
+
+    @Test
+    public void testUnsafePatterns() {
+        assertNull(CaseFolding.foldPattern("\\p{Lu}+"));
+        assertNull(CaseFolding.foldPattern("(?i)x"));
+        assertNull(CaseFolding.foldPattern("(?-i)X"));
+        assertNull(CaseFolding.foldPattern("\\x41"));
+        assertNull(CaseFolding.foldPattern("\\0101"));
+        assertNull(CaseFolding.foldPattern("(?<Name>x)"));
+        assertNull(CaseFolding.foldPattern("\\QX\\E"));
+        assertNull(CaseFolding.foldPattern("[A-z]"));
+        assertNull(CaseFolding.foldPattern("[!-Z]"));
+        assertNull(CaseFolding.foldPattern("[a-z&&[^aeiou]]"));
+    }
+
+    @Test
+    public void testSameMatches() {
+        String[] patterns = {"FuDgE(ING)?", "(?<!'|\\w)a[s5]{2}(?!\\w)", "([a-c])\\1", "[A-F0-9]+x", "n[^a](gg|99)+"};
+        String[] texts = {"What the FUDGING heck", "ASS, 'ass A5S", "aA bB cc", "cafe0X BEEFx", "NiGG9 N!gg"};
+        for (String regex : patterns) {
+            Pattern ci = Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
+            Pattern folded = Pattern.compile(CaseFolding.foldPattern(regex));
+            for (String text : texts) {
+                Matcher m1 = ci.matcher(text);
+                Matcher m2 = folded.matcher(CaseFolding.fold(text));
+                while (m1.find()) {
+                    assertTrue(m2.find());
+                    assertEquals(m1.start(), m2.start());
+                    assertEquals(m1.end(), m2.end());
+                }
+                assertFalse(m2.find());
+            }
+        }
+    }
+
+    @Test
+    public void testRuleUsesFoldedText() throws Exception {
+        FilterService filterService = new FilterService();
+        Rule rule = new Rule("FUDGE");
+        assertTrue(rule.usesFoldedText());
+        assertFalse(new Rule("\\p{Lu}").usesFoldedText());
+        rule.addAction(filterService.getActionFactory().getActionFromString("replace *****"));
+
+        FilterContext context = new FilterContext("What the FuDgE?", new TestAuthor(), new TestClient());
+        rule.apply(context, filterService);
+        assertEquals("What the *****?", context.getModifiedMessage().toString());
+        assertEquals("what the *****?", context.getFoldedText());
+    }
+}
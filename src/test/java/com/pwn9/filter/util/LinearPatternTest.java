@@ -0,0 +1,86 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.util;
+
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests for the linear-time pattern matcher.  Results are checked against
+ * java.util.regex, which it has to agree with.
+ */
+public class LinearPatternTest {
+
+    private static final String[] PATTERNS = {
+            "fudge", "^abc$", "\\bfoo\\b", "\\Bfoo", "[^a-c]x", "[]a]+", "x{2,3}y",
+            "(a|b)*c", "(a*)*b", "a??b", "\\d{3}-\\d{4}", "(?:ab|cd)+e", "[A-Z][a-z]+",
+            "\\Qa.b\\E+", "\\s+$", "a.c", "n[^a](gg|99)+(a|er|uh)", "(?<!'|\\w)ass(?!\\w)",
+            "(?<=a)b", "(x|)y"
+    };
+
+    private static final String[] INPUTS = {
+            "", "fudge", "FUDGE!", "abc", "abc\n", "foo bar", "afoo", "dx", "]]", "xxy", "xy",
+            "ababc", "aaab", "b", "555-1234", "ABcdE", "Hello", "a.bb", "axb", "a c", "a\nc",
+            "nigga", "n1gger", "assist", "an ass", "'ass", "ab", "y", "trailing   "
+    };
+
+    @Test
+    public void testAgreesWithJavaRegex() {
+        for (String regex : PATTERNS) {
+            LinearPattern linear = LinearPattern.compile(regex);
+            assertNotNull("Should support: " + regex, linear);
+            Pattern pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
+            for (String input : INPUTS) {
+                assertEquals(regex + " on '" + input + "'",
+                        pattern.matcher(input).find(), linear.find(input));
+            }
+        }
+    }
+
+    @Test
+    public void testUnsupportedPatterns() {
+        assertNull(LinearPattern.compile("(a)\\1"));
+        assertNull(LinearPattern.compile("(?=ab)"));
+        assertNull(LinearPattern.compile("(?>a)"));
+        assertNull(LinearPattern.compile("a++"));
+        assertNull(LinearPattern.compile("(?i)a"));
+        assertNull(LinearPattern.compile("\\p{Lu}"));
+        assertNull(LinearPattern.compile("[a[b]]"));
+    }
+
+    @Test(timeout = 2000)
+    public void testNoCatastrophicBacktracking() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 50000; i++) sb.append('a');
+        LinearPattern linear = LinearPattern.compile("(a+)+b");
+        assertNotNull(linear);
+        assertFalse(linear.find(sb));
+        sb.append('b');
+        assertTrue(linear.find(sb));
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.util;
+
+import com.google.common.base.Ticker;
+import com.pwn9.filter.bukkit.TestTicker;
+import com.pwn9.filter.engine.FilterConfig;
+import com.pwn9.filter.engine.FilterService;
+import com.pwn9.filter.engine.api.FilterContext;
+import com.pwn9.filter.engine.rules.TestAuthor;
+import com.pwn9.filter.engine.rules.TestClient;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the MatchBudget
+ */
+public class MatchBudgetTest {
+
+    private static long millis(long ms) {
+        return TimeUnit.MILLISECONDS.toNanos(ms);
+    }
+
+    @Test
+    public void testClockIsReadOncePerInterval() {
+        final int[] reads = {0};
+        Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                reads[0]++;
+                return 0;
+            }
+        };
+        MatchBudget budget = new MatchBudget(100, 0, 64, ticker);
+        reads[0] = 0;
+        for (int i = 0; i < 640; i++) {
+            assertTrue(budget.step());
+        }
+        assertEquals(10, reads[0]);
+        assertEquals(640, budget.getSteps());
+    }
+
+    @Test
+    public void testRuleTimeout() {
+        TestTicker ticker = new TestTicker();
+        MatchBudget budget = new MatchBudget(100, 0, 4, ticker);
+        assertTrue(budget.step());
+
+        ticker.setElapsed(millis(101));
+        // Not noticed until the next clock check
+        assertTrue(budget.step());
+        assertTrue(budget.step());
+        assertTrue(budget.step());
+        assertFalse(budget.step());
+        assertFalse(budget.isMessageExpired());
+
+        // A new rule gets a fresh timeout.
+        budget.startRule();
+        assertTrue(budget.step());
+        assertEquals(1, budget.getSteps());
+    }
+
+    @Test
+    public void testMessageTimeoutLimitsRules() {
+        TestTicker ticker = new TestTicker();
+        MatchBudget budget = new MatchBudget(100, 150, 1, ticker);
+
+        ticker.setElapsed(millis(90));
+        budget.startRule();
+        assertTrue(budget.step());
+
+        // The rule is within its own 100ms, but the message is out of time.
+        ticker.setElapsed(millis(151));
+        assertFalse(budget.step());
+        assertTrue(budget.isMessageExpired());
+
+        budget.startMessage();
+        assertTrue(budget.step());
+        assertFalse(budget.isMessageExpired());
+    }
+
+    @Test
+    public void testNoMessageTimeout() {
+        TestTicker ticker = new TestTicker();
+        MatchBudget budget = new MatchBudget(100, 0, 1, ticker);
+        for (int i = 1; i < 10; i++) {
+            ticker.setElapsed(millis(i * 90));
+            budget.startRule();
+            assertTrue(budget.step());
+        }
+        assertFalse(budget.isMessageExpired());
+    }
+
+    @Test
+    public void testSequenceSharesBudget() {
+        TestTicker ticker = new TestTicker();
+        MatchBudget budget = new MatchBudget(100, 0, 1, ticker);
+        LimitedRegexCharSequence seq = new LimitedRegexCharSequence("abc", budget);
+        seq.charAt(0);
+        seq.subSequence(1, 3).charAt(0);
+        assertEquals(2, budget.getSteps());
+
+        seq.reset("xyz");
+        assertEquals('y', seq.charAt(1));
+        assertEquals(1, seq.getAccessCount());
+    }
+
+    @Test
+    public void testMessagesShareTheThreadsSequence() {
+        FilterConfig config = new FilterService().getConfig();
+        FilterContext first = new FilterContext("abc", new TestAuthor(), new TestClient());
+        FilterContext second = new FilterContext("xyz", new TestAuthor(), new TestClient());
+
+        LimitedRegexCharSequence seq = first.getRegexText(config);
+        assertSame(seq, first.getRegexText(config));
+        assertSame(seq, second.getRegexText(config));
+        // The first message takes it back, if it is filtered again.
+        assertSame(seq, first.getRegexText(config));
+        assertFalse(first.isMatchTimedOut());
+        assertFalse(second.isMatchTimedOut());
+
+        config.setRuleTimeoutMillis(config.getRuleTimeoutMillis() + 1);
+        FilterContext third = new FilterContext("123", new TestAuthor(), new TestClient());
+        LimitedRegexCharSequence changed = third.getRegexText(config);
+        assertNotSame(seq, changed);
+        assertEquals(config.getRuleTimeoutMillis(), changed.getBudget().getRuleTimeoutMillis());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIntervalMustBePowerOfTwo() {
+        new MatchBudget(100, 0, 100, new TestTicker());
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ *  PwnFilter - Chat and user-input filter with the power of Regex
+ *  Copyright (C) 2016 Pwn9.com / Sage905 <sage905@takeflight.ca>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package com.pwn9.filter.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+
+/**
+ * Tests for extracting required literals from rule patterns.
+ */
+public class RegexLiteralsTest {
+
+    private static Set<String> set(String... strings) {
+        return new HashSet<>(Arrays.asList(strings));
+    }
+
+    @Test
+    public void testPlainLiteralIsFolded() {
+        assertEquals(set("fudge"), RegexLiterals.requiredLiterals("FuDGe"));
+    }
+
+    @Test
+    public void testLongestRunIsChosen() {
+        assertEquals(set("fudge"), RegexLiterals.requiredLiterals("\\bfu\\s+fudge(ing)?\\b"));
+    }
+
+    @Test
+    public void testAlternation() {
+        assertEquals(set("cat", "dog"), RegexLiterals.requiredLiterals("(cat|dog)s?"));
+    }
+
+    @Test
+    public void testSmallClassesAreExpanded() {
+        assertEquals(set("ass", "a5s", "as5", "a55"), RegexLiterals.requiredLiterals("a[s5][s5]"));
+    }
+
+    @Test
+    public void testOptionalPartsAreNotRequired() {
+        assertEquals(set("bar"), RegexLiterals.requiredLiterals("(foo)?bar(baz)*"));
+        assertNull(RegexLiterals.requiredLiterals("(foo)?"));
+        assertNull(RegexLiterals.requiredLiterals("foo|.*"));
+    }
+
+    @Test
+    public void testRepeatedAtomIsRequired() {
+        assertEquals(set("ab"), RegexLiterals.requiredLiterals("x?(ab)+"));
+    }
+
+    @Test
+    public void testEscapedLiterals() {
+        assertEquals(set("a.b"), RegexLiterals.requiredLiterals("a\\.b"));
+    }
+
+    @Test
+    public void testUnsupportedPatterns() {
+        assertNull(RegexLiterals.requiredLiterals("(?-i)foo"));
+        assertNull(RegexLiterals.requiredLiterals("\\Qfoo\\E"));
+        assertNull(RegexLiterals.requiredLiterals("\\x41"));
+        assertNull(RegexLiterals.requiredLiterals("[^a]+"));
+        assertNull(RegexLiterals.requiredLiterals("(.)\\1"));
+    }
+}